@@ -0,0 +1,117 @@
+package cse340.undo.actions;
+
+import android.util.Log;
+import android.view.View;
+
+import java.util.List;
+
+import cse340.undo.app.DrawingView;
+import cse340.undo.app.LayerView;
+import cse340.undo.render.TileDiff;
+import cse340.undo.render.TiledRaster;
+
+/**
+ * Reversible action which edits the pixels of a layer, such as a filter or an imported image. To
+ * make a new raster action, subclass this and implement editRaster.
+ *
+ * The first time the action is done, the layer's strokes are flattened into its base raster and the
+ * edit is applied, while the raster records the tiles they touch into a TileDiff. Undo and redo
+ * swap those tiles and put the flattened strokes back or take them out again, so undo memory
+ * scales with the area changed rather than the size of the canvas, and the edit runs only once.
+ *
+ * The edit seals the layer's display list of baked strokes, so they can no longer be changed
+ * apart from it; undo and redo swap the saved display lists along with the tiles.
+ *
+ * @see TiledRaster#beginDiff(boolean)
+ */
+public abstract class AbstractRasterAction extends AbstractReversibleAction {
+    /** Whether touched tiles are deflated. */
+    private final boolean mCompress;
+
+    /** Tiles the edit touched, as they are not currently; null until first done. */
+    private TileDiff mDiff;
+
+    /** Children of the layer which were flattened for the edit. */
+    private List<View> mFlattened;
+
+    /** Display lists of the layer's baked views before and after the edit. */
+    private LayerView.BakedState mBakedBefore, mBakedAfter;
+
+    /**
+     * @param compress  True to deflate the stored tiles, trading time for memory.
+     */
+    protected AbstractRasterAction(boolean compress) {
+        mCompress = compress;
+    }
+
+    /**
+     * Edits the raster. Called once, the first time the action is done.
+     *
+     * @param raster    Base raster of the layer, holding everything in the layer.
+     * @param view      DrawingView the action is done in.
+     */
+    protected abstract void editRaster(TiledRaster raster, DrawingView view);
+
+    /**
+     * Applies the edit the first time, and swaps the edited tiles back in after an undo.
+     *
+     * @param view  DrawingView in which to apply the edit.
+     */
+    @Override
+    public void doAction(DrawingView view) {
+        super.doAction(view);
+        LayerView layer = getLayer(view);
+        TiledRaster raster = layer.getBaseRaster();
+        view.beginBatch();
+        try {
+            if (mDiff == null) {
+                mBakedBefore = layer.saveBaked();
+                raster.beginDiff(mCompress);
+                try {
+                    mFlattened = layer.flattenChildren();
+                    editRaster(raster, view);
+                } finally {
+                    mDiff = raster.endDiff();
+                }
+                layer.sealBaked();
+                mBakedAfter = layer.saveBaked();
+                Log.i(LOG_TAG, toString() + " stored " + mDiff);
+            } else {
+                layer.reflattenChildren(mFlattened);
+                raster.swap(mDiff);
+                layer.restoreBaked(mBakedAfter);
+            }
+        } finally {
+            view.endBatch();
+        }
+        layer.invalidate();
+    }
+
+    /**
+     * Swaps the tiles as they were before the edit back in, and puts the flattened strokes back.
+     *
+     * @param view  DrawingView in which to undo the edit.
+     */
+    @Override
+    public void undoAction(DrawingView view) {
+        super.undoAction(view);
+        LayerView layer = getLayer(view);
+        view.beginBatch();
+        try {
+            layer.rebake();
+            layer.getBaseRaster().swap(mDiff);
+            layer.restoreBaked(mBakedBefore);
+            layer.unflattenChildren(mFlattened);
+        } finally {
+            view.endBatch();
+        }
+        layer.invalidate();
+    }
+
+    /**
+     * @return Tiles the edit touched, or null if the action has never been done.
+     */
+    public TileDiff getDiff() {
+        return mDiff;
+    }
+}
@@ -4,6 +4,7 @@ import android.support.annotation.CallSuper;
 import android.util.Log;
 
 import cse340.undo.app.DrawingView;
+import cse340.undo.app.LayerView;
 
 /**
  * An extension of a normal AbstractAction which adds the ability to reverse the action on a DrawingView.
@@ -15,9 +16,15 @@ import cse340.undo.app.DrawingView;
  * @see AbstractReversibleAction#undoAction(DrawingView)
  */
 public abstract class AbstractReversibleAction extends AbstractAction {
+    /** Layer id of an action which hasn't been targeted at a layer yet. */
+    public static final int NO_LAYER = -1;
+
     /** Whether or not this action is currently done (a.k.a. not undone). */
     private boolean mDone;
 
+    /** Layer this action applies to. Set to the active layer when first done, if not given. */
+    private int mLayerId = NO_LAYER;
+
     /**
      * @return True if the action has already been done, false otherwise.
      */
@@ -25,6 +32,39 @@ public abstract class AbstractReversibleAction extends AbstractAction {
         return mDone;
     }
 
+    /**
+     * @return Id of the layer this action applies to, or NO_LAYER if it hasn't been done yet.
+     */
+    public int getLayerId() {
+        return mLayerId;
+    }
+
+    /**
+     * Targets this action at a layer, instead of the layer active when it is first done.
+     *
+     * @param layerId   Id of the layer.
+     * @throws IllegalStateException if the action was already targeted at a layer.
+     */
+    public void setLayerId(int layerId) {
+        if (mLayerId != NO_LAYER) {
+            throw new IllegalStateException("Action already targets layer " + mLayerId);
+        }
+        mLayerId = layerId;
+    }
+
+    /**
+     * @param view  DrawingView this action is done in.
+     * @return The layer this action applies to.
+     * @throws IllegalStateException if the layer is not in the view.
+     */
+    protected LayerView getLayer(DrawingView view) {
+        LayerView layer = view.getLayer(mLayerId);
+        if (layer == null) {
+            throw new IllegalStateException("Layer " + mLayerId + " not found: " + toString());
+        }
+        return layer;
+    }
+
     /**
      * Does this action, which is guaranteed to have occurred, to the given DrawingView.
      *
@@ -38,6 +78,9 @@ public abstract class AbstractReversibleAction extends AbstractAction {
         }
         super.doAction(view);
 
+        if (mLayerId == NO_LAYER) {
+            mLayerId = view.getActiveLayerId();
+        }
         mDone = true;
     }
 
@@ -57,6 +100,30 @@ public abstract class AbstractReversibleAction extends AbstractAction {
         mDone = false;
     }
 
+    /**
+     * Finds the topmost view rendering this action in a layer, so that everything up to it can be
+     * flattened once the action can no longer be undone.
+     *
+     * @param layer Layer of the DrawingView the action was done in.
+     * @return Child index of the topmost view of this action in the layer, or -1 if it has none.
+     */
+    public int getTopViewIndex(LayerView layer) {
+        return -1;
+    }
+
+    /**
+     * Whether undoing or redoing this action changes strokes which other actions added, for
+     * example by erasing or moving them. A layer keeps its baked strokes editable while an action
+     * in the history might still change them.
+     *
+     * @param layer Layer of the DrawingView the action was done in.
+     * @return True if the action changes existing strokes of the layer.
+     * @see LayerView#isBakedListFull()
+     */
+    public boolean editsStrokes(LayerView layer) {
+        return false;
+    }
+
     /** @inheritDoc */
     @Override
     public abstract String toString();
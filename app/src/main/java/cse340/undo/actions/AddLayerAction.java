@@ -0,0 +1,57 @@
+package cse340.undo.actions;
+
+import android.support.annotation.NonNull;
+
+import cse340.undo.app.DrawingView;
+import cse340.undo.app.LayerView;
+
+/**
+ * Reversible action which adds a layer on top of the DrawingView's layers and makes it active.
+ */
+public class AddLayerAction extends AbstractReversibleAction {
+    /** Name of the new layer. */
+    private final String mName;
+
+    /** The layer added, created when the action is first done and kept for redo. */
+    private LayerView mLayer;
+
+    /** The layer which was active before this action. */
+    private int mPrevActive;
+
+    /**
+     * Creates an action that adds a layer.
+     *
+     * @param name  Name of the new layer.
+     */
+    public AddLayerAction(String name) {
+        this.mName = name;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void doAction(DrawingView view) {
+        if (mLayer == null) {
+            mLayer = view.createLayer(mName);
+            setLayerId(mLayer.getLayerId());
+        }
+        super.doAction(view);
+        mPrevActive = view.getActiveLayerId();
+        view.addLayer(mLayer, view.getLayerCount());
+        view.setActiveLayerId(mLayer.getLayerId());
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void undoAction(DrawingView view) {
+        super.undoAction(view);
+        view.removeLayer(mLayer);
+        view.setActiveLayerId(mPrevActive);
+    }
+
+    /** @inheritDoc */
+    @NonNull
+    @Override
+    public String toString() {
+        return "Add layer " + mName;
+    }
+}
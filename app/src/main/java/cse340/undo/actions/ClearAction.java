@@ -4,6 +4,7 @@ import android.support.annotation.NonNull;
 
 import cse340.undo.app.ClearView;
 import cse340.undo.app.DrawingView;
+import cse340.undo.app.LayerView;
 
 /**
  * Reversible action which renders a stroke in DrawingView.
@@ -25,7 +26,7 @@ public class ClearAction extends AbstractReversibleViewAction {
     public void doAction(DrawingView view) {
         super.doAction(view);
         mClearView = new ClearView(view.getContext());
-        view.addView(mClearView);
+        getLayer(view).addView(mClearView);
     }
 
     /**
@@ -36,13 +37,19 @@ public class ClearAction extends AbstractReversibleViewAction {
     @Override
     public void undoAction(DrawingView view) {
         super.undoAction(view);
-        if (view.indexOfChild(mClearView) < 0) {
+        LayerView layer = getLayer(view);
+        if (layer.indexOfChild(mClearView) < 0) {
             throw new IllegalStateException("ClearView not found");
         }
 
-        view.removeView(mClearView);
+        layer.removeView(mClearView);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public int getTopViewIndex(LayerView layer) {
+        return mClearView == null ? -1 : layer.indexOfChild(mClearView);
+    }
 
     /**
      * Invalidates the screen.
@@ -0,0 +1,140 @@
+package cse340.undo.actions;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import cse340.undo.app.DrawingView;
+import cse340.undo.app.LayerView;
+
+/**
+ * Reversible action which groups several reversible actions into a single history entry. Children
+ * are done in order and undone in reverse order, inside one DrawingView batch so the whole group
+ * costs a single layout and redraw.
+ *
+ * Children which are already done when the composite is done (for example, actions applied during
+ * a transaction) are left as they are.
+ *
+ * @see DrawingView#beginBatch()
+ */
+public class CompositeAction extends AbstractReversibleViewAction {
+    /** Actions in this group, in the order they were done. */
+    private final List<AbstractReversibleAction> mActions;
+
+    /**
+     * Creates an action that groups the given actions.
+     *
+     * @param actions   Actions to group, in the order they should be done.
+     * @throws IllegalArgumentException if actions is null or empty.
+     */
+    public CompositeAction(List<? extends AbstractReversibleAction> actions) {
+        if (actions == null || actions.isEmpty()) {
+            throw new IllegalArgumentException("Null or empty actions");
+        }
+
+        this.mActions = new ArrayList<>(actions);
+    }
+
+    /**
+     * Does every child action that isn't already done, in order.
+     *
+     * @param view  DrawingView in which to apply the actions.
+     */
+    @Override
+    public void doAction(DrawingView view) {
+        super.doAction(view);
+        view.beginBatch();
+        try {
+            for (AbstractReversibleAction action : mActions) {
+                if (!action.isDone()) {
+                    action.doAction(view);
+                }
+            }
+        } finally {
+            view.endBatch();
+        }
+    }
+
+    /**
+     * Undoes every child action, in reverse order.
+     *
+     * @param view  DrawingView in which to undo the actions.
+     */
+    @Override
+    public void undoAction(DrawingView view) {
+        super.undoAction(view);
+        view.beginBatch();
+        try {
+            for (int i = mActions.size() - 1; i >= 0; i--) {
+                AbstractReversibleAction action = mActions.get(i);
+                if (action.isDone()) {
+                    action.undoAction(view);
+                }
+            }
+        } finally {
+            view.endBatch();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getTopViewIndex(LayerView layer) {
+        int top = -1;
+        for (AbstractReversibleAction action : mActions) {
+            top = Math.max(top, action.getTopViewIndex(layer));
+        }
+        return top;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean editsStrokes(LayerView layer) {
+        for (AbstractReversibleAction action : mActions) {
+            if (action.editsStrokes(layer)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Invalidates every child which has a view.
+     */
+    @Override
+    public void invalidate() {
+        for (AbstractReversibleAction action : mActions) {
+            if (action instanceof AbstractReversibleViewAction) {
+                ((AbstractReversibleViewAction) action).invalidate();
+            }
+        }
+    }
+
+    /**
+     * @return Unmodifiable list of the grouped actions, in the order they are done.
+     */
+    public List<AbstractReversibleAction> getActions() {
+        return Collections.unmodifiableList(mActions);
+    }
+
+    /**
+     * @param type  Action class to look for.
+     * @return True if any grouped action is an instance of type.
+     */
+    public boolean contains(Class<? extends AbstractReversibleAction> type) {
+        for (AbstractReversibleAction action : mActions) {
+            if (type.isInstance(action)
+                    || (action instanceof CompositeAction && ((CompositeAction) action).contains(type))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Composite of " + mActions.size() + " actions";
+    }
+}
@@ -0,0 +1,80 @@
+package cse340.undo.actions;
+
+import android.support.annotation.NonNull;
+
+import cse340.undo.app.DrawingView;
+import cse340.undo.app.LayerView;
+import cse340.undo.app.StrokeView;
+import cse340.undo.app.TextAnnotationView;
+
+/**
+ * Reversible action which changes the text of a label. Only the label's stroke id and the text
+ * before and after are stored.
+ *
+ * @see LayerView#getStroke
+ */
+public class EditTextAction extends AbstractReversibleAction {
+    /** Id of the label's geometry. */
+    private final int mStrokeId;
+
+    /** Text before and after the edit. */
+    private final String mOldText;
+    private final String mNewText;
+
+    /**
+     * Creates an action that changes the text of a label.
+     *
+     * @param layerId   Id of the layer the label is in.
+     * @param strokeId  Id of the label's geometry.
+     * @param oldText   Text before the edit.
+     * @param newText   Text after the edit.
+     * @throws IllegalArgumentException if either text is null or empty.
+     */
+    public EditTextAction(int layerId, int strokeId, String oldText, String newText) {
+        if (oldText == null || oldText.isEmpty() || newText == null || newText.isEmpty()) {
+            throw new IllegalArgumentException("Null or empty text");
+        }
+
+        setLayerId(layerId);
+        mStrokeId = strokeId;
+        mOldText = oldText;
+        mNewText = newText;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void doAction(DrawingView view) {
+        super.doAction(view);
+        apply(getLayer(view), mNewText);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void undoAction(DrawingView view) {
+        super.undoAction(view);
+        apply(getLayer(view), mOldText);
+    }
+
+    /**
+     * Sets the text of the label, whether it is still a view or was baked.
+     */
+    private void apply(LayerView layer, String text) {
+        StrokeView strokeView = layer.getStroke(mStrokeId);
+        if (strokeView instanceof TextAnnotationView) {
+            ((TextAnnotationView) strokeView).setText(text, layer);
+        }
+    }
+
+    /** @inheritDoc */
+    @Override
+    public boolean editsStrokes(LayerView layer) {
+        return getLayerId() == layer.getLayerId();
+    }
+
+    /** @inheritDoc */
+    @NonNull
+    @Override
+    public String toString() {
+        return "Change text \"" + mOldText + "\" to \"" + mNewText + "\"";
+    }
+}
@@ -0,0 +1,98 @@
+package cse340.undo.actions;
+
+import android.support.annotation.NonNull;
+
+import java.util.BitSet;
+import java.util.Map;
+
+import cse340.undo.app.DrawingView;
+import cse340.undo.app.LayerView;
+import cse340.undo.app.StrokeView;
+import cse340.undo.geometry.StrokeGeometry;
+
+/**
+ * Reversible action which erases parts of strokes in one layer. Only the erased spans of segments
+ * are stored; the strokes keep their samples and are split around the spans when drawn.
+ *
+ * @see LayerView#invalidateStroke
+ */
+public class EraseAction extends AbstractReversibleAction {
+    /** Strokes partly erased by this action. */
+    private final StrokeGeometry[] mStrokes;
+
+    /** For each stroke, pairs of (first segment, segment after the last) erased. */
+    private final int[][] mSpans;
+
+    /** Number of segments erased in total. */
+    private final int mSegments;
+
+    /**
+     * Creates an action that erases segments of strokes.
+     *
+     * @param layerId   Id of the layer the strokes are in.
+     * @param segments  Segments to erase from each stroke.
+     * @throws IllegalArgumentException if segments is null or empty.
+     */
+    public EraseAction(int layerId, Map<StrokeGeometry, BitSet> segments) {
+        if (segments == null || segments.isEmpty()) {
+            throw new IllegalArgumentException("Null or empty segments");
+        }
+
+        setLayerId(layerId);
+        mStrokes = new StrokeGeometry[segments.size()];
+        mSpans = new int[segments.size()][];
+        int i = 0, count = 0;
+        for (Map.Entry<StrokeGeometry, BitSet> entry : segments.entrySet()) {
+            mStrokes[i] = entry.getKey();
+            mSpans[i] = StrokeGeometry.toSpans(entry.getValue());
+            count += entry.getValue().cardinality();
+            i++;
+        }
+        mSegments = count;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void doAction(DrawingView view) {
+        super.doAction(view);
+        LayerView layer = getLayer(view);
+        for (int i = 0; i < mStrokes.length; i++) {
+            mStrokes[i].erase(mSpans[i]);
+            invalidate(layer, mStrokes[i]);
+        }
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void undoAction(DrawingView view) {
+        super.undoAction(view);
+        LayerView layer = getLayer(view);
+        for (int i = 0; i < mStrokes.length; i++) {
+            mStrokes[i].restore(mSpans[i]);
+            invalidate(layer, mStrokes[i]);
+        }
+    }
+
+    /**
+     * Redraws a stroke, whether it is still a view or was baked.
+     */
+    private static void invalidate(LayerView layer, StrokeGeometry stroke) {
+        StrokeView strokeView = layer.getSegmentIndex().getOwner(stroke);
+        if (strokeView != null) {
+            layer.invalidateStroke(strokeView, null);
+        }
+    }
+
+    /** @inheritDoc */
+    @Override
+    public boolean editsStrokes(LayerView layer) {
+        return getLayerId() == layer.getLayerId();
+    }
+
+    /** @inheritDoc */
+    @NonNull
+    @Override
+    public String toString() {
+        return "Erase " + mSegments + " segments from " + mStrokes.length + " strokes";
+    }
+}
@@ -0,0 +1,106 @@
+package cse340.undo.actions;
+
+import android.support.annotation.NonNull;
+
+import cse340.undo.app.DrawingView;
+import cse340.undo.app.FillView;
+import cse340.undo.app.LayerView;
+import cse340.undo.render.RunLengthMask;
+
+/**
+ * Reversible action which fills a region of the active layer with a colour. Only the filled pixels
+ * are stored, run-length encoded, so the action costs memory in proportion to the edges of the
+ * region rather than the size of the canvas.
+ */
+public class FillAction extends AbstractReversibleViewAction {
+    /** Filled pixels, and the colour they are filled with. */
+    private final RunLengthMask mMask;
+    private final int mColor;
+
+    /** Document position of mask pixel (0, 0), and the document size of a mask pixel. */
+    private final float mOriginX, mOriginY;
+    private final float mScale;
+
+    private FillView mFillView;
+
+    /**
+     * Creates an action that fills a region.
+     *
+     * @param mask      Pixels to fill.
+     * @param color     Colour to fill them with.
+     * @param originX   Horizontal document position of mask pixel (0, 0).
+     * @param originY   Vertical document position of mask pixel (0, 0).
+     * @param scale     Width of a mask pixel in document units.
+     * @throws IllegalArgumentException if mask is null or empty, or scale is not positive.
+     */
+    public FillAction(RunLengthMask mask, int color, float originX, float originY, float scale) {
+        if (mask == null || mask.isEmpty() || scale <= 0f) {
+            throw new IllegalArgumentException("Null or empty mask, or illegal scale " + scale);
+        }
+
+        this.mMask = mask;
+        this.mColor = color;
+        this.mOriginX = originX;
+        this.mOriginY = originY;
+        this.mScale = scale;
+    }
+
+    /**
+     * Renders the fill in the given view.
+     *
+     * @param view  DrawingView in which to render the fill.
+     */
+    @Override
+    public void doAction(DrawingView view) {
+        super.doAction(view);
+        mFillView = new FillView(view.getContext(), mMask, mColor, mOriginX, mOriginY, mScale);
+        getLayer(view).addView(mFillView);
+    }
+
+    /**
+     * De-renders the fill in the given view.
+     *
+     * @param view  DrawingView in which to de-render the fill.
+     */
+    @Override
+    public void undoAction(DrawingView view) {
+        super.undoAction(view);
+        LayerView layer = getLayer(view);
+        if (layer.indexOfChild(mFillView) < 0) {
+            throw new IllegalStateException("FillView not found");
+        }
+
+        layer.removeView(mFillView);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getTopViewIndex(LayerView layer) {
+        return mFillView == null ? -1 : layer.indexOfChild(mFillView);
+    }
+
+    /**
+     * Invalidates the rendered fill.
+     */
+    @Override
+    public void invalidate() {
+        mFillView.invalidate();
+    }
+
+    /**
+     * @return Filled pixels.
+     */
+    public RunLengthMask getMask() {
+        return mMask;
+    }
+
+    public int getColor() {
+        return mColor;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Fill " + mMask + " (" + mMask.getByteCount() + " bytes)";
+    }
+}
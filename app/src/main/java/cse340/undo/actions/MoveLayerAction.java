@@ -0,0 +1,55 @@
+package cse340.undo.actions;
+
+import android.support.annotation.NonNull;
+
+import cse340.undo.app.DrawingView;
+import cse340.undo.app.LayerView;
+
+/**
+ * Reversible action which moves a layer to another position in the DrawingView's stack.
+ */
+public class MoveLayerAction extends AbstractReversibleAction {
+    /** The position this action moves the layer to. */
+    private final int mIndex;
+
+    /** The position this action moves the layer from. */
+    private int mPrev;
+
+    /**
+     * Creates an action that reorders a layer.
+     *
+     * @param layerId   Id of the layer to move.
+     * @param index     New position of the layer, 0 being the bottom.
+     * @throws IllegalArgumentException if index is negative.
+     */
+    public MoveLayerAction(int layerId, int index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Illegal index: " + index);
+        }
+        setLayerId(layerId);
+        this.mIndex = index;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void doAction(DrawingView view) {
+        super.doAction(view);
+        LayerView layer = getLayer(view);
+        mPrev = view.indexOfLayer(layer);
+        view.moveLayer(layer, Math.min(mIndex, view.getLayerCount() - 1));
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void undoAction(DrawingView view) {
+        super.undoAction(view);
+        view.moveLayer(getLayer(view), mPrev);
+    }
+
+    /** @inheritDoc */
+    @NonNull
+    @Override
+    public String toString() {
+        return "Move layer " + getLayerId() + " to " + mIndex;
+    }
+}
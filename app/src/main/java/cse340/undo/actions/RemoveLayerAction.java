@@ -0,0 +1,53 @@
+package cse340.undo.actions;
+
+import android.support.annotation.NonNull;
+
+import cse340.undo.app.DrawingView;
+import cse340.undo.app.LayerView;
+
+/**
+ * Reversible action which removes a layer, with its strokes, from the DrawingView. Undoing it puts
+ * the same layer back, so its cached content is not rebuilt.
+ */
+public class RemoveLayerAction extends AbstractReversibleAction {
+    /** The layer removed, and its position in the stack before removal. */
+    private LayerView mLayer;
+    private int mIndex;
+
+    /** The layer which was active before this action. */
+    private int mPrevActive;
+
+    /**
+     * Creates an action that removes a layer.
+     *
+     * @param layerId   Id of the layer to remove.
+     */
+    public RemoveLayerAction(int layerId) {
+        setLayerId(layerId);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void doAction(DrawingView view) {
+        super.doAction(view);
+        mLayer = getLayer(view);
+        mIndex = view.indexOfLayer(mLayer);
+        mPrevActive = view.getActiveLayerId();
+        view.removeLayer(mLayer);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void undoAction(DrawingView view) {
+        super.undoAction(view);
+        view.addLayer(mLayer, mIndex);
+        view.setActiveLayerId(mPrevActive);
+    }
+
+    /** @inheritDoc */
+    @NonNull
+    @Override
+    public String toString() {
+        return "Remove layer " + getLayerId();
+    }
+}
@@ -0,0 +1,55 @@
+package cse340.undo.actions;
+
+import android.support.annotation.NonNull;
+
+import cse340.undo.app.DrawingView;
+import cse340.undo.app.LayerView;
+
+/**
+ * Reversible action which changes the opacity a layer is composited with.
+ */
+public class SetLayerOpacityAction extends AbstractReversibleAction {
+    /** The opacity this action gives the layer. */
+    private final float mOpacity;
+
+    /** The opacity the layer had before. */
+    private float mPrev;
+
+    /**
+     * Creates an action that changes a layer's opacity.
+     *
+     * @param layerId   Id of the layer.
+     * @param opacity   New opacity, in [0, 1].
+     * @throws IllegalArgumentException if opacity is outside [0, 1].
+     */
+    public SetLayerOpacityAction(int layerId, float opacity) {
+        if (!(opacity >= 0f && opacity <= 1f)) {
+            throw new IllegalArgumentException("Illegal opacity: " + opacity);
+        }
+        setLayerId(layerId);
+        this.mOpacity = opacity;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void doAction(DrawingView view) {
+        super.doAction(view);
+        LayerView layer = getLayer(view);
+        mPrev = layer.getOpacity();
+        layer.setOpacity(mOpacity);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void undoAction(DrawingView view) {
+        super.undoAction(view);
+        getLayer(view).setOpacity(mPrev);
+    }
+
+    /** @inheritDoc */
+    @NonNull
+    @Override
+    public String toString() {
+        return "Set layer " + getLayerId() + " opacity to " + mOpacity;
+    }
+}
@@ -0,0 +1,52 @@
+package cse340.undo.actions;
+
+import android.support.annotation.NonNull;
+
+import cse340.undo.app.DrawingView;
+import cse340.undo.app.LayerView;
+
+/**
+ * Reversible action which shows or hides a layer. The layer keeps its cached content, so toggling
+ * it only recomposites the DrawingView.
+ */
+public class SetLayerVisibilityAction extends AbstractReversibleAction {
+    /** The visibility this action gives the layer. */
+    private final boolean mVisible;
+
+    /** The visibility the layer had before. */
+    private boolean mPrev;
+
+    /**
+     * Creates an action that shows or hides a layer.
+     *
+     * @param layerId   Id of the layer.
+     * @param visible   True to show the layer, false to hide it.
+     */
+    public SetLayerVisibilityAction(int layerId, boolean visible) {
+        setLayerId(layerId);
+        this.mVisible = visible;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void doAction(DrawingView view) {
+        super.doAction(view);
+        LayerView layer = getLayer(view);
+        mPrev = layer.isLayerVisible();
+        layer.setLayerVisible(mVisible);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void undoAction(DrawingView view) {
+        super.undoAction(view);
+        getLayer(view).setLayerVisible(mPrev);
+    }
+
+    /** @inheritDoc */
+    @NonNull
+    @Override
+    public String toString() {
+        return (mVisible ? "Show" : "Hide") + " layer " + getLayerId();
+    }
+}
@@ -0,0 +1,47 @@
+package cse340.undo.actions;
+
+import android.support.annotation.NonNull;
+
+import cse340.undo.app.DrawingView;
+import cse340.undo.app.ShapeView;
+import cse340.undo.app.StrokeView;
+import cse340.undo.geometry.Shape;
+import cse340.undo.geometry.Symmetry;
+
+/**
+ * Reversible action which renders a primitive shape, recognized from a freehand stroke, in
+ * DrawingView.
+ */
+public class ShapeAction extends StrokeAction {
+    /** Shape this action draws. */
+    private final Shape mShape;
+
+    /**
+     * Creates an action that renders a shape.
+     *
+     * @param shape     Shape to render.
+     * @param styleId   Id of the style in the shared BrushStyleRegistry.
+     * @param symmetry  Copies to draw the shape as, or null to draw it once.
+     * @throws IllegalArgumentException if shape is null or the style id is invalid.
+     */
+    public ShapeAction(Shape shape, int styleId, Symmetry symmetry) {
+        super(shape == null ? null : shape.toPath(), styleId, symmetry);
+        this.mShape = shape;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected StrokeView createView(DrawingView view) {
+        return new ShapeView(view.getContext(), mShape, getPaint());
+    }
+
+    public Shape getShape() {
+        return mShape;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Drawing " + mShape;
+    }
+}
@@ -0,0 +1,53 @@
+package cse340.undo.actions;
+
+import android.support.annotation.NonNull;
+
+import cse340.undo.app.DrawingView;
+import cse340.undo.app.StampView;
+import cse340.undo.app.StrokeView;
+import cse340.undo.brush.StampBrush;
+import cse340.undo.geometry.StrokeGeometry;
+import cse340.undo.geometry.Symmetry;
+
+/**
+ * Reversible action which renders a stroke in DrawingView by stamping a brush's dabs along it.
+ */
+public class StampAction extends StrokeAction {
+    /** Brush whose dabs are stamped along the stroke. */
+    private final StampBrush mBrush;
+
+    /**
+     * Creates an action that renders a sampled stroke with a stamp brush.
+     *
+     * @param geometry  Sampled points for stroke.
+     * @param styleId   Id of the style in the shared BrushStyleRegistry, for the color and width.
+     * @param brush     Brush whose dabs are stamped along the stroke.
+     * @param symmetry  Copies to draw the stroke as, or null to draw it once.
+     * @throws IllegalArgumentException if geometry or brush is null or the style id is invalid.
+     */
+    public StampAction(StrokeGeometry geometry, int styleId, StampBrush brush,
+                       Symmetry symmetry) {
+        super(geometry, styleId, symmetry);
+        if (brush == null) {
+            throw new IllegalArgumentException("Null brush");
+        }
+
+        this.mBrush = brush;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected StrokeView createView(DrawingView view) {
+        return new StampView(view.getContext(), getGeometry(), getPaint(), mBrush);
+    }
+
+    public StampBrush getBrush() {
+        return mBrush;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Stamping " + mBrush + " along " + getGeometry();
+    }
+}
@@ -3,10 +3,15 @@ package cse340.undo.actions;
 
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.PorterDuff;
 import android.support.annotation.NonNull;
 import android.view.View;
 import cse340.undo.app.StrokeView;
 import cse340.undo.app.DrawingView;
+import cse340.undo.app.LayerView;
+import cse340.undo.brush.BrushStyleRegistry;
+import cse340.undo.geometry.StrokeGeometry;
+import cse340.undo.geometry.Symmetry;
 
 /**
  * Reversible action which renders a stroke in DrawingView.
@@ -15,8 +20,14 @@ public class StrokeAction extends AbstractReversibleViewAction {
     /** Path for this stroke. */
     private final Path mPath;
 
-    /** Paint used to draw this stroke. */
-    private final Paint mPaint;
+    /** Sampled points of this stroke, or null if it was created from a bare Path. */
+    private final StrokeGeometry mGeometry;
+
+    /** Id of the interned brush style used to draw this stroke. */
+    private final int mStyleId;
+
+    /** Copies this stroke is drawn as, or null to draw it once. */
+    private final Symmetry mSymmetry;
 
     /** View being used to render this stroke (or null if not rendered). */
     private View mStrokeView;
@@ -29,14 +40,73 @@ public class StrokeAction extends AbstractReversibleViewAction {
      * @throws IllegalArgumentException if stroke or paint are null.
      */
     public StrokeAction(Path path, Paint paint) {
-        if (path == null || paint == null) {
-            throw new IllegalStateException("Null stroke or paint");
+        this(path, paint == null ? -1 :
+                BrushStyleRegistry.getInstance().intern(paint, PorterDuff.Mode.SRC_OVER));
+    }
+
+    /**
+     * Creates an action that renders a stroke with an interned brush style.
+     *
+     * @param path    Path for stroke.
+     * @param styleId Id of the style in the shared BrushStyleRegistry.
+     * @throws IllegalArgumentException if stroke is null or the style id is invalid.
+     */
+    public StrokeAction(Path path, int styleId) {
+        this(path, styleId, null);
+    }
+
+    /**
+     * Creates an action that renders a stroke with an interned brush style as several symmetric
+     * copies.
+     *
+     * @param path      Path for stroke.
+     * @param styleId   Id of the style in the shared BrushStyleRegistry.
+     * @param symmetry  Copies to draw the stroke as, or null to draw it once.
+     * @throws IllegalArgumentException if stroke is null or the style id is invalid.
+     */
+    public StrokeAction(Path path, int styleId, Symmetry symmetry) {
+        if (path == null || styleId < 0) {
+            throw new IllegalArgumentException("Null stroke or invalid style id " + styleId);
         }
 
         this.mPath = path;
+        this.mGeometry = null;
+        this.mSymmetry = symmetry;
 
-        // Copy-construct paint to prevent changes to the original object from affecting this.
-        this.mPaint = new Paint(paint);
+        // Interned styles are immutable, so later changes to the current paint don't affect this.
+        this.mStyleId = styleId;
+    }
+
+    /**
+     * Creates an action that renders a sampled stroke, which can be drawn at reduced detail when
+     * the DrawingView is zoomed out.
+     *
+     * @param geometry  Sampled points for stroke.
+     * @param styleId   Id of the style in the shared BrushStyleRegistry.
+     * @throws IllegalArgumentException if geometry is null or the style id is invalid.
+     */
+    public StrokeAction(StrokeGeometry geometry, int styleId) {
+        this(geometry, styleId, null);
+    }
+
+    /**
+     * Creates an action that renders a sampled stroke as several symmetric copies. The geometry is
+     * stored once and each copy is drawn through its own transform.
+     *
+     * @param geometry  Sampled points for stroke.
+     * @param styleId   Id of the style in the shared BrushStyleRegistry.
+     * @param symmetry  Copies to draw the stroke as, or null to draw it once.
+     * @throws IllegalArgumentException if geometry is null or the style id is invalid.
+     */
+    public StrokeAction(StrokeGeometry geometry, int styleId, Symmetry symmetry) {
+        if (geometry == null || styleId < 0) {
+            throw new IllegalArgumentException("Null stroke or invalid style id " + styleId);
+        }
+
+        this.mPath = geometry.getPath();
+        this.mGeometry = geometry;
+        this.mStyleId = styleId;
+        this.mSymmetry = symmetry;
     }
 
     /**
@@ -47,8 +117,24 @@ public class StrokeAction extends AbstractReversibleViewAction {
     @Override
     public void doAction(DrawingView view) {
         super.doAction(view);
-        mStrokeView = new StrokeView(view.getContext(), mPath, mPaint);
-        view.addView(mStrokeView);
+        StrokeView strokeView = createView(view);
+        strokeView.setSymmetry(mSymmetry);
+        mStrokeView = strokeView;
+        getLayer(view).addView(mStrokeView);
+    }
+
+    /**
+     * Creates the view which renders this stroke.
+     *
+     * @param view  DrawingView the stroke is rendered in.
+     * @return New view rendering the stroke.
+     */
+    protected StrokeView createView(DrawingView view) {
+        if (mGeometry != null) {
+            return new StrokeView(view.getContext(), mGeometry, getPaint(),
+                    BrushStyleRegistry.getInstance().getFillPaint(mStyleId));
+        }
+        return new StrokeView(view.getContext(), mPath, getPaint());
     }
 
     /**
@@ -59,11 +145,18 @@ public class StrokeAction extends AbstractReversibleViewAction {
     @Override
     public void undoAction(DrawingView view) {
         super.undoAction(view);
-        if (view.indexOfChild(mStrokeView) < 0) {
+        LayerView layer = getLayer(view);
+        if (layer.indexOfChild(mStrokeView) < 0) {
             throw new IllegalStateException("StrokeView not found");
         }
 
-        view.removeView(mStrokeView);
+        layer.removeView(mStrokeView);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getTopViewIndex(LayerView layer) {
+        return mStrokeView == null ? -1 : layer.indexOfChild(mStrokeView);
     }
 
     /**
@@ -74,6 +167,41 @@ public class StrokeAction extends AbstractReversibleViewAction {
         mStrokeView.invalidate();
     }
 
+    /**
+     * @return View rendering this stroke, or null if the action is not done.
+     */
+    public View getView() {
+        return mStrokeView;
+    }
+
+    /**
+     * @return Sampled points of this stroke, or null if it was created from a bare Path.
+     */
+    public StrokeGeometry getGeometry() {
+        return mGeometry;
+    }
+
+    /**
+     * @return Copies this stroke is drawn as, or null if it is drawn once.
+     */
+    public Symmetry getSymmetry() {
+        return mSymmetry;
+    }
+
+    /**
+     * @return Id of the interned brush style this stroke is drawn with.
+     */
+    public int getStyleId() {
+        return mStyleId;
+    }
+
+    /**
+     * @return Shared paint this stroke is drawn with. Do not modify it.
+     */
+    public Paint getPaint() {
+        return BrushStyleRegistry.getInstance().getPaint(mStyleId);
+    }
+
     @NonNull
     @Override
     public String toString() {
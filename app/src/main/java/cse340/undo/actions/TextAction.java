@@ -0,0 +1,54 @@
+package cse340.undo.actions;
+
+import android.graphics.Typeface;
+import android.support.annotation.NonNull;
+
+import cse340.undo.app.DrawingView;
+import cse340.undo.app.StrokeView;
+import cse340.undo.app.TextAnnotationView;
+
+/**
+ * Reversible action which places a text label in DrawingView.
+ */
+public class TextAction extends StrokeAction {
+    /** Text the label was created with, and the typeface and size it is shaped in. */
+    private final String mText;
+    private final Typeface mTypeface;
+    private final float mSize;
+
+    /**
+     * Creates an action that places a label.
+     *
+     * @param text      Text of the label.
+     * @param typeface  Typeface to shape it in, or null for the default.
+     * @param size      Text size, in document units.
+     * @param x         Horizontal coordinate of the start of the first baseline.
+     * @param y         Vertical coordinate of the start of the first baseline.
+     * @param styleId   Id of the style in the shared BrushStyleRegistry, for the color.
+     * @throws IllegalArgumentException if text is null or empty, size is not positive or the
+     *                                  style id is invalid.
+     */
+    public TextAction(String text, Typeface typeface, float size, float x, float y, int styleId) {
+        super(TextAnnotationView.createFrame(text, typeface, size, x, y), styleId);
+        this.mText = text;
+        this.mTypeface = typeface;
+        this.mSize = size;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected StrokeView createView(DrawingView view) {
+        return new TextAnnotationView(view.getContext(), getGeometry(), getPaint(), mText,
+                mTypeface, mSize);
+    }
+
+    public String getText() {
+        return mText;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Placing text \"" + mText + "\"";
+    }
+}
@@ -0,0 +1,103 @@
+package cse340.undo.actions;
+
+import android.graphics.Matrix;
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+import cse340.undo.app.DrawingView;
+import cse340.undo.app.LayerView;
+import cse340.undo.app.StrokeView;
+
+/**
+ * Reversible action which moves, scales or rotates a selection of strokes in one layer. Only the
+ * stroke ids and one matrix are stored; the strokes are transformed in place, and undone by the
+ * inverse matrix.
+ *
+ * @see LayerView#transformStroke
+ */
+public class TransformAction extends AbstractReversibleAction {
+    /** Ids of the transformed strokes. */
+    private final int[] mStrokeIds;
+
+    /** Transform applied to the strokes, in document coordinates, and its inverse. */
+    private final Matrix mMatrix;
+    private final Matrix mInverse;
+
+    /**
+     * Creates an action that transforms strokes.
+     *
+     * @param layerId   Id of the layer the strokes are in.
+     * @param strokeIds Ids of the strokes to transform.
+     * @param matrix    Transform to apply, in document coordinates. It is copied.
+     * @throws IllegalArgumentException if strokeIds is null or empty, or matrix is null or not
+     *                                  invertible.
+     */
+    public TransformAction(int layerId, int[] strokeIds, Matrix matrix) {
+        if (strokeIds == null || strokeIds.length == 0 || matrix == null) {
+            throw new IllegalArgumentException("Null or empty strokes or matrix");
+        }
+
+        mInverse = new Matrix();
+        if (!matrix.invert(mInverse)) {
+            throw new IllegalArgumentException("Matrix is not invertible: " + matrix);
+        }
+
+        setLayerId(layerId);
+        mStrokeIds = Arrays.copyOf(strokeIds, strokeIds.length);
+        mMatrix = new Matrix(matrix);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void doAction(DrawingView view) {
+        super.doAction(view);
+        apply(getLayer(view), mMatrix);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void undoAction(DrawingView view) {
+        super.undoAction(view);
+        apply(getLayer(view), mInverse);
+    }
+
+    /**
+     * Transforms every selected stroke of the layer, whether it is still a view or was baked.
+     */
+    private void apply(LayerView layer, Matrix matrix) {
+        for (int strokeId : mStrokeIds) {
+            StrokeView strokeView = layer.getStroke(strokeId);
+            if (strokeView != null) {
+                layer.transformStroke(strokeView, matrix);
+            }
+        }
+    }
+
+    /**
+     * @return Copy of the ids of the transformed strokes.
+     */
+    public int[] getStrokeIds() {
+        return Arrays.copyOf(mStrokeIds, mStrokeIds.length);
+    }
+
+    /**
+     * @param out   Matrix to store the transform in, in document coordinates.
+     */
+    public void getMatrix(Matrix out) {
+        out.set(mMatrix);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public boolean editsStrokes(LayerView layer) {
+        return getLayerId() == layer.getLayerId();
+    }
+
+    /** @inheritDoc */
+    @NonNull
+    @Override
+    public String toString() {
+        return "Transform " + mStrokeIds.length + " strokes by " + mMatrix;
+    }
+}
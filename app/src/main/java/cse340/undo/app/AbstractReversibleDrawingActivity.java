@@ -1,17 +1,21 @@
 package cse340.undo.app;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.constraint.ConstraintSet;
 import android.util.Log;
 import android.view.ViewGroup;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import cse340.undo.R;
 import cse340.undo.actions.AbstractAction;
 import cse340.undo.actions.AbstractReversibleAction;
-import cse340.undo.history.AbstractStackHistory;
+import cse340.undo.actions.CompositeAction;
+import cse340.undo.history.ConcurrentStackHistory;
 import cse340.undo.history.StackHistory;
 
 /**
@@ -33,16 +37,29 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
     private final String LOG_TAG = getClass().getSimpleName();
 
     /** History model used to do/undo/redo actions. */
-    protected final AbstractStackHistory mModel;
+    protected final ConcurrentStackHistory mModel;
 
     /** View groups containing undo and redo menu buttons. */
     private ViewGroup mUndoMenu, mRedoMenu;
 
+    /** Scrubber driving the history timeline. */
+    private TimelineScrubber mTimeline;
+
     /**
      * Class which defines a listener to be called when an action is done.
      */
     public interface ActionListener {
         void onAction(AbstractReversibleAction action);
+
+        /**
+         * Called once when several actions of the history are redone together, instead of
+         * onAction for each of them. By default, calls onAction for each of them in order.
+         *
+         * @param actions   Actions redone, in the order they were redone. Not modifiable.
+         */
+        default void onActions(List<AbstractReversibleAction> actions) {
+            actions.forEach(this::onAction);
+        }
     }
 
     /**
@@ -50,6 +67,17 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
      */
     public interface ActionUndoListener {
         void onActionUndone(AbstractReversibleAction action);
+
+        /**
+         * Called once when several actions of the history are undone together, instead of
+         * onActionUndone for each of them. By default, calls onActionUndone for each of them in
+         * order.
+         *
+         * @param actions   Actions undone, in the order they were undone. Not modifiable.
+         */
+        default void onActionsUndone(List<AbstractReversibleAction> actions) {
+            actions.forEach(this::onActionUndone);
+        }
     }
 
     /** Data structure for storing listeners for action events **/
@@ -58,6 +86,12 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
     /** Data structure for storing listeners for undo events **/
     private List<ActionUndoListener> mActionUndoListeners;
 
+    /** Actions done inside the open transaction, or null if no transaction is open. */
+    private List<AbstractReversibleAction> mTransaction;
+
+    /** True if an irreversible action was done inside the open transaction. */
+    private boolean mTransactionIrreversible;
+
     /**
      * Creates a new AbstractReversibleDrawingActivity with the default history limit.
      */
@@ -71,7 +105,46 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
      * @param history   Maximum number of history items to maintain.
      */
     public AbstractReversibleDrawingActivity(int history) {
-        mModel = new StackHistory(history);
+        Handler main = new Handler(Looper.getMainLooper());
+        // Submitted actions are applied at the start of the next frame, along with other updates.
+        mModel = new ConcurrentStackHistory(history, r -> main.post(() -> {
+            if (mDrawingView != null) {
+                mDrawingView.getFrameScheduler().post(r);
+            } else {
+                r.run();
+            }
+        }));
+    }
+
+    /**
+     * Does a reversible action produced off the UI thread, such as by an import, sync or
+     * recognizer. Actions are done and added to the history on the UI thread by the next frame, in
+     * the order each thread submitted them. May be called from any thread.
+     *
+     * @param action    Reversible action to be done.
+     * @throws IllegalArgumentException if action is null.
+     */
+    public void submitAction(AbstractReversibleAction action) {
+        mModel.submit(action);
+    }
+
+    /**
+     * Flattens an action which fell off the history, and everything beneath it, into the drawing's
+     * base raster. It can never be undone again, so its views need not be kept.
+     *
+     * @param action    Evicted action.
+     */
+    private void onActionEvicted(AbstractReversibleAction action) {
+        mDrawingView.bake(action);
+    }
+
+    /**
+     * Seals layers whose display lists of baked views grew too long, once nothing in the history
+     * can change their strokes. Called after the history grows, when the redo stack is empty, so
+     * the done actions are the whole history.
+     */
+    private void sealFullLayers() {
+        mDrawingView.sealFullLayers(mModel.snapshot());
     }
 
     @Override
@@ -84,12 +157,20 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
         addMenu(mUndoMenu, ConstraintSet.TOP, ConstraintSet.START);
         addMenu(mRedoMenu, ConstraintSet.TOP, ConstraintSet.START);
 
+        mModel.setOnActionEvictedListener(this::onActionEvicted);
+        mModel.setApplier(this::doAction);
+
         findViewById(R.id.fab_undo).setOnClickListener((v) -> undo());
         findViewById(R.id.fab_redo).setOnClickListener((v) -> redo());
 
         mActionUndoListeners = new ArrayList<>();
         mActionListeners = new ArrayList<>();
 
+        // Add the history timeline to the bottom of the ConstraintLayout.
+        addMenu(getLayoutInflater().inflate(R.layout.timeline_menu, mLayout, false),
+                ConstraintSet.BOTTOM, ConstraintSet.START);
+        mTimeline = new TimelineScrubber(this, mDrawingView, findViewById(R.id.timeline));
+
         updateMenuButtons();
     }
 
@@ -106,13 +187,25 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
 
         super.doAction(action);
 
+        if (mTransaction != null) {
+            // Held back until commitTransaction so the group becomes a single history entry.
+            if (action instanceof AbstractReversibleAction) {
+                mTransaction.add((AbstractReversibleAction) action);
+            } else {
+                mTransactionIrreversible = true;
+            }
+            return;
+        }
+
         if (action instanceof AbstractReversibleAction) {
             // The action that was just done is undoable!
             AbstractReversibleAction ra = (AbstractReversibleAction) action;
 
             Log.i(LOG_TAG, "Before add: " + mModel);
+            mTimeline.onHistoryChanged();
             mModel.addAction(ra);
             Log.i(LOG_TAG, "After add: " + mModel);
+            sealFullLayers();
 
             Log.i(LOG_TAG, "calling listeners on action");
             mActionListeners.forEach(l -> l.onAction(ra));
@@ -120,7 +213,11 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
             // The action that was just done is NOT undoable! Must clear history.
 
             Log.i(LOG_TAG, "Undoable action: " + action);
+            mTimeline.onHistoryChanged();
             mModel.clear();
+            // Nothing on screen can be undone any more.
+            mDrawingView.bakeAll();
+            sealFullLayers();
         }
 
         updateMenuButtons();
@@ -130,6 +227,7 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
      * Redoes the most recently undone action (if any).
      */
     protected void redo() {
+        mTimeline.cancel();
         Log.i(LOG_TAG, "Before redo: " + mModel);
         AbstractReversibleAction action = mModel.redo();
         Log.i(LOG_TAG, "After redo: " + mModel);
@@ -147,6 +245,7 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
      * Undoes the most recently (re)done action (if reversible).
      */
     protected void undo() {
+        mTimeline.cancel();
         Log.i(LOG_TAG, "Before undo" + mModel);
         AbstractReversibleAction action = mModel.undo();
         Log.i(LOG_TAG, "After undo" + mModel);
@@ -160,9 +259,179 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
         updateMenuButtons();
     }
 
+    /**
+     * Undoes up to count actions in a single DrawingView batch, so the whole jump costs one frame.
+     *
+     * @param count Maximum number of actions to undo.
+     * @return Number of actions actually undone.
+     * @see #seekHistory(int, long)
+     */
+    protected int undo(int count) {
+        mTimeline.cancel();
+        int position = getHistoryPosition();
+        seekHistory(Math.max(0, position - count), Long.MAX_VALUE);
+        return position - getHistoryPosition();
+    }
+
+    /**
+     * Redoes up to count actions in a single DrawingView batch, so the whole jump costs one frame.
+     *
+     * @param count Maximum number of actions to redo.
+     * @return Number of actions actually redone.
+     * @see #seekHistory(int, long)
+     */
+    protected int redo(int count) {
+        mTimeline.cancel();
+        int position = getHistoryPosition();
+        seekHistory(Math.min(getHistoryLength(), position + count), Long.MAX_VALUE);
+        return getHistoryPosition() - position;
+    }
+
+    /**
+     * Undoes or redoes actions, in a single DrawingView batch, until the given number of actions are
+     * done or the deadline passes. At least one step is taken, so repeated calls always make
+     * progress. Once the batch has ended, the listeners are called once, with onAction or
+     * onActionUndone if only one action was redone or undone, or else with the list of them all.
+     *
+     * @param position      Number of done actions to move towards, between 0 and getHistoryLength().
+     * @param deadlineNanos System.nanoTime() after which no further steps are taken.
+     * @return True if the history is now at position.
+     */
+    protected boolean seekHistory(int position, long deadlineNanos) {
+        List<AbstractReversibleAction> undone = new ArrayList<>();
+        List<AbstractReversibleAction> redone = new ArrayList<>();
+        int current = getHistoryPosition();
+
+        mDrawingView.beginBatch();
+        try {
+            while (current != position) {
+                if (current > position) {
+                    AbstractReversibleAction action = mModel.undo();
+                    action.undoAction(mDrawingView);
+                    undone.add(action);
+                    current--;
+                } else {
+                    AbstractReversibleAction action = mModel.redo();
+                    action.doAction(mDrawingView);
+                    redone.add(action);
+                    current++;
+                }
+
+                if (System.nanoTime() >= deadlineNanos) {
+                    break;
+                }
+            }
+        } finally {
+            mDrawingView.endBatch();
+        }
+        Log.i(LOG_TAG, "After seeking towards " + position + ": " + mModel);
+
+        if (undone.size() == 1) {
+            mActionUndoListeners.forEach(l -> l.onActionUndone(undone.get(0)));
+        } else if (!undone.isEmpty()) {
+            List<AbstractReversibleAction> batch = Collections.unmodifiableList(undone);
+            mActionUndoListeners.forEach(l -> l.onActionsUndone(batch));
+        }
+        if (redone.size() == 1) {
+            mActionListeners.forEach(l -> l.onAction(redone.get(0)));
+        } else if (!redone.isEmpty()) {
+            List<AbstractReversibleAction> batch = Collections.unmodifiableList(redone);
+            mActionListeners.forEach(l -> l.onActions(batch));
+        }
+        updateMenuButtons();
+        return current == position;
+    }
+
+    /**
+     * Called once per scrub of the timeline, when the user lets go of it, with the position the
+     * history then moves to over the following frames. Does nothing by default.
+     *
+     * @param position  Number of done actions the user scrubbed to.
+     * @see TimelineScrubber
+     */
+    protected void onSeekCommitted(int position) { }
+
+    /**
+     * @return Number of actions currently done (and undoable).
+     */
+    protected int getHistoryPosition() {
+        return mModel.size();
+    }
+
+    /**
+     * @return Number of actions in the history, whether done or undone.
+     */
+    protected int getHistoryLength() {
+        return mModel.size() + mModel.redoSize();
+    }
+
+    /**
+     * Starts a transaction. Every action done until commitTransaction is applied to the DrawingView
+     * immediately, but layout and redraw are deferred and the actions are saved to history as one
+     * CompositeAction.
+     *
+     * @throws IllegalStateException if a transaction is already open.
+     * @see CompositeAction
+     */
+    protected void beginTransaction() {
+        if (mTransaction != null) {
+            throw new IllegalStateException("Transaction already open");
+        }
+
+        mTransaction = new ArrayList<>();
+        mTransactionIrreversible = false;
+        mDrawingView.beginBatch();
+    }
+
+    /**
+     * Ends the open transaction, redraws once, adds the grouped actions to history as a single
+     * entry and calls the action listeners once with it. If an irreversible action was done
+     * during the transaction, the history is cleared instead.
+     *
+     * @throws IllegalStateException if no transaction is open.
+     */
+    protected void commitTransaction() {
+        if (mTransaction == null) {
+            throw new IllegalStateException("No transaction open");
+        }
+
+        List<AbstractReversibleAction> actions = mTransaction;
+        mTransaction = null;
+        mDrawingView.endBatch();
+        mTimeline.onHistoryChanged();
+
+        if (mTransactionIrreversible) {
+            Log.i(LOG_TAG, "Undoable action in transaction, clearing history");
+            mModel.clear();
+            mDrawingView.bakeAll();
+            sealFullLayers();
+        } else if (!actions.isEmpty()) {
+            CompositeAction composite = new CompositeAction(actions);
+            // Every child is already done, so this only marks the composite as done.
+            composite.doAction(mDrawingView);
+            mModel.addAction(composite);
+            sealFullLayers();
+
+            Log.i(LOG_TAG, "calling listeners on transaction");
+            mActionListeners.forEach(l -> l.onAction(composite));
+        }
+
+        updateMenuButtons();
+    }
+
+    /**
+     * @return True if a transaction is open.
+     */
+    protected boolean isInTransaction() {
+        return mTransaction != null;
+    }
+
     protected void updateMenuButtons() {
         setViewVisibility(mUndoMenu, mModel.canUndo());
         setViewVisibility(mRedoMenu, mModel.canRedo());
+        if (mTimeline != null) {
+            mTimeline.syncWithHistory(getHistoryPosition(), getHistoryLength());
+        }
     }
 
     /**
@@ -31,6 +31,19 @@ public class CircleColorPickerView extends ColorPickerView {
         setColor(getColorFromAngle(Math.toDegrees(getTouchAngle(x, y))));
     }
 
+    /**
+     * Sets the color and moves the thumb to match it. The thumb position is only computed here,
+     * not on every draw.
+     *
+     * @param newColor The new color.
+     */
+    @Override
+    public void setColor(int newColor) {
+        super.setColor(newColor);
+        mThumbHue = lookupHue(newColor);
+        updateThumbPosition();
+    }
+
     /* ********************************************************************************************** *
      *                               <End of model declarations />
      * ********************************************************************************************** */
@@ -50,6 +63,29 @@ public class CircleColorPickerView extends ColorPickerView {
 
     private Paint mBrush;
 
+    /** Default size of a step of the hue lookup table, in degrees. */
+    public static final float DEFAULT_ANGULAR_RESOLUTION = 1f;
+
+    /** Size of a step of the hue lookup table, in degrees. */
+    private float mAngularResolution;
+
+    /**
+     * Hue lookup table: entry i is the color at hue i * mAngularResolution, with the saturation
+     * and lightness of mTableSaturation and mTableLightness.
+     */
+    private int[] mHueTable;
+    private float mTableSaturation, mTableLightness;
+
+    /** Table index of the last color looked up, which is usually the next one asked about. */
+    private int mLastIndex;
+
+    /** Scratch space for the rare HSL conversions, so they don't allocate. */
+    private final float[] mHSL = new float[3];
+
+    /** Hue of the current color in degrees, and the thumb position derived from it. */
+    private float mThumbHue;
+    private float mThumbX, mThumbY;
+
     /* ********************************************************************************************** *
      *                               <End of other fields and constants declarations />
      * ********************************************************************************************** */
@@ -65,6 +101,9 @@ public class CircleColorPickerView extends ColorPickerView {
 
         mBrush = new Paint();
         mBrush.setStyle(Paint.Style.FILL);
+
+        mAngularResolution = DEFAULT_ANGULAR_RESOLUTION;
+        buildHueTable(1f, 0.5f);
     }
 
     /**
@@ -79,28 +118,16 @@ public class CircleColorPickerView extends ColorPickerView {
         mBrush.setColor(mCurrentColor);
         canvas.drawCircle(mCenterX, mCenterY, mCenterCircleRadius, mBrush);
 
-        // Grabs angle for thumb
-        float theta = getAngleFromColor(mCurrentColor);
-        float radialDistance = mRadius - mThumbRadius;
-
         mBrush.setColor(Color.WHITE);
         // Assigns correct Alpha levels for the thumb
         if (mState == State.INSIDE) {
             mBrush.setAlpha(255 / 2);
-            // Draws thumb at correct position in polar representation
-            canvas.drawCircle(
-                    radialDistance * ((float) Math.cos(theta)) + mCenterX,
-                    radialDistance * ((float) Math.sin(theta)) + mCenterY,
-                    mThumbRadius, mBrush
-            );
+            // Draws thumb at its cached position
+            canvas.drawCircle(mThumbX, mThumbY, mThumbRadius, mBrush);
             mBrush.setAlpha(255);
         } else {
-            // Draws thumb at correct position in polar representation
-            canvas.drawCircle(
-                    radialDistance * ((float) Math.cos(theta)) + mCenterX,
-                    radialDistance * ((float) Math.sin(theta)) + mCenterY,
-                    mThumbRadius, mBrush
-            );
+            // Draws thumb at its cached position
+            canvas.drawCircle(mThumbX, mThumbY, mThumbRadius, mBrush);
         }
     }
 
@@ -124,6 +151,7 @@ public class CircleColorPickerView extends ColorPickerView {
         // Calculates radii of thumb and center circle
         mThumbRadius = mRadius * RADIUS_TO_THUMB_RATIO;
         mCenterCircleRadius = mRadius - 2f * mThumbRadius + 1f;
+        updateThumbPosition();
     }
 
     /**
@@ -156,9 +184,119 @@ public class CircleColorPickerView extends ColorPickerView {
      * @see #getTouchAngle(float, float)
      */
     public static float getAngleFromColor(int color) {
-        float[] HSL = new float[3];
-        ColorUtils.colorToHSL(color, HSL);
-        return (float) Math.toRadians(HSL[0] - 90f);
+        return (float) Math.toRadians(getHue(color) - 90f);
+    }
+
+    /**
+     * Computes the hue of a color the same way as ColorUtils.colorToHSL, without allocating.
+     *
+     * @param color RGB color as integer.
+     * @return Hue of the color in degrees, in [0, 360).
+     */
+    private static float getHue(int color) {
+        float r = Color.red(color) / 255f;
+        float g = Color.green(color) / 255f;
+        float b = Color.blue(color) / 255f;
+        float max = Math.max(r, Math.max(g, b));
+        float delta = max - Math.min(r, Math.min(g, b));
+
+        float hue;
+        if (delta == 0f) {
+            hue = 0f;
+        } else if (max == r) {
+            hue = ((g - b) / delta) % 6f;
+        } else if (max == g) {
+            hue = ((b - r) / delta) + 2f;
+        } else {
+            hue = ((r - g) / delta) + 4f;
+        }
+
+        hue = (hue * 60f) % 360f;
+        return hue < 0f ? hue + 360f : hue;
+    }
+
+    /**
+     * Sets the size of a step of the hue lookup table. Smaller steps give more distinct colors at
+     * the cost of a larger table.
+     *
+     * @param degrees   Step size in degrees.
+     * @throws IllegalArgumentException if degrees is not in (0, 360].
+     */
+    public void setAngularResolution(float degrees) {
+        if (!(degrees > 0f && degrees <= 360f)) {
+            throw new IllegalArgumentException("Illegal angular resolution: " + degrees);
+        }
+        mAngularResolution = degrees;
+        buildHueTable(mTableSaturation, mTableLightness);
+    }
+
+    public float getAngularResolution() {
+        return mAngularResolution;
+    }
+
+    /**
+     * Fills the hue lookup table for the given saturation and lightness.
+     */
+    private void buildHueTable(float saturation, float lightness) {
+        int size = (int) Math.ceil(360f / mAngularResolution);
+        if (mHueTable == null || mHueTable.length != size) {
+            mHueTable = new int[size];
+        }
+
+        mHSL[1] = saturation;
+        mHSL[2] = lightness;
+        for (int i = 0; i < size; i++) {
+            mHSL[0] = i * mAngularResolution;
+            mHueTable[i] = ColorUtils.HSLToColor(mHSL);
+        }
+        mTableSaturation = saturation;
+        mTableLightness = lightness;
+        mLastIndex = 0;
+    }
+
+    /**
+     * @return Index of the table entry nearest to the given hue.
+     */
+    private int getHueIndex(float hue) {
+        int index = Math.round(hue / mAngularResolution);
+        return index >= mHueTable.length ? index - mHueTable.length : index;
+    }
+
+    /**
+     * Finds the hue of a color, using the lookup table when the color came from it. Colors which
+     * didn't (for example, restored colors) rebuild the table around their saturation and lightness
+     * so that the wheel keeps them.
+     *
+     * @param color RGB color as integer.
+     * @return Hue of the color in degrees.
+     */
+    private float lookupHue(int color) {
+        if (mHueTable[mLastIndex] == color) {
+            return mLastIndex * mAngularResolution;
+        }
+
+        float hue = getHue(color);
+        int index = getHueIndex(hue);
+        if (mHueTable[index] == color) {
+            mLastIndex = index;
+            return index * mAngularResolution;
+        }
+
+        ColorUtils.colorToHSL(color, mHSL);
+        if (mHSL[1] != mTableSaturation || mHSL[2] != mTableLightness) {
+            buildHueTable(mHSL[1], mHSL[2]);
+        }
+        return hue;
+    }
+
+    /**
+     * Recomputes where the thumb is drawn from mThumbHue and the view geometry.
+     */
+    private void updateThumbPosition() {
+        double theta = Math.toRadians(mThumbHue - 90f);
+        float radialDistance = mRadius - mThumbRadius;
+        mThumbX = radialDistance * ((float) Math.cos(theta)) + mCenterX;
+        mThumbY = radialDistance * ((float) Math.sin(theta)) + mCenterY;
     }
 
     /***
@@ -172,14 +310,19 @@ public class CircleColorPickerView extends ColorPickerView {
         return (float) Math.atan2(touchY - mCenterY, touchX - mCenterX);
     }
 
-    // Returns the Color corresponding to the angle passed as a double
+    /**
+     * Returns the color at the given angle on the wheel, keeping the saturation and lightness of
+     * the current color. Uses the hue lookup table, so it doesn't allocate.
+     *
+     * @param angle Angle on the wheel in degrees, as returned by atan2.
+     * @return Color at that angle.
+     */
     public int getColorFromAngle(double angle) {
-        float[] HSL = new float[3];
-        ColorUtils.colorToHSL(mCurrentColor, HSL);
         if (angle < -90) {
             angle = angle + 360f;
         }
-        HSL[0] = ((float) angle) + 90f;
-        return ColorUtils.HSLToColor(HSL);
+        float hue = ((float) angle) + 90f;
+        mLastIndex = getHueIndex(hue < 0f ? hue + 360f : hue % 360f);
+        return mHueTable[mLastIndex];
     }
 }
@@ -4,6 +4,7 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.PorterDuff;
 import android.view.View;
 
 /**
@@ -20,12 +21,21 @@ public class ClearView extends View {
     }
 
     /**
-     * Clears the canvas to the default Android light
-     * theme color.
+     * Clears everything beneath this view in its layer, so that lower layers (and the default
+     * Android light theme background) show through.
      */
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        canvas.drawColor(Color.parseColor("#FAFAFA"));
+        clear(canvas);
+    }
+
+    /**
+     * Clears a canvas. Safe to call from any thread.
+     *
+     * @param canvas    Canvas to clear.
+     */
+    public static void clear(Canvas canvas) {
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
     }
 }
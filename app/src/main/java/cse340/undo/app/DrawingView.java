@@ -2,20 +2,42 @@ package cse340.undo.app;
 
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.Path;
 import android.graphics.PointF;
+import android.graphics.PorterDuff;
+import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.MotionEvent;
+import android.view.View;
 import android.widget.FrameLayout;
 
 import java.util.HashSet;
 import java.util.Set;
 
 import cse340.undo.actions.AbstractAction;
+import cse340.undo.actions.AbstractReversibleAction;
 import cse340.undo.actions.AbstractReversibleViewAction;
+import cse340.undo.actions.ShapeAction;
+import cse340.undo.actions.StampAction;
 import cse340.undo.actions.StrokeAction;
+import cse340.undo.brush.BrushStyleRegistry;
+import cse340.undo.brush.InkDynamics;
+import cse340.undo.brush.StampBrush;
+import cse340.undo.geometry.Shape;
+import cse340.undo.geometry.ShapeRecognizer;
+import cse340.undo.geometry.StrokeGeometry;
+import cse340.undo.geometry.Symmetry;
+import cse340.undo.input.StrokePipeline;
+import cse340.undo.render.FrameBudgetMonitor;
+import cse340.undo.render.FrameScheduler;
+import cse340.undo.render.ParallelRasterizer;
+import cse340.undo.render.WorkScheduler;
+import cse340.undo.trace.InputTraceRecorder;
 
 /***
  * The canvas on which the drawing takes place. Drawings are made up of
@@ -28,36 +50,148 @@ public class DrawingView extends FrameLayout {
 
     /** State machine enum and field. */
     private enum DrawingModel {
-        START, DRAWING
+        START, DRAWING, TRANSFORMING
     }
 
     /** What state the PPS is in. */
     private DrawingModel mState;
 
     /** Drawing fields. */
-    private Path mCurrentPath;
+    private StrokeGeometry mCurrentStroke;
     private Paint mCurrentPaint;
+    private PorterDuff.Mode mCurrentBlendMode;
 
     /** Stroke drawing buffer. Used to render the line while it's being drawn. */
     protected AbstractReversibleViewAction mBuffer;
 
+    /** View rendering the buffer while a stroke is drawn. */
+    private View mBufferView;
+
     /** Stroke event listeners. */
     public interface OnStrokeCompletedListener {
         void onStrokeCompleted(AbstractAction action);
     }
 
+    /**
+     * Handles single finger input in place of the pen, for example to erase or select. Coordinates
+     * are in document units. Tools report finished actions through completeAction.
+     */
+    public interface Tool {
+        void onStart(DrawingView view, float x, float y);
+        void onMove(DrawingView view, float x, float y);
+        void onEnd(DrawingView view, float x, float y);
+        void onCancel(DrawingView view);
+
+        /**
+         * Draws the tool's feedback, such as a selection, over the layers. The canvas is in screen
+         * coordinates.
+         */
+        default void onDraw(DrawingView view, Canvas canvas) {}
+    }
+
     /** Collection of current stroke listeners. */
     private final Set<OnStrokeCompletedListener> mListeners;
 
+    /** Tool handling input instead of the pen, or null to draw strokes. */
+    private Tool mTool;
+
     /** Min distance the user should move before you add to the path. */
     public static int MIN_MOVE_DIST = 5;
 
+    /** Distance between samples when moving slowly, where touch jitter dominates. */
+    public static int MAX_MOVE_DIST = 3 * MIN_MOVE_DIST;
+
     /** Used to track last touch point for path drawing. */
     private final PointF mLastPoint;
     private final PointF mStartPoint;
 
-    /** Used to track the total length of the stroke */
-    private int mDistance;
+    /** Used to track the total length of the stroke, in document units */
+    private float mDistance;
+
+    /** Turns raw touch samples into committed stroke samples. */
+    private StrokePipeline mPipeline;
+
+    /** Pipeline set during a stroke, which replaces mPipeline once the stroke ends, or null. */
+    private StrokePipeline mPendingPipeline;
+    private final StrokePipeline.Sink mPipelineSink;
+
+    /** Watches frame times while a stroke is drawn, so sampling can back off when frames overrun. */
+    private final FrameBudgetMonitor mFrameMonitor;
+
+    /** Time, pressure and tool of the touch event being handled. */
+    private long mEventTime;
+    private float mEventPressure;
+    private boolean mEventStylus;
+
+    /** Whether finger strokes vary in width with pressure and speed; stylus strokes always do. */
+    private boolean mVariableWidth;
+
+    /** Turns pressure and speed into sample widths for variable width strokes. */
+    private final InkDynamics mInkDynamics;
+
+    /** Brush whose dabs new strokes are stamped with, or null to stroke them with the pen. */
+    private StampBrush mStampBrush;
+
+    /** Copies new strokes are drawn as, or null to draw them once. */
+    private Symmetry mSymmetry;
+
+    /** Recognizes shapes in finished pen strokes, or null to keep strokes as drawn. */
+    private ShapeRecognizer mShapeRecognizer;
+
+    /** Time of the last sample of the current stroke. */
+    private long mLastSampleTime;
+
+    /** Limits of the zoom level. */
+    public static final float MIN_ZOOM = 0.1f;
+    public static final float MAX_ZOOM = 8f;
+
+    /** Transform from document to screen coordinates, and its inverse. */
+    private final Matrix mViewMatrix;
+    private final Matrix mInverseMatrix;
+    private float mZoom;
+
+    /** Scratch point used to map touches into document coordinates. */
+    private final float[] mTouchPoint;
+
+    /** Distance between and midpoint of the two pinch fingers at the last event. */
+    private float mPinchSpan, mPinchX, mPinchY;
+
+    /** True if the fingers changed and the pinch must be re-read before it is applied. */
+    private boolean mPinchReset;
+
+    /** Number of open batches. While positive, layout and invalidation are deferred. */
+    private int mBatchDepth;
+
+    /** True if a layout or invalidation was deferred by the current batch. */
+    private boolean mBatchDirty;
+
+    /** Coalesces invalidations of this view and its strokes to one per frame. */
+    private final FrameScheduler mFrameScheduler;
+
+    /** Renders captures of the whole view across the cores. */
+    private final ParallelRasterizer mRasterizer;
+
+    /** Area of the current stroke changed since the last move, in document and view coordinates. */
+    private final RectF mStrokeDirty;
+    private final RectF mStrokeDirtyOnScreen;
+
+    /** Records every touch event for later replay, or null when not recording. */
+    private InputTraceRecorder mTraceRecorder;
+
+    /** True while a replayed touch event is handled. */
+    private boolean mReplaying;
+
+    /** Layers by id. The layers themselves are the children of this view, bottom first. */
+    private final SparseArray<LayerView> mLayers;
+
+    /** Id given to the next layer created, and id of the layer new actions are done in. */
+    private int mNextLayerId;
+    private int mActiveLayerId;
+
+    /** Coarse image shown instead of the strokes while the real state is rebuilt, or null. */
+    private Bitmap mPreview;
+    private final Paint mPreviewPaint;
+    private final RectF mPreviewBounds;
 
     /**
      * Creates a new, empty DrawingView with default paint properties.
@@ -72,13 +206,36 @@ public class DrawingView extends FrameLayout {
 
         mDistance = 0;
 
+        mFrameScheduler = new FrameScheduler();
+        mRasterizer = new ParallelRasterizer(WorkScheduler.getInstance());
+        mStrokeDirty = new RectF();
+        mStrokeDirtyOnScreen = new RectF();
+
+        mFrameMonitor = new FrameBudgetMonitor();
+        mInkDynamics = new InkDynamics();
+        mPipeline = StrokePipeline.createAdaptive(MIN_MOVE_DIST, MAX_MOVE_DIST, mFrameMonitor);
+        mPipelineSink = this::onStrokeSample;
+
         mCurrentPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         mCurrentPaint.setDither(true);
         mCurrentPaint.setStyle(Paint.Style.STROKE);
         mCurrentPaint.setStrokeJoin(Paint.Join.ROUND);
         mCurrentPaint.setStrokeCap(Paint.Cap.ROUND);
 
-        mCurrentPath = new Path();
+        mCurrentBlendMode = PorterDuff.Mode.SRC_OVER;
+
+        mPreviewPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        mPreviewBounds = new RectF();
+
+        mViewMatrix = new Matrix();
+        mInverseMatrix = new Matrix();
+        mZoom = 1f;
+        mTouchPoint = new float[2];
+
+        mLayers = new SparseArray<>();
+        LayerView layer = createLayer("Layer 1");
+        addLayer(layer, 0);
+        mActiveLayerId = layer.getLayerId();
 
         mState = DrawingModel.START;
     }
@@ -86,15 +243,62 @@ public class DrawingView extends FrameLayout {
     /**
      * Handles touch events for the purposes of drawing on the canvas. On touch down,
      * begins drawing a path using the current paint. On touch move, continues drawing.
-     * On touch up, notifies listeners of the completed stroke.
+     * On touch up, notifies listeners of the completed stroke. A second finger cancels the
+     * stroke and pinches to zoom and pan instead. Touches are mapped into document coordinates
+     * before they are drawn.
      *
      * @param event Event to use for drawing.
      * @return True if the event was handled, false otherwise.
      */
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        float x = event.getX();
-        float y = event.getY();
+        if (mTraceRecorder != null) {
+            mTraceRecorder.recordTouch(event);
+        }
+        return handleTouchEvent(event);
+    }
+
+    /**
+     * Handles a touch event replayed from an input trace like onTouchEvent, except that it is not
+     * recorded into the trace being recorded, if any.
+     *
+     * @param event Event to use for drawing.
+     * @return True if the event was handled, false otherwise.
+     */
+    public boolean replayTouchEvent(MotionEvent event) {
+        mReplaying = true;
+        try {
+            return handleTouchEvent(event);
+        } finally {
+            mReplaying = false;
+        }
+    }
+
+    /**
+     * @return True while a touch event replayed from an input trace is handled, so tools can skip
+     *         dialogs whose result the trace holds.
+     */
+    public boolean isReplaying() {
+        return mReplaying;
+    }
+
+    /**
+     * Handles a touch event, recorded or replayed.
+     */
+    private boolean handleTouchEvent(MotionEvent event) {
+        if (mState == DrawingModel.TRANSFORMING
+                || event.getActionMasked() == MotionEvent.ACTION_POINTER_DOWN) {
+            return handleTransformingState(event);
+        }
+
+        mEventTime = event.getEventTime();
+        mEventPressure = event.getPressure();
+        mEventStylus = event.getToolType(0) == MotionEvent.TOOL_TYPE_STYLUS;
+        mTouchPoint[0] = event.getX();
+        mTouchPoint[1] = event.getY();
+        mInverseMatrix.mapPoints(mTouchPoint);
+        float x = mTouchPoint[0];
+        float y = mTouchPoint[1];
         Log.i(LOG_TAG, "Touch at (" + x + ", " + y + ")");
 
         // Handle input events.
@@ -159,6 +363,66 @@ public class DrawingView extends FrameLayout {
         return false;
     }
 
+    /**
+     * Private helper method to handle the Transforming state in the PPS, entered when a second
+     * finger goes down and left when the last finger goes up.
+     * @param event The MotionEvent that triggered onTouchEvent
+     * @return true if the event was consumed, false otherwise
+     */
+    private boolean handleTransformingState(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if (mState == DrawingModel.DRAWING) {
+                    onDrawCancel();
+                }
+                mState = DrawingModel.TRANSFORMING;
+                mPinchReset = true;
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (event.getPointerCount() >= 2) {
+                    onPinch(event);
+                }
+                return true;
+            case MotionEvent.ACTION_POINTER_UP:
+                mPinchReset = true;
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mState = DrawingModel.START;
+                return true;
+            default:
+                break;
+        }
+        return false;
+    }
+
+    /**
+     * Zooms about and pans with the midpoint of the first two fingers.
+     *
+     * @param event Move event with at least two pointers.
+     */
+    private void onPinch(MotionEvent event) {
+        float dx = event.getX(1) - event.getX(0);
+        float dy = event.getY(1) - event.getY(0);
+        float span = (float) Math.hypot(dx, dy);
+        float midX = (event.getX(0) + event.getX(1)) / 2;
+        float midY = (event.getY(0) + event.getY(1)) / 2;
+
+        if (!mPinchReset && mPinchSpan > 0) {
+            float zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, mZoom * span / mPinchSpan));
+            float scale = zoom / mZoom;
+            mViewMatrix.postScale(scale, scale, mPinchX, mPinchY);
+            mViewMatrix.postTranslate(midX - mPinchX, midY - mPinchY);
+            mZoom = zoom;
+            onTransformChanged();
+        }
+
+        mPinchReset = false;
+        mPinchSpan = span;
+        mPinchX = midX;
+        mPinchY = midY;
+    }
+
     /**
      * Triggered when drawing starts.
      *
@@ -166,75 +430,597 @@ public class DrawingView extends FrameLayout {
      * @param y Vertical coordinate of touch.
      */
     protected void onDrawStart(float x, float y) {
+        if (mTool != null) {
+            mTool.onStart(this, x, y);
+            return;
+        }
+
         // Start a new drawing path.
-        mCurrentPath.moveTo(x, y);
+        if (mVariableWidth || mEventStylus) {
+            mCurrentStroke = new StrokeGeometry(x, y, mInkDynamics.begin(mEventPressure));
+        } else {
+            mCurrentStroke = new StrokeGeometry(x, y);
+        }
+        mLastSampleTime = mEventTime;
         mStartPoint.x = x;
         mStartPoint.y = y;
         mLastPoint.x = x;
         mLastPoint.y = y;
         mDistance = 0;
+        mStrokeDirty.setEmpty();
+        mPipeline.begin(x, y, mEventTime, mEventPressure, 1f / mZoom, mPipelineSink);
+        mFrameMonitor.start();
         Log.i(LOG_TAG, "onDrawStart: starting new stroke @ " + mLastPoint);
 
-        mBuffer = new StrokeAction(mCurrentPath, mCurrentPaint);
-        mBuffer.doAction(this);
+        int styleId = BrushStyleRegistry.getInstance().intern(mCurrentPaint, mCurrentBlendMode);
+        StrokeAction stroke = mStampBrush == null
+                ? new StrokeAction(mCurrentStroke, styleId, mSymmetry)
+                : new StampAction(mCurrentStroke, styleId, mStampBrush, mSymmetry);
+        stroke.doAction(this);
+        mBuffer = stroke;
+        mBufferView = stroke.getView();
     }
 
     /**
-     * Triggered when drawing moves. If we've moved enough, add a new point to the path.
+     * Triggered when drawing moves. Runs the point through the stroke pipeline, which decides
+     * whether (and where) points are added to the path. Redraws are coalesced per frame.
      *
      * @param x Horizontal coordinate of touch.
      * @param y Vertical coordinate of touch.
      */
     protected void onDrawMove(float x, float y) {
-        // Only add a bezier when the distance is larger than a threshold (MIN_MOVE_DIST).
-        // If the distance is smaller, wait until a ACTION_MOVE event that creates a large enough distance.
-        if (Math.sqrt(Math.pow(x - mLastPoint.x, 2) + Math.pow(y - mLastPoint.y, 2)) >= MIN_MOVE_DIST) {
-            // For each ACTION_MOVE event, add a quadratic bezier from the last point (in the drawing path) to current point.
-            // Each bezier is a smooth arc to be added in the drawing path.
-            mCurrentPath.quadTo(mLastPoint.x, mLastPoint.y,
-                    (x + mLastPoint.x) / 2, (y + mLastPoint.y) / 2);
-            mDistance += Math.sqrt(Math.pow(y - mLastPoint.y, 2) + Math.pow(x - mLastPoint.x, 2));
-            mLastPoint.x = x;
-            mLastPoint.y = y;
+        if (mTool != null) {
+            mTool.onMove(this, x, y);
+            return;
+        }
 
-            // The stroke buffer has access to currentPath, invalidate to trigger redraw.
-            mBuffer.invalidate();
+        if (mPipeline.add(x, y, mEventTime, mEventPressure) > 0) {
+            // The stroke buffer has access to the current stroke; redraw the part which changed on
+            // the next frame, together with any other moves before then. Symmetric strokes redraw
+            // one region covering the change in every copy.
+            if (mSymmetry != null) {
+                mSymmetry.mapBounds(mStrokeDirty, mStrokeDirty);
+            }
+            mViewMatrix.mapRect(mStrokeDirtyOnScreen, mStrokeDirty);
+            mStrokeDirtyOnScreen.inset(-1, -1);
+            mFrameScheduler.invalidate(mBufferView, mStrokeDirtyOnScreen);
+            mStrokeDirty.setEmpty();
         }
     }
 
+    /**
+     * Called for each sample which makes it through the stroke pipeline. Adds a quadratic bezier
+     * from the last point (in the drawing path) to the midpoint with this one, so each bezier is a
+     * smooth arc in the drawing path.
+     */
+    private void onStrokeSample(float x, float y, long time, float pressure) {
+        float dx = x - mLastPoint.x;
+        float dy = y - mLastPoint.y;
+
+        // The new arc starts between the two previous points, so it lies within these three.
+        int size = mCurrentStroke.size();
+        int first = Math.max(0, size - 2);
+        float left = Math.min(x, mLastPoint.x), right = Math.max(x, mLastPoint.x);
+        float top = Math.min(y, mLastPoint.y), bottom = Math.max(y, mLastPoint.y);
+        left = Math.min(left, mCurrentStroke.getX(first));
+        right = Math.max(right, mCurrentStroke.getX(first));
+        top = Math.min(top, mCurrentStroke.getY(first));
+        bottom = Math.max(bottom, mCurrentStroke.getY(first));
+        float width = mCurrentPaint.getStrokeWidth()
+                * (mCurrentStroke.isVariableWidth() ? InkDynamics.MAX_WIDTH : 1f);
+        // Stamped dabs may scatter beyond the stroke's width.
+        float scatter = mStampBrush == null ? 0f : mStampBrush.getScatter();
+        float pad = width * (0.5f + scatter) + 1;
+        mStrokeDirty.union(left - pad, top - pad, right + pad, bottom + pad);
+
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        if (mCurrentStroke.isVariableWidth()) {
+            // Extends the stroke's cached outline by one segment.
+            float speed = length / Math.max(1, time - mLastSampleTime);
+            mCurrentStroke.add(x, y, mInkDynamics.next(pressure, speed));
+        } else {
+            mCurrentStroke.add(x, y);
+        }
+        mLastSampleTime = time;
+        mDistance += length;
+        mLastPoint.x = x;
+        mLastPoint.y = y;
+    }
+
     /**
      * Triggered when drawing ends. Commits the current buffer as a done action by triggering
      * callbacks.
      */
     protected void onDrawEnd(float x, float y) {
-        if (mDistance >= MIN_MOVE_DIST) {
+        if (mTool != null) {
+            mTool.onEnd(this, x, y);
+            return;
+        }
+
+        endPipeline();
+        mFrameMonitor.stop();
+        mCurrentStroke.seal();
+        // MIN_MOVE_DIST is in screen pixels, so the length is measured at the current zoom.
+        if (mDistance * mZoom >= MIN_MOVE_DIST) {
             mBuffer.undoAction(this);
 
-            Log.i(LOG_TAG, "Stroke completed, triggering " + mListeners.size() + " listener" + (mListeners.size() == 1 ? "" : "s"));
-            for (OnStrokeCompletedListener l : mListeners) {
-                l.onStrokeCompleted(mBuffer);
+            AbstractReversibleViewAction action = mBuffer;
+            if (mShapeRecognizer != null && mBuffer instanceof StrokeAction
+                    && !(mBuffer instanceof StampAction)) {
+                // Commits a recognized shape in place of the stroke it was drawn as.
+                StrokeAction stroke = (StrokeAction) mBuffer;
+                Shape shape = mShapeRecognizer.recognize(mCurrentStroke);
+                if (shape != null) {
+                    action = new ShapeAction(shape, stroke.getStyleId(), stroke.getSymmetry());
+                }
             }
+
+            Log.i(LOG_TAG, "Stroke completed, triggering " + mListeners.size() + " listener" + (mListeners.size() == 1 ? "" : "s"));
+            completeAction(action);
         }
 
-        // Very important; buffer has a reference to currentPath. If we don't reinitialize, every
-        // buffer will share the same path.
-        mCurrentPath = new Path();
+        // Very important; buffer has a reference to the current stroke. If we don't reinitialize,
+        // every buffer will share the same stroke.
+        mCurrentStroke = null;
         mBuffer = null;
+        if (mBufferView != null) {
+            mFrameScheduler.cancel(mBufferView);
+            mBufferView = null;
+        }
     }
 
     /**
      * Triggered when drawing is cancelled. Trashes the current buffer and ignores callbacks.
      */
     protected void onDrawCancel() {
+        if (mTool != null) {
+            mTool.onCancel(this);
+            return;
+        }
+
+        if (mCurrentStroke != null) {
+            endPipeline();
+            mFrameMonitor.stop();
+        }
         if (mBuffer != null) {
             mBuffer.undoAction(this);
         }
         mBuffer = null;
+        if (mBufferView != null) {
+            mFrameScheduler.cancel(mBufferView);
+            mBufferView = null;
+        }
+
+        mCurrentStroke = null;
+    }
+
+    //region Batching
+    /**
+     * Starts a batch of view changes. Until the matching endBatch, children are added and removed
+     * without triggering layout, and invalidations are deferred. Batches may be nested.
+     */
+    public void beginBatch() {
+        mBatchDepth++;
+    }
+
+    /**
+     * Ends a batch of view changes. When the outermost batch ends, a single layout and redraw is
+     * requested if anything changed.
+     *
+     * @throws IllegalStateException if no batch is open.
+     */
+    public void endBatch() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("endBatch called without beginBatch");
+        }
+
+        mBatchDepth--;
+        if (mBatchDepth == 0) {
+            for (int i = 0; i < getChildCount(); i++) {
+                ((LayerView) getChildAt(i)).endBatch();
+            }
+            if (mBatchDirty) {
+                mBatchDirty = false;
+                requestLayout();
+                invalidate();
+            }
+        }
+    }
+
+    /**
+     * @return True if a batch of view changes is open.
+     */
+    public boolean isBatching() {
+        return mBatchDepth > 0;
+    }
 
-        mCurrentPath.reset();
+    /**
+     * Adds a view to the top of the active layer.
+     *
+     * @param child View to add.
+     */
+    @Override
+    public void addView(View child) {
+        mLayers.get(mActiveLayerId).addView(child);
+    }
+
+    /**
+     * Removes a layer's child from its layer, or a layer from the stack (use removeLayer for that).
+     *
+     * @param view  View to remove.
+     */
+    @Override
+    public void removeView(View view) {
+        if (view.getParent() instanceof LayerView) {
+            ((LayerView) view.getParent()).removeView(view);
+        } else if (mBatchDepth > 0) {
+            removeViewInLayout(view);
+            mBatchDirty = true;
+        } else {
+            super.removeView(view);
+        }
     }
 
+    /**
+     * Removes every view from every layer. The layers themselves are kept.
+     */
+    @Override
+    public void removeAllViews() {
+        for (int i = 0; i < getChildCount(); i++) {
+            getLayerAt(i).removeAllViews();
+        }
+    }
+
+    @Override
+    public void requestLayout() {
+        if (mBatchDepth > 0) {
+            mBatchDirty = true;
+        } else {
+            super.requestLayout();
+        }
+    }
+
+    /**
+     * Invalidates the view. Outside the scheduler's own flush, the invalidation is coalesced with
+     * any others until the next frame.
+     */
+    @Override
+    public void invalidate() {
+        if (mBatchDepth > 0) {
+            mBatchDirty = true;
+        } else if (mFrameScheduler != null && !mFrameScheduler.isFlushing()) {
+            // Null while the superclass constructor runs.
+            mFrameScheduler.invalidate(this);
+        } else {
+            super.invalidate();
+        }
+    }
+    //endregion
+
+    //region Zoom & Pan
+    /**
+     * @return Current zoom level; 1 means one document unit per screen pixel.
+     */
+    public float getZoom() {
+        return mZoom;
+    }
+
+    /**
+     * Sets the view transform.
+     *
+     * @param zoom  Zoom level, clamped to [MIN_ZOOM, MAX_ZOOM].
+     * @param panX  Screen position of the document origin, horizontally.
+     * @param panY  Screen position of the document origin, vertically.
+     */
+    public void setTransform(float zoom, float panX, float panY) {
+        mZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom));
+        mViewMatrix.setScale(mZoom, mZoom);
+        mViewMatrix.postTranslate(panX, panY);
+        onTransformChanged();
+    }
+
+    /**
+     * Returns to one document unit per pixel with the document origin in the top left corner.
+     */
+    public void resetTransform() {
+        setTransform(1f, 0f, 0f);
+    }
+
+    /**
+     * Copies the transform from document to screen coordinates.
+     *
+     * @param out   Matrix to copy the transform into.
+     */
+    public void getViewMatrix(Matrix out) {
+        out.set(mViewMatrix);
+    }
+
+    /**
+     * Computes the visible area of the document.
+     *
+     * @param out   Rectangle to store the area in, in document coordinates.
+     */
+    public void getVisibleBounds(RectF out) {
+        out.set(0, 0, getWidth(), getHeight());
+        mInverseMatrix.mapRect(out);
+    }
+
+    private void onTransformChanged() {
+        mViewMatrix.invert(mInverseMatrix);
+        // Each layer caches its content as transformed, so every layer must be re-rendered.
+        for (int i = 0; i < getChildCount(); i++) {
+            getChildAt(i).invalidate();
+        }
+        invalidate();
+    }
+    //endregion
+
+    //region Layers
+    /**
+     * Creates a layer with a new id, without adding it.
+     *
+     * @param name  Name shown to the user.
+     * @return The new layer.
+     */
+    public LayerView createLayer(String name) {
+        return new LayerView(getContext(), mNextLayerId++, name);
+    }
+
+    /**
+     * Inserts a layer into the stack.
+     *
+     * @param layer Layer to add.
+     * @param index Position in the stack, 0 being the bottom.
+     * @throws IllegalStateException if a layer with the same id is already added.
+     */
+    public void addLayer(LayerView layer, int index) {
+        if (mLayers.get(layer.getLayerId()) != null) {
+            throw new IllegalStateException("Layer already added: " + layer);
+        }
+
+        mLayers.put(layer.getLayerId(), layer);
+        if (mBatchDepth > 0) {
+            addViewInLayout(layer, index, generateDefaultLayoutParams());
+            mBatchDirty = true;
+        } else {
+            super.addView(layer, index);
+        }
+    }
+
+    /**
+     * Removes a layer, with its strokes, from the stack. If it was active, the layer now on top
+     * becomes active.
+     *
+     * @param layer Layer to remove.
+     * @throws IllegalStateException if the layer is not added or is the only layer.
+     */
+    public void removeLayer(LayerView layer) {
+        if (mLayers.get(layer.getLayerId()) != layer) {
+            throw new IllegalStateException("Layer not found: " + layer);
+        } else if (mLayers.size() == 1) {
+            throw new IllegalStateException("Can't remove the only layer");
+        }
+
+        mLayers.remove(layer.getLayerId());
+        removeView(layer);
+        if (mActiveLayerId == layer.getLayerId()) {
+            mActiveLayerId = getLayerAt(getChildCount() - 1).getLayerId();
+        }
+    }
+
+    /**
+     * Moves a layer to another position in the stack. Only the composite is redrawn.
+     *
+     * @param layer Layer to move.
+     * @param index New position, 0 being the bottom.
+     * @throws IllegalStateException if the layer is not added.
+     */
+    public void moveLayer(LayerView layer, int index) {
+        if (mLayers.get(layer.getLayerId()) != layer) {
+            throw new IllegalStateException("Layer not found: " + layer);
+        }
+
+        beginBatch();
+        try {
+            removeView(layer);
+            addViewInLayout(layer, index, generateDefaultLayoutParams());
+            mBatchDirty = true;
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * @return The layer with the given id, or null if there is none.
+     */
+    public LayerView getLayer(int layerId) {
+        return mLayers.get(layerId);
+    }
+
+    /**
+     * @return The layer at the given position in the stack, 0 being the bottom.
+     */
+    public LayerView getLayerAt(int index) {
+        return (LayerView) getChildAt(index);
+    }
+
+    public int getLayerCount() {
+        return getChildCount();
+    }
+
+    /**
+     * @return Position of the layer in the stack, or -1 if it is not added.
+     */
+    public int indexOfLayer(LayerView layer) {
+        return indexOfChild(layer);
+    }
+
+    /**
+     * @return Id of the layer new actions are done in.
+     */
+    public int getActiveLayerId() {
+        return mActiveLayerId;
+    }
+
+    /**
+     * Sets the layer new actions are done in.
+     *
+     * @param layerId   Id of the layer.
+     * @throws IllegalArgumentException if there is no such layer.
+     */
+    public void setActiveLayerId(int layerId) {
+        if (mLayers.get(layerId) == null) {
+            throw new IllegalArgumentException("No layer " + layerId);
+        }
+        mActiveLayerId = layerId;
+    }
+
+    /**
+     * Flattens an action which can no longer be undone, and everything beneath it in its layers,
+     * into the base rasters of those layers.
+     *
+     * @param action    Action to flatten.
+     */
+    public void bake(AbstractReversibleAction action) {
+        for (int i = 0; i < getChildCount(); i++) {
+            LayerView layer = getLayerAt(i);
+            int top = action.getTopViewIndex(layer);
+            if (top >= 0) {
+                layer.bakeChildren(top + 1);
+            }
+        }
+    }
+
+    /**
+     * Seals the display list of every layer which holds more baked views than it keeps, unless an
+     * action in the history may still change one of its baked strokes. Such an action leaves the
+     * history within its capacity, so the display lists stay bounded.
+     *
+     * @param history   Every action which may still be undone or redone.
+     * @see LayerView#isBakedListFull()
+     */
+    public void sealFullLayers(Iterable<AbstractReversibleAction> history) {
+        for (int i = 0; i < getChildCount(); i++) {
+            LayerView layer = getLayerAt(i);
+            if (!layer.isBakedListFull()) {
+                continue;
+            }
+            boolean editable = false;
+            for (AbstractReversibleAction action : history) {
+                if (action.editsStrokes(layer)) {
+                    editable = true;
+                    break;
+                }
+            }
+            if (!editable) {
+                layer.sealBaked();
+            }
+        }
+    }
+
+    /**
+     * Flattens every stroke of every layer into the layers' base rasters.
+     */
+    public void bakeAll() {
+        for (int i = 0; i < getChildCount(); i++) {
+            LayerView layer = getLayerAt(i);
+            layer.bakeChildren(layer.getChildCount());
+        }
+    }
+    //endregion
+
+    //region Preview
+    /**
+     * Draws the preview, if any, stretched over the whole view instead of the layers. Otherwise
+     * composites the cached layers, which apply the view transform themselves.
+     */
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        if (mPreview != null) {
+            mPreviewBounds.set(0, 0, getWidth(), getHeight());
+            canvas.drawBitmap(mPreview, null, mPreviewBounds, mPreviewPaint);
+        } else {
+            super.dispatchDraw(canvas);
+        }
+        if (mTool != null) {
+            mTool.onDraw(this, canvas);
+        }
+    }
+
+    /**
+     * Shows a coarse image in place of the strokes, for example while a history state is rebuilt.
+     *
+     * @param preview   Image to show, or null to show the strokes again.
+     */
+    public void setPreview(Bitmap preview) {
+        if (mPreview != preview) {
+            mPreview = preview;
+            invalidate();
+        }
+    }
+
+    /**
+     * Renders the current strokes of the visible layers into a new bitmap, in the background. The
+     * strokes are drawn at full detail, with tiles of the bitmap rendered in parallel. What is drawn
+     * is copied now, so the bitmap shows the drawing as it is when this is called.
+     *
+     * @param scale     Size of the bitmap relative to this view.
+     * @param lane      Lane of the WorkScheduler to render in.
+     * @param callback  Receives the bitmap on the UI thread, or null if it couldn't be rendered.
+     * @return False if the view has not been laid out, in which case callback is never called.
+     */
+    public boolean capture(float scale, WorkScheduler.Lane lane,
+                           ParallelRasterizer.Callback callback) {
+        int width = (int) (getWidth() * scale);
+        int height = (int) (getHeight() * scale);
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+
+        RectF visible = new RectF();
+        getVisibleBounds(visible);
+        ParallelRasterizer.Scene scene = new ParallelRasterizer.Scene();
+        for (int i = 0; i < getLayerCount(); i++) {
+            getLayerAt(i).addTo(scene, visible);
+        }
+
+        Matrix transform = new Matrix(mViewMatrix);
+        transform.postScale(scale, scale);
+        mRasterizer.render(scene, transform, width, height, lane, callback);
+        return true;
+    }
+    //endregion
+
     //region Getters & Setters
+    /**
+     * Reports an action finished by the pen or a tool to the stroke listeners, which do it and add
+     * it to the history. The action must not be done yet.
+     *
+     * @param action    Finished action.
+     */
+    public void completeAction(AbstractAction action) {
+        for (OnStrokeCompletedListener l : mListeners) {
+            l.onStrokeCompleted(action);
+        }
+    }
+
+    public Tool getTool() {
+        return mTool;
+    }
+
+    /**
+     * Sets the tool which handles single finger input. Cancels any gesture in progress.
+     *
+     * @param tool  Tool to use, or null to draw strokes.
+     */
+    public void setTool(Tool tool) {
+        if (mState == DrawingModel.DRAWING) {
+            onDrawCancel();
+            mState = DrawingModel.START;
+        }
+        mTool = tool;
+    }
+
     /**
      * Adds a new listener for stroke completion.
      *
@@ -255,6 +1041,64 @@ public class DrawingView extends FrameLayout {
         return mListeners.remove(listener);
     }
 
+    public boolean isVariableWidth() {
+        return mVariableWidth;
+    }
+
+    /**
+     * Sets whether strokes drawn with a finger vary in width with pressure and speed. Strokes
+     * drawn with a stylus always do.
+     *
+     * @param variableWidth True for variable width finger strokes.
+     */
+    public void setVariableWidth(boolean variableWidth) {
+        mVariableWidth = variableWidth;
+    }
+
+    public StampBrush getStampBrush() {
+        return mStampBrush;
+    }
+
+    /**
+     * Sets the brush new strokes are stamped with.
+     *
+     * @param brush Brush whose dabs to stamp along new strokes, or null to stroke them with the pen.
+     */
+    public void setStampBrush(StampBrush brush) {
+        mStampBrush = brush;
+    }
+
+    public Symmetry getSymmetry() {
+        return mSymmetry;
+    }
+
+    /**
+     * Sets the copies new strokes are drawn as. Strokes already drawn keep their own symmetry.
+     *
+     * @param symmetry  Copies to draw new strokes as, or null to draw them once.
+     */
+    public void setSymmetry(Symmetry symmetry) {
+        mSymmetry = symmetry;
+    }
+
+    public boolean isSnapToShapes() {
+        return mShapeRecognizer != null;
+    }
+
+    /**
+     * Sets whether finished pen strokes which look like a line, arrow, rectangle or ellipse are
+     * replaced by that shape.
+     *
+     * @param snap  True to replace recognized strokes by shapes.
+     */
+    public void setSnapToShapes(boolean snap) {
+        if (snap && mShapeRecognizer == null) {
+            mShapeRecognizer = new ShapeRecognizer();
+        } else if (!snap) {
+            mShapeRecognizer = null;
+        }
+    }
+
     public Paint getCurrentPaint() {
         return mCurrentPaint;
     }
@@ -262,5 +1106,86 @@ public class DrawingView extends FrameLayout {
     public void setCurrentPaint(Paint paint) {
         mCurrentPaint = paint;
     }
+
+    /**
+     * Starts or stops recording touch events.
+     *
+     * @param recorder  Recorder to send touch events to, or null to stop recording.
+     */
+    public void setTraceRecorder(InputTraceRecorder recorder) {
+        mTraceRecorder = recorder;
+    }
+
+    /**
+     * @return Recorder touch events are sent to, or null if they aren't recorded.
+     */
+    public InputTraceRecorder getTraceRecorder() {
+        return mTraceRecorder;
+    }
+
+
+    /**
+     * @return Monitor of frame times while strokes are drawn, for pipelines which adapt to load.
+     */
+    public FrameBudgetMonitor getFrameBudgetMonitor() {
+        return mFrameMonitor;
+    }
+
+    /**
+     * @return Scheduler which coalesces invalidations of this view and its strokes per frame.
+     */
+    public FrameScheduler getFrameScheduler() {
+        return mFrameScheduler;
+    }
+
+    /**
+     * @return Pipeline new strokes are sampled through.
+     */
+    public StrokePipeline getStrokePipeline() {
+        return mPendingPipeline != null ? mPendingPipeline : mPipeline;
+    }
+
+    /**
+     * Sets the pipeline new strokes are sampled through, for example when the brush changes. A
+     * stroke in progress keeps the pipeline it began with; the new one takes over when it ends.
+     *
+     * @param pipeline  Pipeline for new strokes.
+     * @throws IllegalArgumentException if pipeline is null.
+     */
+    public void setStrokePipeline(StrokePipeline pipeline) {
+        if (pipeline == null) {
+            throw new IllegalArgumentException("Null pipeline");
+        }
+        if (mCurrentStroke != null) {
+            mPendingPipeline = pipeline;
+        } else {
+            mPipeline = pipeline;
+            mPendingPipeline = null;
+        }
+    }
+
+    /**
+     * Ends the stroke in progress in the pipeline, then switches to a pipeline set during it.
+     */
+    private void endPipeline() {
+        mPipeline.end();
+        if (mPendingPipeline != null) {
+            mPipeline = mPendingPipeline;
+            mPendingPipeline = null;
+        }
+    }
+
+    public PorterDuff.Mode getCurrentBlendMode() {
+        return mCurrentBlendMode;
+    }
+
+    /**
+     * Sets how new strokes are blended with the canvas.
+     *
+     * @param mode  Blend mode for new strokes.
+     */
+    public void setCurrentBlendMode(PorterDuff.Mode mode) {
+        mCurrentBlendMode = mode;
+    }
     //endregion
 }
\ No newline at end of file
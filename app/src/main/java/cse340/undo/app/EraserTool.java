@@ -0,0 +1,155 @@
+package cse340.undo.app;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cse340.undo.actions.EraseAction;
+import cse340.undo.geometry.SegmentIndex;
+import cse340.undo.geometry.StrokeGeometry;
+
+/**
+ * Tool which erases the segments of strokes in the active layer that the finger passes over. The
+ * segments are found through the layer's SegmentIndex, so the cost of each move depends on the
+ * strokes nearby rather than on the size of the drawing. Segments disappear as the finger moves;
+ * when it lifts, a single EraseAction holding the erased spans is reported. Strokes baked into the
+ * layer's base raster stay in the index, so they are erased the same way. Labels are erased whole.
+ *
+ * @see EraseAction
+ */
+public class EraserTool implements DrawingView.Tool {
+    /** Default radius of the eraser, in screen pixels. */
+    public static final float DEFAULT_RADIUS = 12f;
+
+    /** Radius of the eraser, in screen pixels. */
+    private float mRadius;
+
+    /** Layer being erased from during the current gesture. */
+    private LayerView mLayer;
+
+    /** Segments erased from each stroke during the current gesture. */
+    private final Map<StrokeGeometry, BitSet> mErased;
+
+    /** Strokes hit by the current move, which need their paths rebuilt. */
+    private final List<StrokeView> mTouched;
+
+    private final SegmentIndex.Visitor<StrokeView> mVisitor;
+
+    /** Last point erased at, in document units. */
+    private float mLastX, mLastY;
+
+    public EraserTool() {
+        mRadius = DEFAULT_RADIUS;
+        mErased = new LinkedHashMap<>();
+        mTouched = new ArrayList<>();
+        mVisitor = this::onSegmentHit;
+    }
+
+    public float getRadius() {
+        return mRadius;
+    }
+
+    /**
+     * @param radius    Radius of the eraser, in screen pixels.
+     * @throws IllegalArgumentException if radius is not positive.
+     */
+    public void setRadius(float radius) {
+        if (radius <= 0f) {
+            throw new IllegalArgumentException("Illegal radius: " + radius);
+        }
+        mRadius = radius;
+    }
+
+    @Override
+    public void onStart(DrawingView view, float x, float y) {
+        mLayer = view.getLayer(view.getActiveLayerId());
+        mErased.clear();
+        mLastX = x;
+        mLastY = y;
+        eraseAt(view, x, y);
+    }
+
+    /**
+     * Erases along the line from the last point, in steps of half the eraser radius so fast
+     * movement doesn't skip strokes.
+     */
+    @Override
+    public void onMove(DrawingView view, float x, float y) {
+        float radius = mRadius / view.getZoom();
+        float dx = x - mLastX, dy = y - mLastY;
+        int steps = Math.max(1, (int) Math.ceil(Math.sqrt(dx * dx + dy * dy) / (radius / 2)));
+        for (int i = 1; i <= steps; i++) {
+            eraseAt(view, mLastX + dx * i / steps, mLastY + dy * i / steps);
+        }
+        mLastX = x;
+        mLastY = y;
+    }
+
+    /**
+     * Reports the erased segments as an EraseAction. They are restored first, since the listeners
+     * do the action themselves.
+     */
+    @Override
+    public void onEnd(DrawingView view, float x, float y) {
+        onMove(view, x, y);
+        if (!mErased.isEmpty()) {
+            restore(view);
+            view.completeAction(new EraseAction(mLayer.getLayerId(), mErased));
+        }
+        mErased.clear();
+        mLayer = null;
+    }
+
+    @Override
+    public void onCancel(DrawingView view) {
+        restore(view);
+        mErased.clear();
+        mLayer = null;
+    }
+
+    private void eraseAt(DrawingView view, float x, float y) {
+        if (mLayer == null || !mLayer.isLayerVisible()) {
+            return;
+        }
+
+        mLayer.getSegmentIndex().query(x, y, mRadius / view.getZoom(), mVisitor);
+        for (StrokeView strokeView : mTouched) {
+            StrokeGeometry stroke = strokeView.getGeometry();
+            stroke.erase(StrokeGeometry.toSpans(mErased.get(stroke)));
+            mLayer.invalidateStroke(strokeView, null);
+        }
+        mTouched.clear();
+    }
+
+    private void onSegmentHit(StrokeView owner, StrokeGeometry stroke, int segment) {
+        BitSet segments = mErased.get(stroke);
+        if (segments == null) {
+            segments = new BitSet(stroke.getSegmentCount());
+            mErased.put(stroke, segments);
+        }
+        if (owner instanceof TextAnnotationView) {
+            // Labels are atomic, so the erase records every side of the box.
+            segments.set(0, stroke.getSegmentCount());
+        } else {
+            segments.set(segment);
+        }
+        if (!mTouched.contains(owner)) {
+            mTouched.add(owner);
+        }
+    }
+
+    /**
+     * Puts back every segment erased during the current gesture.
+     */
+    private void restore(DrawingView view) {
+        for (Map.Entry<StrokeGeometry, BitSet> entry : mErased.entrySet()) {
+            entry.getKey().restore(StrokeGeometry.toSpans(entry.getValue()));
+            StrokeView strokeView = mLayer.getSegmentIndex().getOwner(entry.getKey());
+            if (strokeView != null) {
+                mLayer.invalidateStroke(strokeView, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package cse340.undo.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.os.SystemClock;
+import android.util.Log;
+
+import cse340.undo.actions.FillAction;
+import cse340.undo.render.FloodFill;
+import cse340.undo.render.RunLengthMask;
+import cse340.undo.render.WorkScheduler;
+
+/**
+ * Tool which fills the region under the finger with the current colour. The region is found on the
+ * composite of every visible layer, as currently shown on screen, and filled in the active layer.
+ * When the finger lifts, the composite is rendered in the background, waiting for room if the
+ * scheduler is busy rather than dropping the fill; once it is ready, a FillAction holding the
+ * region as a run-length encoded mask is reported.
+ *
+ * @see FillAction
+ */
+public class FillTool implements DrawingView.Tool {
+    private static final String LOG_TAG = FillTool.class.getSimpleName();
+
+    /** Default largest difference in any colour channel for a pixel to be filled. */
+    public static final int DEFAULT_TOLERANCE = 32;
+
+    private int mTolerance;
+
+    private final FloodFill mFloodFill;
+
+    /** Pixels of the last capture, reused while the view's size doesn't change. */
+    private int[] mPixels;
+
+    private final float[] mPoint;
+
+    public FillTool() {
+        mTolerance = DEFAULT_TOLERANCE;
+        mFloodFill = new FloodFill();
+        mPoint = new float[2];
+    }
+
+    public int getTolerance() {
+        return mTolerance;
+    }
+
+    /**
+     * @param tolerance Largest difference in any colour channel, from 0 (exact) to 255.
+     * @throws IllegalArgumentException if tolerance is outside [0, 255].
+     */
+    public void setTolerance(int tolerance) {
+        if (tolerance < 0 || tolerance > 255) {
+            throw new IllegalArgumentException("Illegal tolerance: " + tolerance);
+        }
+        mTolerance = tolerance;
+    }
+
+    @Override
+    public void onStart(DrawingView view, float x, float y) { }
+
+    @Override
+    public void onMove(DrawingView view, float x, float y) { }
+
+    /**
+     * Captures the composite where the finger lifts, and fills at that point once it is rendered.
+     */
+    @Override
+    public void onEnd(DrawingView view, float x, float y) {
+        LayerView layer = view.getLayer(view.getActiveLayerId());
+        if (layer == null || !layer.isLayerVisible()) {
+            return;
+        }
+
+        long start = SystemClock.uptimeMillis();
+        // The composite shows the view as it is now, so the fill must use the transform of now.
+        Matrix viewMatrix = new Matrix();
+        view.getViewMatrix(viewMatrix);
+        float zoom = view.getZoom();
+        view.capture(1f, WorkScheduler.Lane.INTERACTIVE, composite -> {
+            if (composite == null) {
+                Log.w(LOG_TAG, "Couldn't render the composite to fill");
+            } else {
+                fill(view, composite, viewMatrix, zoom, x, y, start);
+            }
+        });
+    }
+
+    /**
+     * Finds the region around a point on a captured composite and reports a FillAction for it.
+     */
+    private void fill(DrawingView view, Bitmap composite, Matrix viewMatrix, float zoom,
+                      float x, float y, long start) {
+        int width = composite.getWidth(), height = composite.getHeight();
+        if (mPixels == null || mPixels.length != width * height) {
+            mPixels = new int[width * height];
+        }
+        composite.getPixels(mPixels, 0, width, 0, 0, width, height);
+        composite.recycle();
+
+        mPoint[0] = x;
+        mPoint[1] = y;
+        viewMatrix.mapPoints(mPoint);
+        RunLengthMask mask = mFloodFill.fill(mPixels, width, height, (int) mPoint[0],
+                (int) mPoint[1], mTolerance);
+        if (mask == null || mask.isEmpty()) {
+            return;
+        }
+
+        // The view transform only scales and translates, so screen pixel (0, 0) maps to the
+        // document's visible top left and each pixel is 1 / zoom document units wide.
+        float[] origin = new float[2];
+        Matrix inverse = new Matrix();
+        viewMatrix.invert(inverse);
+        inverse.mapPoints(origin);
+        Log.i(LOG_TAG, "Filled " + mask + " in " + (SystemClock.uptimeMillis() - start) + "ms, "
+                + mask.getByteCount() + " bytes instead of " + width * height * 4);
+        view.completeAction(new FillAction(mask, view.getCurrentPaint().getColor(), origin[0],
+                origin[1], 1f / zoom));
+    }
+
+    @Override
+    public void onCancel(DrawingView view) { }
+}
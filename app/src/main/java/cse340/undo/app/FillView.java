@@ -0,0 +1,129 @@
+package cse340.undo.app;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.view.View;
+
+import cse340.undo.render.ParallelRasterizer;
+import cse340.undo.render.RunLengthMask;
+import cse340.undo.render.TiledRaster;
+
+/**
+ * View which draws a filled region. The region is kept as a RunLengthMask, and only turned into a
+ * bitmap while the view is attached.
+ */
+@SuppressLint("ViewConstructor")
+public class FillView extends View {
+    /** Filled pixels, and the colour they are filled with. */
+    private final RunLengthMask mMask;
+    private final int mColor;
+
+    /** Document position of mask pixel (0, 0), and the document size of a mask pixel. */
+    private final float mOriginX, mOriginY;
+    private final float mScale;
+
+    /** The mask in its colour, or null until first drawn. */
+    private Bitmap mBitmap;
+    private final Paint mPaint;
+
+    /**
+     * Create a new fill view to show on the DrawingView
+     * @param context the context of this new view
+     * @param mask The filled pixels
+     * @param color The colour to fill them with
+     * @param originX Horizontal document position of mask pixel (0, 0)
+     * @param originY Vertical document position of mask pixel (0, 0)
+     * @param scale Width of a mask pixel in document units
+     */
+    public FillView(Context context, RunLengthMask mask, int color, float originX, float originY,
+                    float scale) {
+        super(context);
+        mMask = mask;
+        mColor = color;
+        mOriginX = originX;
+        mOriginY = originY;
+        mScale = scale;
+        mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    }
+
+    /**
+     * Computes the area covered by the fill.
+     *
+     * @param out   Rectangle to store the area in, in document coordinates.
+     */
+    public void getBounds(RectF out) {
+        out.set(mOriginX + mMask.getLeft() * mScale, mOriginY + mMask.getTop() * mScale,
+                mOriginX + (mMask.getLeft() + mMask.getWidth()) * mScale,
+                mOriginY + (mMask.getTop() + mMask.getHeight()) * mScale);
+    }
+
+    /**
+     * Draws the fill into a raster, for example when it is flattened into its layer's base raster.
+     *
+     * @param raster    Raster in document coordinates.
+     */
+    public void bake(TiledRaster raster) {
+        RectF bounds = new RectF();
+        getBounds(bounds);
+        raster.draw(bounds, toItem()::draw);
+    }
+
+    /**
+     * @return Item drawing the fill in document coordinates, which can be drawn from any thread,
+     * even after the view is detached.
+     */
+    public ParallelRasterizer.Item toItem() {
+        if (mMask.isEmpty()) {
+            return canvas -> { };
+        }
+        Bitmap bitmap = mBitmap != null ? mBitmap : createBitmap();
+        return canvas -> drawFill(canvas, bitmap);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mMask.isEmpty()) {
+            return;
+        }
+        if (mBitmap == null) {
+            mBitmap = createBitmap();
+        }
+        drawFill(canvas, mBitmap);
+    }
+
+    /**
+     * Drops the bitmap; it is rebuilt from the mask if the view is shown again. It isn't recycled,
+     * since an item may still be drawing it.
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mBitmap = null;
+    }
+
+    /**
+     * Draws the fill onto a canvas in document coordinates.
+     */
+    private void drawFill(Canvas canvas, Bitmap bitmap) {
+        int save = canvas.save();
+        canvas.translate(mOriginX, mOriginY);
+        canvas.scale(mScale, mScale);
+        canvas.drawBitmap(bitmap, mMask.getLeft(), mMask.getTop(), mPaint);
+        canvas.restoreToCount(save);
+    }
+
+    /**
+     * @return The mask as a bitmap in the fill colour.
+     */
+    private Bitmap createBitmap() {
+        int[] pixels = new int[mMask.getWidth() * mMask.getHeight()];
+        mMask.fill(pixels, mColor);
+        return Bitmap.createBitmap(pixels, mMask.getWidth(), mMask.getHeight(),
+                Bitmap.Config.ARGB_8888);
+    }
+}
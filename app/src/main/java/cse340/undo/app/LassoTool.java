@@ -0,0 +1,433 @@
+package cse340.undo.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.Log;
+import android.view.View;
+
+import java.util.Arrays;
+
+import cse340.undo.actions.TransformAction;
+import cse340.undo.geometry.StrokeGeometry;
+
+/**
+ * Tool which selects strokes of the active layer with a freehand lasso, then moves, scales or
+ * rotates them. Dragging inside the selection moves it, the corner handle scales it about its centre
+ * and the handle above it rotates it about its centre. Touching anywhere else starts a new lasso.
+ *
+ * While a selection is dragged its strokes are hidden and a bitmap of them, rendered once when the
+ * drag starts, is drawn through the drag transform, so the layers are not re-rendered on each move.
+ * When the finger lifts, a single TransformAction holding the stroke ids and the transform is
+ * reported.
+ *
+ * @see TransformAction
+ */
+public class LassoTool implements DrawingView.Tool {
+    private static final String LOG_TAG = LassoTool.class.getSimpleName();
+
+    /** Radius of the scale and rotate handles, in screen pixels. */
+    public static final float HANDLE_RADIUS = 24f;
+
+    /** Smallest scale a drag can reach, so the transform stays invertible. */
+    private static final float MIN_SCALE = 0.05f;
+
+    /** What the current gesture does. */
+    private static final int MODE_NONE = 0;
+    private static final int MODE_LASSO = 1;
+    private static final int MODE_MOVE = 2;
+    private static final int MODE_SCALE = 3;
+    private static final int MODE_ROTATE = 4;
+    private int mMode;
+
+    /** Points of the lasso being drawn, in document units, as x, y pairs. */
+    private float[] mLasso;
+    private int mLassoSize;
+    private final Path mLassoPath;
+
+    /** Layer the selection is in, or null if nothing is selected. */
+    private LayerView mLayer;
+
+    /** Ids of the selected strokes. */
+    private int[] mSelection;
+    private int mSelectionSize;
+
+    /** Bounds of the selected strokes including their width, in document units. */
+    private final RectF mBounds;
+
+    /** Start of the current drag, in document units. */
+    private float mDownX, mDownY;
+
+    /** Transform of the current drag, in document units. */
+    private final Matrix mDrag;
+
+    /** Strokes rendered once at the start of a drag, or null; and where it was on screen. */
+    private Bitmap mDragImage;
+    private final Rect mDragImageBounds;
+
+    /** Transform from the drag image to the screen. */
+    private final Matrix mDragImageMatrix;
+
+    /** View transform and its inverse, refreshed from the DrawingView when needed. */
+    private final Matrix mViewMatrix;
+    private final Matrix mInverseMatrix;
+
+    private final RectF mScreenBounds;
+    private final RectF mStrokeBounds;
+    private final float[] mPoint;
+    private final Paint mOutlinePaint;
+    private final Paint mHandlePaint;
+    private final Paint mImagePaint;
+
+    public LassoTool() {
+        mLasso = new float[128];
+        mLassoPath = new Path();
+        mSelection = new int[16];
+        mBounds = new RectF();
+        mDrag = new Matrix();
+        mDragImageBounds = new Rect();
+        mDragImageMatrix = new Matrix();
+        mViewMatrix = new Matrix();
+        mInverseMatrix = new Matrix();
+        mScreenBounds = new RectF();
+        mStrokeBounds = new RectF();
+        mPoint = new float[2];
+
+        mOutlinePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mOutlinePaint.setStyle(Paint.Style.STROKE);
+        mOutlinePaint.setColor(Color.GRAY);
+        // Hairline, so it is one pixel wide at any zoom.
+        mOutlinePaint.setStrokeWidth(0f);
+
+        mHandlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mHandlePaint.setStyle(Paint.Style.FILL);
+        mHandlePaint.setColor(Color.GRAY);
+        mHandlePaint.setAlpha(128);
+
+        mImagePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    }
+
+    /**
+     * @return Number of selected strokes.
+     */
+    public int getSelectionSize() {
+        return mSelectionSize;
+    }
+
+    /**
+     * Drops the selection. Does nothing during a drag.
+     *
+     * @param view  DrawingView the tool is used in.
+     */
+    public void clearSelection(DrawingView view) {
+        if (mMode == MODE_NONE) {
+            mLayer = null;
+            mSelectionSize = 0;
+            view.invalidate();
+        }
+    }
+
+    @Override
+    public void onStart(DrawingView view, float x, float y) {
+        view.getViewMatrix(mViewMatrix);
+        mDownX = x;
+        mDownY = y;
+        mDrag.reset();
+
+        mMode = updateSelection() ? hitTest(x, y) : MODE_LASSO;
+        if (mMode == MODE_LASSO) {
+            mLayer = null;
+            mSelectionSize = 0;
+            mLassoSize = 0;
+            mLassoPath.rewind();
+            mLassoPath.moveTo(x, y);
+            addLassoPoint(x, y);
+        } else {
+            startDrag(view);
+        }
+        view.invalidate();
+    }
+
+    @Override
+    public void onMove(DrawingView view, float x, float y) {
+        switch (mMode) {
+            case MODE_LASSO:
+                mLassoPath.lineTo(x, y);
+                addLassoPoint(x, y);
+                break;
+            case MODE_MOVE:
+                mDrag.setTranslate(x - mDownX, y - mDownY);
+                break;
+            case MODE_SCALE: {
+                float cx = mBounds.centerX(), cy = mBounds.centerY();
+                float from = (float) Math.hypot(mDownX - cx, mDownY - cy);
+                float scale = from == 0f ? 1f
+                        : Math.max(MIN_SCALE, (float) Math.hypot(x - cx, y - cy) / from);
+                mDrag.setScale(scale, scale, cx, cy);
+                break;
+            }
+            case MODE_ROTATE: {
+                float cx = mBounds.centerX(), cy = mBounds.centerY();
+                double from = Math.atan2(mDownY - cy, mDownX - cx);
+                double to = Math.atan2(y - cy, x - cx);
+                mDrag.setRotate((float) Math.toDegrees(to - from), cx, cy);
+                break;
+            }
+            default:
+                return;
+        }
+        view.invalidate();
+    }
+
+    /**
+     * Selects the strokes inside the lasso, or reports the drag as a TransformAction.
+     */
+    @Override
+    public void onEnd(DrawingView view, float x, float y) {
+        onMove(view, x, y);
+        if (mMode == MODE_LASSO) {
+            select(view.getLayer(view.getActiveLayerId()));
+            mLassoPath.rewind();
+        } else if (mMode != MODE_NONE) {
+            endDrag();
+            if (!mDrag.isIdentity()) {
+                view.completeAction(new TransformAction(mLayer.getLayerId(),
+                        Arrays.copyOf(mSelection, mSelectionSize), mDrag));
+            }
+        }
+        mMode = MODE_NONE;
+        view.invalidate();
+    }
+
+    @Override
+    public void onCancel(DrawingView view) {
+        if (mMode == MODE_LASSO) {
+            mLassoPath.rewind();
+        } else if (mMode != MODE_NONE) {
+            endDrag();
+        }
+        mMode = MODE_NONE;
+        view.invalidate();
+    }
+
+    /**
+     * Draws the lasso, or the selection with its handles, or the dragged strokes.
+     */
+    @Override
+    public void onDraw(DrawingView view, Canvas canvas) {
+        view.getViewMatrix(mViewMatrix);
+        if (mMode == MODE_LASSO) {
+            int save = canvas.save();
+            canvas.concat(mViewMatrix);
+            canvas.drawPath(mLassoPath, mOutlinePaint);
+            canvas.restoreToCount(save);
+            return;
+        }
+
+        if (mMode == MODE_NONE && !updateSelection()) {
+            return;
+        }
+
+        if (mDragImage != null) {
+            // Image to screen, to document, through the drag, and back to screen.
+            mViewMatrix.invert(mInverseMatrix);
+            mDragImageMatrix.setTranslate(mDragImageBounds.left, mDragImageBounds.top);
+            mDragImageMatrix.postConcat(mInverseMatrix);
+            mDragImageMatrix.postConcat(mDrag);
+            mDragImageMatrix.postConcat(mViewMatrix);
+            canvas.drawBitmap(mDragImage, mDragImageMatrix, mImagePaint);
+        }
+
+        int save = canvas.save();
+        canvas.concat(mViewMatrix);
+        canvas.concat(mDrag);
+        canvas.drawRect(mBounds, mOutlinePaint);
+        canvas.restoreToCount(save);
+
+        if (mMode == MODE_NONE) {
+            mapToScreen(mBounds.right, mBounds.bottom);
+            canvas.drawCircle(mPoint[0], mPoint[1], HANDLE_RADIUS, mHandlePaint);
+            mapToScreen(mBounds.centerX(), mBounds.top);
+            canvas.drawCircle(mPoint[0], mPoint[1] - 2 * HANDLE_RADIUS, HANDLE_RADIUS,
+                    mHandlePaint);
+        }
+    }
+
+    private void addLassoPoint(float x, float y) {
+        if (mLassoSize * 2 == mLasso.length) {
+            mLasso = Arrays.copyOf(mLasso, mLasso.length * 2);
+        }
+        mLasso[mLassoSize * 2] = x;
+        mLasso[mLassoSize * 2 + 1] = y;
+        mLassoSize++;
+    }
+
+    /**
+     * Selects the sealed strokes of a layer with more than half of their samples inside the lasso.
+     */
+    private void select(LayerView layer) {
+        mSelectionSize = 0;
+        if (layer == null || !layer.isLayerVisible() || mLassoSize < 3) {
+            return;
+        }
+
+        float left = mLasso[0], top = mLasso[1], right = left, bottom = top;
+        for (int i = 1; i < mLassoSize; i++) {
+            left = Math.min(left, mLasso[i * 2]);
+            right = Math.max(right, mLasso[i * 2]);
+            top = Math.min(top, mLasso[i * 2 + 1]);
+            bottom = Math.max(bottom, mLasso[i * 2 + 1]);
+        }
+
+        for (int i = 0; i < layer.getChildCount(); i++) {
+            View child = layer.getChildAt(i);
+            if (!(child instanceof StrokeView)) {
+                continue;
+            }
+            StrokeGeometry stroke = ((StrokeView) child).getGeometry();
+            if (stroke == null || !stroke.isSealed()) {
+                continue;
+            }
+            stroke.getBounds(mStrokeBounds);
+            if (!mStrokeBounds.intersects(left, top, right, bottom)) {
+                continue;
+            }
+
+            int inside = 0;
+            for (int j = 0; j < stroke.size(); j++) {
+                if (lassoContains(stroke.getX(j), stroke.getY(j))) {
+                    inside++;
+                }
+            }
+            if (inside * 2 > stroke.size()) {
+                if (mSelectionSize == mSelection.length) {
+                    mSelection = Arrays.copyOf(mSelection, mSelectionSize * 2);
+                }
+                mSelection[mSelectionSize++] = stroke.getId();
+            }
+        }
+
+        mLayer = mSelectionSize > 0 ? layer : null;
+        updateSelection();
+        Log.i(LOG_TAG, "Selected " + mSelectionSize + " strokes");
+    }
+
+    /**
+     * Even-odd test of a point against the closed lasso.
+     */
+    private boolean lassoContains(float x, float y) {
+        boolean inside = false;
+        for (int i = 0, j = mLassoSize - 1; i < mLassoSize; j = i++) {
+            float xi = mLasso[i * 2], yi = mLasso[i * 2 + 1];
+            float xj = mLasso[j * 2], yj = mLasso[j * 2 + 1];
+            if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Drops selected strokes which are no longer views in the layer, for example after an undo or
+     * once they are baked, and recomputes the bounds of the rest.
+     *
+     * @return True if anything is still selected.
+     */
+    private boolean updateSelection() {
+        if (mLayer == null || mLayer.getDrawingView() == null) {
+            mLayer = null;
+            mSelectionSize = 0;
+            return false;
+        }
+
+        int kept = 0;
+        mBounds.setEmpty();
+        for (int i = 0; i < mSelectionSize; i++) {
+            StrokeView strokeView = mLayer.getStroke(mSelection[i]);
+            if (strokeView == null || mLayer.isBaked(strokeView)) {
+                continue;
+            }
+            mSelection[kept++] = mSelection[i];
+            strokeView.getBounds(mStrokeBounds);
+            mBounds.union(mStrokeBounds);
+        }
+        mSelectionSize = kept;
+        if (kept == 0) {
+            mLayer = null;
+        }
+        return kept > 0;
+    }
+
+    /**
+     * @return What a touch at a document point does to the current selection.
+     */
+    private int hitTest(float x, float y) {
+        mapToScreen(x, y);
+        float sx = mPoint[0], sy = mPoint[1];
+
+        mapToScreen(mBounds.right, mBounds.bottom);
+        if (Math.hypot(sx - mPoint[0], sy - mPoint[1]) <= HANDLE_RADIUS) {
+            return MODE_SCALE;
+        }
+        mapToScreen(mBounds.centerX(), mBounds.top);
+        if (Math.hypot(sx - mPoint[0], sy - mPoint[1] + 2 * HANDLE_RADIUS) <= HANDLE_RADIUS) {
+            return MODE_ROTATE;
+        }
+        return mBounds.contains(x, y) ? MODE_MOVE : MODE_LASSO;
+    }
+
+    private void mapToScreen(float x, float y) {
+        mPoint[0] = x;
+        mPoint[1] = y;
+        mViewMatrix.mapPoints(mPoint);
+    }
+
+    /**
+     * Renders the selected strokes into the drag image and hides them, so the layer is re-rendered
+     * once at the start of the drag rather than on every move.
+     */
+    private void startDrag(DrawingView view) {
+        mViewMatrix.mapRect(mScreenBounds, mBounds);
+        mScreenBounds.roundOut(mDragImageBounds);
+        if (!mDragImageBounds.intersect(0, 0, view.getWidth(), view.getHeight())) {
+            mDragImageBounds.setEmpty();
+        }
+
+        if (!mDragImageBounds.isEmpty()) {
+            mDragImage = Bitmap.createBitmap(mDragImageBounds.width(), mDragImageBounds.height(),
+                    Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(mDragImage);
+            canvas.translate(-mDragImageBounds.left, -mDragImageBounds.top);
+            canvas.concat(mViewMatrix);
+            for (int i = 0; i < mSelectionSize; i++) {
+                mLayer.getStroke(mSelection[i]).draw(canvas);
+            }
+            mImagePaint.setAlpha(Math.round(mLayer.getOpacity() * 255));
+        }
+
+        for (int i = 0; i < mSelectionSize; i++) {
+            mLayer.getStroke(mSelection[i]).setVisibility(View.INVISIBLE);
+        }
+    }
+
+    /**
+     * Shows the selected strokes again and releases the drag image.
+     */
+    private void endDrag() {
+        for (int i = 0; i < mSelectionSize; i++) {
+            StrokeView strokeView = mLayer.getStroke(mSelection[i]);
+            if (strokeView != null) {
+                strokeView.setVisibility(View.VISIBLE);
+            }
+        }
+        if (mDragImage != null) {
+            mDragImage.recycle();
+            mDragImage = null;
+        }
+    }
+}
@@ -0,0 +1,664 @@
+package cse340.undo.app;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cse340.undo.geometry.SegmentIndex;
+import cse340.undo.geometry.StrokeGeometry;
+import cse340.undo.render.ParallelRasterizer;
+import cse340.undo.render.TileDiff;
+import cse340.undo.render.TiledRaster;
+
+/**
+ * One drawing layer: an ordered stack of stroke views on top of a base raster of flattened strokes.
+ * Each layer is rendered into its own hardware layer, so the DrawingView composites cached layer
+ * images and a stroke only re-renders the layer it is in. Hiding a layer or changing its opacity
+ * only changes how the cached image is composited.
+ *
+ * Baking a stroke only removes its view from the layer: the layer keeps the view, in order, as a
+ * display list of what the base raster was drawn from, and its geometry stays in the segment index
+ * and under its id. Actions still in the history, such as erasing, moving or relabelling, can
+ * therefore change baked strokes like any other; the tiles they cover are then cleared and drawn
+ * again from the display list, on the next frame. A raster edit fixes the pixels of everything
+ * beneath it, so it seals the display list: the raster is marked as the floor later redraws start
+ * from, copy-on-write, and the baked strokes are forgotten. The display list is also sealed once it
+ * grows past MAX_BAKED_VIEWS and no action in the history can change its strokes, so its memory
+ * doesn't grow with the length of the session.
+ *
+ * Layers are created and ordered by the DrawingView; strokes reach their layer through the layer id
+ * of their action.
+ *
+ * @see DrawingView#getLayer(int)
+ */
+@SuppressLint("ViewConstructor")
+public class LayerView extends FrameLayout {
+    private static final String LOG_TAG = LayerView.class.getSimpleName();
+
+    /**
+     * Most views the display list keeps. Beyond this it is sealed as soon as no action in the
+     * history can change a baked stroke, so baked views and their paths and paints are released.
+     */
+    private static final int MAX_BAKED_VIEWS = 1024;
+
+    /** Id of this layer, unique within its DrawingView. */
+    private final int mLayerId;
+
+    /** Name shown to the user. */
+    private String mName;
+
+    /** Sparse raster of flattened strokes drawn beneath this layer's children. */
+    private final TiledRaster mBaseRaster;
+
+    /** Segments of the sampled strokes currently in this layer, for the eraser. */
+    private final SegmentIndex<StrokeView> mSegmentIndex;
+
+    /** Views of the sealed strokes currently in this layer, by stroke id. */
+    private final SparseArray<StrokeView> mStrokes;
+
+    /** View transform and visible area in document coordinates, refreshed on each draw. */
+    private final Matrix mViewMatrix;
+    private final RectF mVisibleBounds;
+
+    /** True if children were added or removed during the DrawingView's current batch. */
+    private boolean mBatchDirty;
+
+    /** Views baked into the base raster since it was last sealed or cleared, bottom first. */
+    private final List<BakedView> mBaked;
+
+    /** Area of the base raster to draw again from the baked views, in document coordinates. */
+    private final RectF mRebakeArea;
+    private final Runnable mRebake;
+
+    /** True while baked children are removed, so they stay indexed. */
+    private boolean mBaking;
+
+    /**
+     * A view baked into the base raster.
+     */
+    private static final class BakedView {
+        final View mView;
+
+        /** Area the view was drawn into, for views which can't report their own bounds. */
+        final RectF mBounds;
+
+        BakedView(View view, RectF bounds) {
+            mView = view;
+            mBounds = bounds;
+        }
+
+        /**
+         * Checks the view's bounds before anything else, so views away from the area cost nothing
+         * but the check.
+         *
+         * @param area      Area being redrawn, in document coordinates.
+         * @param bounds    Scratch rectangle.
+         * @return Item drawing the view on the UI thread, or null if it doesn't overlap the area.
+         */
+        ParallelRasterizer.Item overlapping(RectF area, RectF bounds) {
+            if (mView instanceof StrokeView) {
+                StrokeView stroke = (StrokeView) mView;
+                stroke.getBounds(bounds);
+                return RectF.intersects(bounds, area) ? stroke::drawFullDetail : null;
+            } else if (mView instanceof FillView) {
+                FillView fill = (FillView) mView;
+                fill.getBounds(bounds);
+                return RectF.intersects(bounds, area) ? fill.toItem() : null;
+            }
+            return RectF.intersects(mBounds, area) ? mView::draw : null;
+        }
+    }
+
+    /**
+     * State of a layer's baked views, which a raster edit saves so undoing it can bring them back.
+     *
+     * @see #saveBaked()
+     */
+    public static final class BakedState {
+        private final List<BakedView> mViews;
+        private final TileDiff mFloor;
+
+        private BakedState(List<BakedView> views, TileDiff floor) {
+            mViews = views;
+            mFloor = floor;
+        }
+    }
+
+    /**
+     * Creates an empty layer. Use DrawingView.createLayer, which assigns the id.
+     *
+     * @param context   Context of the layer.
+     * @param layerId   Id of the layer.
+     * @param name      Name shown to the user.
+     */
+    LayerView(Context context, int layerId, String name) {
+        super(context);
+        mLayerId = layerId;
+        mName = name;
+        mBaseRaster = new TiledRaster();
+        mSegmentIndex = new SegmentIndex<>();
+        mStrokes = new SparseArray<>();
+        mViewMatrix = new Matrix();
+        mVisibleBounds = new RectF();
+        mBaked = new ArrayList<>();
+        mRebakeArea = new RectF();
+        mRebake = this::rebake;
+
+        // Cache the rendered layer, so it is only re-rendered when its own content changes.
+        setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        // Children draw in document coordinates through the view transform, so they must not be
+        // clipped to their own layout rectangles, which are in screen coordinates.
+        setClipChildren(false);
+    }
+
+    public int getLayerId() {
+        return mLayerId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public void setName(String name) {
+        mName = name;
+    }
+
+    /**
+     * @return The sparse raster drawn beneath this layer's strokes.
+     */
+    public TiledRaster getBaseRaster() {
+        return mBaseRaster;
+    }
+
+    /**
+     * @return Index of the segments of the sealed strokes in this layer.
+     */
+    public SegmentIndex<StrokeView> getSegmentIndex() {
+        return mSegmentIndex;
+    }
+
+    /**
+     * Indexes sealed strokes as they are added, however they are added.
+     */
+    @Override
+    public void onViewAdded(View child) {
+        super.onViewAdded(child);
+        if (child instanceof StrokeView) {
+            index((StrokeView) child);
+        }
+    }
+
+    /**
+     * Removes strokes from the index as they are removed, but not as they are baked.
+     */
+    @Override
+    public void onViewRemoved(View child) {
+        super.onViewRemoved(child);
+        if (!mBaking && child instanceof StrokeView) {
+            unindex((StrokeView) child);
+        }
+    }
+
+    private void index(StrokeView strokeView) {
+        StrokeGeometry geometry = strokeView.getGeometry();
+        if (geometry != null && geometry.isSealed()) {
+            mSegmentIndex.add(strokeView, geometry);
+            mStrokes.put(geometry.getId(), strokeView);
+        }
+    }
+
+    private void unindex(StrokeView strokeView) {
+        StrokeGeometry geometry = strokeView.getGeometry();
+        if (geometry != null) {
+            mSegmentIndex.remove(geometry);
+            if (mStrokes.get(geometry.getId()) == strokeView) {
+                mStrokes.remove(geometry.getId());
+            }
+        }
+    }
+
+    /**
+     * @return View of the sealed stroke with the given id in this layer, whether it is a child or
+     *         baked, or null if there is none.
+     */
+    public StrokeView getStroke(int strokeId) {
+        return mStrokes.get(strokeId);
+    }
+
+    /**
+     * @param strokeView    View of a stroke of this layer.
+     * @return True if the stroke is drawn by the base raster rather than by its view.
+     */
+    public boolean isBaked(StrokeView strokeView) {
+        return strokeView.getParent() != this;
+    }
+
+    /**
+     * Transforms a stroke of this layer in place, keeping the segment index up to date.
+     *
+     * @param strokeView    View of the stroke, a child or baked.
+     * @param matrix        Transform to apply, in document coordinates.
+     */
+    public void transformStroke(StrokeView strokeView, Matrix matrix) {
+        RectF oldBounds = new RectF();
+        strokeView.getBounds(oldBounds);
+        StrokeGeometry geometry = strokeView.getGeometry();
+        mSegmentIndex.remove(geometry);
+        geometry.transform(matrix);
+        mSegmentIndex.add(strokeView, geometry);
+        invalidateStroke(strokeView, oldBounds);
+    }
+
+    /**
+     * Redraws a stroke of this layer after it changed. A child is invalidated on the next frame; a
+     * baked stroke has the tiles it covers drawn again from the display list.
+     *
+     * @param strokeView    View of the stroke, a child or baked.
+     * @param oldBounds     Area the stroke covered before it changed, in document coordinates, or
+     *                      null if it didn't grow or move.
+     */
+    public void invalidateStroke(StrokeView strokeView, RectF oldBounds) {
+        DrawingView parent = getDrawingView();
+        if (!isBaked(strokeView)) {
+            if (parent != null) {
+                parent.getFrameScheduler().invalidate(strokeView);
+            } else {
+                strokeView.invalidate();
+            }
+            return;
+        }
+
+        RectF bounds = new RectF();
+        strokeView.getBounds(bounds);
+        if (oldBounds != null) {
+            bounds.union(oldBounds);
+        }
+        mRebakeArea.union(bounds);
+        if (parent != null) {
+            parent.getFrameScheduler().post(mRebake);
+        } else {
+            rebake();
+        }
+    }
+
+    /**
+     * Draws the tiles of baked strokes which changed again now, rather than on the next frame.
+     * Called before anything reads or swaps the base raster.
+     */
+    public void rebake() {
+        if (mRebakeArea.isEmpty()) {
+            return;
+        }
+
+        RectF area = new RectF(mRebakeArea);
+        mRebakeArea.setEmpty();
+        TiledRaster.roundOutToTiles(area);
+        RectF bounds = new RectF();
+        List<ParallelRasterizer.Item> items = new ArrayList<>();
+        for (BakedView baked : mBaked) {
+            ParallelRasterizer.Item item = baked.overlapping(area, bounds);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        mBaseRaster.redraw(area, canvas -> {
+            for (ParallelRasterizer.Item item : items) {
+                item.draw(canvas);
+            }
+        });
+        invalidate();
+    }
+
+    /**
+     * @return True unless the layer is hidden.
+     */
+    public boolean isLayerVisible() {
+        return getVisibility() == View.VISIBLE;
+    }
+
+    /**
+     * Shows or hides the layer. Only the composite is redrawn; the layer's cache is kept.
+     *
+     * @param visible True to show the layer.
+     */
+    public void setLayerVisible(boolean visible) {
+        setVisibility(visible ? View.VISIBLE : View.INVISIBLE);
+    }
+
+    /**
+     * @return Opacity the layer is composited with, in [0, 1].
+     */
+    public float getOpacity() {
+        return getAlpha();
+    }
+
+    /**
+     * Sets the opacity the layer is composited with. The layer's cache is kept.
+     *
+     * @param opacity   Opacity, clamped to [0, 1].
+     */
+    public void setOpacity(float opacity) {
+        setAlpha(Math.max(0f, Math.min(1f, opacity)));
+    }
+
+    /**
+     * @return The DrawingView this layer is in, or null if it is not attached to one.
+     */
+    public DrawingView getDrawingView() {
+        return getParent() instanceof DrawingView ? (DrawingView) getParent() : null;
+    }
+
+    /**
+     * Draws the visible base tiles and then the strokes, through the DrawingView's transform.
+     */
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        DrawingView parent = getDrawingView();
+        if (parent == null) {
+            super.dispatchDraw(canvas);
+            return;
+        }
+
+        int save = canvas.save();
+        parent.getViewMatrix(mViewMatrix);
+        canvas.concat(mViewMatrix);
+        parent.getVisibleBounds(mVisibleBounds);
+        mBaseRaster.drawVisible(canvas, mVisibleBounds);
+        super.dispatchDraw(canvas);
+        canvas.restoreToCount(save);
+    }
+
+    /**
+     * Flattens the bottom children into the base raster and removes them, so that everything which
+     * can no longer be undone costs a single raster draw. The baked views are kept in the display
+     * list and stay indexed. ClearViews release the raster and the display list instead, since
+     * nothing beneath them in this layer can be seen again, and the children beneath them are
+     * removed without being drawn.
+     *
+     * @param count Number of children to flatten, starting from the bottom.
+     */
+    public void bakeChildren(int count) {
+        count = Math.min(count, getChildCount());
+        if (count <= 0) {
+            return;
+        }
+
+        DrawingView parent = getDrawingView();
+        if (parent != null) {
+            parent.getVisibleBounds(mVisibleBounds);
+        } else {
+            mVisibleBounds.set(0, 0, getWidth(), getHeight());
+        }
+        // Nothing beneath the topmost ClearView can be seen again, so its tiles are released
+        // and the children it covers are dropped without ever being rasterized.
+        rebake();
+        int first = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            if (getChildAt(i) instanceof ClearView) {
+                dropBaked();
+                mBaseRaster.clear();
+                first = i + 1;
+                break;
+            }
+        }
+        for (int i = first; i < count; i++) {
+            View child = getChildAt(i);
+            RectF bounds = null;
+            if (child instanceof StrokeView) {
+                ((StrokeView) child).bake(mBaseRaster);
+            } else if (child instanceof FillView) {
+                ((FillView) child).bake(mBaseRaster);
+            } else {
+                bounds = new RectF(mVisibleBounds);
+                mBaseRaster.draw(bounds, child::draw);
+            }
+            mBaked.add(new BakedView(child, bounds));
+        }
+
+        removeViewsInLayout(0, first);
+        mBaking = true;
+        try {
+            removeViewsInLayout(0, count - first);
+        } finally {
+            mBaking = false;
+        }
+        onChildrenChanged();
+        Log.i(LOG_TAG, "Baked " + count + " views into " + mName + ", " + getChildCount()
+                + " left, " + mBaseRaster.getTileCount() + " tiles");
+    }
+
+    /**
+     * Adds the layer to a scene for parallel rendering, as a layer of its own holding the base tiles
+     * and then the visible strokes. Does nothing if the layer is hidden.
+     *
+     * @param scene Scene to add the layer to.
+     * @param area  Area being rendered, in document coordinates.
+     */
+    public void addTo(ParallelRasterizer.Scene scene, RectF area) {
+        if (!isLayerVisible()) {
+            return;
+        }
+
+        rebake();
+        scene.beginLayer(getOpacity());
+        mBaseRaster.addTo(scene, area);
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            if (child.getVisibility() != View.VISIBLE) {
+                continue;
+            }
+            if (child instanceof StrokeView) {
+                RectF bounds = new RectF();
+                scene.add(bounds, ((StrokeView) child).toItem(bounds));
+            } else if (child instanceof FillView) {
+                RectF bounds = new RectF();
+                ((FillView) child).getBounds(bounds);
+                scene.add(bounds, ((FillView) child).toItem());
+            } else if (child instanceof ClearView) {
+                scene.add(null, ClearView::clear);
+            } else {
+                Log.w(LOG_TAG, "Can't render " + child + " in parallel");
+            }
+        }
+    }
+
+    /**
+     * Flattens every child into the base raster, so a raster edit can change everything in the
+     * layer. Unlike bakeChildren the children are returned, so the flattening can be undone by
+     * recording the raster edit into a TileDiff and passing them to unflattenChildren.
+     *
+     * @return The flattened children, bottom first.
+     */
+    public List<View> flattenChildren() {
+        List<View> children = new ArrayList<>(getChildCount());
+        for (int i = 0; i < getChildCount(); i++) {
+            children.add(getChildAt(i));
+        }
+        bakeChildren(children.size());
+        return children;
+    }
+
+    /**
+     * @return The current display list of baked views, to be restored with restoreBaked when a
+     *         raster edit made after this is undone or redone.
+     */
+    public BakedState saveBaked() {
+        rebake();
+        return new BakedState(new ArrayList<>(mBaked), mBaseRaster.getFloor());
+    }
+
+    /**
+     * Puts back a display list saved by saveBaked, and indexes its strokes instead of the current
+     * ones. The base raster must already be as it was when the state was saved.
+     *
+     * @param state State returned by saveBaked.
+     */
+    public void restoreBaked(BakedState state) {
+        mRebakeArea.setEmpty();
+        dropBaked();
+        mBaked.addAll(state.mViews);
+        mBaseRaster.setFloor(state.mFloor);
+        for (BakedView baked : mBaked) {
+            if (baked.mView instanceof StrokeView) {
+                index((StrokeView) baked.mView);
+            }
+        }
+    }
+
+    /**
+     * Seals the display list, for example after a raster edit: the base raster becomes the floor
+     * of later redraws, and the baked views are released and their strokes leave the index, so
+     * they can no longer be changed apart from the raster. The floor only copies tiles as later
+     * bakes draw over them.
+     *
+     * @see TiledRaster#markFloor()
+     */
+    public void sealBaked() {
+        rebake();
+        Log.i(LOG_TAG, "Sealing " + mBaked.size() + " baked views of " + mName);
+        dropBaked();
+        mBaseRaster.markFloor();
+    }
+
+    /**
+     * @return True if the display list holds more views than it keeps, so it should be sealed
+     *         once no action in the history can change its strokes.
+     * @see cse340.undo.actions.AbstractReversibleAction#editsStrokes(LayerView)
+     */
+    public boolean isBakedListFull() {
+        return mBaked.size() > MAX_BAKED_VIEWS;
+    }
+
+    /**
+     * Forgets the display list and the floor, and removes the baked strokes from the index.
+     */
+    private void dropBaked() {
+        for (BakedView baked : mBaked) {
+            if (baked.mView instanceof StrokeView) {
+                unindex((StrokeView) baked.mView);
+            }
+        }
+        mBaked.clear();
+        mBaseRaster.setFloor(null);
+    }
+
+    /**
+     * Removes every child, baked stroke and tile, leaving the layer empty.
+     */
+    public void clearContent() {
+        removeAllViews();
+        mRebakeArea.setEmpty();
+        dropBaked();
+        mBaseRaster.clear();
+        invalidate();
+    }
+
+    /**
+     * Puts children removed by flattenChildren back beneath the current children. The base raster
+     * must already be as it was before they were flattened.
+     *
+     * @param children  Children returned by flattenChildren, bottom first.
+     */
+    public void unflattenChildren(List<View> children) {
+        for (int i = 0; i < children.size(); i++) {
+            View child = children.get(i);
+            addViewInLayout(child, i, generateDefaultLayoutParams());
+        }
+        onChildrenChanged();
+    }
+
+    /**
+     * Removes children put back by unflattenChildren again, without baking them. The base raster
+     * must already hold them.
+     *
+     * @param children  Children returned by flattenChildren.
+     */
+    public void reflattenChildren(List<View> children) {
+        rebake();
+        for (View child : children) {
+            removeViewInLayout(child);
+        }
+        onChildrenChanged();
+    }
+
+    /**
+     * Lays out and redraws the layer after children were changed in layout, or once the
+     * DrawingView's current batch ends.
+     */
+    private void onChildrenChanged() {
+        DrawingView parent = getDrawingView();
+        if (parent != null && parent.isBatching()) {
+            mBatchDirty = true;
+        } else {
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    @Override
+    public void addView(View child) {
+        DrawingView parent = getDrawingView();
+        if (parent != null && parent.isBatching()) {
+            addViewInLayout(child, -1, generateDefaultLayoutParams());
+            mBatchDirty = true;
+        } else {
+            super.addView(child);
+        }
+    }
+
+    @Override
+    public void removeView(View view) {
+        DrawingView parent = getDrawingView();
+        if (parent != null && parent.isBatching()) {
+            removeViewInLayout(view);
+            mBatchDirty = true;
+        } else {
+            super.removeView(view);
+        }
+    }
+
+    @Override
+    public void removeAllViews() {
+        DrawingView parent = getDrawingView();
+        if (parent != null && parent.isBatching()) {
+            removeAllViewsInLayout();
+            mBatchDirty = true;
+        } else {
+            super.removeAllViews();
+        }
+    }
+
+    /**
+     * Called by the DrawingView when its outermost batch ends. Lays out and redraws the layer once
+     * if its children changed during the batch.
+     *
+     * @return True if the layer changed.
+     */
+    boolean endBatch() {
+        if (!mBatchDirty) {
+            return false;
+        }
+
+        mBatchDirty = false;
+        requestLayout();
+        invalidate();
+        return true;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Layer " + mLayerId + " (" + mName + "): " + getChildCount() + " strokes"
+                + (isLayerVisible() ? "" : ", hidden");
+    }
+}
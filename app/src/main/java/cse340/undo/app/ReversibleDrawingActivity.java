@@ -4,10 +4,12 @@ package cse340.undo.app;
         import android.content.res.ColorStateList;
         import android.graphics.Color;
         import android.graphics.Paint;
+        import android.graphics.RectF;
         import android.os.Bundle;
         import android.support.annotation.ColorInt;
         import android.support.annotation.IdRes;
         import android.support.constraint.ConstraintSet;
+        import android.view.MotionEvent;
         import android.view.View;
         import android.view.ViewGroup;
 
@@ -19,9 +21,16 @@ package cse340.undo.app;
         import cse340.undo.actions.ChangeThicknessAction;
         import cse340.undo.actions.AbstractReversibleAction;
         import cse340.undo.actions.ClearAction;
-        import cse340.undo.history.StackHistory;
-
-public class ReversibleDrawingActivity extends AbstractReversibleDrawingActivity {
+        import cse340.undo.actions.CompositeAction;
+        import cse340.undo.brush.StampBrush;
+        import cse340.undo.geometry.Symmetry;
+        import cse340.undo.input.StrokePipeline;
+        import cse340.undo.trace.InputTrace;
+        import cse340.undo.trace.InputTraceRecorder;
+        import cse340.undo.trace.InputTraceReplayer;
+
+public class ReversibleDrawingActivity extends AbstractReversibleDrawingActivity
+        implements InputTraceReplayer.Target {
     // Default color of the color picker
     private static final int DEFAULT_COLOR = Color.RED;
     // Default thickness of the stroke
@@ -41,8 +50,47 @@ public class ReversibleDrawingActivity extends AbstractReversibleDrawingActivity
     @IdRes
     private static final int[] COLOR_MENU_ITEMS = {};
 
+    /** Tools which can be selected, as recorded in input traces. */
+    protected static final int TOOL_PEN = 0;
+    protected static final int TOOL_ERASER = 1;
+    protected static final int TOOL_LASSO = 2;
+    protected static final int TOOL_FILL = 3;
+    protected static final int TOOL_TEXT = 4;
+
+    /**
+     * Symmetry modes the symmetry FAB cycles through, as recorded in input traces: SYMMETRY_OFF,
+     * a mirror, or the number of folds of a radial symmetry.
+     */
+    protected static final int SYMMETRY_OFF = 0;
+    protected static final int SYMMETRY_MIRROR_HORIZONTAL = -1;
+    protected static final int SYMMETRY_MIRROR_VERTICAL = -2;
+    private static final int[] SYMMETRY_CYCLE = {
+            SYMMETRY_OFF, SYMMETRY_MIRROR_HORIZONTAL, SYMMETRY_MIRROR_VERTICAL, 2, 4, 6, 8, 12, 16
+    };
+
+    /**
+     * Weight of each sample in the smoothing of stamped strokes. Dabs are placed evenly along the
+     * path, so jitter the pen's adaptive sampling lets through shows as clumps of dabs.
+     */
+    private static final float STAMP_SMOOTHING = 0.5f;
+
     private ViewGroup mClearMenu;
 
+    /** Tool erasing parts of strokes, kept so its settings survive switching tools. */
+    private final EraserTool mEraserTool = new EraserTool();
+    private final LassoTool mLassoTool = new LassoTool();
+    private final FillTool mFillTool = new FillTool();
+    private final TextTool mTextTool = new TextTool();
+
+    /**
+     * Pipeline strokes of each brush are sampled through, indexed like the argument of selectBrush,
+     * so each keeps its own stage timings. Created when the brush is first selected.
+     */
+    private final StrokePipeline[] mPipelines = new StrokePipeline[StampBrush.values().length + 1];
+
+    /** Symmetry mode selected, as recorded in input traces. */
+    private int mSymmetry;
+
     /** State variables used to track whether menus are open. */
     private boolean isThicknessMenuOpen;
     private boolean isColorMenuOpen;
@@ -50,6 +98,9 @@ public class ReversibleDrawingActivity extends AbstractReversibleDrawingActivity
     @SuppressLint("PrivateResource")
     private int mMiniFabSize;
 
+    /** Records touches and menu actions for replay, or null when not recording. */
+    private InputTraceRecorder mTraceRecorder;
+
     /** Place to store ColorPickerView */
     protected AbstractColorPickerView mColorPickerView;
 
@@ -89,6 +140,48 @@ public class ReversibleDrawingActivity extends AbstractReversibleDrawingActivity
         findViewById(R.id.fab_clear).setOnClickListener((v) -> clear());
         updateMenuButtons();
 
+        addMenu(getLayoutInflater().inflate(R.layout.eraser_menu, mLayout, false),
+                ConstraintSet.TOP, ConstraintSet.START);
+        findViewById(R.id.fab_eraser).setOnClickListener((v) ->
+                selectTool(mDrawingView.getTool() == mEraserTool ? TOOL_PEN : TOOL_ERASER));
+        addMenu(getLayoutInflater().inflate(R.layout.lasso_menu, mLayout, false),
+                ConstraintSet.TOP, ConstraintSet.START);
+        findViewById(R.id.fab_lasso).setOnClickListener((v) ->
+                selectTool(mDrawingView.getTool() == mLassoTool ? TOOL_PEN : TOOL_LASSO));
+        addMenu(getLayoutInflater().inflate(R.layout.fill_menu, mLayout, false),
+                ConstraintSet.TOP, ConstraintSet.START);
+        findViewById(R.id.fab_fill).setOnClickListener((v) ->
+                selectTool(mDrawingView.getTool() == mFillTool ? TOOL_PEN : TOOL_FILL));
+        addMenu(getLayoutInflater().inflate(R.layout.text_menu, mLayout, false),
+                ConstraintSet.TOP, ConstraintSet.START);
+        findViewById(R.id.fab_text).setOnClickListener((v) ->
+                selectTool(mDrawingView.getTool() == mTextTool ? TOOL_PEN : TOOL_TEXT));
+        addMenu(getLayoutInflater().inflate(R.layout.brush_menu, mLayout, false),
+                ConstraintSet.TOP, ConstraintSet.START);
+        findViewById(R.id.fab_brush).setOnClickListener((v) -> {
+            // Cycles from the pen through each stamp brush and back.
+            StampBrush brush = mDrawingView.getStampBrush();
+            int next = brush == null ? 1 : brush.ordinal() + 2;
+            selectBrush(next % (StampBrush.values().length + 1));
+        });
+        addMenu(getLayoutInflater().inflate(R.layout.symmetry_menu, mLayout, false),
+                ConstraintSet.TOP, ConstraintSet.START);
+        findViewById(R.id.fab_symmetry).setOnClickListener((v) -> {
+            int next = 0;
+            while (SYMMETRY_CYCLE[next] != mSymmetry) {
+                next++;
+            }
+            selectSymmetry(SYMMETRY_CYCLE[(next + 1) % SYMMETRY_CYCLE.length]);
+        });
+        addMenu(getLayoutInflater().inflate(R.layout.shape_menu, mLayout, false),
+                ConstraintSet.TOP, ConstraintSet.START);
+        findViewById(R.id.fab_shape).setOnClickListener((v) ->
+                setSnapToShapes(!mDrawingView.isSnapToShapes()));
+        selectTool(TOOL_PEN);
+        selectBrush(0);
+        selectSymmetry(SYMMETRY_OFF);
+        setSnapToShapes(false);
+
         // Color picker
         mColorPickerView = findViewById(R.id.circleColorPicker);
         mColorPickerView.addColorChangeListener(mColorChangeListener);
@@ -145,8 +238,7 @@ public class ReversibleDrawingActivity extends AbstractReversibleDrawingActivity
      * Clears all strokes on DrawingView
      */
     private void clear() {
-        ClearAction action = new ClearAction();
-        doAction(action);
+        performMenu(InputTrace.MENU_CLEAR, 0);
     }
 
     /** {@inheritDoc}*/
@@ -159,7 +251,8 @@ public class ReversibleDrawingActivity extends AbstractReversibleDrawingActivity
 
     // Reverts color of fab and color picker back to previous state
     private void onActionUndo(AbstractReversibleAction action) {
-        if (action instanceof ChangeColorAction) {
+        if (action instanceof ChangeColorAction || (action instanceof CompositeAction
+                && ((CompositeAction) action).contains(ChangeColorAction.class))) {
             @ColorInt int currColor = mDrawingView.getCurrentPaint().getColor();
             mColorPickerView.setColor(currColor);
             findViewById(R.id.fab_color).setBackgroundTintList(
@@ -168,11 +261,118 @@ public class ReversibleDrawingActivity extends AbstractReversibleDrawingActivity
         }
     }
 
+    /**
+     * Switches the tool used for single finger input.
+     *
+     * @param tool  TOOL_PEN, TOOL_ERASER, TOOL_LASSO, TOOL_FILL or TOOL_TEXT.
+     */
+    protected void selectTool(int tool) {
+        performMenu(InputTrace.MENU_TOOL, tool);
+    }
+
+    private void applyTool(int tool) {
+        switch (tool) {
+            case TOOL_PEN:
+                mDrawingView.setTool(null);
+                break;
+            case TOOL_ERASER:
+                mDrawingView.setTool(mEraserTool);
+                break;
+            case TOOL_LASSO:
+                mDrawingView.setTool(mLassoTool);
+                break;
+            case TOOL_FILL:
+                mDrawingView.setTool(mFillTool);
+                break;
+            case TOOL_TEXT:
+                mDrawingView.setTool(mTextTool);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown tool " + tool);
+        }
+        findViewById(R.id.fab_eraser).setAlpha(tool == TOOL_ERASER ? 1f : 0.6f);
+        findViewById(R.id.fab_lasso).setAlpha(tool == TOOL_LASSO ? 1f : 0.6f);
+        findViewById(R.id.fab_fill).setAlpha(tool == TOOL_FILL ? 1f : 0.6f);
+        findViewById(R.id.fab_text).setAlpha(tool == TOOL_TEXT ? 1f : 0.6f);
+    }
+
+    /**
+     * Switches the brush new strokes are drawn with.
+     *
+     * @param brush 0 for the pen, or one more than the ordinal of a StampBrush.
+     */
+    protected void selectBrush(int brush) {
+        performMenu(InputTrace.MENU_BRUSH, brush);
+    }
+
+    private void applyBrush(int brush) {
+        if (brush < 0 || brush > StampBrush.values().length) {
+            throw new IllegalArgumentException("Unknown brush " + brush);
+        }
+        if (mPipelines[brush] == null) {
+            mPipelines[brush] = brush == 0
+                    ? StrokePipeline.createAdaptive(DrawingView.MIN_MOVE_DIST,
+                            DrawingView.MAX_MOVE_DIST, mDrawingView.getFrameBudgetMonitor())
+                    : StrokePipeline.createSmoothed(DrawingView.MIN_MOVE_DIST, STAMP_SMOOTHING);
+        }
+        mDrawingView.setStampBrush(brush == 0 ? null : StampBrush.values()[brush - 1]);
+        mDrawingView.setStrokePipeline(mPipelines[brush]);
+        findViewById(R.id.fab_brush).setAlpha(brush == 0 ? 0.6f : 1f);
+    }
+
+    /**
+     * Switches the copies new strokes are drawn as, centered on the middle of the visible area.
+     *
+     * @param symmetry  SYMMETRY_OFF, SYMMETRY_MIRROR_HORIZONTAL, SYMMETRY_MIRROR_VERTICAL, or the
+     *                  number of folds of a radial symmetry.
+     */
+    protected void selectSymmetry(int symmetry) {
+        performMenu(InputTrace.MENU_SYMMETRY, symmetry);
+    }
+
+    private void applySymmetry(int symmetry) {
+        RectF visible = new RectF();
+        mDrawingView.getVisibleBounds(visible);
+        float x = visible.centerX(), y = visible.centerY();
+        Symmetry selected;
+        switch (symmetry) {
+            case SYMMETRY_OFF:
+                selected = null;
+                break;
+            case SYMMETRY_MIRROR_HORIZONTAL:
+                selected = new Symmetry(Symmetry.Mode.MIRROR_HORIZONTAL, 2, x, y);
+                break;
+            case SYMMETRY_MIRROR_VERTICAL:
+                selected = new Symmetry(Symmetry.Mode.MIRROR_VERTICAL, 2, x, y);
+                break;
+            default:
+                selected = new Symmetry(Symmetry.Mode.RADIAL, symmetry, x, y);
+                break;
+        }
+        mSymmetry = symmetry;
+        mDrawingView.setSymmetry(selected);
+        findViewById(R.id.fab_symmetry).setAlpha(selected == null ? 0.6f : 1f);
+    }
+
+    /**
+     * Turns snapping finished pen strokes to shapes on or off.
+     *
+     * @param snap  True to replace strokes which look like shapes by those shapes.
+     */
+    protected void setSnapToShapes(boolean snap) {
+        performMenu(InputTrace.MENU_SNAP, snap ? 1 : 0);
+    }
+
+    private void applySnapToShapes(boolean snap) {
+        mDrawingView.setSnapToShapes(snap);
+        findViewById(R.id.fab_shape).setAlpha(snap ? 1f : 0.6f);
+    }
+
     /** {@inheritDoc}*/
     @Override
     protected void updateMenuButtons() {
         super.updateMenuButtons();
-        setViewVisibility(mClearMenu, ((StackHistory) mModel).didClear());
+        setViewVisibility(mClearMenu, mModel.didClear());
     }
 
     /** {@inheritDoc}*/
@@ -182,21 +382,29 @@ public class ReversibleDrawingActivity extends AbstractReversibleDrawingActivity
             return;
         }
         // The following removes all StrokeViews behind a ClearView
-        AbstractReversibleAction botAction = ((StackHistory) mModel).peekBottom();
+        AbstractReversibleAction botAction = mModel.peekBottom();
         if ((botAction instanceof ClearAction) &&
-                (((StackHistory) mModel).size() == DEFAULT_HISTORY_SIZE)) {
+                (mModel.size() == DEFAULT_HISTORY_SIZE)) {
             Stack<AbstractReversibleAction> reAddToCanvas = new Stack<>();
-            // Undoes everything in stack, including ClearView and adds to new stack
-            while (mModel.canUndo()) {
-                AbstractReversibleAction undidAction = mModel.undo();
-                undidAction.undoAction(mDrawingView);
-                reAddToCanvas.add(undidAction);
-            }
-            mDrawingView.removeAllViews();
-            // Removes the ClearAction and redoes all prior actions
-            reAddToCanvas.pop();
-            while (!reAddToCanvas.isEmpty()) {
-                doAction(reAddToCanvas.pop());
+            // Batch the whole rebuild so it costs a single layout and redraw
+            mDrawingView.beginBatch();
+            try {
+                // Undoes everything in stack, including ClearView and adds to new stack
+                while (mModel.canUndo()) {
+                    AbstractReversibleAction undidAction = mModel.undo();
+                    undidAction.undoAction(mDrawingView);
+                    reAddToCanvas.add(undidAction);
+                }
+                // Nothing behind the ClearAction can be seen again in its layer, so release it
+                LayerView layer = mDrawingView.getLayer(botAction.getLayerId());
+                layer.clearContent();
+                // Removes the ClearAction and redoes all prior actions
+                reAddToCanvas.pop();
+                while (!reAddToCanvas.isEmpty()) {
+                    doAction(reAddToCanvas.pop());
+                }
+            } finally {
+                mDrawingView.endBatch();
             }
         }
         super.doAction(action);
@@ -209,10 +417,7 @@ public class ReversibleDrawingActivity extends AbstractReversibleDrawingActivity
      * @param color The new color
      */
     private void updateColor(int color) {
-        doAction(new ChangeColorAction(color));
-        findViewById(R.id.fab_color).setBackgroundTintList(
-                ColorStateList.valueOf(color)
-        );
+        performMenu(InputTrace.MENU_COLOR, color);
         isColorMenuOpen = toggleMenu(COLOR_MENU_ITEMS, isColorMenuOpen);
         enableCollapsibleMenu(
                 R.id.fab_thickness, THICKNESS_MENU_ITEMS, !isColorMenuOpen
@@ -234,16 +439,16 @@ public class ReversibleDrawingActivity extends AbstractReversibleDrawingActivity
     private void onThicknessMenuSelected(View view) {
         switch (view.getId()) {
             case R.id.fab_thickness_0:
-                doAction(new ChangeThicknessAction(0));
+                changeThickness(0);
                 break;
             case R.id.fab_thickness_10:
-                doAction(new ChangeThicknessAction(10));
+                changeThickness(10);
                 break;
             case R.id.fab_thickness_20:
-                doAction(new ChangeThicknessAction(20));
+                changeThickness(20);
                 break;
             case R.id.fab_thickness_30:
-                doAction(new ChangeThicknessAction(30));
+                changeThickness(30);
                 break;
         }
 
@@ -252,6 +457,152 @@ public class ReversibleDrawingActivity extends AbstractReversibleDrawingActivity
         enableCollapsibleMenu(R.id.fab_color, COLOR_MENU_ITEMS , !isThicknessMenuOpen);
     }
 
+    /**
+     * Changes the thickness of the brush.
+     *
+     * @param thickness New thickness of the brush.
+     */
+    private void changeThickness(int thickness) {
+        performMenu(InputTrace.MENU_THICKNESS, thickness);
+    }
+
+    /** {@inheritDoc}*/
+    @Override
+    protected void undo() {
+        performMenu(InputTrace.MENU_UNDO, 0);
+    }
+
+    /** {@inheritDoc}*/
+    @Override
+    protected void redo() {
+        performMenu(InputTrace.MENU_REDO, 0);
+    }
+
+    /**
+     * Records the position scrubbed to, so that replaying a trace which scrubbed through the
+     * history reaches the same state. The replay seeks there at once.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onSeekCommitted(int position) {
+        if (mTraceRecorder != null) {
+            mTraceRecorder.recordMenu(InputTrace.MENU_SEEK, position);
+        }
+    }
+
+    /**
+     * Records a menu action into the trace being recorded, if any, then performs it.
+     *
+     * @param menu  One of the InputTrace.MENU_ constants.
+     * @param arg   Argument of the action.
+     */
+    private void performMenu(int menu, int arg) {
+        if (mTraceRecorder != null) {
+            mTraceRecorder.recordMenu(menu, arg);
+        }
+        applyMenu(menu, arg);
+    }
+
+    /**
+     * Performs a menu action without recording it. Every menu action, whether chosen by the user
+     * or replayed, is applied here, so a replay behaves exactly like the recorded session.
+     *
+     * @param menu  One of the InputTrace.MENU_ constants.
+     * @param arg   Argument of the action.
+     * @throws IllegalArgumentException if the action or its argument is unknown.
+     */
+    private void applyMenu(int menu, int arg) {
+        switch (menu) {
+            case InputTrace.MENU_COLOR:
+                doAction(new ChangeColorAction(arg));
+                mColorPickerView.setColor(arg);
+                findViewById(R.id.fab_color).setBackgroundTintList(ColorStateList.valueOf(arg));
+                break;
+            case InputTrace.MENU_THICKNESS:
+                doAction(new ChangeThicknessAction(arg));
+                break;
+            case InputTrace.MENU_CLEAR:
+                doAction(new ClearAction());
+                break;
+            case InputTrace.MENU_UNDO:
+                super.undo();
+                break;
+            case InputTrace.MENU_REDO:
+                super.redo();
+                break;
+            case InputTrace.MENU_SEEK:
+                super.seekHistory(arg, Long.MAX_VALUE);
+                break;
+            case InputTrace.MENU_TOOL:
+                applyTool(arg);
+                break;
+            case InputTrace.MENU_BRUSH:
+                applyBrush(arg);
+                break;
+            case InputTrace.MENU_SYMMETRY:
+                applySymmetry(arg);
+                break;
+            case InputTrace.MENU_SNAP:
+                applySnapToShapes(arg != 0);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown menu action " + menu);
+        }
+    }
+
+    /**
+     * Starts recording touches on the DrawingView and menu actions into a new trace.
+     */
+    public void startTraceRecording() {
+        mTraceRecorder = new InputTraceRecorder();
+        mDrawingView.setTraceRecorder(mTraceRecorder);
+    }
+
+    /**
+     * Stops recording.
+     *
+     * @return The recorded trace, or null if nothing was being recorded.
+     */
+    public InputTrace stopTraceRecording() {
+        InputTrace trace = mTraceRecorder == null ? null : mTraceRecorder.getTrace();
+        mTraceRecorder = null;
+        mDrawingView.setTraceRecorder(null);
+        return trace;
+    }
+
+    /**
+     * Dispatches a replayed touch to the DrawingView, bypassing the open menu check. Replayed
+     * touches are not recorded again.
+     *
+     * @param event Replayed event.
+     */
+    @Override
+    public void onReplayTouch(MotionEvent event) {
+        mDrawingView.replayTouchEvent(event);
+    }
+
+    /**
+     * Performs a replayed menu action without animating any menus or recording it again.
+     *
+     * @param menu  One of the InputTrace.MENU_ constants.
+     * @param arg   Argument of the action.
+     */
+    @Override
+    public void onReplayMenu(int menu, int arg) {
+        applyMenu(menu, arg);
+    }
+
+    /**
+     * Gives replayed text to the text tool, which waits for it instead of showing its dialog.
+     *
+     * @param text  Text the user entered.
+     */
+    @Override
+    public void onReplayText(String text) {
+        mTextTool.enterText(mDrawingView, text);
+    }
+
     /**
      * Toggles a collapsible menu. That is, if it's open, it closes it. If it's closed, it opens it.
      *
@@ -263,6 +614,13 @@ public class ReversibleDrawingActivity extends AbstractReversibleDrawingActivity
         enableFAB(R.id.fab_undo, open);
         enableFAB(R.id.fab_redo, open);
         enableFAB(R.id.fab_clear, open);
+        enableFAB(R.id.fab_eraser, open);
+        enableFAB(R.id.fab_lasso, open);
+        enableFAB(R.id.fab_fill, open);
+        enableFAB(R.id.fab_text, open);
+        enableFAB(R.id.fab_brush, open);
+        enableFAB(R.id.fab_symmetry, open);
+        enableFAB(R.id.fab_shape, open);
         if ((!open) && (items.length == 0)) {
             mColorPickerView.setVisibility(View.VISIBLE);
         } else {
@@ -0,0 +1,32 @@
+package cse340.undo.app;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Paint;
+
+import cse340.undo.geometry.Shape;
+
+/**
+ * Stroke view which draws a primitive shape. The shape's path has a few segments however many
+ * samples the stroke it was recognized from had.
+ */
+@SuppressLint("ViewConstructor")
+public class ShapeView extends StrokeView {
+    /** Shape being drawn. */
+    private final Shape mShape;
+
+    /**
+     * Create a new shape view to show on the DrawingView
+     * @param context the context of this new view
+     * @param shape The shape that will be added to the new view
+     * @param paint The paint with which to stroke the shape
+     */
+    public ShapeView(Context context, Shape shape, Paint paint) {
+        super(context, shape.toPath(), paint);
+        this.mShape = shape;
+    }
+
+    public Shape getShape() {
+        return mShape;
+    }
+}
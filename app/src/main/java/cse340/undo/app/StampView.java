@@ -0,0 +1,108 @@
+package cse340.undo.app;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import cse340.undo.brush.DabAtlas;
+import cse340.undo.brush.DabTrail;
+import cse340.undo.brush.StampBrush;
+import cse340.undo.geometry.StrokeGeometry;
+import cse340.undo.render.ParallelRasterizer;
+
+/**
+ * Stroke view which stamps a brush's dabs along the stroke instead of stroking its path. Erasing,
+ * selecting and transforming work on the geometry just as they do for other strokes.
+ *
+ * While attached, the view redraws itself when the atlas cell its dabs were drawn from is given to
+ * another sprite, so it never shows a sprite which isn't its own.
+ */
+@SuppressLint("ViewConstructor")
+public class StampView extends StrokeView {
+    /** Dabs placed along the stroke. */
+    private final DabTrail mTrail;
+
+    /** Redraws the view when its sprite's atlas cell is reused. */
+    private final DabAtlas.OnEvictListener mOnEvict;
+
+    /**
+     * Create a new stamp view to show on the DrawingView
+     * @param context the context of this new view
+     * @param geometry The sampled stroke that will be added to the new view
+     * @param paint The paint whose width and color the dabs take
+     * @param brush The brush whose dabs are stamped along the stroke
+     */
+    public StampView(Context context, StrokeGeometry geometry, Paint paint, StampBrush brush) {
+        // Dabs are stamped at their own width, so the outline is never filled.
+        super(context, geometry, paint, null);
+        this.mTrail = new DabTrail(geometry, brush);
+        this.mOnEvict = cell -> {
+            if (mTrail.usesCell(cell)) {
+                invalidate();
+            }
+        };
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        DabAtlas.getInstance().addOnEvictListener(mOnEvict);
+    }
+
+    /**
+     * Stops listening to the atlas and drops the trail's cache, for example once the stroke is
+     * baked.
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        DabAtlas.getInstance().removeOnEvictListener(mOnEvict);
+        mTrail.releaseCache();
+    }
+
+    public StampBrush getBrush() {
+        return mTrail.getBrush();
+    }
+
+    /**
+     * Computes the area one copy of the dabs covers, including how far they scatter from the
+     * stroke.
+     *
+     * @param out   Rectangle to store the area in, in document coordinates.
+     */
+    @Override
+    protected void getStrokeBounds(RectF out) {
+        mGeometry.getBounds(out);
+        mTrail.update(mPaint.getStrokeWidth());
+        float outset = mTrail.getReach() + 1;
+        out.inset(-outset, -outset);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected ParallelRasterizer.Item createItem() {
+        mTrail.update(mPaint.getStrokeWidth());
+        mTrail.prepare(mPaint.getColor(), 1f);
+        return mTrail.snapshot();
+    }
+
+    /**
+     * Renders one copy of the stroke by drawing its dabs, using a sprite at document resolution.
+     */
+    @Override
+    protected void drawStrokeFullDetail(Canvas canvas) {
+        drawStroke(canvas, 1f);
+    }
+
+    /**
+     * Renders one copy of the stroke by drawing its dabs, using a sprite sized for the zoom.
+     */
+    @Override
+    protected void drawStroke(Canvas canvas, float zoom) {
+        mTrail.update(mPaint.getStrokeWidth());
+        mTrail.prepare(mPaint.getColor(), zoom);
+        mTrail.draw(canvas);
+    }
+}
@@ -5,7 +5,14 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.RectF;
 import android.view.View;
+import android.view.ViewParent;
+
+import cse340.undo.geometry.StrokeGeometry;
+import cse340.undo.geometry.Symmetry;
+import cse340.undo.render.ParallelRasterizer;
+import cse340.undo.render.TiledRaster;
 
 /**
  * Simple little view which takes a path and paint object and uses and renders them.
@@ -18,6 +25,15 @@ public class StrokeView extends View {
     /** The paint brush with which to draw the path */
     protected final Paint mPaint;
 
+    /** Sampled points of the stroke, used to pick a level of detail, or null */
+    protected final StrokeGeometry mGeometry;
+
+    /** The paint with which to fill the outline of a variable width stroke, or null */
+    protected final Paint mFillPaint;
+
+    /** Copies the stroke is drawn as, or null to draw it once */
+    protected Symmetry mSymmetry;
+
     /**
      * Create a new stroke view to show on the DrawingView
      * @param context the context of this new view
@@ -28,15 +44,210 @@ public class StrokeView extends View {
         super(context);
         this.mPath = path;
         this.mPaint = paint;
+        this.mGeometry = null;
+        this.mFillPaint = null;
+    }
+
+    /**
+     * Create a new stroke view which draws the stroke at the level of detail the current zoom needs
+     * @param context the context of this new view
+     * @param geometry The sampled stroke that will be added to the new view
+     * @param paint The paint with which to draw the stroke
+     * @param fillPaint The paint with which to fill the outline if the stroke is variable width,
+     *                  shared like paint, or null if the subclass draws the stroke itself
+     */
+    public StrokeView(Context context, StrokeGeometry geometry, Paint paint, Paint fillPaint) {
+        super(context);
+        this.mPath = geometry.getPath();
+        this.mPaint = paint;
+        this.mGeometry = geometry;
+        this.mFillPaint = geometry.isVariableWidth() ? fillPaint : null;
+    }
+
+    /**
+     * @return Sampled points of the stroke, or null if it was created from a bare Path.
+     */
+    public StrokeGeometry getGeometry() {
+        return mGeometry;
+    }
+
+    /**
+     * @return Paint the stroke is drawn with. Do not modify it.
+     */
+    public Paint getPaint() {
+        return mPaint;
+    }
+
+    /**
+     * @return Copies the stroke is drawn as, or null if it is drawn once.
+     */
+    public Symmetry getSymmetry() {
+        return mSymmetry;
+    }
+
+    /**
+     * Draws the stroke as several copies of its geometry, each through its own transform.
+     *
+     * @param symmetry  Copies to draw the stroke as, or null to draw it once.
+     */
+    public void setSymmetry(Symmetry symmetry) {
+        mSymmetry = symmetry;
+        invalidate();
+    }
+
+    /**
+     * Draws the stroke at full detail into a raster, for example when it is flattened into the
+     * DrawingView's base layer.
+     *
+     * @param raster    Raster in document coordinates.
+     */
+    public void bake(TiledRaster raster) {
+        RectF bounds = new RectF();
+        getBounds(bounds);
+        raster.draw(bounds, this::drawFullDetail);
+    }
+
+    /**
+     * Draws the stroke at full detail, with every symmetric copy, straight from its own paths.
+     * Only for the UI thread; toItem makes a copy which can be drawn from any thread.
+     *
+     * @param canvas    Canvas in document coordinates.
+     */
+    public void drawFullDetail(Canvas canvas) {
+        if (mSymmetry == null) {
+            drawStrokeFullDetail(canvas);
+            return;
+        }
+        for (int i = 0; i < mSymmetry.getCopyCount(); i++) {
+            int save = canvas.save();
+            canvas.concat(mSymmetry.getTransform(i));
+            drawStrokeFullDetail(canvas);
+            canvas.restoreToCount(save);
+        }
+    }
+
+    /**
+     * Computes the area the stroke covers, including its width and every symmetric copy.
+     *
+     * @param out   Rectangle to store the area in, in document coordinates.
+     */
+    public void getBounds(RectF out) {
+        getStrokeBounds(out);
+        if (mSymmetry != null) {
+            mSymmetry.mapBounds(out, out);
+        }
+    }
+
+    /**
+     * Computes the area one copy of the stroke covers, including its width.
+     *
+     * @param out   Rectangle to store the area in, in document coordinates.
+     */
+    protected void getStrokeBounds(RectF out) {
+        float outset;
+        if (mGeometry == null) {
+            mPath.computeBounds(out, true);
+            outset = mPaint.getStrokeWidth() / 2 + 1;
+        } else {
+            mGeometry.getBounds(out);
+            outset = mPaint.getStrokeWidth() * mGeometry.getMaxWidth() / 2 + 1;
+        }
+        out.inset(-outset, -outset);
+    }
+
+    /**
+     * Creates an item drawing the stroke at full detail, from a copy of it, so it can be drawn from
+     * any thread however the stroke changes afterwards.
+     *
+     * @param bounds    Rectangle to store the area the stroke covers in, in document coordinates.
+     * @return Item drawing the stroke in document coordinates.
+     */
+    public ParallelRasterizer.Item toItem(RectF bounds) {
+        getBounds(bounds);
+        ParallelRasterizer.Item item = createItem();
+        Symmetry symmetry = mSymmetry;
+        if (symmetry == null) {
+            return item;
+        }
+        return canvas -> {
+            for (int i = 0; i < symmetry.getCopyCount(); i++) {
+                int save = canvas.save();
+                canvas.concat(symmetry.getTransform(i));
+                item.draw(canvas);
+                canvas.restoreToCount(save);
+            }
+        };
+    }
+
+    /**
+     * Creates an item drawing one copy of the stroke at full detail, from a copy of it, so it can
+     * be drawn from any thread however the stroke changes afterwards.
+     *
+     * @return Item drawing the stroke in document coordinates.
+     */
+    protected ParallelRasterizer.Item createItem() {
+        // The geometry rebuilds its paths in place when it is erased or transformed.
+        if (mFillPaint != null) {
+            Path outline = new Path(mGeometry.getOutline(mPaint.getStrokeWidth()));
+            Paint paint = mFillPaint;
+            return canvas -> canvas.drawPath(outline, paint);
+        }
+        Path path = new Path(mGeometry == null ? mPath : mGeometry.getPath());
+        Paint paint = mPaint;
+        return canvas -> canvas.drawPath(path, paint);
     }
 
     /**
-     * Renders the stroke by drawing the path on the view Canvas.
+     * Renders the stroke once for each of its symmetric copies, through the copy's transform.
      */
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
-        canvas.drawPath(mPath, mPaint);
+        ViewParent parent = getParent();
+        DrawingView drawing = parent instanceof LayerView
+                ? ((LayerView) parent).getDrawingView() : null;
+        float zoom = drawing != null ? drawing.getZoom() : 1f;
+        if (mSymmetry == null) {
+            drawStroke(canvas, zoom);
+            return;
+        }
+        for (int i = 0; i < mSymmetry.getCopyCount(); i++) {
+            int save = canvas.save();
+            canvas.concat(mSymmetry.getTransform(i));
+            drawStroke(canvas, zoom);
+            canvas.restoreToCount(save);
+        }
+    }
+
+    /**
+     * Renders one copy of the stroke at full detail, as createItem's item does.
+     *
+     * @param canvas    Canvas in document coordinates.
+     */
+    protected void drawStrokeFullDetail(Canvas canvas) {
+        if (mFillPaint != null) {
+            canvas.drawPath(mGeometry.getOutline(mPaint.getStrokeWidth()), mFillPaint);
+        } else {
+            canvas.drawPath(mGeometry == null ? mPath : mGeometry.getPath(), mPaint);
+        }
+    }
+
+    /**
+     * Renders one copy of the stroke by drawing the path. Sampled strokes use the coarsest level of
+     * detail whose error is below a pixel at the given zoom. Variable width strokes fill their
+     * cached outline instead.
+     *
+     * @param canvas    Canvas in document coordinates.
+     * @param zoom      Pixels per document unit.
+     */
+    protected void drawStroke(Canvas canvas, float zoom) {
+        if (mFillPaint != null) {
+            canvas.drawPath(mGeometry.getOutline(mPaint.getStrokeWidth()), mFillPaint);
+        } else if (mGeometry == null) {
+            canvas.drawPath(mPath, mPaint);
+        } else {
+            canvas.drawPath(mGeometry.getPath(1f / zoom), mPaint);
+        }
     }
 }
@@ -0,0 +1,216 @@
+package cse340.undo.app;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+
+import cse340.undo.geometry.StrokeGeometry;
+import cse340.undo.render.GlyphRunCache;
+import cse340.undo.render.ParallelRasterizer;
+
+/**
+ * Stroke view which draws a text label. The label's geometry is the closed outline of the box its
+ * text takes up, so labels are indexed, erased, selected and transformed like any other stroke, and
+ * transforming the box moves, scales or rotates the text with it. The text itself is filled from a
+ * shared GlyphRunCache run, so redraws don't shape it again.
+ *
+ * Labels are atomic on purpose: only the box is indexed, not the glyph outlines, so text can't be
+ * erased letter by letter. Touching any part of the box with the eraser erases the whole box, and
+ * undoing the erase brings the whole label back.
+ *
+ * @see EraserTool
+ */
+@SuppressLint("ViewConstructor")
+public class TextAnnotationView extends StrokeView {
+    /** Text shown, and the typeface and size it is shaped in. */
+    private String mText;
+    private final Typeface mTypeface;
+    private final float mSize;
+
+    /** Shaped text. */
+    private GlyphRunCache.Run mRun;
+
+    /** The paint with which to fill the glyphs. */
+    private final Paint mTextPaint;
+
+    /** Scratch values for computing the frame. */
+    private final Matrix mFrame;
+    private final RectF mBox;
+
+    /**
+     * Create a new label to show on the DrawingView
+     * @param context the context of this new view
+     * @param frame Outline of the box the text takes up, made by createFrame
+     * @param paint The paint whose color the text takes
+     * @param text The text to show
+     * @param typeface The typeface to shape the text in, or null for the default
+     * @param size The text size, in document units, before any transform
+     */
+    public TextAnnotationView(Context context, StrokeGeometry frame, Paint paint, String text,
+                              Typeface typeface, float size) {
+        super(context, frame, paint, null);
+        this.mText = text;
+        this.mTypeface = typeface;
+        this.mSize = size;
+        this.mRun = GlyphRunCache.getInstance().get(text, typeface, size);
+        this.mTextPaint = new Paint(paint);
+        this.mTextPaint.setStyle(Paint.Style.FILL);
+        this.mFrame = new Matrix();
+        this.mBox = new RectF();
+    }
+
+    /**
+     * Creates the geometry of a new label: the outline of the box its text takes up, clockwise
+     * from the top left.
+     *
+     * @param text      Text of the label.
+     * @param typeface  Typeface to shape it in, or null for the default.
+     * @param size      Text size, in document units.
+     * @param x         Horizontal coordinate of the start of the first baseline.
+     * @param y         Vertical coordinate of the start of the first baseline.
+     * @return Sealed geometry of the label.
+     */
+    public static StrokeGeometry createFrame(String text, Typeface typeface, float size,
+                                             float x, float y) {
+        RectF box = new RectF();
+        GlyphRunCache.getInstance().get(text, typeface, size).getBox(box);
+        box.offset(x, y);
+        StrokeGeometry frame = new StrokeGeometry(box.left, box.top);
+        frame.add(box.right, box.top);
+        frame.add(box.right, box.bottom);
+        frame.add(box.left, box.bottom);
+        frame.add(box.left, box.top);
+        frame.seal();
+        return frame;
+    }
+
+    public String getText() {
+        return mText;
+    }
+
+    /**
+     * Changes the text, resizing the label's box to fit it while keeping its transform.
+     *
+     * @param text  New text.
+     * @param layer Layer the label is in, whose index is updated.
+     * @throws IllegalArgumentException if text is null or empty.
+     */
+    public void setText(String text, LayerView layer) {
+        GlyphRunCache.Run run = GlyphRunCache.getInstance().get(text, mTypeface, mSize);
+        RectF oldBox = new RectF(), newBox = new RectF();
+        mRun.getBox(oldBox);
+        run.getBox(newBox);
+
+        // Maps the old box onto the new one in the label's own coordinates, then puts the result
+        // through the label's transform.
+        Matrix frame = new Matrix(), matrix = new Matrix();
+        getFrame(frame);
+        frame.invert(matrix);
+        Matrix resize = new Matrix();
+        resize.setTranslate(-oldBox.left, -oldBox.top);
+        resize.postScale(newBox.width() / oldBox.width(), newBox.height() / oldBox.height());
+        resize.postTranslate(newBox.left, newBox.top);
+        matrix.postConcat(resize);
+        matrix.postConcat(frame);
+
+        mText = text;
+        mRun = run;
+        layer.transformStroke(this, matrix);
+    }
+
+    /**
+     * Tests whether a point is inside the label's box.
+     *
+     * @param x Horizontal coordinate, in document coordinates.
+     * @param y Vertical coordinate, in document coordinates.
+     * @return True if the point is inside the box and the label isn't erased.
+     */
+    public boolean contains(float x, float y) {
+        if (mGeometry.hasErased()) {
+            return false;
+        }
+        Matrix inverse = new Matrix();
+        getFrame(mFrame);
+        if (!mFrame.invert(inverse)) {
+            return false;
+        }
+        float[] point = {x, y};
+        inverse.mapPoints(point);
+        mRun.getBox(mBox);
+        return mBox.contains(point[0], point[1]);
+    }
+
+    /**
+     * Computes the transform from the run's coordinates to document coordinates, from where the
+     * corners of the box are now.
+     */
+    private void getFrame(Matrix out) {
+        mRun.getBox(mBox);
+        StrokeGeometry g = mGeometry;
+        float axX = (g.getX(1) - g.getX(0)) / mBox.width();
+        float axY = (g.getY(1) - g.getY(0)) / mBox.width();
+        float ayX = (g.getX(3) - g.getX(0)) / mBox.height();
+        float ayY = (g.getY(3) - g.getY(0)) / mBox.height();
+        out.setValues(new float[] {
+                axX, ayX, g.getX(0) - mBox.left * axX - mBox.top * ayX,
+                axY, ayY, g.getY(0) - mBox.left * axY - mBox.top * ayY,
+                0f, 0f, 1f
+        });
+    }
+
+    /**
+     * Computes the area of the label's box.
+     *
+     * @param out   Rectangle to store the area in, in document coordinates.
+     */
+    @Override
+    protected void getStrokeBounds(RectF out) {
+        mGeometry.getBounds(out);
+        out.inset(-1, -1);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected ParallelRasterizer.Item createItem() {
+        if (mGeometry.hasErased()) {
+            return canvas -> { };
+        }
+        Matrix frame = new Matrix();
+        getFrame(frame);
+        Path path = mRun.getPath();
+        Paint paint = mTextPaint;
+        return canvas -> {
+            int save = canvas.save();
+            canvas.concat(frame);
+            canvas.drawPath(path, paint);
+            canvas.restoreToCount(save);
+        };
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void drawStrokeFullDetail(Canvas canvas) {
+        drawStroke(canvas, 1f);
+    }
+
+    /**
+     * Renders the label by filling its cached glyph outlines through its transform, unless any
+     * part of it has been erased.
+     */
+    @Override
+    protected void drawStroke(Canvas canvas, float zoom) {
+        if (mGeometry.hasErased()) {
+            return;
+        }
+        getFrame(mFrame);
+        int save = canvas.save();
+        canvas.concat(mFrame);
+        canvas.drawPath(mRun.getPath(), mTextPaint);
+        canvas.restoreToCount(save);
+    }
+}
@@ -0,0 +1,147 @@
+package cse340.undo.app;
+
+import android.app.AlertDialog;
+import android.graphics.PorterDuff;
+import android.graphics.Typeface;
+import android.view.View;
+import android.widget.EditText;
+
+import cse340.undo.R;
+import cse340.undo.actions.EditTextAction;
+import cse340.undo.actions.TextAction;
+import cse340.undo.brush.BrushStyleRegistry;
+import cse340.undo.trace.InputTraceRecorder;
+
+/**
+ * Tool which places text labels in the active layer. Tapping a label asks for new text for it and
+ * reports an EditTextAction; tapping anywhere else asks for the text of a new label, whose first
+ * baseline starts at the tap, and reports a TextAction.
+ *
+ * The entered text is recorded into the DrawingView's input trace, if any. While a trace is
+ * replayed no dialog is shown; the tap waits for the recorded text, passed to enterText.
+ *
+ * @see TextAction
+ * @see EditTextAction
+ */
+public class TextTool implements DrawingView.Tool {
+    /** Default text size, in screen pixels at the zoom a label is placed at. */
+    public static final float DEFAULT_TEXT_SIZE = 48f;
+
+    private float mTextSize;
+    private Typeface mTypeface;
+
+    /** Where the last tap asked for text: its layer, the label tapped or null, and the point. */
+    private LayerView mLayer;
+    private TextAnnotationView mLabel;
+    private float mX, mY, mSize;
+
+    public TextTool() {
+        mTextSize = DEFAULT_TEXT_SIZE;
+    }
+
+    public float getTextSize() {
+        return mTextSize;
+    }
+
+    /**
+     * @param size  Text size of new labels, in screen pixels at the zoom they are placed at.
+     * @throws IllegalArgumentException if size is not positive.
+     */
+    public void setTextSize(float size) {
+        if (!(size > 0f)) {
+            throw new IllegalArgumentException("Illegal text size: " + size);
+        }
+        mTextSize = size;
+    }
+
+    /**
+     * @param typeface  Typeface of new labels, or null for the default.
+     */
+    public void setTypeface(Typeface typeface) {
+        mTypeface = typeface;
+    }
+
+    @Override
+    public void onStart(DrawingView view, float x, float y) { }
+
+    @Override
+    public void onMove(DrawingView view, float x, float y) { }
+
+    @Override
+    public void onEnd(DrawingView view, float x, float y) {
+        LayerView layer = view.getLayer(view.getActiveLayerId());
+        if (layer == null || !layer.isLayerVisible()) {
+            return;
+        }
+
+        mLayer = layer;
+        mLabel = findLabel(layer, x, y);
+        mX = x;
+        mY = y;
+        mSize = mTextSize / view.getZoom();
+        if (view.isReplaying()) {
+            return;
+        }
+
+        EditText input = new EditText(view.getContext());
+        input.setHint(R.string.text_hint);
+        if (mLabel != null) {
+            input.setText(mLabel.getText());
+        }
+        new AlertDialog.Builder(view.getContext())
+                .setTitle(mLabel == null ? R.string.text_add_title : R.string.text_edit_title)
+                .setView(input)
+                .setPositiveButton(android.R.string.ok, (dialog, which) -> {
+                    String text = input.getText().toString();
+                    InputTraceRecorder recorder = view.getTraceRecorder();
+                    if (recorder != null) {
+                        recorder.recordText(text);
+                    }
+                    enterText(view, text);
+                })
+                .setNegativeButton(android.R.string.cancel, (dialog, which) -> mLayer = null)
+                .show();
+    }
+
+    /**
+     * Uses text entered for the last tap: adds a label there, or changes the text of the label
+     * tapped. Does nothing if the text is blank or no tap is waiting for text.
+     *
+     * @param view  DrawingView the tap was in.
+     * @param text  Text entered, by the user or from a replayed trace.
+     */
+    public void enterText(DrawingView view, String text) {
+        LayerView layer = mLayer;
+        TextAnnotationView label = mLabel;
+        mLayer = null;
+        mLabel = null;
+        if (layer == null || text.trim().isEmpty()) {
+            return;
+        }
+
+        if (label == null) {
+            int styleId = BrushStyleRegistry.getInstance().intern(
+                    view.getCurrentPaint(), PorterDuff.Mode.SRC_OVER);
+            view.completeAction(new TextAction(text, mTypeface, mSize, mX, mY, styleId));
+        } else if (!text.equals(label.getText()) && label.getParent() == layer) {
+            view.completeAction(new EditTextAction(layer.getLayerId(),
+                    label.getGeometry().getId(), label.getText(), text));
+        }
+    }
+
+    @Override
+    public void onCancel(DrawingView view) { }
+
+    /**
+     * @return The topmost label of the layer whose box contains the point, or null.
+     */
+    private static TextAnnotationView findLabel(LayerView layer, float x, float y) {
+        for (int i = layer.getChildCount() - 1; i >= 0; i--) {
+            View child = layer.getChildAt(i);
+            if (child instanceof TextAnnotationView && ((TextAnnotationView) child).contains(x, y)) {
+                return (TextAnnotationView) child;
+            }
+        }
+        return null;
+    }
+}
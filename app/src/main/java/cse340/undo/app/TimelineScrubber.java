@@ -0,0 +1,258 @@
+package cse340.undo.app;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+import android.view.Choreographer;
+import android.widget.SeekBar;
+
+import java.util.Map;
+
+import cse340.undo.render.WorkScheduler;
+
+/**
+ * Drives a SeekBar which lets the user drag through the whole history. Moving the thumb shows the
+ * nearest cached rendering of the history immediately, then rebuilds the real state over the
+ * following frames, spending at most the frame budget per frame. Moving the thumb again simply
+ * retargets the work in progress.
+ *
+ * @see AbstractReversibleDrawingActivity#seekHistory(int, long)
+ */
+public class TimelineScrubber implements Choreographer.FrameCallback, SeekBar.OnSeekBarChangeListener {
+    /** Default time spent rebuilding history per frame, about half a 60 Hz frame. */
+    public static final long DEFAULT_FRAME_BUDGET_NANOS = 8_000_000L;
+
+    /** Size of cached previews relative to the DrawingView. */
+    private static final float PREVIEW_SCALE = 0.25f;
+
+    /** Maximum memory used by cached previews. */
+    private static final int PREVIEW_CACHE_BYTES = 8 * 1024 * 1024;
+
+    /** Value of mTarget when no scrub is in progress. */
+    private static final int NO_TARGET = -1;
+
+    private final AbstractReversibleDrawingActivity mActivity;
+    private final DrawingView mDrawingView;
+    private final SeekBar mSeekBar;
+
+    /** Previews of previously visited history positions, keyed by position. */
+    private final LruCache<Integer, Bitmap> mPreviews;
+
+    /** Time spent rebuilding history per frame. */
+    private long mFrameBudgetNanos;
+
+    /** History position the user has scrubbed to, or NO_TARGET. */
+    private int mTarget;
+
+    /** True if a frame callback is pending. */
+    private boolean mFramePosted;
+
+    /** True while the user is dragging the thumb. */
+    private boolean mTracking;
+
+    /** History position when the user started dragging the thumb. */
+    private int mTrackingFrom;
+
+    /** Position whose preview is being rendered, or NO_TARGET. */
+    private int mPendingPreview;
+
+    /** Incremented when previews are dropped, so renders started before aren't cached. */
+    private int mPreviewGeneration;
+
+    /**
+     * Creates a scrubber and registers it with the given SeekBar.
+     *
+     * @param activity      Activity whose history is scrubbed.
+     * @param drawingView   View showing the drawing.
+     * @param seekBar       Timeline control.
+     */
+    public TimelineScrubber(AbstractReversibleDrawingActivity activity, DrawingView drawingView,
+                            SeekBar seekBar) {
+        mActivity = activity;
+        mDrawingView = drawingView;
+        mSeekBar = seekBar;
+        mFrameBudgetNanos = DEFAULT_FRAME_BUDGET_NANOS;
+        mTarget = NO_TARGET;
+        mPendingPreview = NO_TARGET;
+
+        mPreviews = new LruCache<Integer, Bitmap>(PREVIEW_CACHE_BYTES) {
+            @Override
+            protected int sizeOf(Integer position, Bitmap preview) {
+                return preview.getByteCount();
+            }
+        };
+
+        mSeekBar.setOnSeekBarChangeListener(this);
+    }
+
+    /**
+     * Moves the history towards the given position, showing the nearest cached preview until it
+     * has been reached.
+     *
+     * @param position  Number of done actions to scrub to.
+     */
+    public void scrubTo(int position) {
+        if (position == mActivity.getHistoryPosition()) {
+            finish();
+            return;
+        }
+
+        mTarget = position;
+        mDrawingView.setPreview(findNearestPreview(position));
+        if (!mFramePosted) {
+            mFramePosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Rebuilds as much of the target state as fits in the frame budget.
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFramePosted = false;
+        if (mTarget == NO_TARGET) {
+            return;
+        }
+
+        if (mActivity.seekHistory(mTarget, System.nanoTime() + mFrameBudgetNanos)) {
+            finish();
+        } else {
+            mFramePosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Stops scrubbing at the current position. Once the user has let go of the thumb, the position
+     * is also captured as a preview; positions merely passed while dragging are not, so a drag
+     * costs at most one capture.
+     */
+    private void finish() {
+        mTarget = NO_TARGET;
+        mDrawingView.setPreview(null);
+        if (!mTracking) {
+            cachePreview(mActivity.getHistoryPosition());
+        }
+    }
+
+    /**
+     * Must be called before the history is undone or redone by anything other than this scrubber.
+     * Stops the scrub in progress where it is, keeping the previews.
+     */
+    public void cancel() {
+        mTarget = NO_TARGET;
+        mDrawingView.setPreview(null);
+        if (mFramePosted) {
+            mFramePosted = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    /**
+     * Starts rendering a preview of the current state, which is cached under position once it is
+     * ready, unless the history changed in the meantime.
+     */
+    private void cachePreview(int position) {
+        if (mPreviews.get(position) != null || mPendingPreview == position) {
+            return;
+        }
+
+        int generation = mPreviewGeneration;
+        mPendingPreview = position;
+        boolean started = mDrawingView.capture(PREVIEW_SCALE, WorkScheduler.Lane.EXPORT,
+                preview -> {
+                    if (mPendingPreview == position) {
+                        mPendingPreview = NO_TARGET;
+                    }
+                    if (preview != null && generation == mPreviewGeneration) {
+                        mPreviews.put(position, preview);
+                    }
+                });
+        if (!started) {
+            mPendingPreview = NO_TARGET;
+        }
+    }
+
+    /**
+     * @return The cached preview closest to position, or null if nothing is cached.
+     */
+    private Bitmap findNearestPreview(int position) {
+        Bitmap nearest = null;
+        int nearestDistance = Integer.MAX_VALUE;
+        for (Map.Entry<Integer, Bitmap> entry : mPreviews.snapshot().entrySet()) {
+            int distance = Math.abs(entry.getKey() - position);
+            if (distance < nearestDistance) {
+                nearest = entry.getValue();
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Must be called before the history is modified by anything other than this scrubber. Cancels
+     * the scrub in progress and drops previews, whose positions are no longer meaningful.
+     */
+    public void onHistoryChanged() {
+        cancel();
+        mPreviewGeneration++;
+        mPendingPreview = NO_TARGET;
+        mPreviews.evictAll();
+    }
+
+    /**
+     * Moves the thumb to reflect the current history, unless the user is dragging it.
+     *
+     * @param position  Number of done actions.
+     * @param length    Total number of actions in the history.
+     */
+    public void syncWithHistory(int position, int length) {
+        mSeekBar.setMax(length);
+        if (mTarget == NO_TARGET) {
+            mSeekBar.setProgress(position);
+        }
+    }
+
+    public long getFrameBudgetNanos() {
+        return mFrameBudgetNanos;
+    }
+
+    /**
+     * @param frameBudgetNanos  Time spent rebuilding history per frame.
+     */
+    public void setFrameBudgetNanos(long frameBudgetNanos) {
+        mFrameBudgetNanos = frameBudgetNanos;
+    }
+
+    @Override
+    public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+        if (fromUser) {
+            scrubTo(progress);
+            if (!mTracking) {
+                // Moved without a drag, for example with the keyboard.
+                mActivity.onSeekCommitted(progress);
+            }
+        }
+    }
+
+    @Override
+    public void onStartTrackingTouch(SeekBar seekBar) {
+        // Make sure the state the user started from can be previewed instantly.
+        cachePreview(mActivity.getHistoryPosition());
+        mTracking = true;
+        mTrackingFrom = mActivity.getHistoryPosition();
+    }
+
+    @Override
+    public void onStopTrackingTouch(SeekBar seekBar) {
+        mTracking = false;
+        // The scrub is committed when the user lets go, however many frames reaching it takes.
+        if (seekBar.getProgress() != mTrackingFrom) {
+            mActivity.onSeekCommitted(seekBar.getProgress());
+        }
+        if (mTarget == NO_TARGET) {
+            // Already there; otherwise finish captures the target once it is reached.
+            cachePreview(mActivity.getHistoryPosition());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package cse340.undo.brush;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+
+/**
+ * Immutable description of how a stroke is painted. Two styles with the same fields are equal, so
+ * they can be interned by BrushStyleRegistry and share a single Paint.
+ *
+ * @see BrushStyleRegistry
+ */
+public final class BrushStyle {
+    /** Color of the brush, without its alpha channel. */
+    @ColorInt
+    private final int mColor;
+
+    /** Width of the brush in pixels. */
+    private final float mWidth;
+
+    /** Shape of the stroke ends. */
+    private final Paint.Cap mCap;
+
+    /** Shape of the stroke corners. */
+    private final Paint.Join mJoin;
+
+    /** Opacity of the brush, from 0 to 255. */
+    private final int mAlpha;
+
+    /** How the stroke is blended with what is already on the canvas. */
+    private final PorterDuff.Mode mBlendMode;
+
+    /**
+     * Creates a new brush style.
+     *
+     * @param color     Color of the brush. Its alpha channel is ignored in favor of alpha.
+     * @param width     Width of the brush in pixels.
+     * @param cap       Shape of the stroke ends.
+     * @param join      Shape of the stroke corners.
+     * @param alpha     Opacity of the brush, from 0 to 255.
+     * @param blendMode How the stroke is blended with the canvas.
+     * @throws IllegalArgumentException if any argument is null, or width or alpha is out of range.
+     */
+    public BrushStyle(@ColorInt int color, float width, Paint.Cap cap, Paint.Join join, int alpha,
+                      PorterDuff.Mode blendMode) {
+        if (cap == null || join == null || blendMode == null) {
+            throw new IllegalArgumentException("Null cap, join or blend mode");
+        }
+        if (width < 0 || alpha < 0 || alpha > 255) {
+            throw new IllegalArgumentException("Illegal width " + width + " or alpha " + alpha);
+        }
+
+        this.mColor = color | 0xFF000000;
+        this.mWidth = width;
+        this.mCap = cap;
+        this.mJoin = join;
+        this.mAlpha = alpha;
+        this.mBlendMode = blendMode;
+    }
+
+    /**
+     * Creates a style describing the current state of the given paint.
+     *
+     * @param paint     Paint to describe.
+     * @param blendMode Blend mode the paint draws with.
+     * @return Style with the color, width, cap, join and alpha of paint.
+     */
+    public static BrushStyle from(Paint paint, PorterDuff.Mode blendMode) {
+        return new BrushStyle(paint.getColor(), paint.getStrokeWidth(), paint.getStrokeCap(),
+                paint.getStrokeJoin(), paint.getAlpha(), blendMode);
+    }
+
+    @ColorInt
+    public int getColor() {
+        return mColor;
+    }
+
+    public float getWidth() {
+        return mWidth;
+    }
+
+    public Paint.Cap getCap() {
+        return mCap;
+    }
+
+    public Paint.Join getJoin() {
+        return mJoin;
+    }
+
+    public int getAlpha() {
+        return mAlpha;
+    }
+
+    public PorterDuff.Mode getBlendMode() {
+        return mBlendMode;
+    }
+
+    /**
+     * @return True if this style has exactly the given properties.
+     */
+    boolean matches(@ColorInt int color, float width, Paint.Cap cap, Paint.Join join, int alpha,
+                    PorterDuff.Mode blendMode) {
+        return mColor == (color | 0xFF000000) && mWidth == width && mCap == cap && mJoin == join
+                && mAlpha == alpha && mBlendMode == blendMode;
+    }
+
+    /**
+     * Creates a new Paint which draws strokes in this style.
+     *
+     * @return Paint configured with this style.
+     */
+    Paint createPaint() {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setDither(true);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeCap(mCap);
+        paint.setStrokeJoin(mJoin);
+        paint.setStrokeWidth(mWidth);
+        paint.setColor(mColor);
+        paint.setAlpha(mAlpha);
+        if (mBlendMode != PorterDuff.Mode.SRC_OVER) {
+            paint.setXfermode(new PorterDuffXfermode(mBlendMode));
+        }
+        return paint;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BrushStyle)) {
+            return false;
+        }
+        BrushStyle other = (BrushStyle) o;
+        return matches(other.mColor, other.mWidth, other.mCap, other.mJoin, other.mAlpha,
+                other.mBlendMode);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mColor;
+        result = 31 * result + Float.floatToIntBits(mWidth);
+        result = 31 * result + mCap.hashCode();
+        result = 31 * result + mJoin.hashCode();
+        result = 31 * result + mAlpha;
+        result = 31 * result + mBlendMode.hashCode();
+        return result;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "BrushStyle RGBA = (" +
+                Color.red(mColor) +
+                ", " +
+                Color.green(mColor) +
+                ", " +
+                Color.blue(mColor) +
+                ", " +
+                mAlpha +
+                "), width = " +
+                mWidth +
+                ", " +
+                mBlendMode;
+    }
+}
@@ -0,0 +1,132 @@
+package cse340.undo.brush;
+
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.support.annotation.ColorInt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns brush styles so that every stroke drawn with the same color, width, cap, join, alpha and
+ * blend mode shares one Paint. Strokes refer to their style by a small integer id, which stays
+ * valid for the lifetime of the registry.
+ *
+ * Paints handed out by the registry are shared and must never be modified.
+ *
+ * @see BrushStyle
+ */
+public final class BrushStyleRegistry {
+    /** Registry shared by every DrawingView in the process. */
+    private static final BrushStyleRegistry INSTANCE = new BrushStyleRegistry();
+
+    /** Map from style to its id. */
+    private final Map<BrushStyle, Integer> mIds;
+
+    /** Styles and their paints, indexed by id. */
+    private final List<BrushStyle> mStyles;
+    private final List<Paint> mPaints;
+
+    /** Paints filling the outlines of variable width strokes, indexed by id; null until needed. */
+    private final List<Paint> mFillPaints;
+
+    /** Id of the most recently interned style. Strokes usually repeat the last style. */
+    private int mLastId;
+
+    /**
+     * Creates an empty registry.
+     */
+    public BrushStyleRegistry() {
+        mIds = new HashMap<>();
+        mStyles = new ArrayList<>();
+        mPaints = new ArrayList<>();
+        mFillPaints = new ArrayList<>();
+        mLastId = -1;
+    }
+
+    /**
+     * @return The registry shared by every DrawingView.
+     */
+    public static BrushStyleRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the id of the given style, registering it if it hasn't been seen before.
+     *
+     * @param style Style to intern.
+     * @return Id of the style.
+     */
+    public synchronized int intern(BrushStyle style) {
+        Integer id = mIds.get(style);
+        if (id == null) {
+            id = mStyles.size();
+            mIds.put(style, id);
+            mStyles.add(style);
+            mPaints.add(style.createPaint());
+            mFillPaints.add(null);
+        }
+        mLastId = id;
+        return id;
+    }
+
+    /**
+     * Returns the id of the style which matches the given paint. Repeating the last style does not
+     * allocate.
+     *
+     * @param paint     Paint to intern the current state of.
+     * @param blendMode Blend mode the paint draws with.
+     * @return Id of the matching style.
+     */
+    public synchronized int intern(Paint paint, PorterDuff.Mode blendMode) {
+        @ColorInt int color = paint.getColor();
+        if (mLastId >= 0 && mStyles.get(mLastId).matches(color, paint.getStrokeWidth(),
+                paint.getStrokeCap(), paint.getStrokeJoin(), paint.getAlpha(), blendMode)) {
+            return mLastId;
+        }
+        return intern(BrushStyle.from(paint, blendMode));
+    }
+
+    /**
+     * @param id    Id returned by intern.
+     * @return The style with the given id.
+     * @throws IndexOutOfBoundsException if the id was never handed out.
+     */
+    public synchronized BrushStyle getStyle(int id) {
+        return mStyles.get(id);
+    }
+
+    /**
+     * @param id    Id returned by intern.
+     * @return The shared paint for the style with the given id. Do not modify it.
+     * @throws IndexOutOfBoundsException if the id was never handed out.
+     */
+    public synchronized Paint getPaint(int id) {
+        return mPaints.get(id);
+    }
+
+    /**
+     * @param id    Id returned by intern.
+     * @return The shared paint filling the outlines of variable width strokes of the style with the
+     *         given id: the style's paint, but filling instead of stroking. Do not modify it.
+     * @throws IndexOutOfBoundsException if the id was never handed out.
+     */
+    public synchronized Paint getFillPaint(int id) {
+        Paint paint = mFillPaints.get(id);
+        if (paint == null) {
+            paint = new Paint(mPaints.get(id));
+            paint.setStyle(Paint.Style.FILL);
+            mFillPaints.set(id, paint);
+        }
+        return paint;
+    }
+
+    /**
+     * @return Number of distinct styles interned so far.
+     */
+    public synchronized int size() {
+        return mStyles.size();
+    }
+}
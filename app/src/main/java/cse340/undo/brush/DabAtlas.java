@@ -0,0 +1,190 @@
+package cse340.undo.brush;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.support.annotation.ColorInt;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One bitmap holding the dab sprites of every stamp brush, size and color in use, so a whole stroke
+ * of dabs can be drawn from a single texture. The atlas is a grid of square cells; each sprite is
+ * rendered once into the top left of a cell. When every cell is taken, the least recently used
+ * sprite is evicted and its cell reused.
+ *
+ * Strokes look their sprite up every time they are drawn, so an evicted sprite is rendered again
+ * when it is next needed. Each cell has a generation, incremented when it is given to another
+ * sprite, so a trail can tell its sprite was overwritten since it looked it up; OnEvictListeners
+ * are told as well, so views whose last drawing used the cell can draw again. Use from the UI
+ * thread, except getGeneration.
+ */
+public final class DabAtlas {
+    private static final String LOG_TAG = DabAtlas.class.getSimpleName();
+
+    /** Width and height of a cell, and the largest sprite size, in pixels. */
+    public static final int CELL_SIZE = 64;
+
+    /** Smallest sprite size, in pixels. */
+    public static final int MIN_SPRITE_SIZE = 8;
+
+    /** Number of cells along each side of the atlas. */
+    private static final int CELLS_PER_SIDE = 16;
+
+    private static final DabAtlas INSTANCE = new DabAtlas();
+
+    /**
+     * Listener told when a cell is given to another sprite.
+     */
+    public interface OnEvictListener {
+        /**
+         * @param cell  Index of the cell, which now holds a different sprite.
+         */
+        void onCellEvicted(int cell);
+    }
+
+    /** Cell of each sprite, by key, in order of use. */
+    private final LinkedHashMap<Long, Integer> mCells;
+
+    /** The atlas and the paint which draws from it, created on first use. */
+    private Bitmap mBitmap;
+    private Paint mPaint;
+
+    /** Times each cell was given to another sprite. */
+    private final int[] mGenerations;
+
+    private final List<OnEvictListener> mListeners;
+
+    /** Scratch pixels for rendering a sprite. */
+    private final int[] mPixels;
+
+    /** Number of sprites rendered, including ones rendered again after eviction. */
+    private int mRendered;
+
+    private DabAtlas() {
+        mCells = new LinkedHashMap<>(CELLS_PER_SIDE * CELLS_PER_SIDE, 0.75f, true);
+        mGenerations = new int[CELLS_PER_SIDE * CELLS_PER_SIDE];
+        mListeners = new ArrayList<>();
+        mPixels = new int[CELL_SIZE * CELL_SIZE];
+    }
+
+    /**
+     * @return The atlas shared by every stamp stroke.
+     */
+    public static DabAtlas getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Chooses the sprite size for dabs of a given size on screen.
+     *
+     * @param diameter  Largest dab diameter, in pixels.
+     * @return Smallest power of two at least the diameter, within [MIN_SPRITE_SIZE, CELL_SIZE].
+     */
+    public static int spriteSize(float diameter) {
+        int size = MIN_SPRITE_SIZE;
+        while (size < CELL_SIZE && size < diameter) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the cell holding a sprite, rendering it if it isn't in the atlas.
+     *
+     * @param brush Brush of the dab.
+     * @param color Color of the dab.
+     * @param size  Sprite size returned by spriteSize.
+     * @return Index of the cell holding the sprite.
+     */
+    public int getCell(StampBrush brush, @ColorInt int color, int size) {
+        long key = ((long) color << 32) | ((long) brush.ordinal() << 8) | size;
+        Integer cell = mCells.get(key);
+        if (cell != null) {
+            return cell;
+        }
+
+        boolean evicted = mCells.size() == CELLS_PER_SIDE * CELLS_PER_SIDE;
+        if (!evicted) {
+            cell = mCells.size();
+        } else {
+            Iterator<Map.Entry<Long, Integer>> eldest = mCells.entrySet().iterator();
+            cell = eldest.next().getValue();
+            eldest.remove();
+            mGenerations[cell]++;
+        }
+        mCells.put(key, cell);
+
+        brush.renderDab(mPixels, size, color);
+        getBitmap().setPixels(mPixels, 0, size, getCellLeft(cell), getCellTop(cell), size, size);
+        if (evicted) {
+            for (int i = mListeners.size() - 1; i >= 0; i--) {
+                mListeners.get(i).onCellEvicted(cell);
+            }
+        }
+        mRendered++;
+        if (mRendered % 64 == 0) {
+            Log.i(LOG_TAG, "Rendered " + mRendered + " sprites, " + mCells.size() + " in use");
+        }
+        return cell;
+    }
+
+    /**
+     * @param cell  Index of a cell.
+     * @return Number of times the cell was given to another sprite. May be read from any thread.
+     */
+    public int getGeneration(int cell) {
+        return mGenerations[cell];
+    }
+
+    public void addOnEvictListener(OnEvictListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeOnEvictListener(OnEvictListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @return Left edge of a cell in the atlas, in pixels.
+     */
+    public static int getCellLeft(int cell) {
+        return cell % CELLS_PER_SIDE * CELL_SIZE;
+    }
+
+    /**
+     * @return Top edge of a cell in the atlas, in pixels.
+     */
+    public static int getCellTop(int cell) {
+        return cell / CELLS_PER_SIDE * CELL_SIZE;
+    }
+
+    /**
+     * @return The atlas bitmap. Do not modify it.
+     */
+    public Bitmap getBitmap() {
+        if (mBitmap == null) {
+            mBitmap = Bitmap.createBitmap(CELL_SIZE * CELLS_PER_SIDE, CELL_SIZE * CELLS_PER_SIDE,
+                    Bitmap.Config.ARGB_8888);
+        }
+        return mBitmap;
+    }
+
+    /**
+     * @return Paint whose shader samples the atlas, for drawing textured vertices. Do not modify it.
+     */
+    public Paint getPaint() {
+        if (mPaint == null) {
+            mPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
+            mPaint.setShader(new BitmapShader(getBitmap(), Shader.TileMode.CLAMP,
+                    Shader.TileMode.CLAMP));
+        }
+        return mPaint;
+    }
+}
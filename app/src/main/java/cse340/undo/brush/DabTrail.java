@@ -0,0 +1,410 @@
+package cse340.undo.brush;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.os.Build;
+import android.support.annotation.ColorInt;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import cse340.undo.geometry.StrokeGeometry;
+import cse340.undo.render.ParallelRasterizer;
+
+/**
+ * The dabs a stamp brush places along a stroke, kept as textured quads so the whole stroke can be
+ * drawn from the DabAtlas in a few drawVertices calls. Dabs are placed incrementally: samples added
+ * to a stroke while it is drawn only place the dabs after them. Erasing or transforming the stroke
+ * places every dab again.
+ *
+ * Dabs are placed along the straight segments between samples, skipping erased segments.
+ *
+ * Hardware canvases only support drawVertices from Q, so on them a finished trail is drawn once into
+ * a bitmap of its own, at the resolution of its sprite, and each draw is a single bitmap draw. Only
+ * the stroke being drawn, and trails too big to cache, are drawn dab by dab.
+ */
+public class DabTrail {
+    /** Most dabs drawn by one drawVertices call, so every index fits in a short. */
+    private static final int MAX_BATCH = 8191;
+
+    /** Floats per dab in the vertex and texture arrays: four corners of x and y. */
+    private static final int FLOATS_PER_DAB = 8;
+
+    /** Closest dabs are placed, in document units, however small the brush. */
+    private static final float MIN_STEP = 0.5f;
+
+    /** Indices of the two triangles of each dab in a batch; shared by every trail. */
+    private static final short[] INDICES = new short[MAX_BATCH * 6];
+    static {
+        for (int i = 0; i < MAX_BATCH; i++) {
+            short corner = (short) (i * 4);
+            INDICES[i * 6] = corner;
+            INDICES[i * 6 + 1] = (short) (corner + 1);
+            INDICES[i * 6 + 2] = (short) (corner + 2);
+            INDICES[i * 6 + 3] = corner;
+            INDICES[i * 6 + 4] = (short) (corner + 2);
+            INDICES[i * 6 + 5] = (short) (corner + 3);
+        }
+    }
+
+    /** Most pixels in the bitmap of a finished trail; bigger trails are drawn dab by dab. */
+    private static final int MAX_CACHE_PIXELS = 1024 * 1024;
+
+    /** Paint for drawing dabs one at a time where drawVertices isn't supported. */
+    private static final Paint BITMAP_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private final StrokeGeometry mGeometry;
+    private final StampBrush mBrush;
+
+    /** Corners of each dab in document coordinates, and where each samples the atlas. */
+    private float[] mVerts;
+    private float[] mTexs;
+
+    /** Number of dabs placed. */
+    private int mCount;
+
+    /** Number of dabs whose texture coordinates are filled in, and the sprite they point at. */
+    private int mTexCount;
+    private int mTexCell;
+    private int mTexSize;
+
+    /** Generation of the sprite's cell when prepare last looked it up. */
+    private int mTexGeneration;
+
+    /** Finished trail drawn once for hardware canvases, or null, and where it is drawn. */
+    private Bitmap mCache;
+    private final RectF mCacheBounds;
+
+    /** Dabs, brush width and sprite the cache was drawn with. */
+    private int mCacheCount, mCacheVersion, mCacheCell, mCacheSize, mCacheGeneration;
+    private float mCacheWidth;
+
+    /** First segment not yet walked, and the distance walked along the stroke since the last dab. */
+    private int mSegment;
+    private float mCarry;
+
+    /** Whether the next dab starts a visible run of the stroke, rather than following spacing. */
+    private boolean mRunStart;
+
+    /** Stroke version and brush width the dabs were placed for. */
+    private int mVersion;
+    private float mWidth;
+
+    /** Diameter of the largest dab, in document units. */
+    private float mMaxDiameter;
+
+    /** Scatters the dabs the same way each time they're placed. */
+    private final Random mRandom;
+
+    /**
+     * @param geometry  Stroke to place dabs along.
+     * @param brush     Brush whose dabs to place.
+     */
+    public DabTrail(StrokeGeometry geometry, StampBrush brush) {
+        mGeometry = geometry;
+        mBrush = brush;
+        mVerts = new float[FLOATS_PER_DAB * 16];
+        mTexs = new float[FLOATS_PER_DAB * 16];
+        mRandom = new Random();
+        mTexCell = -1;
+        mCacheBounds = new RectF();
+        reset(0f);
+    }
+
+    public StampBrush getBrush() {
+        return mBrush;
+    }
+
+    /**
+     * Places the dabs along any samples added since the last update, or all of them again if the
+     * stroke or the brush width changed.
+     *
+     * @param width Width of the brush, in document units.
+     */
+    public void update(float width) {
+        if (mGeometry.getVersion() != mVersion || width != mWidth) {
+            reset(width);
+        }
+
+        int size = mGeometry.size();
+        if (size == 1 && mCount == 0) {
+            // A tap leaves a single dab.
+            addDab(mGeometry.getX(0), mGeometry.getY(0), mGeometry.getWidth(0));
+            mRunStart = false;
+        }
+
+        for (; mSegment + 1 < size; mSegment++) {
+            int i = mSegment;
+            if (mGeometry.isErased(i)) {
+                mRunStart = true;
+                continue;
+            }
+
+            float x0 = mGeometry.getX(i), y0 = mGeometry.getY(i);
+            float x1 = mGeometry.getX(i + 1), y1 = mGeometry.getY(i + 1);
+            float w0 = mGeometry.getWidth(i), w1 = mGeometry.getWidth(i + 1);
+            if (mRunStart) {
+                addDab(x0, y0, w0);
+                mRunStart = false;
+                mCarry = 0f;
+            }
+
+            float length = (float) Math.hypot(x1 - x0, y1 - y0);
+            float step = Math.max(MIN_STEP, mBrush.getSpacing() * mWidth * (w0 + w1) / 2);
+            float along = step - mCarry;
+            while (along <= length) {
+                float t = along / length;
+                addDab(x0 + (x1 - x0) * t, y0 + (y1 - y0) * t, w0 + (w1 - w0) * t);
+                along += step;
+            }
+            mCarry = length - (along - step);
+        }
+    }
+
+    /**
+     * Forgets every dab, so they are all placed again on the next update.
+     */
+    private void reset(float width) {
+        mCount = 0;
+        mTexCount = 0;
+        mSegment = 0;
+        mCarry = 0f;
+        mRunStart = true;
+        mVersion = mGeometry.getVersion();
+        mWidth = width;
+        mMaxDiameter = 0f;
+        mRandom.setSeed(mGeometry.getId());
+    }
+
+    private void addDab(float x, float y, float width) {
+        float diameter = mWidth * width;
+        float scatter = mBrush.getScatter() * diameter;
+        if (scatter > 0f) {
+            x += (mRandom.nextFloat() * 2f - 1f) * scatter;
+            y += (mRandom.nextFloat() * 2f - 1f) * scatter;
+        }
+        mMaxDiameter = Math.max(mMaxDiameter, diameter);
+
+        if ((mCount + 1) * FLOATS_PER_DAB > mVerts.length) {
+            mVerts = Arrays.copyOf(mVerts, mVerts.length * 2);
+            mTexs = Arrays.copyOf(mTexs, mTexs.length * 2);
+        }
+        float r = diameter / 2;
+        int v = mCount * FLOATS_PER_DAB;
+        mVerts[v] = x - r;
+        mVerts[v + 1] = y - r;
+        mVerts[v + 2] = x + r;
+        mVerts[v + 3] = y - r;
+        mVerts[v + 4] = x + r;
+        mVerts[v + 5] = y + r;
+        mVerts[v + 6] = x - r;
+        mVerts[v + 7] = y + r;
+        mCount++;
+    }
+
+    /**
+     * @return Number of dabs placed.
+     */
+    public int getDabCount() {
+        return mCount;
+    }
+
+    /**
+     * @return How far dabs reach beyond the stroke's samples, in document units.
+     */
+    public float getReach() {
+        return mMaxDiameter * (0.5f + mBrush.getScatter());
+    }
+
+    /**
+     * Finds the sprite the dabs are drawn with, rendering it into the atlas if needed. Call from
+     * the UI thread after update and before draw.
+     *
+     * @param color     Color of the dabs.
+     * @param scale     Pixels per document unit, used to choose the sprite size.
+     */
+    public void prepare(@ColorInt int color, float scale) {
+        if (mCount == 0) {
+            return;
+        }
+
+        int size = DabAtlas.spriteSize(mMaxDiameter * scale);
+        DabAtlas atlas = DabAtlas.getInstance();
+        int cell = atlas.getCell(mBrush, color, size);
+        if (cell != mTexCell || size != mTexSize) {
+            mTexCell = cell;
+            mTexSize = size;
+            mTexCount = 0;
+        }
+        mTexGeneration = atlas.getGeneration(cell);
+        fillTexs();
+    }
+
+    /**
+     * @param cell  Index of an atlas cell.
+     * @return True if the last prepare found the trail's sprite in the cell.
+     */
+    public boolean usesCell(int cell) {
+        return mCount > 0 && cell == mTexCell;
+    }
+
+    /**
+     * Draws the dabs placed by the last update with the sprite found by the last prepare. Doesn't
+     * change the trail on software canvases, so it can be called from any thread while the trail
+     * isn't updated; hardware canvases, which may draw into the trail's cache, are only used on
+     * the UI thread.
+     *
+     * Draws nothing if the sprite's cell was given to another sprite since prepare. The atlas
+     * tells its OnEvictListeners, so the trail's view prepares and draws again.
+     *
+     * @param canvas    Canvas in document coordinates.
+     */
+    public void draw(Canvas canvas) {
+        DabAtlas atlas = DabAtlas.getInstance();
+        if (mCount == 0 || atlas.getGeneration(mTexCell) != mTexGeneration) {
+            return;
+        }
+
+        if (canvas.isHardwareAccelerated() && Build.VERSION.SDK_INT < 29) {
+            if (!mGeometry.isSealed() || !drawCache(canvas)) {
+                drawBitmaps(canvas, atlas.getBitmap());
+            }
+            return;
+        }
+        drawVertices(canvas, atlas.getPaint());
+    }
+
+    /**
+     * Creates an item drawing the dabs placed by the last update with the sprite found by the last
+     * prepare. The item holds copies of the dabs and the sprite, so it can be drawn from any
+     * thread however the trail and the atlas change afterwards. Call from the UI thread.
+     *
+     * @return Item drawing the dabs in document coordinates.
+     */
+    public ParallelRasterizer.Item snapshot() {
+        if (mCount == 0) {
+            return canvas -> { };
+        }
+
+        int left = DabAtlas.getCellLeft(mTexCell), top = DabAtlas.getCellTop(mTexCell);
+        Bitmap sprite = Bitmap.createBitmap(DabAtlas.getInstance().getBitmap(), left, top,
+                mTexSize, mTexSize);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
+        paint.setShader(new BitmapShader(sprite, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP));
+
+        int count = mCount;
+        float[] verts = Arrays.copyOf(mVerts, count * FLOATS_PER_DAB);
+        float[] texs = Arrays.copyOf(mTexs, count * FLOATS_PER_DAB);
+        for (int t = 0; t < texs.length; t += 2) {
+            texs[t] -= left;
+            texs[t + 1] -= top;
+        }
+        return canvas -> drawVertices(canvas, verts, texs, count, paint);
+    }
+
+    /**
+     * Drops the bitmap a finished trail is cached in, for example once its view is removed.
+     */
+    public void releaseCache() {
+        mCache = null;
+    }
+
+    private void drawVertices(Canvas canvas, Paint paint) {
+        drawVertices(canvas, mVerts, mTexs, mCount, paint);
+    }
+
+    private static void drawVertices(Canvas canvas, float[] verts, float[] texs, int dabs,
+                                     Paint paint) {
+        for (int first = 0; first < dabs; first += MAX_BATCH) {
+            int count = Math.min(MAX_BATCH, dabs - first);
+            canvas.drawVertices(Canvas.VertexMode.TRIANGLES, count * FLOATS_PER_DAB,
+                    verts, first * FLOATS_PER_DAB, texs, first * FLOATS_PER_DAB, null, 0,
+                    INDICES, 0, count * 6, paint);
+        }
+    }
+
+    /**
+     * Fills in texture coordinates for dabs placed since the sprite last moved.
+     */
+    private void fillTexs() {
+        float left = DabAtlas.getCellLeft(mTexCell), top = DabAtlas.getCellTop(mTexCell);
+        float right = left + mTexSize, bottom = top + mTexSize;
+        for (int t = mTexCount * FLOATS_PER_DAB; t < mCount * FLOATS_PER_DAB; t += FLOATS_PER_DAB) {
+            mTexs[t] = left;
+            mTexs[t + 1] = top;
+            mTexs[t + 2] = right;
+            mTexs[t + 3] = top;
+            mTexs[t + 4] = right;
+            mTexs[t + 5] = bottom;
+            mTexs[t + 6] = left;
+            mTexs[t + 7] = bottom;
+        }
+        mTexCount = mCount;
+    }
+
+    /**
+     * Draws the trail from its cache, drawing the cache first if the dabs or the sprite changed.
+     *
+     * @return False if the trail is too big to cache.
+     */
+    private boolean drawCache(Canvas canvas) {
+        if (mCache == null || mCacheCount != mCount || mCacheVersion != mVersion
+                || mCacheWidth != mWidth || mCacheCell != mTexCell || mCacheSize != mTexSize
+                || mCacheGeneration != mTexGeneration) {
+            float left = Float.MAX_VALUE, top = Float.MAX_VALUE;
+            float right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+            for (int v = 0; v < mCount * FLOATS_PER_DAB; v += FLOATS_PER_DAB) {
+                left = Math.min(left, mVerts[v]);
+                top = Math.min(top, mVerts[v + 1]);
+                right = Math.max(right, mVerts[v + 4]);
+                bottom = Math.max(bottom, mVerts[v + 5]);
+            }
+
+            // One pixel per sprite pixel: the cache is as sharp as the dabs drawn from the atlas.
+            float scale = mTexSize / Math.max(mMaxDiameter, MIN_STEP);
+            int width = (int) Math.ceil((right - left) * scale);
+            int height = (int) Math.ceil((bottom - top) * scale);
+            if (width <= 0 || height <= 0 || (long) width * height > MAX_CACHE_PIXELS) {
+                mCache = null;
+                return false;
+            }
+
+            // Never recycled, since a display list may still draw the old cache.
+            if (mCache == null || mCache.getWidth() != width || mCache.getHeight() != height) {
+                mCache = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            } else {
+                mCache.eraseColor(Color.TRANSPARENT);
+            }
+            Canvas cacheCanvas = new Canvas(mCache);
+            cacheCanvas.scale(scale, scale);
+            cacheCanvas.translate(-left, -top);
+            drawVertices(cacheCanvas, DabAtlas.getInstance().getPaint());
+            mCacheBounds.set(left, top, left + width / scale, top + height / scale);
+
+            mCacheCount = mCount;
+            mCacheVersion = mVersion;
+            mCacheWidth = mWidth;
+            mCacheCell = mTexCell;
+            mCacheSize = mTexSize;
+            mCacheGeneration = mTexGeneration;
+        }
+        canvas.drawBitmap(mCache, null, mCacheBounds, BITMAP_PAINT);
+        return true;
+    }
+
+    private void drawBitmaps(Canvas canvas, Bitmap atlas) {
+        int left = DabAtlas.getCellLeft(mTexCell), top = DabAtlas.getCellTop(mTexCell);
+        Rect src = new Rect(left, top, left + mTexSize, top + mTexSize);
+        RectF dst = new RectF();
+        for (int v = 0; v < mCount * FLOATS_PER_DAB; v += FLOATS_PER_DAB) {
+            dst.set(mVerts[v], mVerts[v + 1], mVerts[v + 4], mVerts[v + 5]);
+            canvas.drawBitmap(atlas, src, dst, BITMAP_PAINT);
+        }
+    }
+}
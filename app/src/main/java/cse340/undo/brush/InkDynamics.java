@@ -0,0 +1,84 @@
+package cse340.undo.brush;
+
+/**
+ * Turns the pressure and speed of each sample into a width relative to the brush width, for
+ * variable width strokes. Harder pressure widens the stroke and faster movement thins it, the way
+ * ink from a nib does. Widths are smoothed from sample to sample so the outline doesn't wobble.
+ */
+public class InkDynamics {
+    /** Range of widths, relative to the brush width. */
+    public static final float MIN_WIDTH = 0.25f;
+    public static final float MAX_WIDTH = 1.75f;
+
+    /** Speed at which the stroke is thinnest, in document units per millisecond. */
+    private static final float FAST_SPEED = 2f;
+
+    /** How much thinner the stroke is at FAST_SPEED, as a fraction of its width. */
+    private float mSpeedThinning;
+
+    /** Fraction of the way each width moves towards the width of its own sample. */
+    private float mSmoothing;
+
+    /** Width of the previous sample, or a negative number at the start of a stroke. */
+    private float mLastWidth;
+
+    public InkDynamics() {
+        mSpeedThinning = 0.5f;
+        mSmoothing = 0.4f;
+        mLastWidth = -1f;
+    }
+
+    /**
+     * @param thinning  How much thinner the stroke gets when moving fast, from 0 to 1.
+     * @throws IllegalArgumentException if thinning is outside [0, 1].
+     */
+    public void setSpeedThinning(float thinning) {
+        if (thinning < 0f || thinning > 1f) {
+            throw new IllegalArgumentException("Illegal thinning: " + thinning);
+        }
+        mSpeedThinning = thinning;
+    }
+
+    /**
+     * @param smoothing Fraction of the way each width moves towards its sample's width, from 0
+     *                  (exclusive) to 1 (no smoothing).
+     * @throws IllegalArgumentException if smoothing is outside (0, 1].
+     */
+    public void setSmoothing(float smoothing) {
+        if (smoothing <= 0f || smoothing > 1f) {
+            throw new IllegalArgumentException("Illegal smoothing: " + smoothing);
+        }
+        mSmoothing = smoothing;
+    }
+
+    /**
+     * Starts a new stroke.
+     *
+     * @param pressure  Pressure of the first sample, normally in [0, 1].
+     * @return Width of the first sample, relative to the brush width.
+     */
+    public float begin(float pressure) {
+        mLastWidth = pressureWidth(pressure);
+        return mLastWidth;
+    }
+
+    /**
+     * @param pressure  Pressure of the sample, normally in [0, 1].
+     * @param speed     Speed since the previous sample, in document units per millisecond.
+     * @return Width of the sample, relative to the brush width.
+     */
+    public float next(float pressure, float speed) {
+        float thinning = mSpeedThinning * Math.min(1f, Math.max(0f, speed) / FAST_SPEED);
+        float target = pressureWidth(pressure) * (1f - thinning);
+        mLastWidth = mLastWidth < 0f ? target : mLastWidth + (target - mLastWidth) * mSmoothing;
+        return Math.max(MIN_WIDTH, mLastWidth);
+    }
+
+    /**
+     * Maps pressure to a width, so half pressure draws at the brush width.
+     */
+    private static float pressureWidth(float pressure) {
+        float clamped = Math.max(0f, Math.min(1f, pressure));
+        return MIN_WIDTH + (MAX_WIDTH - MIN_WIDTH) * clamped;
+    }
+}
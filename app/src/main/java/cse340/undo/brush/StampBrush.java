@@ -0,0 +1,95 @@
+package cse340.undo.brush;
+
+import android.graphics.Color;
+import android.support.annotation.ColorInt;
+
+/**
+ * Brushes which paint a stroke by stamping a dab every few pixels along it, rather than stroking a
+ * path. Each brush defines the shape of its dab and how densely and loosely dabs are placed.
+ *
+ * @see DabAtlas
+ * @see DabTrail
+ */
+public enum StampBrush {
+    /** Small, hard, grainy dabs placed densely. */
+    PENCIL(0.15f, 0.8f, 0.9f, 0.5f, 0f),
+
+    /** Soft edged, translucent dabs which build up where they overlap. */
+    MARKER(0.1f, 0.5f, 0.3f, 0f, 0f),
+
+    /** Very soft, faint dabs scattered around the path. */
+    AIRBRUSH(0.08f, 0f, 0.06f, 0f, 0.5f);
+
+    /** Distance between dabs, relative to the brush width. */
+    private final float mSpacing;
+
+    /** Fraction of the dab radius which is fully opaque; the rest fades out. */
+    private final float mHardness;
+
+    /** Opacity of each dab, from 0 to 1. */
+    private final float mFlow;
+
+    /** How much paper grain shows through each dab, from 0 to 1. */
+    private final float mGrain;
+
+    /** How far dabs scatter from the path, relative to the brush width. */
+    private final float mScatter;
+
+    StampBrush(float spacing, float hardness, float flow, float grain, float scatter) {
+        mSpacing = spacing;
+        mHardness = hardness;
+        mFlow = flow;
+        mGrain = grain;
+        mScatter = scatter;
+    }
+
+    public float getSpacing() {
+        return mSpacing;
+    }
+
+    public float getScatter() {
+        return mScatter;
+    }
+
+    /**
+     * Renders a dab sprite.
+     *
+     * @param pixels    Row-major ARGB pixels of the sprite, at least size * size long.
+     * @param size      Width and height of the sprite, in pixels.
+     * @param color     Color of the dab. Its alpha scales the dab's opacity.
+     */
+    void renderDab(int[] pixels, int size, @ColorInt int color) {
+        float radius = size / 2f;
+        float alpha = Color.alpha(color) / 255f * mFlow;
+        int rgb = color & 0x00FFFFFF;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                float dx = x + 0.5f - radius, dy = y + 0.5f - radius;
+                float d = (float) Math.sqrt(dx * dx + dy * dy) / radius;
+                float coverage;
+                if (d >= 1f) {
+                    coverage = 0f;
+                } else if (d <= mHardness) {
+                    coverage = 1f;
+                } else {
+                    // Smoothstep from the hard core to the edge.
+                    float t = (1f - d) / (1f - mHardness);
+                    coverage = t * t * (3f - 2f * t);
+                }
+                if (mGrain > 0f) {
+                    coverage *= 1f - mGrain * noise(x, y);
+                }
+                pixels[y * size + x] = Math.round(coverage * alpha * 255) << 24 | rgb;
+            }
+        }
+    }
+
+    /**
+     * @return Repeatable pseudo-random value in [0, 1) for a pixel.
+     */
+    private static float noise(int x, int y) {
+        int h = x * 374761393 + y * 668265263;
+        h = (h ^ (h >>> 13)) * 1274126177;
+        return ((h ^ (h >>> 16)) & 0xFFFF) / 65536f;
+    }
+}
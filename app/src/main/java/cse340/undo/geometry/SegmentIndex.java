@@ -0,0 +1,270 @@
+package cse340.undo.geometry;
+
+import android.support.annotation.NonNull;
+import android.util.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform grid over the segments of many strokes, so that the segments near a point can be found
+ * without looking at every stroke. Each cell lists the (stroke, segment) pairs whose bounding box
+ * overlaps it, packed into longs. Erased segments stay indexed and are skipped by queries.
+ *
+ * @param <T>   Type of the object each stroke is registered with, for example the view rendering it.
+ */
+public class SegmentIndex<T> {
+    /** Width and height of a cell, in document units. */
+    public static final float CELL_SIZE = 64f;
+
+    /**
+     * Receives the segments found by a query.
+     */
+    public interface Visitor<T> {
+        void visit(T owner, StrokeGeometry stroke, int segment);
+    }
+
+    /** Packed (handle, segment) entries of one cell. */
+    private static final class Cell {
+        long[] mEntries = new long[8];
+        int mSize;
+
+        void add(long entry) {
+            if (mSize == mEntries.length) {
+                mEntries = Arrays.copyOf(mEntries, mSize * 2);
+            }
+            mEntries[mSize++] = entry;
+        }
+
+        void remove(long entry) {
+            for (int i = 0; i < mSize; i++) {
+                if (mEntries[i] == entry) {
+                    mEntries[i] = mEntries[--mSize];
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Cells holding at least one entry, keyed by cellKey. */
+    private final LongSparseArray<Cell> mCells;
+
+    /** Stroke and owner of each handle; null for free handles. */
+    private final List<StrokeGeometry> mStrokes;
+    private final List<T> mOwners;
+
+    /** Handle of each indexed stroke. */
+    private final Map<StrokeGeometry, Integer> mHandles;
+
+    /** Handles released by remove, reused before new ones are made. */
+    private int[] mFree;
+    private int mFreeCount;
+
+    /** Number of indexed segments. */
+    private int mSegments;
+
+    public SegmentIndex() {
+        mCells = new LongSparseArray<>();
+        mStrokes = new ArrayList<>();
+        mOwners = new ArrayList<>();
+        mHandles = new HashMap<>();
+        mFree = new int[16];
+    }
+
+    /**
+     * Indexes every segment of a stroke.
+     *
+     * @param owner     Object to report with the stroke's segments.
+     * @param stroke    Sealed stroke to index.
+     * @throws IllegalStateException if the stroke is not sealed or is already indexed.
+     */
+    public void add(T owner, StrokeGeometry stroke) {
+        if (!stroke.isSealed()) {
+            throw new IllegalStateException("Indexing an unsealed stroke");
+        } else if (mHandles.containsKey(stroke)) {
+            throw new IllegalStateException("Stroke already indexed: " + stroke);
+        }
+
+        int handle;
+        if (mFreeCount > 0) {
+            handle = mFree[--mFreeCount];
+            mStrokes.set(handle, stroke);
+            mOwners.set(handle, owner);
+        } else {
+            handle = mStrokes.size();
+            mStrokes.add(stroke);
+            mOwners.add(owner);
+        }
+        mHandles.put(stroke, handle);
+
+        for (int segment = 0; segment < stroke.getSegmentCount(); segment++) {
+            long entry = entry(handle, segment);
+            int left = cell(Math.min(stroke.getX(segment), stroke.getX(segment + 1)));
+            int right = cell(Math.max(stroke.getX(segment), stroke.getX(segment + 1)));
+            int top = cell(Math.min(stroke.getY(segment), stroke.getY(segment + 1)));
+            int bottom = cell(Math.max(stroke.getY(segment), stroke.getY(segment + 1)));
+            for (int cy = top; cy <= bottom; cy++) {
+                for (int cx = left; cx <= right; cx++) {
+                    long key = cellKey(cx, cy);
+                    Cell cell = mCells.get(key);
+                    if (cell == null) {
+                        cell = new Cell();
+                        mCells.put(key, cell);
+                    }
+                    cell.add(entry);
+                }
+            }
+        }
+        mSegments += stroke.getSegmentCount();
+    }
+
+    /**
+     * Removes a stroke from the index. Does nothing if it isn't indexed.
+     *
+     * @param stroke    Stroke to remove.
+     */
+    public void remove(StrokeGeometry stroke) {
+        Integer boxed = mHandles.remove(stroke);
+        if (boxed == null) {
+            return;
+        }
+
+        int handle = boxed;
+        for (int segment = 0; segment < stroke.getSegmentCount(); segment++) {
+            long entry = entry(handle, segment);
+            int left = cell(Math.min(stroke.getX(segment), stroke.getX(segment + 1)));
+            int right = cell(Math.max(stroke.getX(segment), stroke.getX(segment + 1)));
+            int top = cell(Math.min(stroke.getY(segment), stroke.getY(segment + 1)));
+            int bottom = cell(Math.max(stroke.getY(segment), stroke.getY(segment + 1)));
+            for (int cy = top; cy <= bottom; cy++) {
+                for (int cx = left; cx <= right; cx++) {
+                    long key = cellKey(cx, cy);
+                    Cell cell = mCells.get(key);
+                    if (cell != null) {
+                        cell.remove(entry);
+                        if (cell.mSize == 0) {
+                            mCells.remove(key);
+                        }
+                    }
+                }
+            }
+        }
+        mSegments -= stroke.getSegmentCount();
+
+        mStrokes.set(handle, null);
+        mOwners.set(handle, null);
+        if (mFreeCount == mFree.length) {
+            mFree = Arrays.copyOf(mFree, mFreeCount * 2);
+        }
+        mFree[mFreeCount++] = handle;
+    }
+
+    /**
+     * @return Owner the stroke was indexed with, or null if it isn't indexed.
+     */
+    public T getOwner(StrokeGeometry stroke) {
+        Integer handle = mHandles.get(stroke);
+        return handle == null ? null : mOwners.get(handle);
+    }
+
+    /**
+     * Finds every segment which isn't erased and passes within radius of a point. Each segment is
+     * reported once.
+     *
+     * @param x         Horizontal coordinate of the point.
+     * @param y         Vertical coordinate of the point.
+     * @param radius    Search radius, in document units.
+     * @param visitor   Receives the segments found.
+     * @return Number of segments found.
+     */
+    public int query(float x, float y, float radius, Visitor<T> visitor) {
+        int left = cell(x - radius), right = cell(x + radius);
+        int top = cell(y - radius), bottom = cell(y + radius);
+        float radiusSq = radius * radius;
+        int found = 0;
+
+        for (int cy = top; cy <= bottom; cy++) {
+            for (int cx = left; cx <= right; cx++) {
+                Cell cell = mCells.get(cellKey(cx, cy));
+                if (cell == null) {
+                    continue;
+                }
+
+                for (int i = 0; i < cell.mSize; i++) {
+                    long entry = cell.mEntries[i];
+                    int handle = (int) (entry >>> 32);
+                    int segment = (int) entry;
+                    StrokeGeometry stroke = mStrokes.get(handle);
+                    if (stroke.isErased(segment)) {
+                        continue;
+                    }
+
+                    float ax = stroke.getX(segment), ay = stroke.getY(segment);
+                    float bx = stroke.getX(segment + 1), by = stroke.getY(segment + 1);
+
+                    // A segment in several cells is only reported from the first cell it shares
+                    // with the query.
+                    int firstX = Math.max(left, cell(Math.min(ax, bx)));
+                    int firstY = Math.max(top, cell(Math.min(ay, by)));
+                    if (cx != firstX || cy != firstY) {
+                        continue;
+                    }
+
+                    if (distanceSq(x, y, ax, ay, bx, by) <= radiusSq) {
+                        visitor.visit(mOwners.get(handle), stroke, segment);
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return Number of indexed strokes.
+     */
+    public int getStrokeCount() {
+        return mHandles.size();
+    }
+
+    /**
+     * @return Number of indexed segments, including erased ones.
+     */
+    public int getSegmentCount() {
+        return mSegments;
+    }
+
+    /**
+     * @return Squared distance from point p to the segment from a to b.
+     */
+    private static float distanceSq(float px, float py, float ax, float ay, float bx, float by) {
+        float dx = bx - ax, dy = by - ay;
+        float lengthSq = dx * dx + dy * dy;
+        float t = lengthSq == 0f ? 0f : ((px - ax) * dx + (py - ay) * dy) / lengthSq;
+        t = Math.max(0f, Math.min(1f, t));
+        float ex = ax + t * dx - px, ey = ay + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+
+    private static int cell(float coordinate) {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    private static long cellKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    private static long entry(int handle, int segment) {
+        return ((long) handle << 32) | (segment & 0xFFFFFFFFL);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Segment index of " + getStrokeCount() + " strokes, " + mSegments + " segments in "
+                + mCells.size() + " cells";
+    }
+}
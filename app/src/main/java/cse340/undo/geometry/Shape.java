@@ -0,0 +1,138 @@
+package cse340.undo.geometry;
+
+import android.graphics.Matrix;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * A primitive shape described by a handful of parameters, committed in place of a freehand stroke
+ * which was recognized as that shape.
+ *
+ * Lines and arrows are described by their start and end points (the arrow's head is at the end)
+ * and, for arrows, the length of the head. Rectangles and ellipses are described by their center,
+ * half width, half height and rotation in degrees about the center.
+ *
+ * Shapes are immutable.
+ */
+public final class Shape {
+    public enum Type {
+        LINE,
+        RECTANGLE,
+        ELLIPSE,
+        ARROW
+    }
+
+    /** Angle between the shaft of an arrow and each side of its head, in degrees. */
+    private static final double HEAD_ANGLE = Math.toRadians(30);
+
+    private final Type mType;
+    private final float[] mParams;
+
+    private Shape(Type type, float... params) {
+        mType = type;
+        mParams = params;
+    }
+
+    /**
+     * @return A straight line from (x0, y0) to (x1, y1).
+     */
+    public static Shape line(float x0, float y0, float x1, float y1) {
+        return new Shape(Type.LINE, x0, y0, x1, y1);
+    }
+
+    /**
+     * @param headLength    Length of each side of the head, in document units.
+     * @return An arrow from (x0, y0) with its head at (x1, y1).
+     */
+    public static Shape arrow(float x0, float y0, float x1, float y1, float headLength) {
+        return new Shape(Type.ARROW, x0, y0, x1, y1, headLength);
+    }
+
+    /**
+     * @param degrees   Clockwise rotation about the center.
+     * @return A rectangle centered on (cx, cy).
+     */
+    public static Shape rectangle(float cx, float cy, float halfWidth, float halfHeight,
+                                  float degrees) {
+        return new Shape(Type.RECTANGLE, cx, cy, halfWidth, halfHeight, degrees);
+    }
+
+    /**
+     * @param degrees   Clockwise rotation about the center.
+     * @return An ellipse centered on (cx, cy).
+     */
+    public static Shape ellipse(float cx, float cy, float halfWidth, float halfHeight,
+                                float degrees) {
+        return new Shape(Type.ELLIPSE, cx, cy, halfWidth, halfHeight, degrees);
+    }
+
+    public Type getType() {
+        return mType;
+    }
+
+    /**
+     * @return Number of parameters describing the shape.
+     */
+    public int getParamCount() {
+        return mParams.length;
+    }
+
+    /**
+     * @param i Index of the parameter, in the order the factory method takes them.
+     * @return Value of the parameter.
+     */
+    public float getParam(int i) {
+        return mParams[i];
+    }
+
+    /**
+     * Builds the outline of the shape, to be stroked.
+     *
+     * @return New path in document coordinates.
+     */
+    public Path toPath() {
+        Path path = new Path();
+        float[] p = mParams;
+        switch (mType) {
+            case LINE:
+                path.moveTo(p[0], p[1]);
+                path.lineTo(p[2], p[3]);
+                break;
+            case ARROW:
+                path.moveTo(p[0], p[1]);
+                path.lineTo(p[2], p[3]);
+                double shaft = Math.atan2(p[1] - p[3], p[0] - p[2]);
+                for (int side = -1; side <= 1; side += 2) {
+                    double angle = shaft + side * HEAD_ANGLE;
+                    path.moveTo(p[2], p[3]);
+                    path.lineTo(p[2] + (float) Math.cos(angle) * p[4],
+                            p[3] + (float) Math.sin(angle) * p[4]);
+                }
+                break;
+            case RECTANGLE:
+            case ELLIPSE:
+                RectF box = new RectF(p[0] - p[2], p[1] - p[3], p[0] + p[2], p[1] + p[3]);
+                if (mType == Type.RECTANGLE) {
+                    path.addRect(box, Path.Direction.CW);
+                } else {
+                    path.addOval(box, Path.Direction.CW);
+                }
+                if (p[4] != 0f) {
+                    Matrix rotation = new Matrix();
+                    rotation.setRotate(p[4], p[0], p[1]);
+                    path.transform(rotation);
+                }
+                break;
+        }
+        return path;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return mType + " " + Arrays.toString(mParams);
+    }
+}
@@ -0,0 +1,295 @@
+package cse340.undo.geometry;
+
+import android.util.Log;
+
+/**
+ * Classifies a finished stroke as a line, arrow, rectangle or ellipse by fitting each shape to
+ * its samples and measuring how far the samples stray from the fit. Long strokes are thinned to
+ * at most MAX_POINTS samples first, so recognition takes a bounded time however long the stroke,
+ * and it gives up if it runs past its time budget.
+ *
+ * Not thread safe; reuses its buffers between strokes.
+ */
+public class ShapeRecognizer {
+    private static final String LOG_TAG = ShapeRecognizer.class.getSimpleName();
+
+    /** Most samples fitted, however many the stroke has. */
+    public static final int MAX_POINTS = 256;
+
+    /** Default time budget for recognizing one stroke. */
+    public static final long DEFAULT_BUDGET_NANOS = 4_000_000L;
+
+    /** Largest gap between the ends of a closed stroke, relative to its length. */
+    private static final float CLOSED_GAP = 0.15f;
+
+    /** Largest distance of a line's samples from the line, relative to its length. */
+    private static final float LINE_TOLERANCE = 0.06f;
+
+    /** Range of the size of an arrow's head, relative to the length of its shaft. */
+    private static final float MIN_HEAD = 0.05f;
+    private static final float MAX_HEAD = 0.5f;
+
+    /** Largest mean distance of a closed shape's samples from its outline, relative to its size. */
+    private static final float SHAPE_TOLERANCE = 0.08f;
+
+    /** Smallest ratio of the short side of a closed shape to its long side. */
+    private static final float MIN_ASPECT = 0.1f;
+
+    /**
+     * Largest length of a closed stroke relative to the outline it was fitted to. Allows tracing
+     * over the outline a bit, but rejects scribbles whose samples happen to lie on the outline.
+     */
+    private static final float MAX_TRACED = 1.5f;
+
+    /** Number of rotations tried when fitting closed shapes, in addition to the principal axes. */
+    private static final int ANGLE_STEPS = 12;
+
+    private long mBudgetNanos;
+
+    /** Thinned samples of the stroke being recognized. */
+    private final float[] mXs;
+    private final float[] mYs;
+    private int mSize;
+
+    /** Result of the last fit of a closed shape. */
+    private float mFitCx, mFitCy, mFitHalfWidth, mFitHalfHeight;
+    private float mRectError, mEllipseError;
+
+    public ShapeRecognizer() {
+        mBudgetNanos = DEFAULT_BUDGET_NANOS;
+        mXs = new float[MAX_POINTS + 1];
+        mYs = new float[MAX_POINTS + 1];
+    }
+
+    /**
+     * @param nanos Time after which recognition gives up and reports no shape.
+     * @throws IllegalArgumentException if nanos is not positive.
+     */
+    public void setBudget(long nanos) {
+        if (nanos <= 0) {
+            throw new IllegalArgumentException("Illegal budget: " + nanos);
+        }
+        mBudgetNanos = nanos;
+    }
+
+    /**
+     * Recognizes a stroke.
+     *
+     * @param stroke    Stroke to recognize.
+     * @return The shape the stroke was drawn as, or null if it doesn't look like any shape or
+     * recognition ran out of time.
+     */
+    public Shape recognize(StrokeGeometry stroke) {
+        long start = System.nanoTime();
+        long deadline = start + mBudgetNanos;
+        if (stroke.size() < 2 || stroke.hasErased()) {
+            return null;
+        }
+
+        load(stroke);
+        float length = 0f;
+        for (int i = 1; i < mSize; i++) {
+            length += distance(mXs[i - 1], mYs[i - 1], mXs[i], mYs[i]);
+        }
+        if (length == 0f) {
+            return null;
+        }
+
+        float gap = distance(mXs[0], mYs[0], mXs[mSize - 1], mYs[mSize - 1]);
+        Shape shape = gap > CLOSED_GAP * length
+                ? recognizeOpen(length, gap)
+                : recognizeClosed(length, deadline);
+        long elapsed = System.nanoTime() - start;
+        if (System.nanoTime() > deadline) {
+            Log.i(LOG_TAG, "Gave up after " + elapsed / 1000 + "us");
+            return null;
+        }
+        Log.i(LOG_TAG, "Recognized " + shape + " from " + stroke.size() + " samples in "
+                + elapsed / 1000 + "us");
+        return shape;
+    }
+
+    /**
+     * Copies every stride-th sample of the stroke, and its last sample.
+     */
+    private void load(StrokeGeometry stroke) {
+        int n = stroke.size();
+        int stride = (n + MAX_POINTS - 1) / MAX_POINTS;
+        mSize = 0;
+        for (int i = 0; i < n; i += stride) {
+            mXs[mSize] = stroke.getX(i);
+            mYs[mSize] = stroke.getY(i);
+            mSize++;
+        }
+        if ((n - 1) % stride != 0) {
+            mXs[mSize] = stroke.getX(n - 1);
+            mYs[mSize] = stroke.getY(n - 1);
+            mSize++;
+        }
+    }
+
+    /**
+     * Fits a line, or an arrow drawn as a shaft followed by a head scribbled around its tip.
+     */
+    private Shape recognizeOpen(float length, float chord) {
+        int last = mSize - 1;
+        if (length <= chord * 1.2f && maxDeviation(0, last) <= LINE_TOLERANCE * chord) {
+            return Shape.line(mXs[0], mYs[0], mXs[last], mYs[last]);
+        }
+
+        // The tip is where the stroke first gets about as far from the start as it ever does, as
+        // the head usually comes back to it.
+        float furthest = 0f;
+        for (int i = 1; i < mSize; i++) {
+            furthest = Math.max(furthest, fromStart(i));
+        }
+        int tip = 1;
+        while (fromStart(tip) < (1 - MIN_HEAD) * furthest) {
+            tip++;
+        }
+        while (tip < last && fromStart(tip + 1) > fromStart(tip)) {
+            tip++;
+        }
+        float shaft = fromStart(tip);
+        if (tip == last || maxDeviation(0, tip) > LINE_TOLERANCE * shaft) {
+            return null;
+        }
+
+        float head = 0f, headLength = 0f;
+        for (int i = tip + 1; i < mSize; i++) {
+            head = Math.max(head, distance(mXs[tip], mYs[tip], mXs[i], mYs[i]));
+            headLength += distance(mXs[i - 1], mYs[i - 1], mXs[i], mYs[i]);
+        }
+        // A head goes out from the tip and back at least once.
+        if (head < MIN_HEAD * shaft || head > MAX_HEAD * shaft || headLength < 1.5f * head) {
+            return null;
+        }
+        return Shape.arrow(mXs[0], mYs[0], mXs[tip], mYs[tip], head);
+    }
+
+    private float fromStart(int i) {
+        return distance(mXs[0], mYs[0], mXs[i], mYs[i]);
+    }
+
+    /**
+     * @return Largest distance of samples first to last from the line through those two samples.
+     */
+    private float maxDeviation(int first, int last) {
+        float x0 = mXs[first], y0 = mYs[first];
+        float dx = mXs[last] - x0, dy = mYs[last] - y0;
+        float chord = (float) Math.hypot(dx, dy);
+        if (chord == 0f) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float max = 0f;
+        for (int i = first + 1; i < last; i++) {
+            max = Math.max(max, Math.abs((mXs[i] - x0) * dy - (mYs[i] - y0) * dx) / chord);
+        }
+        return max;
+    }
+
+    /**
+     * Fits a rectangle and an ellipse at a range of rotations and keeps the closest fit, unless the
+     * stroke is much longer than its outline.
+     */
+    private Shape recognizeClosed(float length, long deadline) {
+        // Mean and covariance of the outline, weighting each segment by its length so that slow
+        // parts of the stroke, which have more samples, don't count for more.
+        float total = 0f, mx = 0f, my = 0f;
+        for (int i = 1; i < mSize; i++) {
+            float w = distance(mXs[i - 1], mYs[i - 1], mXs[i], mYs[i]);
+            total += w;
+            mx += w * (mXs[i - 1] + mXs[i]) / 2;
+            my += w * (mYs[i - 1] + mYs[i]) / 2;
+        }
+        mx /= total;
+        my /= total;
+        float sxx = 0f, syy = 0f, sxy = 0f;
+        for (int i = 1; i < mSize; i++) {
+            float w = distance(mXs[i - 1], mYs[i - 1], mXs[i], mYs[i]);
+            float dx = (mXs[i - 1] + mXs[i]) / 2 - mx, dy = (mYs[i - 1] + mYs[i]) / 2 - my;
+            sxx += w * dx * dx;
+            syy += w * dy * dy;
+            sxy += w * dx * dy;
+        }
+        double principal = 0.5 * Math.atan2(2 * sxy, sxx - syy);
+
+        Shape best = null;
+        float bestError = SHAPE_TOLERANCE, bestOutline = 0f;
+        for (int step = 0; step <= ANGLE_STEPS; step++) {
+            if (System.nanoTime() > deadline) {
+                return null;
+            }
+            double angle = step < ANGLE_STEPS ? Math.PI / 2 * step / ANGLE_STEPS : principal;
+            if (!fit(mx, my, angle)) {
+                continue;
+            }
+            float degrees = (float) Math.toDegrees(angle);
+            if (mRectError < bestError) {
+                bestError = mRectError;
+                best = Shape.rectangle(mFitCx, mFitCy, mFitHalfWidth, mFitHalfHeight, degrees);
+                bestOutline = 4 * (mFitHalfWidth + mFitHalfHeight);
+            }
+            if (mEllipseError < bestError) {
+                bestError = mEllipseError;
+                best = Shape.ellipse(mFitCx, mFitCy, mFitHalfWidth, mFitHalfHeight, degrees);
+                bestOutline = ellipseOutline(mFitHalfWidth, mFitHalfHeight);
+            }
+        }
+        return length > MAX_TRACED * bestOutline ? null : best;
+    }
+
+    /**
+     * Fits a rectangle and an ellipse to the bounding box of the samples in a frame rotated about
+     * (mx, my), storing the fit and the mean distance of the samples from each outline relative to
+     * the mean half extent.
+     *
+     * @return False if the box is too thin to be a closed shape.
+     */
+    private boolean fit(float mx, float my, double angle) {
+        float cos = (float) Math.cos(angle), sin = (float) Math.sin(angle);
+        float minU = Float.POSITIVE_INFINITY, maxU = Float.NEGATIVE_INFINITY;
+        float minV = Float.POSITIVE_INFINITY, maxV = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < mSize; i++) {
+            float dx = mXs[i] - mx, dy = mYs[i] - my;
+            float u = dx * cos + dy * sin, v = -dx * sin + dy * cos;
+            minU = Math.min(minU, u);
+            maxU = Math.max(maxU, u);
+            minV = Math.min(minV, v);
+            maxV = Math.max(maxV, v);
+        }
+        float a = (maxU - minU) / 2, b = (maxV - minV) / 2;
+        if (Math.min(a, b) < MIN_ASPECT * Math.max(a, b)) {
+            return false;
+        }
+
+        float uc = (minU + maxU) / 2, vc = (minV + maxV) / 2;
+        float rect = 0f, ellipse = 0f;
+        for (int i = 0; i < mSize; i++) {
+            float dx = mXs[i] - mx, dy = mYs[i] - my;
+            float u = dx * cos + dy * sin - uc, v = -dx * sin + dy * cos - vc;
+            rect += Math.min(Math.abs(a - Math.abs(u)), Math.abs(b - Math.abs(v)));
+            float r = (float) Math.sqrt((u / a) * (u / a) + (v / b) * (v / b));
+            ellipse += Math.abs(r - 1f) * (a + b) / 2;
+        }
+        float scale = mSize * (a + b) / 2;
+        mRectError = rect / scale;
+        mEllipseError = ellipse / scale;
+        mFitCx = mx + uc * cos - vc * sin;
+        mFitCy = my + uc * sin + vc * cos;
+        mFitHalfWidth = a;
+        mFitHalfHeight = b;
+        return true;
+    }
+
+    /**
+     * @return Approximate perimeter of an ellipse with the given half axes (Ramanujan's first).
+     */
+    private static float ellipseOutline(float a, float b) {
+        return (float) (Math.PI * (3 * (a + b) - Math.sqrt((3 * a + b) * (a + 3 * b))));
+    }
+
+    private static float distance(float x0, float y0, float x1, float y1) {
+        return (float) Math.hypot(x1 - x0, y1 - y0);
+    }
+}
@@ -0,0 +1,599 @@
+package cse340.undo.geometry;
+
+import android.graphics.Matrix;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The sampled points of a stroke, in document coordinates, and the smoothed Paths built from them.
+ * The full detail path is extended incrementally as points are added. Once the stroke is sealed,
+ * simplified paths are built on demand at a series of levels of detail, so that a zoomed out view
+ * can draw each stroke with far fewer segments.
+ *
+ * Level 0 is the full detail path. Level k > 0 is simplified with Douglas-Peucker to a maximum
+ * error of BASE_TOLERANCE * 2^(k - 1) document units.
+ *
+ * Segments (from sample i to sample i + 1) of a sealed stroke can be erased and restored, which
+ * splits the paths at the erased segments without changing the samples. A sealed stroke can also be
+ * transformed in place, so moving a selection needs no copies of its strokes.
+ *
+ * A variable width stroke also has a width for each sample, relative to the width of its paint. It
+ * is drawn as a filled outline, tessellated once into a Path of a quad per segment and a disc per
+ * sample and extended incrementally as samples are added, so drawing it is a single fill.
+ *
+ * Each stroke has an id, unique within the process, which actions can refer to it by.
+ */
+public final class StrokeGeometry {
+    /** Number of simplified levels, in addition to full detail. */
+    public static final int LEVELS = 8;
+
+    /** Maximum error of level 1, in document units. */
+    public static final float BASE_TOLERANCE = 0.5f;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Id of the next stroke created. Strokes are only created on the UI thread. */
+    private static int sNextId;
+
+    private final int mId;
+
+    /** Interleaved x, y coordinates of the samples. */
+    private float[] mPoints;
+
+    /** Number of samples. */
+    private int mSize;
+
+    /** Full detail path, kept up to date as samples are added. */
+    private final Path mPath;
+
+    /** Simplified paths, built lazily once sealed. Index 0 is unused. */
+    private final Path[] mLevels;
+
+    /** True once no more samples will be added. */
+    private boolean mSealed;
+
+    /** Erased segments, or null if none ever were. Segment i joins samples i and i + 1. */
+    private BitSet mErased;
+
+    /** Width of each sample relative to the paint's width, or null for a constant width stroke. */
+    private float[] mWidths;
+
+    /** Filled outline of a variable width stroke, built on demand, and the width it was built for. */
+    private Path mOutline;
+    private float mOutlineWidth;
+
+    /** Bounds of the samples, computed on demand. */
+    private final RectF mBounds;
+    private boolean mBoundsValid;
+
+    /** Incremented whenever existing samples are moved or erased, so caches know to rebuild. */
+    private int mVersion;
+
+    /**
+     * Creates a stroke which starts at the given point.
+     *
+     * @param x Horizontal coordinate of the first sample.
+     * @param y Vertical coordinate of the first sample.
+     */
+    public StrokeGeometry(float x, float y) {
+        mId = sNextId++;
+        mPoints = new float[INITIAL_CAPACITY * 2];
+        mPath = new Path();
+        mBounds = new RectF();
+        mLevels = new Path[LEVELS + 1];
+
+        mPath.moveTo(x, y);
+        append(x, y);
+    }
+
+    /**
+     * Creates a variable width stroke which starts at the given point.
+     *
+     * @param x     Horizontal coordinate of the first sample.
+     * @param y     Vertical coordinate of the first sample.
+     * @param width Width of the first sample, relative to the paint's width.
+     * @throws IllegalArgumentException if width is negative.
+     */
+    public StrokeGeometry(float x, float y, float width) {
+        this(x, y);
+        if (width < 0f) {
+            throw new IllegalArgumentException("Illegal width: " + width);
+        }
+        mWidths = new float[INITIAL_CAPACITY];
+        mWidths[0] = width;
+    }
+
+    /**
+     * Adds a sample, extending the full detail path with a quadratic curve to the midpoint between
+     * the previous sample and this one.
+     *
+     * @param x Horizontal coordinate of the sample.
+     * @param y Vertical coordinate of the sample.
+     * @throws IllegalStateException if the stroke is sealed.
+     */
+    public void add(float x, float y) {
+        if (mWidths != null) {
+            // Samples without a width added to a variable width stroke keep the last width.
+            add(x, y, mWidths[mSize - 1]);
+            return;
+        }
+        addSample(x, y);
+    }
+
+    /**
+     * Adds a sample to a variable width stroke, extending its outline if it has been built.
+     *
+     * @param x     Horizontal coordinate of the sample.
+     * @param y     Vertical coordinate of the sample.
+     * @param width Width of the sample, relative to the paint's width.
+     * @throws IllegalStateException if the stroke is sealed or has a constant width.
+     */
+    public void add(float x, float y, float width) {
+        if (mWidths == null) {
+            throw new IllegalStateException("Adding a width to a constant width stroke");
+        }
+        addSample(x, y);
+        setWidth(mSize - 1, Math.max(0f, width));
+        if (mOutline != null) {
+            appendOutline(mOutline, mSize - 2, mOutlineWidth / 2);
+        }
+    }
+
+    private void addSample(float x, float y) {
+        if (mSealed) {
+            throw new IllegalStateException("Adding to a sealed stroke");
+        }
+
+        float lastX = mPoints[mSize * 2 - 2];
+        float lastY = mPoints[mSize * 2 - 1];
+        mPath.quadTo(lastX, lastY, (x + lastX) / 2, (y + lastY) / 2);
+        append(x, y);
+    }
+
+    private void setWidth(int i, float width) {
+        if (i == mWidths.length) {
+            mWidths = Arrays.copyOf(mWidths, mWidths.length * 2);
+        }
+        mWidths[i] = width;
+    }
+
+    private void append(float x, float y) {
+        if (mSize * 2 == mPoints.length) {
+            mPoints = Arrays.copyOf(mPoints, mPoints.length * 2);
+        }
+        mPoints[mSize * 2] = x;
+        mPoints[mSize * 2 + 1] = y;
+        mSize++;
+        mBoundsValid = false;
+    }
+
+    /**
+     * Marks the stroke as complete, allowing simplified levels to be built.
+     */
+    public void seal() {
+        mSealed = true;
+        mPoints = Arrays.copyOf(mPoints, mSize * 2);
+        if (mWidths != null) {
+            mWidths = Arrays.copyOf(mWidths, mSize);
+        }
+    }
+
+    public boolean isSealed() {
+        return mSealed;
+    }
+
+    public int getId() {
+        return mId;
+    }
+
+    /**
+     * @return Number which changes whenever existing samples are moved, erased or restored. Adding
+     * samples doesn't change it.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Computes the bounds of the samples. The stroke's width is not included.
+     *
+     * @param out   Rectangle to store the bounds in.
+     */
+    public void getBounds(RectF out) {
+        if (!mBoundsValid) {
+            float left = mPoints[0], top = mPoints[1], right = left, bottom = top;
+            for (int i = 1; i < mSize; i++) {
+                float x = mPoints[i * 2], y = mPoints[i * 2 + 1];
+                left = Math.min(left, x);
+                right = Math.max(right, x);
+                top = Math.min(top, y);
+                bottom = Math.max(bottom, y);
+            }
+            mBounds.set(left, top, right, bottom);
+            mBoundsValid = true;
+        }
+        out.set(mBounds);
+    }
+
+    /**
+     * Transforms the samples in place and rebuilds the paths.
+     *
+     * @param matrix    Transform to apply, in document coordinates.
+     * @throws IllegalStateException if the stroke is not sealed.
+     */
+    public void transform(Matrix matrix) {
+        if (!mSealed) {
+            throw new IllegalStateException("Transforming an unsealed stroke");
+        }
+
+        matrix.mapPoints(mPoints, 0, mPoints, 0, mSize);
+        if (mWidths != null) {
+            // Scaling the stroke scales its width; the paint's width stays the same.
+            float scale = matrix.mapRadius(1f);
+            for (int i = 0; i < mSize; i++) {
+                mWidths[i] *= scale;
+            }
+        }
+        mBoundsValid = false;
+        mVersion++;
+        buildPath(null, mPath);
+        Arrays.fill(mLevels, null);
+        rebuildOutline();
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public float getX(int i) {
+        return mPoints[i * 2];
+    }
+
+    public float getY(int i) {
+        return mPoints[i * 2 + 1];
+    }
+
+    /**
+     * @return True if the stroke has a width for each sample.
+     */
+    public boolean isVariableWidth() {
+        return mWidths != null;
+    }
+
+    /**
+     * @return Width of the given sample relative to the paint's width; 1 for constant width strokes.
+     */
+    public float getWidth(int i) {
+        return mWidths == null ? 1f : mWidths[i];
+    }
+
+    /**
+     * @return Largest width of any sample relative to the paint's width; 1 for constant width
+     * strokes.
+     */
+    public float getMaxWidth() {
+        if (mWidths == null) {
+            return 1f;
+        }
+        float max = 0f;
+        for (int i = 0; i < mSize; i++) {
+            max = Math.max(max, mWidths[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Returns the filled outline of a variable width stroke, building it on first use. It is kept
+     * up to date as samples are added, erased and transformed.
+     *
+     * @param paintWidth    Width of the paint the stroke is drawn with, in document units.
+     * @return Outline to fill. Do not modify it.
+     * @throws IllegalStateException if the stroke has a constant width.
+     */
+    public Path getOutline(float paintWidth) {
+        if (mWidths == null) {
+            throw new IllegalStateException("Outline of a constant width stroke");
+        }
+        if (mOutline == null || mOutlineWidth != paintWidth) {
+            if (mOutline == null) {
+                mOutline = new Path();
+            }
+            mOutlineWidth = paintWidth;
+            rebuildOutline();
+        }
+        return mOutline;
+    }
+
+    /**
+     * Rebuilds the outline in place, if it has been built.
+     */
+    private void rebuildOutline() {
+        if (mOutline == null) {
+            return;
+        }
+        mOutline.rewind();
+        float radius = mOutlineWidth / 2;
+        if (mSize == 1 || !isErased(0)) {
+            addDisc(mOutline, 0, radius);
+        }
+        for (int segment = 0; segment < mSize - 1; segment++) {
+            appendOutline(mOutline, segment, radius);
+        }
+    }
+
+    /**
+     * Adds a segment to an outline, as a quad joining the discs at its ends, followed by the disc
+     * at its end. The disc at its start is added by the segment before, unless that is erased.
+     * Erased segments add nothing.
+     */
+    private void appendOutline(Path outline, int segment, float radius) {
+        if (isErased(segment)) {
+            return;
+        }
+        if (segment > 0 && isErased(segment - 1)) {
+            addDisc(outline, segment, radius);
+        }
+
+        float ax = getX(segment), ay = getY(segment);
+        float bx = getX(segment + 1), by = getY(segment + 1);
+        float length = (float) Math.hypot(bx - ax, by - ay);
+        if (length > 0f) {
+            // Left normal; every quad winds the same way relative to its segment, so the
+            // quads and discs combine under the default non-zero fill rule.
+            float nx = -(by - ay) / length, ny = (bx - ax) / length;
+            float ra = radius * mWidths[segment], rb = radius * mWidths[segment + 1];
+            outline.moveTo(ax + nx * ra, ay + ny * ra);
+            outline.lineTo(bx + nx * rb, by + ny * rb);
+            outline.lineTo(bx - nx * rb, by - ny * rb);
+            outline.lineTo(ax - nx * ra, ay - ny * ra);
+            outline.close();
+        }
+        addDisc(outline, segment + 1, radius);
+    }
+
+    private void addDisc(Path outline, int i, float radius) {
+        float r = radius * mWidths[i];
+        if (r > 0f) {
+            outline.addCircle(getX(i), getY(i), r, Path.Direction.CCW);
+        }
+    }
+
+    /**
+     * @return Number of segments, one fewer than the number of samples.
+     */
+    public int getSegmentCount() {
+        return mSize - 1;
+    }
+
+    /**
+     * @return True if the given segment is erased.
+     */
+    public boolean isErased(int segment) {
+        return mErased != null && mErased.get(segment);
+    }
+
+    /**
+     * @return True if any segment is erased.
+     */
+    public boolean hasErased() {
+        return mErased != null && !mErased.isEmpty();
+    }
+
+    /**
+     * Erases spans of segments, splitting the stroke's paths around them.
+     *
+     * @param spans Pairs of (first segment, segment after the last) to erase.
+     * @throws IllegalStateException if the stroke is not sealed.
+     */
+    public void erase(int[] spans) {
+        if (!mSealed) {
+            throw new IllegalStateException("Erasing an unsealed stroke");
+        }
+        if (mErased == null) {
+            mErased = new BitSet(mSize - 1);
+        }
+        for (int i = 0; i < spans.length; i += 2) {
+            mErased.set(spans[i], spans[i + 1]);
+        }
+        onErasedChanged();
+    }
+
+    /**
+     * Restores spans of erased segments.
+     *
+     * @param spans Pairs of (first segment, segment after the last) to restore.
+     */
+    public void restore(int[] spans) {
+        if (mErased != null) {
+            for (int i = 0; i < spans.length; i += 2) {
+                mErased.clear(spans[i], spans[i + 1]);
+            }
+            onErasedChanged();
+        }
+    }
+
+    /**
+     * Converts a set of segments into spans of consecutive segments.
+     *
+     * @param segments  Set of segments.
+     * @return Pairs of (first segment, segment after the last), in order.
+     */
+    public static int[] toSpans(BitSet segments) {
+        int count = 0;
+        int i = segments.nextSetBit(0);
+        while (i >= 0) {
+            count++;
+            i = segments.nextSetBit(segments.nextClearBit(i));
+        }
+
+        int[] spans = new int[count * 2];
+        i = segments.nextSetBit(0);
+        for (int j = 0; j < spans.length; j += 2) {
+            spans[j] = i;
+            spans[j + 1] = segments.nextClearBit(i);
+            i = segments.nextSetBit(spans[j + 1]);
+        }
+        return spans;
+    }
+
+    /**
+     * Rebuilds the full detail path in place, so views holding it see the change, and drops the
+     * simplified levels.
+     */
+    private void onErasedChanged() {
+        mVersion++;
+        buildPath(null, mPath);
+        Arrays.fill(mLevels, null);
+        rebuildOutline();
+    }
+
+    /**
+     * @return The full detail path. Do not modify it.
+     */
+    public Path getPath() {
+        return mPath;
+    }
+
+    /**
+     * Returns the cheapest path whose error is below the given amount.
+     *
+     * @param maxError  Largest acceptable error, in document units. For a view zoomed by z, one
+     *                  pixel is 1 / z document units.
+     * @return Path to draw. Do not modify it.
+     */
+    public Path getPath(float maxError) {
+        if (!mSealed) {
+            return mPath;
+        }
+
+        int level = 0;
+        while (level < LEVELS && getTolerance(level + 1) < maxError) {
+            level++;
+        }
+        return getLevel(level);
+    }
+
+    /**
+     * @param level Level of detail, from 0 to LEVELS.
+     * @return Maximum error of the given level, in document units.
+     */
+    public static float getTolerance(int level) {
+        return level == 0 ? 0f : BASE_TOLERANCE * (1 << (level - 1));
+    }
+
+    /**
+     * @param level Level of detail, from 0 to LEVELS.
+     * @return Path at the given level, building it if necessary.
+     */
+    private Path getLevel(int level) {
+        if (level == 0) {
+            return mPath;
+        }
+        if (mLevels[level] == null) {
+            boolean[] keep = simplify(getTolerance(level));
+            if (mErased != null) {
+                // Keep both ends of every erased segment, so the gaps stay where they are.
+                for (int i = mErased.nextSetBit(0); i >= 0; i = mErased.nextSetBit(i + 1)) {
+                    keep[i] = true;
+                    keep[i + 1] = true;
+                }
+            }
+            mLevels[level] = buildPath(keep, new Path());
+        }
+        return mLevels[level];
+    }
+
+    /**
+     * Douglas-Peucker simplification, using an explicit stack rather than recursion.
+     *
+     * @param tolerance Maximum distance of a dropped sample from the simplified polyline.
+     * @return Which samples are kept.
+     */
+    private boolean[] simplify(float tolerance) {
+        boolean[] keep = new boolean[mSize];
+        keep[0] = true;
+        keep[mSize - 1] = true;
+
+        int[] stack = new int[Math.max(2, mSize * 2)];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = mSize - 1;
+        float toleranceSq = tolerance * tolerance;
+
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+
+            float ax = getX(first), ay = getY(first);
+            float dx = getX(last) - ax, dy = getY(last) - ay;
+            float lengthSq = dx * dx + dy * dy;
+
+            int farthest = -1;
+            float farthestSq = toleranceSq;
+            for (int i = first + 1; i < last; i++) {
+                float px = getX(i) - ax, py = getY(i) - ay;
+                float distanceSq;
+                if (lengthSq == 0f) {
+                    distanceSq = px * px + py * py;
+                } else {
+                    float cross = px * dy - py * dx;
+                    distanceSq = cross * cross / lengthSq;
+                }
+                if (distanceSq > farthestSq) {
+                    farthest = i;
+                    farthestSq = distanceSq;
+                }
+            }
+
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+        return keep;
+    }
+
+    /**
+     * Builds a smoothed path through the kept samples, the same way the full detail path is built.
+     * Erased segments split the path; each piece before a gap is finished with a line to its last
+     * sample.
+     *
+     * @param keep  Which samples are kept, or null to keep all of them.
+     * @param path  Path to build into. Its previous contents are discarded.
+     * @return The path.
+     */
+    private Path buildPath(boolean[] keep, Path path) {
+        path.rewind();
+        float lastX = getX(0), lastY = getY(0);
+        path.moveTo(lastX, lastY);
+        for (int i = 1; i < mSize; i++) {
+            float x = getX(i), y = getY(i);
+            if (isErased(i - 1)) {
+                if (i > 1 && !isErased(i - 2)) {
+                    path.lineTo(lastX, lastY);
+                }
+                path.moveTo(x, y);
+                lastX = x;
+                lastY = y;
+            } else if (keep == null || keep[i]) {
+                path.quadTo(lastX, lastY, (x + lastX) / 2, (y + lastY) / 2);
+                lastX = x;
+                lastY = y;
+            }
+        }
+        return path;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Stroke " + mId + " of " + mSize + " samples";
+    }
+}
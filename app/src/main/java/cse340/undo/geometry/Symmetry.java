@@ -0,0 +1,139 @@
+package cse340.undo.geometry;
+
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+
+/**
+ * The copies a stroke is drawn as in a symmetry mode: the stroke itself followed by its mirror
+ * image, or by its rotations about a center. Strokes share their symmetry rather than holding
+ * copies of their geometry, so a stroke costs the same however many copies it is drawn as.
+ *
+ * Symmetries are immutable.
+ */
+public final class Symmetry {
+    /** Most copies a radial symmetry can have. */
+    public static final int MAX_FOLDS = 16;
+
+    public enum Mode {
+        /** Mirrors left and right about a vertical line through the center. */
+        MIRROR_HORIZONTAL,
+
+        /** Mirrors top and bottom about a horizontal line through the center. */
+        MIRROR_VERTICAL,
+
+        /** Rotates about the center by equal steps. */
+        RADIAL
+    }
+
+    private final Mode mMode;
+    private final int mFolds;
+    private final float mCenterX;
+    private final float mCenterY;
+
+    /** Transform of each copy, in document coordinates. The first is the identity. */
+    private final Matrix[] mTransforms;
+
+    /** Scratch rectangle for mapping bounds. */
+    private final RectF mMapped;
+
+    /**
+     * @param mode      How the copies are made.
+     * @param folds     Number of copies of a radial symmetry, from 2 to MAX_FOLDS. Ignored for
+     *                  mirrors, which always have 2.
+     * @param centerX   Horizontal coordinate of the center, in document coordinates.
+     * @param centerY   Vertical coordinate of the center, in document coordinates.
+     * @throws IllegalArgumentException if mode is null or a radial symmetry has too few or many
+     *                  folds.
+     */
+    public Symmetry(Mode mode, int folds, float centerX, float centerY) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Null mode");
+        }
+        if (mode == Mode.RADIAL && (folds < 2 || folds > MAX_FOLDS)) {
+            throw new IllegalArgumentException("Illegal folds: " + folds);
+        }
+
+        mMode = mode;
+        mFolds = mode == Mode.RADIAL ? folds : 2;
+        mCenterX = centerX;
+        mCenterY = centerY;
+        mMapped = new RectF();
+
+        mTransforms = new Matrix[mFolds];
+        mTransforms[0] = new Matrix();
+        for (int i = 1; i < mFolds; i++) {
+            Matrix transform = new Matrix();
+            switch (mode) {
+                case MIRROR_HORIZONTAL:
+                    transform.setScale(-1f, 1f, centerX, centerY);
+                    break;
+                case MIRROR_VERTICAL:
+                    transform.setScale(1f, -1f, centerX, centerY);
+                    break;
+                case RADIAL:
+                    transform.setRotate(360f * i / mFolds, centerX, centerY);
+                    break;
+            }
+            mTransforms[i] = transform;
+        }
+    }
+
+    public Mode getMode() {
+        return mMode;
+    }
+
+    public float getCenterX() {
+        return mCenterX;
+    }
+
+    public float getCenterY() {
+        return mCenterY;
+    }
+
+    /**
+     * @return Number of copies, including the stroke itself.
+     */
+    public int getCopyCount() {
+        return mFolds;
+    }
+
+    /**
+     * @param i Index of the copy; 0 is the stroke itself.
+     * @return Transform from the stroke to the copy, in document coordinates. Do not modify it.
+     */
+    public Matrix getTransform(int i) {
+        return mTransforms[i];
+    }
+
+    /**
+     * Computes the area covered by every copy of an area. Use from the UI thread.
+     *
+     * @param bounds    Area covered by the stroke itself, in document coordinates.
+     * @param out       Rectangle to store the area of every copy in. May be bounds.
+     */
+    public void mapBounds(RectF bounds, RectF out) {
+        float left = bounds.left, top = bounds.top, right = bounds.right, bottom = bounds.bottom;
+        out.set(left, top, right, bottom);
+        for (int i = 1; i < mFolds; i++) {
+            mMapped.set(left, top, right, bottom);
+            mTransforms[i].mapRect(mMapped);
+            out.union(mMapped);
+        }
+    }
+
+    /**
+     * @param centerX   Horizontal coordinate of the new center, in document coordinates.
+     * @param centerY   Vertical coordinate of the new center, in document coordinates.
+     * @return Symmetry with the same copies about a different center.
+     */
+    public Symmetry withCenter(float centerX, float centerY) {
+        return new Symmetry(mMode, mFolds, centerX, centerY);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return mMode + " x" + mFolds + " about (" + mCenterX + ", " + mCenterY + ")";
+    }
+}
@@ -47,4 +47,14 @@ public interface AbstractStackHistory {
      * @return True if can redo any actions, false otherwise.
      */
     boolean canRedo();
+
+    /**
+     * @return Number of actions which can currently be undone.
+     */
+    int size();
+
+    /**
+     * @return Number of actions which can currently be redone.
+     */
+    int redoSize();
 }
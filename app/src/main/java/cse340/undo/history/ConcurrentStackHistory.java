@@ -0,0 +1,238 @@
+package cse340.undo.history;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import cse340.undo.actions.AbstractReversibleAction;
+
+/**
+ * Stack history which background threads, such as imports, sync or recognizers, can safely submit
+ * actions to. Submitted actions go onto a lock-free queue, and are applied in submission order on
+ * the history's own thread when the drain task handed to the wake-up executor runs, normally on the
+ * next frame. Submitting never blocks.
+ *
+ * Everything except submit, getPendingCount and toString, queries included, must be called on the
+ * thread that created the history, and throws IllegalStateException otherwise, so a stray call
+ * from another thread fails fast instead of reading or corrupting the stacks mid-update.
+ * toString may be called from any thread, for logging, though off the history's thread the sizes
+ * it reports may be stale.
+ */
+public class ConcurrentStackHistory extends StackHistory {
+    /**
+     * Applies submitted actions on the history's thread, for example by doing them on the
+     * DrawingView and adding them to the history.
+     */
+    public interface Applier {
+        void apply(AbstractReversibleAction action);
+    }
+
+    /** Most submitted actions applied per drain, so a flood of submissions can't stall a frame. */
+    public static final int MAX_APPLIED_PER_DRAIN = 64;
+
+    /** Thread the history belongs to. */
+    private final Thread mOwner;
+
+    /** Actions submitted and not yet applied, in submission order. */
+    private final ConcurrentLinkedQueue<AbstractReversibleAction> mSubmitted;
+
+    /** True while a drain is handed to the executor and hasn't started yet. */
+    private final AtomicBoolean mDrainScheduled;
+
+    /** Runs the drain on the history's thread. */
+    private final Executor mWakeUp;
+
+    private final Runnable mDrain;
+
+    /** Applies submitted actions; defaults to adding them to the history. */
+    private Applier mApplier;
+
+    /**
+     * Initializes empty undo/redo stacks owned by the calling thread.
+     *
+     * @param capacity  Maximum size of undo/redo stacks.
+     * @param wakeUp    Runs a task on the calling thread, for example on its next frame. Called
+     *                  from any thread.
+     * @throws IllegalArgumentException if capacity is not positive or wakeUp is null.
+     */
+    public ConcurrentStackHistory(int capacity, Executor wakeUp) {
+        super(capacity);
+        if (wakeUp == null) {
+            throw new IllegalArgumentException("Null executor");
+        }
+
+        mOwner = Thread.currentThread();
+        mSubmitted = new ConcurrentLinkedQueue<>();
+        mDrainScheduled = new AtomicBoolean();
+        mWakeUp = wakeUp;
+        mDrain = this::drain;
+        mApplier = this::addAction;
+    }
+
+    /**
+     * Sets how submitted actions are applied.
+     *
+     * @param applier   Applier, or null to add submitted actions straight to the history.
+     */
+    public void setApplier(Applier applier) {
+        checkThread();
+        mApplier = applier == null ? this::addAction : applier;
+    }
+
+    /**
+     * Submits an action to be applied on the history's thread. May be called from any thread;
+     * actions submitted by one thread are applied in the order it submitted them.
+     *
+     * @param action    Reversible action to be applied.
+     * @throws IllegalArgumentException if action is null.
+     */
+    public void submit(AbstractReversibleAction action) {
+        if (action == null) {
+            throw new IllegalArgumentException("Null action");
+        }
+        mSubmitted.offer(action);
+        scheduleDrain();
+    }
+
+    /**
+     * @return Number of submitted actions not yet applied. Approximate while producers submit.
+     */
+    public int getPendingCount() {
+        return mSubmitted.size();
+    }
+
+    /**
+     * Applies submitted actions now, up to MAX_APPLIED_PER_DRAIN of them. If more remain, another
+     * drain is scheduled.
+     */
+    public void drain() {
+        checkThread();
+        // Cleared first, so an action submitted during the drain either gets applied by it or
+        // schedules another.
+        mDrainScheduled.set(false);
+        for (int i = 0; i < MAX_APPLIED_PER_DRAIN; i++) {
+            AbstractReversibleAction action = mSubmitted.poll();
+            if (action == null) {
+                return;
+            }
+            mApplier.apply(action);
+        }
+        if (!mSubmitted.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    private void scheduleDrain() {
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            mWakeUp.execute(mDrain);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if called from a thread other than the history's.
+     */
+    private void checkThread() {
+        if (Thread.currentThread() != mOwner) {
+            throw new IllegalStateException("History used from " + Thread.currentThread().getName()
+                    + ", owned by " + mOwner.getName());
+        }
+    }
+
+    @Override
+    public void addAction(AbstractReversibleAction action) {
+        checkThread();
+        super.addAction(action);
+    }
+
+    @Override
+    public AbstractReversibleAction undo() {
+        checkThread();
+        return super.undo();
+    }
+
+    @Override
+    public AbstractReversibleAction redo() {
+        checkThread();
+        return super.redo();
+    }
+
+    /**
+     * Clears the history. Submitted actions not yet applied are still applied afterwards.
+     */
+    @Override
+    public void clear() {
+        checkThread();
+        super.clear();
+    }
+
+    @Override
+    public HistorySnapshot snapshot() {
+        checkThread();
+        return super.snapshot();
+    }
+
+    @Override
+    public long getVersion() {
+        checkThread();
+        return super.getVersion();
+    }
+
+    @Override
+    public AbstractReversibleAction peekBottom() {
+        checkThread();
+        return super.peekBottom();
+    }
+
+    @Override
+    public AbstractReversibleAction peekTop() {
+        checkThread();
+        return super.peekTop();
+    }
+
+    @Override
+    public boolean didClear() {
+        checkThread();
+        return super.didClear();
+    }
+
+    @Override
+    public int size() {
+        checkThread();
+        return super.size();
+    }
+
+    @Override
+    public int redoSize() {
+        checkThread();
+        return super.redoSize();
+    }
+
+    @Override
+    public boolean canUndo() {
+        checkThread();
+        return super.canUndo();
+    }
+
+    @Override
+    public boolean canRedo() {
+        checkThread();
+        return super.canRedo();
+    }
+
+    @Override
+    public void setOnActionEvictedListener(OnActionEvictedListener listener) {
+        checkThread();
+        super.setOnActionEvictedListener(listener);
+    }
+
+    /**
+     * May be called from any thread.
+     */
+    @NonNull
+    @Override
+    public String toString() {
+        return super.toString() + ", pending: " + mSubmitted.size();
+    }
+}
@@ -0,0 +1,104 @@
+package cse340.undo.history;
+
+import android.support.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import cse340.undo.actions.AbstractReversibleAction;
+
+/**
+ * Immutable view of the actions which were done in a StackHistory at one moment, oldest first.
+ * Taking a snapshot costs O(1): it shares the history's storage, which the history never writes
+ * over while a snapshot can see it. Snapshots may be read from any thread, for example to export,
+ * autosave or thumbnail the document while the user keeps drawing.
+ *
+ * The snapshot fixes which actions were done and in what order. The actions themselves belong to
+ * the UI thread; read only their immutable data from other threads.
+ *
+ * @see StackHistory#snapshot()
+ */
+public final class HistorySnapshot implements Iterable<AbstractReversibleAction> {
+    /** Storage shared with the history; only [mFrom, mTo) belongs to this snapshot. */
+    private final AbstractReversibleAction[] mActions;
+    private final int mFrom;
+    private final int mTo;
+
+    /** Version of the history the snapshot was taken at. */
+    private final long mVersion;
+
+    HistorySnapshot(AbstractReversibleAction[] actions, int from, int to, long version) {
+        mActions = actions;
+        mFrom = from;
+        mTo = to;
+        mVersion = version;
+    }
+
+    /**
+     * @return Version of the history when the snapshot was taken. Versions increase with every
+     * change to the history, so equal versions of one history mean equal contents.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return Number of done actions.
+     */
+    public int size() {
+        return mTo - mFrom;
+    }
+
+    public boolean isEmpty() {
+        return mTo == mFrom;
+    }
+
+    /**
+     * @param i Index of the action, 0 being the oldest.
+     * @return The action.
+     * @throws IndexOutOfBoundsException if i is outside [0, size()).
+     */
+    public AbstractReversibleAction get(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("Index " + i + ", size " + size());
+        }
+        return mActions[mFrom + i];
+    }
+
+    /**
+     * @return The most recently done action, or null if there is none.
+     */
+    public AbstractReversibleAction peekTop() {
+        return isEmpty() ? null : mActions[mTo - 1];
+    }
+
+    /**
+     * @return Iterator over the done actions, oldest first.
+     */
+    @NonNull
+    @Override
+    public Iterator<AbstractReversibleAction> iterator() {
+        return new Iterator<AbstractReversibleAction>() {
+            private int mNext = mFrom;
+
+            @Override
+            public boolean hasNext() {
+                return mNext < mTo;
+            }
+
+            @Override
+            public AbstractReversibleAction next() {
+                if (mNext >= mTo) {
+                    throw new NoSuchElementException();
+                }
+                return mActions[mNext++];
+            }
+        };
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Snapshot " + mVersion + ": " + size() + " actions";
+    }
+}
@@ -13,14 +13,46 @@ import cse340.undo.app.ClearView;
  * Keeps a history of actions that have been done and undone using two stacks. When an item is done,
  * it is pushed onto the undo stack. When an item is undone, it is popped from the undo stack and
  * pushed to the redo stack. The number of history items is limited by the capacity.
+ *
+ * The undo stack is kept oldest first in an array which snapshots share. Slots a snapshot can see
+ * are never written again: pushing over one copies the stack into a new array first, which only
+ * happens when an action is done after an undo while a snapshot is held. Evicting the oldest
+ * action just moves the start of the stack forward, and the array is compacted once it fills, so
+ * every operation is amortized O(1).
  */
 public class StackHistory implements AbstractStackHistory {
-    /** Data structures for staring undo/redo events. */
-    private final Deque<AbstractReversibleAction> mUndoStack, mRedoStack;
+    /**
+     * Listener called when the oldest action falls off the history and can no longer be undone.
+     */
+    public interface OnActionEvictedListener {
+        void onActionEvicted(AbstractReversibleAction action);
+    }
+
+    /** Smallest array allocated for the undo stack. */
+    private static final int MIN_CHUNK = 16;
+
+    /** Undo stack, oldest first, in mUndoStack[mUndoFrom, mUndoTo). */
+    private AbstractReversibleAction[] mUndoStack;
+    private int mUndoFrom, mUndoTo;
+
+    /** Slots of mUndoStack below this index may be seen by a snapshot, so must not be written. */
+    private int mSharedTo;
 
-    /** Should always be true that mUndoStack.size() + mRedoStack.size() <= capacity. */
+    /** Redo stack, most recently undone first. */
+    private final Deque<AbstractReversibleAction> mRedoStack;
+
+    /** Incremented by every change to the stacks. */
+    private long mVersion;
+
+    /** Snapshot of the current version, or null if none has been taken. */
+    private HistorySnapshot mSnapshot;
+
+    /** Should always be true that size() + mRedoStack.size() <= capacity. */
     private final int mCapacity;
 
+    /** Called with actions evicted by addAction, or null. */
+    private OnActionEvictedListener mEvictedListener;
+
     /**
      * Initializes empty undo/redo stacks.
      *
@@ -33,7 +65,7 @@ public class StackHistory implements AbstractStackHistory {
         }
         this.mCapacity = capacity;
 
-        mUndoStack = new LinkedList<>();
+        mUndoStack = new AbstractReversibleAction[MIN_CHUNK];
         mRedoStack = new LinkedList<>();
     }
 
@@ -44,11 +76,25 @@ public class StackHistory implements AbstractStackHistory {
      */
     @Override
     public void addAction(AbstractReversibleAction action) {
-        if (mUndoStack.size() + 1 > mCapacity) {
-            mUndoStack.removeLast();
+        if (size() + 1 > mCapacity) {
+            AbstractReversibleAction evicted = mUndoStack[mUndoFrom];
+            release(mUndoFrom++);
+            if (mEvictedListener != null) {
+                mEvictedListener.onActionEvicted(evicted);
+            }
         }
-        mUndoStack.addFirst(action);
+        push(action);
         mRedoStack.clear();
+        mVersion++;
+    }
+
+    /**
+     * Sets the listener called when addAction evicts the oldest action.
+     *
+     * @param listener  Listener, or null to remove it.
+     */
+    public void setOnActionEvictedListener(OnActionEvictedListener listener) {
+        mEvictedListener = listener;
     }
 
     /**
@@ -58,11 +104,13 @@ public class StackHistory implements AbstractStackHistory {
      */
     @Override
     public AbstractReversibleAction undo() {
-        if (mUndoStack.size() == 0) {
+        if (size() == 0) {
             return null;
         } else {
-            AbstractReversibleAction action = mUndoStack.removeFirst();
+            AbstractReversibleAction action = mUndoStack[--mUndoTo];
+            release(mUndoTo);
             mRedoStack.addFirst(action);
+            mVersion++;
             return action;
         }
     }
@@ -78,7 +126,8 @@ public class StackHistory implements AbstractStackHistory {
             return null;
         } else {
             AbstractReversibleAction action = mRedoStack.removeFirst();
-            mUndoStack.addFirst(action);
+            push(action);
+            mVersion++;
             return action;
         }
     }
@@ -88,8 +137,61 @@ public class StackHistory implements AbstractStackHistory {
      */
     @Override
     public void clear() {
-        mUndoStack.clear();
+        while (mUndoTo > mUndoFrom) {
+            release(--mUndoTo);
+        }
+        mUndoFrom = mUndoTo = 0;
         mRedoStack.clear();
+        mVersion++;
+    }
+
+    /**
+     * Returns an immutable view of the done actions, which may be read from any thread while the
+     * history keeps changing. Takes O(1) time and doesn't copy the actions.
+     *
+     * @return Snapshot of the undo stack, oldest action first.
+     */
+    public HistorySnapshot snapshot() {
+        if (mSnapshot == null || mSnapshot.getVersion() != mVersion) {
+            mSnapshot = new HistorySnapshot(mUndoStack, mUndoFrom, mUndoTo, mVersion);
+            mSharedTo = Math.max(mSharedTo, mUndoTo);
+        }
+        return mSnapshot;
+    }
+
+    /**
+     * @return Number of changes made to the history so far.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Pushes an action onto the undo stack, moving the stack to a new array first if the array is
+     * full or the slot may be seen by a snapshot.
+     */
+    private void push(AbstractReversibleAction action) {
+        if (mUndoTo == mUndoStack.length || mUndoTo < mSharedTo) {
+            int size = size();
+            AbstractReversibleAction[] stack =
+                    new AbstractReversibleAction[Math.max(MIN_CHUNK, (size + 1) * 2)];
+            System.arraycopy(mUndoStack, mUndoFrom, stack, 0, size);
+            mUndoStack = stack;
+            mUndoFrom = 0;
+            mUndoTo = size;
+            mSharedTo = 0;
+        }
+        mUndoStack[mUndoTo++] = action;
+    }
+
+    /**
+     * Drops the stack's reference to the action in a slot it no longer uses, unless a snapshot may
+     * still see it.
+     */
+    private void release(int slot) {
+        if (slot >= mSharedTo) {
+            mUndoStack[slot] = null;
+        }
     }
 
     /**
@@ -100,7 +202,7 @@ public class StackHistory implements AbstractStackHistory {
      * or null if empty
      */
     public AbstractReversibleAction peekBottom() {
-        return mUndoStack.peekLast();
+        return size() == 0 ? null : mUndoStack[mUndoFrom];
     }
 
     /**
@@ -111,7 +213,7 @@ public class StackHistory implements AbstractStackHistory {
      * or null if empty
      */
     public AbstractReversibleAction peekTop() {
-        return mUndoStack.peekFirst();
+        return size() == 0 ? null : mUndoStack[mUndoTo - 1];
     }
 
     /**
@@ -122,8 +224,20 @@ public class StackHistory implements AbstractStackHistory {
         return !(peekTop() instanceof ClearAction) && canUndo();
     }
 
+    /**
+     * @return Number of actions which can currently be undone.
+     */
+    @Override
     public int size() {
-        return mUndoStack.size();
+        return mUndoTo - mUndoFrom;
+    }
+
+    /**
+     * @return Number of actions which can currently be redone.
+     */
+    @Override
+    public int redoSize() {
+        return mRedoStack.size();
     }
 
     /**
@@ -133,7 +247,7 @@ public class StackHistory implements AbstractStackHistory {
      */
     @Override
     public boolean canUndo() {
-        return !mUndoStack.isEmpty();
+        return size() > 0;
     }
 
     /**
@@ -144,8 +258,12 @@ public class StackHistory implements AbstractStackHistory {
     @Override
     public boolean canRedo() {return !mRedoStack.isEmpty();}
 
+    /**
+     * Reads the stacks directly rather than through the overridable getters, so subclasses which
+     * restrict those to one thread can still be logged from any thread.
+     */
     @NonNull
     public String toString() {
-        return  "Undo size: " + mUndoStack.size() + ", redo size: " + mRedoStack.size();
+        return  "Undo size: " + (mUndoTo - mUndoFrom) + ", redo size: " + mRedoStack.size();
     }
 }
@@ -0,0 +1,169 @@
+package cse340.undo.input;
+
+import cse340.undo.render.FrameBudgetMonitor;
+
+/**
+ * Keeps samples based on a distance threshold which adapts to the stroke. Slow movement, where
+ * jitter dominates, uses the maximum distance; fast movement uses the minimum. Sharp turns lower
+ * the threshold so corners keep their shape. If a FrameBudgetMonitor is attached, the threshold
+ * grows while frames overrun, and strokes with more than the maximum number of points are thinned
+ * progressively, so long sessions keep bounded point counts. The last rejected sample is kept when
+ * the stroke ends, so strokes still finish under the finger.
+ */
+public class AdaptiveSamplingStage extends StrokeStage {
+    /** Default limit on samples per stroke before thinning kicks in. */
+    public static final int DEFAULT_MAX_POINTS = 2000;
+
+    /** Default strength of the corner adjustment, in [0, 1]. */
+    public static final float DEFAULT_CURVATURE_GAIN = 0.75f;
+
+    /** Threshold limits in screen pixels, and the speed (pixels per ms) considered fast. */
+    private final float mMinDistance, mMaxDistance, mFastSpeed;
+
+    private float mCurvatureGain;
+    private int mMaxPoints;
+    private FrameBudgetMonitor mMonitor;
+
+    /** Threshold limits in document units for the current stroke. */
+    private float mStrokeMin, mStrokeMax;
+
+    /** Document units per pixel for the current stroke. */
+    private float mUnitsPerPixel;
+
+    /** Last kept sample, and the unit direction the stroke was moving in when it was kept. */
+    private float mLastX, mLastY;
+    private long mLastTime;
+    private float mDirX, mDirY;
+    private boolean mHasDirection;
+
+    /** Last rejected sample, emitted at the end so the stroke finishes under the finger. */
+    private float mPendingX, mPendingY, mPendingPressure;
+    private long mPendingTime;
+    private boolean mHasPending;
+
+    /** Number of samples kept in the current stroke. */
+    private int mPoints;
+
+    /**
+     * @param minDistance   Threshold for fast movement and corners, in screen pixels.
+     * @param maxDistance   Threshold for slow movement, in screen pixels.
+     * @param fastSpeed     Speed at and above which the minimum threshold applies, in pixels per ms.
+     * @throws IllegalArgumentException if the limits are not ordered or the speed isn't positive.
+     */
+    public AdaptiveSamplingStage(float minDistance, float maxDistance, float fastSpeed) {
+        super("adaptive");
+        if (!(minDistance >= 0f && maxDistance >= minDistance && fastSpeed > 0f)) {
+            throw new IllegalArgumentException("Illegal limits " + minDistance + ", " + maxDistance
+                    + " or speed " + fastSpeed);
+        }
+
+        mMinDistance = minDistance;
+        mMaxDistance = maxDistance;
+        mFastSpeed = fastSpeed;
+        mCurvatureGain = DEFAULT_CURVATURE_GAIN;
+        mMaxPoints = DEFAULT_MAX_POINTS;
+    }
+
+    /**
+     * @param gain  How strongly sharp turns pull the threshold towards the minimum, in [0, 1].
+     */
+    public void setCurvatureGain(float gain) {
+        mCurvatureGain = Math.max(0f, Math.min(1f, gain));
+    }
+
+    /**
+     * @param maxPoints Number of samples per stroke after which the threshold grows with the count.
+     */
+    public void setMaxPoints(int maxPoints) {
+        if (maxPoints <= 0) {
+            throw new IllegalArgumentException("Illegal max points: " + maxPoints);
+        }
+        mMaxPoints = maxPoints;
+    }
+
+    /**
+     * @param monitor   Monitor whose load factor scales the threshold, or null to disable the
+     *                  frame budget feedback.
+     */
+    public void setFrameBudgetMonitor(FrameBudgetMonitor monitor) {
+        mMonitor = monitor;
+    }
+
+    @Override
+    public void begin(float x, float y, long time, float pressure, float unitsPerPixel) {
+        mUnitsPerPixel = unitsPerPixel;
+        mStrokeMin = mMinDistance * unitsPerPixel;
+        mStrokeMax = mMaxDistance * unitsPerPixel;
+        mLastX = x;
+        mLastY = y;
+        mLastTime = time;
+        mHasDirection = false;
+        mHasPending = false;
+        mPoints = 1;
+    }
+
+    @Override
+    public void process(SampleBuffer in, SampleBuffer out) {
+        for (int i = 0; i < in.size(); i++) {
+            float dx = in.getX(i) - mLastX;
+            float dy = in.getY(i) - mLastY;
+            float distanceSq = dx * dx + dy * dy;
+            if (distanceSq == 0f) {
+                continue;
+            }
+
+            float distance = (float) Math.sqrt(distanceSq);
+            if (distance >= getThreshold(dx, dy, distance, in.getTime(i))) {
+                mDirX = dx / distance;
+                mDirY = dy / distance;
+                mHasDirection = true;
+
+                out.add(in, i);
+                mLastX = in.getX(i);
+                mLastY = in.getY(i);
+                mLastTime = in.getTime(i);
+                mPoints++;
+                mHasPending = false;
+            } else {
+                mPendingX = in.getX(i);
+                mPendingY = in.getY(i);
+                mPendingTime = in.getTime(i);
+                mPendingPressure = in.getPressure(i);
+                mHasPending = true;
+            }
+        }
+    }
+
+    @Override
+    public void end(SampleBuffer out) {
+        if (mHasPending) {
+            out.add(mPendingX, mPendingY, mPendingTime, mPendingPressure);
+            mHasPending = false;
+        }
+    }
+
+    /**
+     * @return Distance the sample at (mLastX + dx, mLastY + dy) must be from the last kept sample.
+     */
+    private float getThreshold(float dx, float dy, float distance, long time) {
+        // Speed, in screen pixels per millisecond, since the last kept sample.
+        long elapsed = Math.max(1, time - mLastTime);
+        float speed = distance / mUnitsPerPixel / elapsed;
+        float fast = Math.min(1f, speed / mFastSpeed);
+        float threshold = mStrokeMax - (mStrokeMax - mStrokeMin) * fast;
+
+        // Turning angle relative to the previous direction: 0 when straight, 1 when reversing.
+        if (mHasDirection) {
+            float turn = (1f - (dx * mDirX + dy * mDirY) / distance) / 2f;
+            threshold -= (threshold - mStrokeMin) * Math.min(1f, turn * 4f) * mCurvatureGain;
+        }
+
+        if (mMonitor != null) {
+            threshold *= mMonitor.getLoadFactor();
+        }
+        if (mPoints > mMaxPoints) {
+            threshold *= (float) mPoints / mMaxPoints;
+        }
+        return threshold;
+    }
+}
@@ -0,0 +1,45 @@
+package cse340.undo.input;
+
+/**
+ * Drops samples closer than a minimum distance to the last sample kept. Compares squared distances,
+ * so no square roots are taken.
+ */
+public class DistanceFilterStage extends StrokeStage {
+    /** Minimum distance between kept samples, in screen pixels. */
+    private final float mMinDistance;
+
+    /** Minimum distance squared, in document units, for the current stroke. */
+    private float mMinDistanceSq;
+
+    /** Last kept sample. */
+    private float mLastX, mLastY;
+
+    /**
+     * @param minDistance   Minimum distance between kept samples, in screen pixels.
+     */
+    public DistanceFilterStage(float minDistance) {
+        super("filter");
+        mMinDistance = minDistance;
+    }
+
+    @Override
+    public void begin(float x, float y, long time, float pressure, float unitsPerPixel) {
+        float minDistance = mMinDistance * unitsPerPixel;
+        mMinDistanceSq = minDistance * minDistance;
+        mLastX = x;
+        mLastY = y;
+    }
+
+    @Override
+    public void process(SampleBuffer in, SampleBuffer out) {
+        for (int i = 0; i < in.size(); i++) {
+            float dx = in.getX(i) - mLastX;
+            float dy = in.getY(i) - mLastY;
+            if (dx * dx + dy * dy >= mMinDistanceSq) {
+                out.add(in, i);
+                mLastX = in.getX(i);
+                mLastY = in.getY(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package cse340.undo.input;
+
+/**
+ * Resamples the stroke at a fixed spacing along its length, so fast strokes (sparse samples) and
+ * slow strokes (dense samples) end up with the same point density. Time and pressure are
+ * interpolated.
+ */
+public class ResampleStage extends StrokeStage {
+    /** Distance between output samples, in screen pixels. */
+    private final float mSpacing;
+
+    /** Distance between output samples in document units, for the current stroke. */
+    private float mStrokeSpacing;
+
+    /** Last input sample, and the distance travelled from the last output sample to it. */
+    private float mLastX, mLastY, mLastPressure;
+    private long mLastTime;
+    private float mCarried;
+
+    /**
+     * @param spacing   Distance between output samples, in screen pixels.
+     * @throws IllegalArgumentException if spacing is not positive.
+     */
+    public ResampleStage(float spacing) {
+        super("resample");
+        if (!(spacing > 0f)) {
+            throw new IllegalArgumentException("Illegal spacing: " + spacing);
+        }
+        mSpacing = spacing;
+    }
+
+    @Override
+    public void begin(float x, float y, long time, float pressure, float unitsPerPixel) {
+        mStrokeSpacing = mSpacing * unitsPerPixel;
+        mLastX = x;
+        mLastY = y;
+        mLastTime = time;
+        mLastPressure = pressure;
+        mCarried = 0f;
+    }
+
+    @Override
+    public void process(SampleBuffer in, SampleBuffer out) {
+        for (int i = 0; i < in.size(); i++) {
+            float x = in.getX(i), y = in.getY(i), pressure = in.getPressure(i);
+            long time = in.getTime(i);
+            float dx = x - mLastX, dy = y - mLastY;
+            float length = (float) Math.sqrt(dx * dx + dy * dy);
+
+            // Walk along the segment, emitting a sample every mStrokeSpacing.
+            float along = mStrokeSpacing - mCarried;
+            while (along <= length) {
+                float t = along / length;
+                out.add(mLastX + dx * t, mLastY + dy * t,
+                        mLastTime + (long) ((time - mLastTime) * t),
+                        mLastPressure + (pressure - mLastPressure) * t);
+                along += mStrokeSpacing;
+            }
+            mCarried = length - (along - mStrokeSpacing);
+
+            mLastX = x;
+            mLastY = y;
+            mLastTime = time;
+            mLastPressure = pressure;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package cse340.undo.input;
+
+import java.util.Arrays;
+
+/**
+ * A reusable, growable list of input samples kept in parallel primitive arrays. Pipeline stages
+ * read from one buffer and write into another, so no objects are allocated per sample.
+ */
+public final class SampleBuffer {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private float[] mX, mY, mPressure;
+    private long[] mTime;
+    private int mSize;
+
+    public SampleBuffer() {
+        mX = new float[INITIAL_CAPACITY];
+        mY = new float[INITIAL_CAPACITY];
+        mPressure = new float[INITIAL_CAPACITY];
+        mTime = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Appends a sample.
+     *
+     * @param x         Horizontal coordinate.
+     * @param y         Vertical coordinate.
+     * @param time      Event time in milliseconds.
+     * @param pressure  Touch pressure.
+     */
+    public void add(float x, float y, long time, float pressure) {
+        if (mSize == mX.length) {
+            int capacity = mSize * 2;
+            mX = Arrays.copyOf(mX, capacity);
+            mY = Arrays.copyOf(mY, capacity);
+            mPressure = Arrays.copyOf(mPressure, capacity);
+            mTime = Arrays.copyOf(mTime, capacity);
+        }
+        mX[mSize] = x;
+        mY[mSize] = y;
+        mTime[mSize] = time;
+        mPressure[mSize] = pressure;
+        mSize++;
+    }
+
+    /**
+     * Appends sample i of another buffer.
+     */
+    public void add(SampleBuffer other, int i) {
+        add(other.mX[i], other.mY[i], other.mTime[i], other.mPressure[i]);
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public float getX(int i) {
+        return mX[i];
+    }
+
+    public float getY(int i) {
+        return mY[i];
+    }
+
+    public long getTime(int i) {
+        return mTime[i];
+    }
+
+    public float getPressure(int i) {
+        return mPressure[i];
+    }
+}
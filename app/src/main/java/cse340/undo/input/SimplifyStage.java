@@ -0,0 +1,76 @@
+package cse340.undo.input;
+
+/**
+ * Drops samples which lie within a tolerance of the straight line between their neighbors. Works
+ * on the stream one sample at a time by holding back the latest candidate until the next sample
+ * shows whether it is needed.
+ */
+public class SimplifyStage extends StrokeStage {
+    /** Maximum distance of a dropped sample from the simplified line, in screen pixels. */
+    private final float mTolerance;
+
+    /** Tolerance squared, in document units, for the current stroke. */
+    private float mToleranceSq;
+
+    /** Last emitted sample. */
+    private float mAnchorX, mAnchorY;
+
+    /** Sample held back until the next one arrives. */
+    private boolean mHasPending;
+    private float mPendingX, mPendingY, mPendingPressure;
+    private long mPendingTime;
+
+    /**
+     * @param tolerance Maximum distance of a dropped sample from the simplified line, in screen
+     *                  pixels.
+     */
+    public SimplifyStage(float tolerance) {
+        super("simplify");
+        mTolerance = tolerance;
+    }
+
+    @Override
+    public void begin(float x, float y, long time, float pressure, float unitsPerPixel) {
+        float tolerance = mTolerance * unitsPerPixel;
+        mToleranceSq = tolerance * tolerance;
+        mAnchorX = x;
+        mAnchorY = y;
+        mHasPending = false;
+    }
+
+    @Override
+    public void process(SampleBuffer in, SampleBuffer out) {
+        for (int i = 0; i < in.size(); i++) {
+            float x = in.getX(i), y = in.getY(i);
+
+            if (mHasPending) {
+                // Distance of the pending sample from the line between the anchor and this one.
+                float dx = x - mAnchorX, dy = y - mAnchorY;
+                float px = mPendingX - mAnchorX, py = mPendingY - mAnchorY;
+                float lengthSq = dx * dx + dy * dy;
+                float cross = px * dy - py * dx;
+                float distanceSq = lengthSq == 0f ? px * px + py * py : cross * cross / lengthSq;
+
+                if (distanceSq > mToleranceSq) {
+                    out.add(mPendingX, mPendingY, mPendingTime, mPendingPressure);
+                    mAnchorX = mPendingX;
+                    mAnchorY = mPendingY;
+                }
+            }
+
+            mHasPending = true;
+            mPendingX = x;
+            mPendingY = y;
+            mPendingTime = in.getTime(i);
+            mPendingPressure = in.getPressure(i);
+        }
+    }
+
+    @Override
+    public void end(SampleBuffer out) {
+        if (mHasPending) {
+            out.add(mPendingX, mPendingY, mPendingTime, mPendingPressure);
+            mHasPending = false;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package cse340.undo.input;
+
+/**
+ * Smooths jitter with an exponential moving average: each output sample moves only part of the way
+ * from the previous output towards the new input.
+ */
+public class SmoothingStage extends StrokeStage {
+    /** Fraction of the way to move towards each new sample, in (0, 1]. */
+    private final float mWeight;
+
+    /** Last output sample. */
+    private float mLastX, mLastY;
+
+    /**
+     * @param weight    Fraction of the way to move towards each new sample, in (0, 1]. 1 disables
+     *                  smoothing; smaller values smooth more but lag behind the finger.
+     * @throws IllegalArgumentException if weight is out of range.
+     */
+    public SmoothingStage(float weight) {
+        super("smoothing");
+        if (!(weight > 0f && weight <= 1f)) {
+            throw new IllegalArgumentException("Illegal weight: " + weight);
+        }
+        mWeight = weight;
+    }
+
+    @Override
+    public void begin(float x, float y, long time, float pressure, float unitsPerPixel) {
+        mLastX = x;
+        mLastY = y;
+    }
+
+    @Override
+    public void process(SampleBuffer in, SampleBuffer out) {
+        for (int i = 0; i < in.size(); i++) {
+            mLastX += mWeight * (in.getX(i) - mLastX);
+            mLastY += mWeight * (in.getY(i) - mLastY);
+            out.add(mLastX, mLastY, in.getTime(i), in.getPressure(i));
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package cse340.undo.input;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import cse340.undo.render.FrameBudgetMonitor;
+
+/**
+ * Turns raw touch samples into the samples committed to a stroke, by running them through an
+ * ordered list of stages (for example filter, smoothing, resampling, simplification). Samples move
+ * between stages in two reusable SampleBuffers, so nothing is allocated per sample. The time spent
+ * in each stage is accumulated, so pipelines can be tuned per device.
+ *
+ * @see StrokeStage
+ */
+public class StrokePipeline {
+    /**
+     * Receives samples which made it through every stage.
+     */
+    public interface Sink {
+        void onSample(float x, float y, long time, float pressure);
+    }
+
+    /** Speed, in pixels per millisecond, at which the adaptive pipeline samples most densely. */
+    private static final float ADAPTIVE_FAST_SPEED = 1.5f;
+
+    private final StrokeStage[] mStages;
+
+    /** Time spent in each stage, and the number of samples given to it. */
+    private final long[] mStageNanos;
+    private final long[] mStageSamples;
+
+    /** Ping-pong buffers samples are passed between stages in. */
+    private SampleBuffer mIn, mOut;
+
+    private Sink mSink;
+
+    /**
+     * Creates a pipeline which runs samples through the given stages, in order.
+     *
+     * @param stages    Stages of the pipeline. May be empty, in which case every sample is kept.
+     */
+    public StrokePipeline(StrokeStage... stages) {
+        for (StrokeStage stage : stages) {
+            if (stage == null) {
+                throw new IllegalArgumentException("Null stage");
+            }
+        }
+
+        mStages = stages.clone();
+        mStageNanos = new long[stages.length];
+        mStageSamples = new long[stages.length];
+        mIn = new SampleBuffer();
+        mOut = new SampleBuffer();
+    }
+
+    /**
+     * Creates the default pipeline: drop samples closer than minDistance to the last kept one.
+     *
+     * @param minDistance   Minimum distance between kept samples, in screen pixels.
+     * @return The pipeline.
+     */
+    public static StrokePipeline createDefault(float minDistance) {
+        return new StrokePipeline(new DistanceFilterStage(minDistance));
+    }
+
+    /**
+     * Creates a pipeline which drops samples closer than minDistance to the last kept one, then
+     * smooths out touch jitter, for brushes whose marks along the path show every wobble.
+     *
+     * @param minDistance   Minimum distance between kept samples, in screen pixels.
+     * @param weight        Weight of each new sample, in (0, 1]; smaller values smooth more.
+     * @return The pipeline.
+     * @see SmoothingStage
+     */
+    public static StrokePipeline createSmoothed(float minDistance, float weight) {
+        return new StrokePipeline(new DistanceFilterStage(minDistance), new SmoothingStage(weight));
+    }
+
+    /**
+     * Creates a pipeline which adapts its sampling distance to the speed and curvature of the
+     * stroke, and to frame overruns if a monitor is given.
+     *
+     * @param minDistance   Sampling distance for fast movement and corners, in screen pixels.
+     * @param maxDistance   Sampling distance for slow movement, in screen pixels.
+     * @param monitor       Monitor of recent frame times, or null.
+     * @return The pipeline.
+     * @see AdaptiveSamplingStage
+     */
+    public static StrokePipeline createAdaptive(float minDistance, float maxDistance,
+                                                FrameBudgetMonitor monitor) {
+        AdaptiveSamplingStage stage = new AdaptiveSamplingStage(minDistance, maxDistance,
+                ADAPTIVE_FAST_SPEED);
+        stage.setFrameBudgetMonitor(monitor);
+        return new StrokePipeline(stage);
+    }
+
+    /**
+     * Starts a stroke.
+     *
+     * @param x             Horizontal coordinate of the first sample, in document units.
+     * @param y             Vertical coordinate of the first sample, in document units.
+     * @param time          Event time of the first sample in milliseconds.
+     * @param pressure      Touch pressure of the first sample.
+     * @param unitsPerPixel Document units per screen pixel for this stroke.
+     * @param sink          Receives the samples kept by the pipeline until end is called.
+     */
+    public void begin(float x, float y, long time, float pressure, float unitsPerPixel, Sink sink) {
+        mSink = sink;
+        for (StrokeStage stage : mStages) {
+            stage.begin(x, y, time, pressure, unitsPerPixel);
+        }
+    }
+
+    /**
+     * Runs one raw sample through the pipeline.
+     *
+     * @return Number of samples committed to the sink.
+     */
+    public int add(float x, float y, long time, float pressure) {
+        mIn.clear();
+        mIn.add(x, y, time, pressure);
+        return run(0);
+    }
+
+    /**
+     * Ends the stroke, letting every stage emit the samples it was holding back.
+     *
+     * @return Number of samples committed to the sink.
+     */
+    public int end() {
+        int committed = 0;
+        for (int i = 0; i < mStages.length; i++) {
+            mIn.clear();
+            long start = System.nanoTime();
+            mStages[i].end(mIn);
+            mStageNanos[i] += System.nanoTime() - start;
+            committed += run(i + 1);
+        }
+        mSink = null;
+        return committed;
+    }
+
+    /**
+     * Runs the samples in mIn through the stages starting at first, then commits the result.
+     */
+    private int run(int first) {
+        for (int i = first; i < mStages.length && mIn.size() > 0; i++) {
+            mOut.clear();
+            long start = System.nanoTime();
+            mStages[i].process(mIn, mOut);
+            mStageNanos[i] += System.nanoTime() - start;
+            mStageSamples[i] += mIn.size();
+
+            SampleBuffer swap = mIn;
+            mIn = mOut;
+            mOut = swap;
+        }
+
+        int size = mIn.size();
+        for (int i = 0; i < size; i++) {
+            mSink.onSample(mIn.getX(i), mIn.getY(i), mIn.getTime(i), mIn.getPressure(i));
+        }
+        return size;
+    }
+
+    public int getStageCount() {
+        return mStages.length;
+    }
+
+    public StrokeStage getStage(int i) {
+        return mStages[i];
+    }
+
+    /**
+     * @return Total time spent in stage i since the last reset, in nanoseconds.
+     */
+    public long getStageNanos(int i) {
+        return mStageNanos[i];
+    }
+
+    /**
+     * @return Number of samples given to stage i since the last reset.
+     */
+    public long getStageSamples(int i) {
+        return mStageSamples[i];
+    }
+
+    public void resetTimings() {
+        Arrays.fill(mStageNanos, 0);
+        Arrays.fill(mStageSamples, 0);
+    }
+
+    /**
+     * @return One line per stage with its total time and time per sample.
+     */
+    @NonNull
+    public String getTimingReport() {
+        StringBuilder report = new StringBuilder();
+        for (int i = 0; i < mStages.length; i++) {
+            report.append(String.format(Locale.US, "%s: %d samples, %.3f ms, %.0f ns/sample%n",
+                    mStages[i].getName(), mStageSamples[i], mStageNanos[i] / 1e6,
+                    mStageSamples[i] == 0 ? 0.0 : (double) mStageNanos[i] / mStageSamples[i]));
+        }
+        return report.toString();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        StringBuilder names = new StringBuilder("Stroke pipeline [");
+        for (int i = 0; i < mStages.length; i++) {
+            names.append(i == 0 ? "" : " -> ").append(mStages[i].getName());
+        }
+        return names.append("]").toString();
+    }
+}
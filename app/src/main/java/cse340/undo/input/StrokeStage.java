@@ -0,0 +1,51 @@
+package cse340.undo.input;
+
+/**
+ * One step of a StrokePipeline, such as filtering, smoothing or simplifying the samples of the
+ * stroke being drawn. Stages keep whatever state they need between samples in primitive fields, and
+ * must not allocate per sample.
+ *
+ * Distances given to stages are in screen pixels. Each stroke tells the stage how many document
+ * units a pixel is, so thresholds stay constant on screen at any zoom.
+ *
+ * @see StrokePipeline
+ */
+public abstract class StrokeStage {
+    /** Name used in timing reports. */
+    private final String mName;
+
+    protected StrokeStage(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Called when a stroke starts. The first sample is committed directly, without passing
+     * through any stage.
+     *
+     * @param x             Horizontal coordinate of the first sample, in document units.
+     * @param y             Vertical coordinate of the first sample, in document units.
+     * @param time          Event time of the first sample in milliseconds.
+     * @param pressure      Touch pressure of the first sample.
+     * @param unitsPerPixel Document units per screen pixel for this stroke.
+     */
+    public void begin(float x, float y, long time, float pressure, float unitsPerPixel) { }
+
+    /**
+     * Transforms samples.
+     *
+     * @param in    Samples produced by the previous stage.
+     * @param out   Empty buffer to write this stage's samples into.
+     */
+    public abstract void process(SampleBuffer in, SampleBuffer out);
+
+    /**
+     * Called when the stroke ends, so that the stage can emit any samples it was holding back.
+     *
+     * @param out   Empty buffer to write remaining samples into.
+     */
+    public void end(SampleBuffer out) { }
+}
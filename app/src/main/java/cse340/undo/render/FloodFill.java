@@ -0,0 +1,134 @@
+package cse340.undo.render;
+
+import android.graphics.Color;
+import android.graphics.Rect;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Scanline flood fill over a row-major int[] of ARGB pixels. Spans of matching pixels are filled a
+ * row at a time and the rows above and below are searched for new spans, which are kept on a
+ * primitive stack, so no objects are allocated per pixel or per span. The filled pixels are
+ * returned as a RunLengthMask; the pixels themselves are not changed.
+ *
+ * The stack and visited bits are reused between fills. Not thread safe.
+ */
+public class FloodFill {
+    /** Seeds of spans still to fill, as x, y pairs. */
+    private int[] mStack;
+    private int mStackSize;
+
+    /** Pixels already filled, as bit (y * width + x). */
+    private final BitSet mFilled;
+
+    /** Colour being replaced and how far each channel may differ from it. */
+    private int mTarget;
+    private int mTolerance;
+
+    public FloodFill() {
+        mStack = new int[256];
+        mFilled = new BitSet();
+    }
+
+    /**
+     * Finds the region of pixels connected to a seed whose colour is within a tolerance of the
+     * seed's colour.
+     *
+     * @param pixels    Row-major ARGB pixels, width * height long.
+     * @param width     Width of the image.
+     * @param height    Height of the image.
+     * @param x         Horizontal coordinate of the seed.
+     * @param y         Vertical coordinate of the seed.
+     * @param tolerance Largest difference in any channel, from 0 (exact) to 255 (everything).
+     * @return Filled region, or null if the seed is outside the image.
+     * @throws IllegalArgumentException if tolerance is outside [0, 255] or pixels is too short.
+     */
+    public RunLengthMask fill(int[] pixels, int width, int height, int x, int y, int tolerance) {
+        if (tolerance < 0 || tolerance > 255) {
+            throw new IllegalArgumentException("Illegal tolerance: " + tolerance);
+        } else if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Too few pixels for " + width + "x" + height);
+        }
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return null;
+        }
+
+        mTarget = pixels[y * width + x];
+        mTolerance = tolerance;
+        mFilled.clear();
+        mStackSize = 0;
+        push(x, y);
+
+        int left = x, top = y, right = x, bottom = y;
+        while (mStackSize > 0) {
+            mStackSize--;
+            int sx = mStack[mStackSize * 2], sy = mStack[mStackSize * 2 + 1];
+            int row = sy * width;
+            if (mFilled.get(row + sx) || !matches(pixels[row + sx])) {
+                continue;
+            }
+
+            // Extend the span as far as it matches in both directions and fill it.
+            int lx = sx, rx = sx;
+            while (lx > 0 && !mFilled.get(row + lx - 1) && matches(pixels[row + lx - 1])) {
+                lx--;
+            }
+            while (rx < width - 1 && !mFilled.get(row + rx + 1) && matches(pixels[row + rx + 1])) {
+                rx++;
+            }
+            mFilled.set(row + lx, row + rx + 1);
+
+            left = Math.min(left, lx);
+            right = Math.max(right, rx);
+            top = Math.min(top, sy);
+            bottom = Math.max(bottom, sy);
+
+            if (sy > 0) {
+                pushSpans(pixels, width, lx, rx, sy - 1);
+            }
+            if (sy < height - 1) {
+                pushSpans(pixels, width, lx, rx, sy + 1);
+            }
+        }
+
+        return RunLengthMask.encode(mFilled, width, new Rect(left, top, right + 1, bottom + 1));
+    }
+
+    /**
+     * Pushes one seed for each run of unfilled, matching pixels in [lx, rx] of a row.
+     */
+    private void pushSpans(int[] pixels, int width, int lx, int rx, int y) {
+        int row = y * width;
+        boolean inSpan = false;
+        for (int x = lx; x <= rx; x++) {
+            boolean open = !mFilled.get(row + x) && matches(pixels[row + x]);
+            if (open && !inSpan) {
+                push(x, y);
+            }
+            inSpan = open;
+        }
+    }
+
+    private void push(int x, int y) {
+        if (mStackSize * 2 == mStack.length) {
+            mStack = Arrays.copyOf(mStack, mStack.length * 2);
+        }
+        mStack[mStackSize * 2] = x;
+        mStack[mStackSize * 2 + 1] = y;
+        mStackSize++;
+    }
+
+    /**
+     * @return True if no channel of color differs from the target by more than the tolerance.
+     */
+    private boolean matches(int color) {
+        if (color == mTarget) {
+            return true;
+        }
+        return Math.abs(Color.alpha(color) - Color.alpha(mTarget)) <= mTolerance
+                && Math.abs(Color.red(color) - Color.red(mTarget)) <= mTolerance
+                && Math.abs(Color.green(color) - Color.green(mTarget)) <= mTolerance
+                && Math.abs(Color.blue(color) - Color.blue(mTarget)) <= mTolerance;
+    }
+}
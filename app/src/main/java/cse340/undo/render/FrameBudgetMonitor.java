@@ -0,0 +1,99 @@
+package cse340.undo.render;
+
+import android.view.Choreographer;
+
+/**
+ * Watches frame intervals through the Choreographer and reports how badly recent frames have
+ * overrun their budget, as a load factor. Work which can be made cheaper (such as sampling input
+ * more coarsely) can scale itself by the load factor to give frames back.
+ *
+ * The monitor only posts frame callbacks between start and stop, so it costs nothing while idle.
+ * Use from the UI thread.
+ */
+public class FrameBudgetMonitor implements Choreographer.FrameCallback {
+    /** Default frame budget, one 60 Hz frame. */
+    public static final long DEFAULT_BUDGET_NANOS = 16_666_667L;
+
+    /** Weight of the newest frame in the moving average of overruns. */
+    private static final float SMOOTHING = 0.2f;
+
+    /** Load factor when every recent frame has overrun. */
+    private static final float MAX_LOAD_FACTOR = 4f;
+
+    /** Frame budget. A frame which takes more than 1.5 budgets dropped at least one vsync. */
+    private final long mBudgetNanos;
+
+    /** Moving average of how far frames overran their budget, in budgets (0 if none did). */
+    private float mOverrun;
+
+    /** Time of the previous frame, or 0 if none has been seen since start. */
+    private long mLastFrameNanos;
+
+    /** True between start and stop. */
+    private boolean mRunning;
+
+    public FrameBudgetMonitor() {
+        this(DEFAULT_BUDGET_NANOS);
+    }
+
+    /**
+     * @param budgetNanos   Frame budget in nanoseconds.
+     * @throws IllegalArgumentException if the budget is not positive.
+     */
+    public FrameBudgetMonitor(long budgetNanos) {
+        if (budgetNanos <= 0) {
+            throw new IllegalArgumentException("Illegal frame budget: " + budgetNanos);
+        }
+        mBudgetNanos = budgetNanos;
+    }
+
+    /**
+     * Starts watching frames, with the load factor back at 1. Does nothing if already started.
+     */
+    public void start() {
+        if (!mRunning) {
+            mRunning = true;
+            mLastFrameNanos = 0;
+            // Frames overrun before the monitor stopped say nothing about the frames to come.
+            mOverrun = 0f;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Stops watching frames. The load factor keeps its last value until the next start.
+     */
+    public void stop() {
+        if (mRunning) {
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+
+        if (mLastFrameNanos != 0) {
+            long interval = frameTimeNanos - mLastFrameNanos;
+            float overrun = interval > mBudgetNanos * 3 / 2
+                    ? (float) (interval - mBudgetNanos) / mBudgetNanos : 0f;
+            mOverrun += SMOOTHING * (overrun - mOverrun);
+        }
+        mLastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * @return 1 when frames are on budget, rising towards 4 as recent frames overrun.
+     */
+    public float getLoadFactor() {
+        return Math.min(MAX_LOAD_FACTOR, 1f + mOverrun);
+    }
+
+    public long getBudgetNanos() {
+        return mBudgetNanos;
+    }
+}
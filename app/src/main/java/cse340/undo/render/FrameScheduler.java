@@ -0,0 +1,216 @@
+package cse340.undo.render;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.view.Choreographer;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects invalidations and pending updates between vsyncs, and flushes them once per
+ * Choreographer frame. Several requests for the same view within a frame are merged into one
+ * invalidation of the union of their dirty regions.
+ *
+ * Frame callbacks run before the traversal of the same frame, so anything requested while handling
+ * input is still drawn in the next frame. Use from the UI thread.
+ */
+public class FrameScheduler implements Choreographer.FrameCallback {
+    /**
+     * Pending invalidation of one view.
+     */
+    private static final class Dirty {
+        View mView;
+        final Rect mBounds = new Rect();
+        boolean mFull;
+    }
+
+    /** Views with pending invalidations this frame, in request order. */
+    private final List<Dirty> mDirty;
+
+    /** Recycled entries of mDirty, so steady-state frames don't allocate. */
+    private final List<Dirty> mPool;
+
+    /** Updates to run at the start of the next frame, before views are invalidated. */
+    private final List<Runnable> mUpdates;
+    private final List<Runnable> mRunning;
+
+    private final Rect mRoundedBounds;
+
+    /** True while a frame callback is posted. */
+    private boolean mScheduled;
+
+    /** True while flushing, so views can tell invalidations issued by the scheduler apart. */
+    private boolean mFlushing;
+
+    /** Invalidations requested and issued since the last reset. */
+    private long mRequested, mIssued;
+
+    public FrameScheduler() {
+        mDirty = new ArrayList<>();
+        mPool = new ArrayList<>();
+        mUpdates = new ArrayList<>();
+        mRunning = new ArrayList<>();
+        mRoundedBounds = new Rect();
+    }
+
+    /**
+     * Invalidates the whole view on the next frame.
+     *
+     * @param view  View to invalidate.
+     */
+    public void invalidate(View view) {
+        Dirty dirty = getDirty(view);
+        dirty.mFull = true;
+    }
+
+    /**
+     * Invalidates part of the view on the next frame.
+     *
+     * @param view      View to invalidate.
+     * @param bounds    Dirty region, in the view's coordinates. Rounded outwards.
+     */
+    public void invalidate(View view, RectF bounds) {
+        Dirty dirty = getDirty(view);
+        if (!dirty.mFull) {
+            bounds.roundOut(mRoundedBounds);
+            dirty.mBounds.union(mRoundedBounds);
+        }
+    }
+
+    /**
+     * Runs an update at the start of the next frame, before views are invalidated. Posting the same
+     * update again before then has no effect.
+     *
+     * @param update    Update to run.
+     */
+    public void post(Runnable update) {
+        if (!mUpdates.contains(update)) {
+            mUpdates.add(update);
+        }
+        schedule();
+    }
+
+    /**
+     * Drops everything pending for a view, for example when it is removed.
+     *
+     * @param view  View to forget.
+     */
+    public void cancel(View view) {
+        for (int i = 0; i < mDirty.size(); i++) {
+            if (mDirty.get(i).mView == view) {
+                recycle(mDirty.remove(i));
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mScheduled = false;
+        flush();
+    }
+
+    /**
+     * Runs pending updates and issues pending invalidations immediately.
+     */
+    public void flush() {
+        if (mFlushing) {
+            return;
+        }
+
+        mFlushing = true;
+        try {
+            // Updates may post more updates or invalidations, which join this flush.
+            while (!mUpdates.isEmpty()) {
+                mRunning.addAll(mUpdates);
+                mUpdates.clear();
+                for (Runnable update : mRunning) {
+                    update.run();
+                }
+                mRunning.clear();
+            }
+
+            for (Dirty dirty : mDirty) {
+                if (dirty.mFull || dirty.mBounds.isEmpty()) {
+                    dirty.mView.invalidate();
+                } else {
+                    dirty.mView.invalidate(dirty.mBounds);
+                }
+                mIssued++;
+                recycle(dirty);
+            }
+            mDirty.clear();
+        } finally {
+            mFlushing = false;
+        }
+    }
+
+    /**
+     * @return True while the scheduler is issuing invalidations.
+     */
+    public boolean isFlushing() {
+        return mFlushing;
+    }
+
+    /**
+     * @return Number of invalidations requested since the last reset.
+     */
+    public long getRequestedCount() {
+        return mRequested;
+    }
+
+    /**
+     * @return Number of invalidations actually issued to views since the last reset.
+     */
+    public long getIssuedCount() {
+        return mIssued;
+    }
+
+    /**
+     * @return Number of requested invalidations which were merged into another one.
+     */
+    public long getCoalescedCount() {
+        return mRequested - mIssued;
+    }
+
+    public void resetCounters() {
+        mRequested = 0;
+        mIssued = 0;
+    }
+
+    /**
+     * Counts a request for the view, and returns its pending entry, adding one if needed.
+     */
+    private Dirty getDirty(View view) {
+        mRequested++;
+        schedule();
+
+        for (int i = 0; i < mDirty.size(); i++) {
+            Dirty dirty = mDirty.get(i);
+            if (dirty.mView == view) {
+                return dirty;
+            }
+        }
+
+        Dirty dirty = mPool.isEmpty() ? new Dirty() : mPool.remove(mPool.size() - 1);
+        dirty.mView = view;
+        mDirty.add(dirty);
+        return dirty;
+    }
+
+    private void recycle(Dirty dirty) {
+        dirty.mView = null;
+        dirty.mBounds.setEmpty();
+        dirty.mFull = false;
+        mPool.add(dirty);
+    }
+
+    private void schedule() {
+        if (!mScheduled && !mFlushing) {
+            mScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
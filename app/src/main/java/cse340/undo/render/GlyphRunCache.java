@@ -0,0 +1,154 @@
+package cse340.undo.render;
+
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * Shapes text into glyph outlines once per (text, typeface, size), so labels can be redrawn as
+ * cheaply as strokes: each redraw fills a cached path instead of measuring and shaping the text
+ * again. Runs are shared by every label showing the same text, and the least recently used runs
+ * are dropped when the cache holds more than its budget of characters.
+ *
+ * Runs are immutable and may be drawn from any thread; shape them from the UI thread.
+ */
+public final class GlyphRunCache {
+    private static final String LOG_TAG = GlyphRunCache.class.getSimpleName();
+
+    /** Most characters of text whose runs are kept. */
+    public static final int MAX_CHARS = 4096;
+
+    private static final GlyphRunCache INSTANCE = new GlyphRunCache();
+
+    /**
+     * Outlines of a shaped piece of text. Lines are separated by '\n'; the first line's baseline
+     * starts at the origin.
+     */
+    public static final class Run {
+        private final Path mPath;
+        private final RectF mBox;
+
+        private Run(Path path, RectF box) {
+            mPath = path;
+            mBox = box;
+        }
+
+        /**
+         * @return Outlines of the glyphs, to be filled. Do not modify it.
+         */
+        public Path getPath() {
+            return mPath;
+        }
+
+        /**
+         * @param out   Rectangle to store the box the text's lines take up in, from the ascent of
+         *              the first line to the descent of the last and across the widest line.
+         */
+        public void getBox(RectF out) {
+            out.set(mBox);
+        }
+    }
+
+    /** Identifies a run. */
+    private static final class Key {
+        final String mText;
+        final Typeface mTypeface;
+        final float mSize;
+
+        Key(String text, Typeface typeface, float size) {
+            mText = text;
+            mTypeface = typeface;
+            mSize = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mText.equals(other.mText) && mTypeface == other.mTypeface
+                    && mSize == other.mSize;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = mText.hashCode();
+            hash = hash * 31 + (mTypeface == null ? 0 : mTypeface.hashCode());
+            return hash * 31 + Float.floatToIntBits(mSize);
+        }
+    }
+
+    private final LruCache<Key, Run> mRuns;
+
+    /** Paint used only to shape text. */
+    private final Paint mPaint;
+
+    private GlyphRunCache() {
+        mRuns = new LruCache<Key, Run>(MAX_CHARS) {
+            @Override
+            protected int sizeOf(Key key, Run run) {
+                return Math.max(1, key.mText.length());
+            }
+        };
+        mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    }
+
+    /**
+     * @return The cache shared by every label.
+     */
+    public static GlyphRunCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the run of a piece of text, shaping it if it isn't cached.
+     *
+     * @param text      Text to shape.
+     * @param typeface  Typeface to shape it in, or null for the default.
+     * @param size      Text size, in document units.
+     * @return Shaped run.
+     * @throws IllegalArgumentException if text is null or empty, or size is not positive.
+     */
+    public Run get(String text, Typeface typeface, float size) {
+        if (text == null || text.isEmpty() || !(size > 0f)) {
+            throw new IllegalArgumentException("Illegal text or size: " + text + ", " + size);
+        }
+
+        Key key = new Key(text, typeface, size);
+        Run run = mRuns.get(key);
+        if (run == null) {
+            run = shape(text, typeface, size);
+            mRuns.put(key, run);
+            Log.i(LOG_TAG, "Shaped \"" + text + "\"; " + mRuns.hitCount() + " hits, "
+                    + mRuns.missCount() + " misses");
+        }
+        return run;
+    }
+
+    private Run shape(String text, Typeface typeface, float size) {
+        mPaint.setTypeface(typeface);
+        mPaint.setTextSize(size);
+        Paint.FontMetrics metrics = mPaint.getFontMetrics();
+        float spacing = mPaint.getFontSpacing();
+
+        Path path = new Path();
+        Path line = new Path();
+        String[] lines = text.split("\n", -1);
+        float width = 0f;
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].isEmpty()) {
+                continue;
+            }
+            mPaint.getTextPath(lines[i], 0, lines[i].length(), 0f, i * spacing, line);
+            path.addPath(line);
+            width = Math.max(width, mPaint.measureText(lines[i]));
+        }
+        RectF box = new RectF(0f, metrics.ascent, Math.max(width, size / 4),
+                (lines.length - 1) * spacing + metrics.descent);
+        return new Run(path, box);
+    }
+}
@@ -0,0 +1,310 @@
+package cse340.undo.render;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders a whole scene into a bitmap by splitting the surface into square tiles and rendering the
+ * tiles in parallel on the app's WorkScheduler. Each tile draws only the items whose bounds overlap
+ * it, in scene order, into its own bitmap, so its output doesn't depend on how the work was
+ * scheduled. The tiles are then copied into the final surface.
+ *
+ * A scene is built on the UI thread and rendered in the background; the surface is handed back on
+ * the UI thread, which never waits for it. If the lane is too full to take any of its tiles, the
+ * render is submitted again a frame later rather than dropped. Items must therefore hold copies of whatever they draw,
+ * never the UI's own objects, which keep changing while the scene is rendered.
+ */
+public class ParallelRasterizer {
+    private static final String LOG_TAG = ParallelRasterizer.class.getSimpleName();
+
+    /** Width and height of a tile, in surface pixels. */
+    public static final int TILE_SIZE = 256;
+
+    /** Delay before submitting again a render whose lane was full, in milliseconds. */
+    private static final long RETRY_DELAY_MS = 16;
+
+    /**
+     * Something drawn into the surface. It must be safe to draw from several threads at once, and
+     * must not read anything the UI thread may change after it was created.
+     */
+    public interface Item {
+        /**
+         * @param canvas    Canvas in document coordinates, clipped to one tile.
+         */
+        void draw(Canvas canvas);
+    }
+
+    /**
+     * Receives a rendered surface on the UI thread.
+     */
+    public interface Callback {
+        /**
+         * @param surface   Rendered surface, or null if it couldn't be rendered.
+         */
+        void onRendered(Bitmap surface);
+    }
+
+    /**
+     * Ordered layers of items to render. Each layer is composited with its own opacity, so
+     * clearing in one layer doesn't affect the layers beneath.
+     */
+    public static final class Scene {
+        /** Document bounds of each item as left, top, right, bottom; NaN for items drawn everywhere. */
+        private float[] mBounds = new float[64];
+        private final List<Item> mItems = new ArrayList<>();
+
+        /** Index of the first item of each layer, and its opacity as an alpha value. */
+        private int[] mLayerStarts = new int[4];
+        private int[] mLayerAlphas = new int[4];
+        private int mLayerCount;
+
+        /**
+         * Starts a new layer above the previous ones. Items are added to the latest layer.
+         *
+         * @param opacity   Opacity the layer is composited with, in [0, 1].
+         */
+        public void beginLayer(float opacity) {
+            if (mLayerCount == mLayerStarts.length) {
+                mLayerStarts = Arrays.copyOf(mLayerStarts, mLayerCount * 2);
+                mLayerAlphas = Arrays.copyOf(mLayerAlphas, mLayerCount * 2);
+            }
+            mLayerStarts[mLayerCount] = mItems.size();
+            mLayerAlphas[mLayerCount] = Math.round(Math.max(0f, Math.min(1f, opacity)) * 255);
+            mLayerCount++;
+        }
+
+        /**
+         * Adds an item above the items already in the current layer.
+         *
+         * @param bounds    Area the item draws in, in document coordinates, or null if it may draw
+         *                  anywhere.
+         * @param item      Item to draw.
+         * @throws IllegalStateException if no layer was begun.
+         */
+        public void add(RectF bounds, Item item) {
+            if (mLayerCount == 0) {
+                throw new IllegalStateException("Adding an item before beginLayer");
+            }
+
+            int index = mItems.size();
+            if (index * 4 == mBounds.length) {
+                mBounds = Arrays.copyOf(mBounds, mBounds.length * 2);
+            }
+            if (bounds == null) {
+                Arrays.fill(mBounds, index * 4, index * 4 + 4, Float.NaN);
+            } else {
+                mBounds[index * 4] = bounds.left;
+                mBounds[index * 4 + 1] = bounds.top;
+                mBounds[index * 4 + 2] = bounds.right;
+                mBounds[index * 4 + 3] = bounds.bottom;
+            }
+            mItems.add(item);
+        }
+
+        /**
+         * @return Number of items in every layer.
+         */
+        public int size() {
+            return mItems.size();
+        }
+
+        private boolean overlaps(int index, RectF area) {
+            float left = mBounds[index * 4];
+            return Float.isNaN(left) || area.intersects(left, mBounds[index * 4 + 1],
+                    mBounds[index * 4 + 2], mBounds[index * 4 + 3]);
+        }
+    }
+
+    /** Bitmap each worker renders its tiles into. */
+    private static final ThreadLocal<Bitmap> sTileBitmap = new ThreadLocal<Bitmap>() {
+        @Override
+        protected Bitmap initialValue() {
+            return Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        }
+    };
+
+    /** Scheduler the tiles are rendered on. */
+    private final WorkScheduler mScheduler;
+
+    /** Hands surfaces back on the UI thread. */
+    private final Handler mHandler;
+
+    /**
+     * @param scheduler Scheduler to render tiles on.
+     * @throws IllegalArgumentException if scheduler is null.
+     */
+    public ParallelRasterizer(WorkScheduler scheduler) {
+        if (scheduler == null) {
+            throw new IllegalArgumentException("Null scheduler");
+        }
+        mScheduler = scheduler;
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Renders a scene in the background, and returns at once.
+     *
+     * @param scene     Scene to render. It must not change once it is passed here.
+     * @param transform Transform from document to surface coordinates. It is copied.
+     * @param width     Width of the surface, in pixels.
+     * @param height    Height of the surface, in pixels.
+     * @param lane      Lane of the scheduler to render in.
+     * @param callback  Receives the surface on the UI thread, or null if an item failed to draw.
+     *                  Called once, after retries if the lane was full.
+     * @throws IllegalArgumentException if the surface is empty or transform is not invertible.
+     */
+    public void render(Scene scene, Matrix transform, int width, int height,
+                       WorkScheduler.Lane lane, Callback callback) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Empty surface: " + width + "x" + height);
+        }
+        Matrix inverse = new Matrix();
+        if (!transform.invert(inverse)) {
+            throw new IllegalArgumentException("Transform is not invertible: " + transform);
+        }
+
+        new Job(scene, new Matrix(transform), inverse, width, height, lane, callback).submit();
+    }
+
+    /**
+     * Renders the tiles of one surface. Every worker running the job takes the next tile nobody has
+     * taken yet, until there are none left; the last one to finish hands the surface back.
+     */
+    private final class Job implements Runnable {
+        private final Scene mScene;
+        private final Matrix mTransform, mInverse;
+        private final int[] mPixels;
+        private final int mWidth, mHeight, mColumns, mTileCount;
+        private final WorkScheduler.Lane mLane;
+
+        /** Next tile to take, in row-major order. */
+        private final AtomicInteger mNext;
+
+        /** Tasks running the job which haven't finished. */
+        private final AtomicInteger mTasks;
+
+        /** First exception thrown by a tile, or null. */
+        private volatile RuntimeException mFailure;
+
+        private final Callback mCallback;
+        private final long mStart;
+
+        Job(Scene scene, Matrix transform, Matrix inverse, int width, int height,
+            WorkScheduler.Lane lane, Callback callback) {
+            mScene = scene;
+            mTransform = transform;
+            mInverse = inverse;
+            mPixels = new int[width * height];
+            mWidth = width;
+            mHeight = height;
+            mColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+            mTileCount = mColumns * ((height + TILE_SIZE - 1) / TILE_SIZE);
+            mLane = lane;
+            mNext = new AtomicInteger();
+            mTasks = new AtomicInteger();
+            mCallback = callback;
+            mStart = System.nanoTime();
+        }
+
+        /**
+         * Submits one task per worker, up to one per tile. Any accepted task renders every tile
+         * nobody else takes, so the job only has to be submitted again if every task is rejected.
+         */
+        void submit() {
+            int tasks = Math.min(mScheduler.getWorkerCount(), mTileCount);
+            mTasks.set(tasks);
+            boolean accepted = false;
+            for (int i = 0; i < tasks; i++) {
+                if (mScheduler.submit(mLane, this) != null) {
+                    accepted = true;
+                } else if (!accepted && i == tasks - 1) {
+                    Log.w(LOG_TAG, mLane + " lane full, retrying a render of " + mScene.size()
+                            + " items");
+                    mHandler.postDelayed(this::submit, RETRY_DELAY_MS);
+                } else {
+                    finishTask();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                int tile;
+                while (mFailure == null && (tile = mNext.getAndIncrement()) < mTileCount) {
+                    try {
+                        renderTile(tile % mColumns * TILE_SIZE, tile / mColumns * TILE_SIZE);
+                    } catch (RuntimeException e) {
+                        mFailure = e;
+                    }
+                }
+            } finally {
+                finishTask();
+            }
+        }
+
+        /**
+         * Called once by each task, whether it ran or was rejected while another was accepted. The
+         * last one builds the surface and posts it to the callback.
+         */
+        void finishTask() {
+            if (mTasks.decrementAndGet() != 0) {
+                return;
+            }
+
+            Bitmap surface = null;
+            if (mFailure != null) {
+                Log.e(LOG_TAG, "Rendering a tile failed", mFailure);
+            } else {
+                surface = Bitmap.createBitmap(mPixels, mWidth, mHeight, Bitmap.Config.ARGB_8888);
+                Log.i(LOG_TAG, "Rendered " + mScene.size() + " items into " + mTileCount
+                        + " tiles in " + (System.nanoTime() - mStart) / 1000000 + "ms");
+            }
+            Bitmap result = surface;
+            mHandler.post(() -> mCallback.onRendered(result));
+        }
+
+        /**
+         * Renders the tile with the given top left corner and copies it into the surface.
+         */
+        private void renderTile(int x, int y) {
+            int w = Math.min(TILE_SIZE, mWidth - x), h = Math.min(TILE_SIZE, mHeight - y);
+            RectF area = new RectF(x, y, x + w, y + h);
+            mInverse.mapRect(area);
+
+            Bitmap bitmap = sTileBitmap.get();
+            bitmap.eraseColor(0);
+            Canvas canvas = new Canvas(bitmap);
+            canvas.clipRect(0, 0, w, h);
+            canvas.translate(-x, -y);
+            canvas.concat(mTransform);
+
+            Scene scene = mScene;
+            for (int layer = 0; layer < scene.mLayerCount; layer++) {
+                int first = scene.mLayerStarts[layer];
+                int end = layer + 1 < scene.mLayerCount
+                        ? scene.mLayerStarts[layer + 1] : scene.mItems.size();
+                int save = canvas.saveLayerAlpha(area, scene.mLayerAlphas[layer]);
+                for (int i = first; i < end; i++) {
+                    if (scene.overlaps(i, area)) {
+                        scene.mItems.get(i).draw(canvas);
+                    }
+                }
+                canvas.restoreToCount(save);
+            }
+
+            // Tiles cover disjoint parts of the surface, so they can be copied in concurrently.
+            bitmap.getPixels(mPixels, y * mWidth + x, mWidth, 0, 0, w, h);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package cse340.undo.render;
+
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Immutable set of pixels stored as horizontal runs, row by row, within a bounding box. A filled
+ * region costs a few ints per row and per run rather than one value per pixel, so masks of large
+ * solid areas are small.
+ */
+public class RunLengthMask {
+    /** Bounding box of the set pixels. */
+    private final int mLeft, mTop, mWidth, mHeight;
+
+    /** Index of the first run of each row in mRuns, plus the run count at the end. */
+    private final int[] mRowStarts;
+
+    /** Pairs of (start, length) for each run, with start relative to mLeft. */
+    private final int[] mRuns;
+
+    /** Number of set pixels. */
+    private final int mPixels;
+
+    private RunLengthMask(int left, int top, int width, int height, int[] rowStarts, int[] runs,
+                          int pixels) {
+        mLeft = left;
+        mTop = top;
+        mWidth = width;
+        mHeight = height;
+        mRowStarts = rowStarts;
+        mRuns = runs;
+        mPixels = pixels;
+    }
+
+    /**
+     * Encodes the set bits of a row-major bit mask.
+     *
+     * @param bits      Bit (y * stride + x) is set for each pixel in the mask.
+     * @param stride    Width of the rows of bits.
+     * @param bounds    Area containing every set bit.
+     * @return Encoded mask.
+     */
+    public static RunLengthMask encode(BitSet bits, int stride, Rect bounds) {
+        int width = bounds.width(), height = bounds.height();
+        int[] rowStarts = new int[height + 1];
+        int[] runs = new int[16];
+        int count = 0, pixels = 0;
+
+        for (int row = 0; row < height; row++) {
+            rowStarts[row] = count;
+            int base = (bounds.top + row) * stride;
+            int end = base + bounds.right;
+            int start = bits.nextSetBit(base + bounds.left);
+            while (start >= 0 && start < end) {
+                int stop = Math.min(bits.nextClearBit(start), end);
+                if (count * 2 == runs.length) {
+                    runs = Arrays.copyOf(runs, runs.length * 2);
+                }
+                runs[count * 2] = start - base - bounds.left;
+                runs[count * 2 + 1] = stop - start;
+                pixels += stop - start;
+                count++;
+                start = bits.nextSetBit(stop);
+            }
+        }
+        rowStarts[height] = count;
+
+        return new RunLengthMask(bounds.left, bounds.top, width, height, rowStarts,
+                Arrays.copyOf(runs, count * 2), pixels);
+    }
+
+    public int getLeft() {
+        return mLeft;
+    }
+
+    public int getTop() {
+        return mTop;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return Number of pixels in the mask.
+     */
+    public int getPixelCount() {
+        return mPixels;
+    }
+
+    public boolean isEmpty() {
+        return mPixels == 0;
+    }
+
+    /**
+     * @return Number of runs the mask is stored as.
+     */
+    public int getRunCount() {
+        return mRuns.length / 2;
+    }
+
+    /**
+     * @return Approximate memory used by the encoded mask, in bytes.
+     */
+    public int getByteCount() {
+        return (mRowStarts.length + mRuns.length) * 4;
+    }
+
+    /**
+     * Writes a colour into every pixel of the mask within a buffer covering its bounding box. Other
+     * pixels are left unchanged.
+     *
+     * @param pixels    Row-major pixels of the bounding box, at least width * height long.
+     * @param color     Colour to write.
+     */
+    public void fill(int[] pixels, int color) {
+        for (int row = 0; row < mHeight; row++) {
+            int base = row * mWidth;
+            for (int i = mRowStarts[row]; i < mRowStarts[row + 1]; i++) {
+                int start = base + mRuns[i * 2];
+                Arrays.fill(pixels, start, start + mRuns[i * 2 + 1], color);
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Mask of " + mPixels + " pixels in " + getRunCount() + " runs, " + mWidth + "x"
+                + mHeight + " at (" + mLeft + ", " + mTop + ")";
+    }
+}
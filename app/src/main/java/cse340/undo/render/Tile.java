@@ -0,0 +1,31 @@
+package cse340.undo.render;
+
+/**
+ * A square of a TiledRaster which contains ink. Its pixels live in a block of a TileSlabAllocator.
+ */
+final class Tile {
+    /** Position of the tile, in tiles from the document origin. */
+    final int mX, mY;
+
+    /** Allocator slot holding the pixels, in ARGB_8888 order. */
+    final int mSlot;
+
+    /** Number of pixels which are not fully transparent. */
+    int mOccupancy;
+
+    /** Incremented every time the pixels change, so cached copies can tell they are stale. */
+    int mVersion;
+
+    Tile(int x, int y, int slot) {
+        mX = x;
+        mY = y;
+        mSlot = slot;
+    }
+
+    /**
+     * Packs tile coordinates into a single key.
+     */
+    static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,194 @@
+package cse340.undo.render;
+
+import android.support.annotation.NonNull;
+import android.util.LongSparseArray;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The other state of the tiles a raster edit touched. While an edit is recorded, the TiledRaster
+ * copies each tile into the diff the first time it is about to change, so the diff holds the tiles
+ * as they were before. Swapping the diff with the raster exchanges those tiles with their current
+ * pixels, so the same diff undoes the edit and then redoes it.
+ *
+ * Memory scales with the number of tiles touched, not the size of the raster. Tile pixels can be
+ * deflated, which makes mostly transparent tiles small.
+ *
+ * @see TiledRaster#beginDiff(boolean)
+ * @see TiledRaster#swap(TileDiff)
+ */
+public class TileDiff {
+    /** Stored for tiles which did not exist, so swapping removes them. */
+    private static final byte[] ABSENT = new byte[0];
+
+    private static final int TILE_BYTES = TiledRaster.TILE_SIZE * TiledRaster.TILE_SIZE * 4;
+
+    /** Whether tile pixels are deflated. */
+    private final boolean mCompress;
+
+    /** Stored pixels of each touched tile, keyed by Tile.key; ABSENT if it didn't exist. */
+    private final LongSparseArray<byte[]> mTiles;
+
+    /** Memory used by the stored pixels, in bytes. */
+    private long mBytes;
+
+    /** Buffers for deflating and inflating, created on first use and kept for swaps. */
+    private byte[] mScratch;
+    private byte[] mOutput;
+
+    TileDiff(boolean compress) {
+        mCompress = compress;
+        mTiles = new LongSparseArray<>();
+    }
+
+    /**
+     * @return True if the tile's pixels are already stored.
+     */
+    boolean contains(long key) {
+        return mTiles.indexOfKey(key) >= 0;
+    }
+
+    /**
+     * Stores a tile's pixels.
+     *
+     * @param key   Tile.key of the tile.
+     * @param block Pixels of the tile, or null if it does not exist.
+     */
+    void put(long key, ByteBuffer block) {
+        byte[] data = encode(block);
+        int index = mTiles.indexOfKey(key);
+        if (index >= 0) {
+            mBytes -= mTiles.valueAt(index).length;
+            mTiles.setValueAt(index, data);
+        } else {
+            mTiles.put(key, data);
+        }
+        mBytes += data.length;
+    }
+
+    /**
+     * @return Index of the tile's stored pixels, or a negative number if they aren't stored.
+     */
+    int indexOfKey(long key) {
+        return mTiles.indexOfKey(key);
+    }
+
+    int size() {
+        return mTiles.size();
+    }
+
+    long keyAt(int index) {
+        return mTiles.keyAt(index);
+    }
+
+    /**
+     * @return True if the tile at the given index did not exist.
+     */
+    boolean isAbsentAt(int index) {
+        return mTiles.valueAt(index) == ABSENT;
+    }
+
+    /**
+     * Copies the stored pixels of the tile at the given index into a block.
+     */
+    void readAt(int index, ByteBuffer block) {
+        byte[] data = mTiles.valueAt(index);
+        block.clear();
+        if (!mCompress) {
+            block.put(data);
+            block.clear();
+            return;
+        }
+
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        try {
+            int read = inflater.inflate(scratch());
+            if (read != TILE_BYTES) {
+                throw new IllegalStateException("Corrupt tile: " + read + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt tile", e);
+        } finally {
+            inflater.end();
+        }
+        block.put(mScratch);
+        block.clear();
+    }
+
+    private byte[] encode(ByteBuffer block) {
+        if (block == null) {
+            return ABSENT;
+        }
+
+        block.clear();
+        if (!mCompress) {
+            byte[] data = new byte[TILE_BYTES];
+            block.get(data);
+            block.clear();
+            return data;
+        }
+
+        block.get(scratch());
+        block.clear();
+        if (mOutput == null) {
+            // Deflate output can slightly exceed its input for incompressible pixels.
+            mOutput = new byte[TILE_BYTES + TILE_BYTES / 1000 + 64];
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(mScratch);
+        deflater.finish();
+        int length = deflater.deflate(mOutput);
+        deflater.end();
+
+        byte[] data = new byte[length];
+        System.arraycopy(mOutput, 0, data, 0, length);
+        return data;
+    }
+
+    private byte[] scratch() {
+        if (mScratch == null) {
+            mScratch = new byte[TILE_BYTES];
+        }
+        return mScratch;
+    }
+
+    /**
+     * Releases the buffers used while swapping. They are recreated if the diff is swapped again.
+     */
+    void trim() {
+        mScratch = null;
+        mOutput = null;
+    }
+
+    /**
+     * @return Number of tiles the edit touched.
+     */
+    public int getTileCount() {
+        return mTiles.size();
+    }
+
+    /**
+     * @return Memory used by the stored pixels, in bytes.
+     */
+    public long getByteCount() {
+        return mBytes;
+    }
+
+    /**
+     * @return True if the edit touched no tiles.
+     */
+    public boolean isEmpty() {
+        return mTiles.size() == 0;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Diff of " + mTiles.size() + " tiles, " + mBytes + " bytes"
+                + (mCompress ? " deflated" : "");
+    }
+}
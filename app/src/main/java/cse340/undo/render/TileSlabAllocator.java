@@ -0,0 +1,174 @@
+package cse340.undo.render;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hands out fixed size blocks of memory for tile pixels from large direct ByteBuffers ("slabs"),
+ * which live outside the Java heap. Freed blocks are reused before a new slab is allocated, so a
+ * canvas which is drawn on and cleared repeatedly doesn't keep growing, and trailing slabs left
+ * without blocks can be released by trim.
+ *
+ * Blocks are identified by an integer slot. Not thread safe.
+ */
+public final class TileSlabAllocator {
+    /** Size of each block in bytes. */
+    private final int mBlockBytes;
+
+    /** Number of blocks in each slab. */
+    private final int mBlocksPerSlab;
+
+    /** Allocated slabs, in order. */
+    private final List<ByteBuffer> mSlabs;
+
+    /** One view per slot, covering exactly that block. Null until the slab exists. */
+    private ByteBuffer[] mBlocks;
+
+    /** Stack of free slots. */
+    private int[] mFree;
+    private int mFreeCount;
+
+    /** Number of slots currently handed out, in total and from each slab. */
+    private int mAllocated;
+    private int[] mSlabUse;
+
+    /**
+     * Creates an allocator. No memory is allocated until the first block is requested.
+     *
+     * @param blockBytes    Size of each block in bytes.
+     * @param blocksPerSlab Number of blocks allocated at once.
+     * @throws IllegalArgumentException if either argument is not positive.
+     */
+    public TileSlabAllocator(int blockBytes, int blocksPerSlab) {
+        if (blockBytes <= 0 || blocksPerSlab <= 0) {
+            throw new IllegalArgumentException("Illegal block size " + blockBytes
+                    + " or blocks per slab " + blocksPerSlab);
+        }
+
+        mBlockBytes = blockBytes;
+        mBlocksPerSlab = blocksPerSlab;
+        mSlabs = new ArrayList<>();
+        mBlocks = new ByteBuffer[0];
+        mFree = new int[blocksPerSlab];
+        mSlabUse = new int[0];
+    }
+
+    /**
+     * Allocates a block, which is zero filled.
+     *
+     * @return Slot of the block.
+     */
+    public int allocate() {
+        if (mFreeCount == 0) {
+            addSlab();
+        }
+
+        int slot = mFree[--mFreeCount];
+        mAllocated++;
+        mSlabUse[slot / mBlocksPerSlab]++;
+        ByteBuffer block = getBlock(slot);
+        for (int i = 0; i < mBlockBytes; i += 8) {
+            block.putLong(i, 0L);
+        }
+        return slot;
+    }
+
+    /**
+     * Returns a block to the allocator. The block must not be used afterwards.
+     *
+     * @param slot  Slot returned by allocate.
+     */
+    public void free(int slot) {
+        if (mFreeCount == mFree.length) {
+            mFree = Arrays.copyOf(mFree, mFree.length * 2);
+        }
+        mFree[mFreeCount++] = slot;
+        mAllocated--;
+        mSlabUse[slot / mBlocksPerSlab]--;
+    }
+
+    /**
+     * Releases the slabs at the end which have no blocks handed out, so the memory of a canvas
+     * which was cleared or erased is given back rather than kept for reuse. Slots of the
+     * remaining slabs are unchanged.
+     *
+     * @return Number of slabs released.
+     */
+    public int trim() {
+        int slabs = mSlabs.size();
+        while (slabs > 0 && mSlabUse[slabs - 1] == 0) {
+            slabs--;
+        }
+        int released = mSlabs.size() - slabs;
+        if (released == 0) {
+            return 0;
+        }
+
+        int end = slabs * mBlocksPerSlab, kept = 0;
+        for (int i = 0; i < mFreeCount; i++) {
+            if (mFree[i] < end) {
+                mFree[kept++] = mFree[i];
+            }
+        }
+        mFreeCount = kept;
+        mSlabs.subList(slabs, mSlabs.size()).clear();
+        mBlocks = Arrays.copyOf(mBlocks, end);
+        mSlabUse = Arrays.copyOf(mSlabUse, slabs);
+        return released;
+    }
+
+    /**
+     * @param slot  Slot returned by allocate.
+     * @return The memory of the block, positioned at 0 with its limit at the block size.
+     */
+    public ByteBuffer getBlock(int slot) {
+        ByteBuffer block = mBlocks[slot];
+        block.clear();
+        return block;
+    }
+
+    private void addSlab() {
+        int slab = mSlabs.size();
+        ByteBuffer memory = ByteBuffer.allocateDirect(mBlockBytes * mBlocksPerSlab)
+                .order(ByteOrder.nativeOrder());
+        mSlabs.add(memory);
+        mSlabUse = Arrays.copyOf(mSlabUse, slab + 1);
+
+        mBlocks = Arrays.copyOf(mBlocks, mBlocks.length + mBlocksPerSlab);
+        for (int i = 0; i < mBlocksPerSlab; i++) {
+            memory.limit((i + 1) * mBlockBytes);
+            memory.position(i * mBlockBytes);
+            mBlocks[slab * mBlocksPerSlab + i] = memory.slice().order(ByteOrder.nativeOrder());
+        }
+        memory.clear();
+
+        // Push in reverse so blocks are handed out in address order.
+        if (mFree.length < mFreeCount + mBlocksPerSlab) {
+            mFree = Arrays.copyOf(mFree, mFreeCount + mBlocksPerSlab);
+        }
+        for (int i = mBlocksPerSlab - 1; i >= 0; i--) {
+            mFree[mFreeCount++] = slab * mBlocksPerSlab + i;
+        }
+    }
+
+    /**
+     * @return Number of blocks currently handed out.
+     */
+    public int getAllocatedCount() {
+        return mAllocated;
+    }
+
+    /**
+     * @return Total off-heap memory reserved by this allocator, in bytes.
+     */
+    public long getReservedBytes() {
+        return (long) mSlabs.size() * mBlocksPerSlab * mBlockBytes;
+    }
+
+    public int getBlockBytes() {
+        return mBlockBytes;
+    }
+}
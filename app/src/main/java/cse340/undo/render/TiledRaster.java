@@ -0,0 +1,495 @@
+package cse340.undo.render;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.util.LongSparseArray;
+import android.util.LruCache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An unbounded raster canvas in document coordinates, split into square tiles. Only tiles which
+ * contain ink are allocated, and their pixels are kept off the Java heap in a TileSlabAllocator.
+ * Tiles are copied into Bitmaps only when visible, through a bounded cache.
+ *
+ * Each tile tracks how many of its pixels contain ink. Tiles left without ink are released, so
+ * empty space costs nothing. Not thread safe; use from the UI thread.
+ *
+ * Edits can be recorded into a TileDiff, which keeps only the tiles they touched so the edits can
+ * be undone and redone by swapping those tiles.
+ *
+ * A floor can be marked, which redraws reset tiles to instead of clearing them. The floor is kept
+ * copy-on-write in a TileDiff: a tile is copied into it only the first time it changes after the
+ * floor was marked, so the floor costs memory for the area drawn over since, not for the raster.
+ *
+ * @see TileSlabAllocator
+ * @see TileDiff
+ */
+public class TiledRaster {
+    /** Width and height of a tile, in document units. */
+    public static final int TILE_SIZE = 256;
+
+    /** Number of tiles allocated together in one direct buffer. */
+    private static final int TILES_PER_SLAB = 16;
+
+    /** Maximum memory used by Bitmap copies of visible tiles. */
+    private static final int DISPLAY_CACHE_BYTES = 24 * 1024 * 1024;
+
+    private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+
+    /** Bitmap each rasterizer thread copies tiles into, and the paint they are drawn with. */
+    private static final ThreadLocal<Bitmap> sDecodeBitmap = new ThreadLocal<Bitmap>() {
+        @Override
+        protected Bitmap initialValue() {
+            return Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        }
+    };
+    private static final Paint sDecodePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * Draws something onto the raster. The canvas is in document coordinates.
+     */
+    public interface Renderer {
+        void render(Canvas canvas);
+    }
+
+    /** Bitmap copy of a tile, and the tile version it was copied from. */
+    private static final class DisplayTile {
+        final Bitmap mBitmap;
+        int mVersion = -1;
+
+        DisplayTile(Bitmap bitmap) {
+            mBitmap = bitmap;
+        }
+    }
+
+    private final TileSlabAllocator mAllocator;
+
+    /** Tiles containing ink, keyed by Tile.key. */
+    private final LongSparseArray<Tile> mTiles;
+
+    /** Bitmap copies of recently drawn tiles, keyed by Tile.key. */
+    private final LruCache<Long, DisplayTile> mDisplayCache;
+
+    /** Bitmap tiles are rasterized in, created on first use. */
+    private Bitmap mScratch;
+    private Canvas mScratchCanvas;
+
+    /** Diff recording the tiles about to change, or null if no edit is recorded. */
+    private TileDiff mRecording;
+
+    /**
+     * Tiles as they were when the floor was marked, for the tiles changed since; the rest are still
+     * as they were. Null if redraws start from transparent tiles.
+     */
+    private TileDiff mFloor;
+
+    private final Paint mTilePaint;
+    private final RectF mBounds;
+
+    /**
+     * Creates an empty raster. No pixel memory is allocated until something is drawn.
+     */
+    public TiledRaster() {
+        mAllocator = new TileSlabAllocator(TILE_BYTES, TILES_PER_SLAB);
+        mTiles = new LongSparseArray<>();
+        mDisplayCache = new LruCache<Long, DisplayTile>(DISPLAY_CACHE_BYTES) {
+            @Override
+            protected int sizeOf(Long key, DisplayTile tile) {
+                return TILE_BYTES;
+            }
+        };
+        mTilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        mBounds = new RectF();
+    }
+
+    /**
+     * Strokes a path onto the raster.
+     *
+     * @param path  Path in document coordinates.
+     * @param paint Paint to stroke it with.
+     */
+    public void drawPath(Path path, Paint paint) {
+        path.computeBounds(mBounds, true);
+        float outset = paint.getStrokeWidth() / 2 + 1;
+        mBounds.inset(-outset, -outset);
+        draw(mBounds, canvas -> canvas.drawPath(path, paint));
+    }
+
+    /**
+     * Draws onto every tile overlapping the given bounds, allocating tiles as needed. Tiles which
+     * are left without ink are released.
+     *
+     * @param bounds    Area the renderer may draw into, in document coordinates.
+     * @param renderer  Draws the content.
+     */
+    public void draw(RectF bounds, Renderer renderer) {
+        render(bounds, renderer, false);
+    }
+
+    /**
+     * Resets every tile overlapping the given bounds to the floor, or clears it if there is none,
+     * and draws it again, for example when something already drawn into the raster changed. Whole
+     * tiles are reset, so the renderer must draw everything above the floor which should be left
+     * in them. Tiles which are left without ink are released.
+     *
+     * @param bounds    Area to redraw, in document coordinates.
+     * @param renderer  Draws the content of the tiles.
+     * @see #roundOutToTiles(RectF)
+     * @see #markFloor()
+     */
+    public void redraw(RectF bounds, Renderer renderer) {
+        render(bounds, renderer, true);
+        mAllocator.trim();
+    }
+
+    private void render(RectF bounds, Renderer renderer, boolean clear) {
+        int left = toTile(bounds.left), top = toTile(bounds.top);
+        int right = toTile(bounds.right), bottom = toTile(bounds.bottom);
+
+        for (int ty = top; ty <= bottom; ty++) {
+            for (int tx = left; tx <= right; tx++) {
+                long key = Tile.key(tx, ty);
+                Tile tile = mTiles.get(key);
+                boolean created = tile == null;
+                if (created) {
+                    tile = new Tile(tx, ty, mAllocator.allocate());
+                }
+
+                capture(key, created ? null : tile);
+                Canvas canvas = load(key, tile, clear);
+                int save = canvas.save();
+                canvas.translate(-tx * TILE_SIZE, -ty * TILE_SIZE);
+                renderer.render(canvas);
+                canvas.restoreToCount(save);
+                store(tile);
+
+                if (tile.mOccupancy == 0) {
+                    if (!created) {
+                        mTiles.remove(key);
+                        mDisplayCache.remove(key);
+                    }
+                    mAllocator.free(tile.mSlot);
+                } else if (created) {
+                    mTiles.put(key, tile);
+                }
+            }
+        }
+        if (mFloor != null) {
+            mFloor.trim();
+        }
+    }
+
+    /**
+     * Draws the tiles which overlap the visible area.
+     *
+     * @param canvas    Canvas in document coordinates.
+     * @param visible   Visible area, in document coordinates.
+     */
+    public void drawVisible(Canvas canvas, RectF visible) {
+        if (mTiles.size() == 0) {
+            return;
+        }
+
+        int left = toTile(visible.left), top = toTile(visible.top);
+        int right = toTile(visible.right), bottom = toTile(visible.bottom);
+
+        if ((long) (right - left + 1) * (bottom - top + 1) > mTiles.size()) {
+            // Zoomed far out: fewer tiles exist than are visible, so walk the existing ones.
+            for (int i = 0; i < mTiles.size(); i++) {
+                Tile tile = mTiles.valueAt(i);
+                if (tile.mX >= left && tile.mX <= right && tile.mY >= top && tile.mY <= bottom) {
+                    drawTile(canvas, mTiles.keyAt(i), tile);
+                }
+            }
+        } else {
+            for (int ty = top; ty <= bottom; ty++) {
+                for (int tx = left; tx <= right; tx++) {
+                    long key = Tile.key(tx, ty);
+                    Tile tile = mTiles.get(key);
+                    if (tile != null) {
+                        drawTile(canvas, key, tile);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the tiles which overlap an area to a scene. The items draw copies of the tiles' pixels,
+     * so they can be drawn from any thread however the raster changes afterwards.
+     *
+     * @param scene Scene to add the tiles to, in the current layer.
+     * @param area  Area to add tiles from, in document coordinates.
+     */
+    public void addTo(ParallelRasterizer.Scene scene, RectF area) {
+        int left = toTile(area.left), top = toTile(area.top);
+        int right = toTile(area.right), bottom = toTile(area.bottom);
+        for (int i = 0; i < mTiles.size(); i++) {
+            Tile tile = mTiles.valueAt(i);
+            if (tile.mX < left || tile.mX > right || tile.mY < top || tile.mY > bottom) {
+                continue;
+            }
+
+            ByteBuffer block = ByteBuffer.allocate(TILE_BYTES);
+            block.put(mAllocator.getBlock(tile.mSlot));
+            block.rewind();
+            float x = tile.mX * TILE_SIZE, y = tile.mY * TILE_SIZE;
+            scene.add(new RectF(x, y, x + TILE_SIZE, y + TILE_SIZE), canvas -> {
+                Bitmap bitmap = sDecodeBitmap.get();
+                // Each draw reads through its own view of the block, since reading moves it.
+                bitmap.copyPixelsFromBuffer(block.duplicate());
+                canvas.drawBitmap(bitmap, x, y, sDecodePaint);
+            });
+        }
+    }
+
+    private void drawTile(Canvas canvas, long key, Tile tile) {
+        DisplayTile display = mDisplayCache.get(key);
+        if (display == null) {
+            display = new DisplayTile(
+                    Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888));
+            mDisplayCache.put(key, display);
+        }
+        if (display.mVersion != tile.mVersion) {
+            display.mBitmap.copyPixelsFromBuffer(mAllocator.getBlock(tile.mSlot));
+            display.mVersion = tile.mVersion;
+        }
+        canvas.drawBitmap(display.mBitmap, tile.mX * TILE_SIZE, tile.mY * TILE_SIZE, mTilePaint);
+    }
+
+    /**
+     * Copies a tile's pixels into the scratch bitmap.
+     *
+     * @param clear True to load the floor's pixels of the tile instead, which capture has already
+     *              copied into the floor if there is one.
+     * @return Canvas drawing into the scratch bitmap.
+     */
+    private Canvas load(long key, Tile tile, boolean clear) {
+        if (mScratch == null) {
+            mScratch = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+            mScratchCanvas = new Canvas(mScratch);
+        }
+        ByteBuffer block = mAllocator.getBlock(tile.mSlot);
+        int floor = clear && mFloor != null ? mFloor.indexOfKey(key) : -1;
+        if (clear && (floor < 0 || mFloor.isAbsentAt(floor))) {
+            mScratch.eraseColor(Color.TRANSPARENT);
+        } else {
+            if (floor >= 0) {
+                mFloor.readAt(floor, block);
+            }
+            mScratch.copyPixelsFromBuffer(block);
+        }
+        return mScratchCanvas;
+    }
+
+    /**
+     * Copies the scratch bitmap back into a tile's pixels and recounts its occupancy.
+     */
+    private void store(Tile tile) {
+        ByteBuffer block = mAllocator.getBlock(tile.mSlot);
+        mScratch.copyPixelsToBuffer(block);
+        tile.mOccupancy = countOccupancy(block);
+        tile.mVersion++;
+    }
+
+    /**
+     * @return Number of pixels in a block which are not fully transparent.
+     */
+    private static int countOccupancy(ByteBuffer block) {
+        // Pixels are stored R, G, B, A, so every fourth byte is an alpha value.
+        int occupancy = 0;
+        for (int i = 3; i < TILE_BYTES; i += 4) {
+            if (block.get(i) != 0) {
+                occupancy++;
+            }
+        }
+        return occupancy;
+    }
+
+    /**
+     * Starts recording an edit. Until endDiff, each tile is copied into the diff the first time it
+     * is about to change, including tiles created or cleared.
+     *
+     * @param compress  True to deflate the copied tiles, trading time for memory.
+     * @return Diff the edit is recorded into.
+     * @throws IllegalStateException if an edit is already being recorded.
+     */
+    public TileDiff beginDiff(boolean compress) {
+        if (mRecording != null) {
+            throw new IllegalStateException("Already recording " + mRecording);
+        }
+        mRecording = new TileDiff(compress);
+        return mRecording;
+    }
+
+    /**
+     * Stops recording the current edit.
+     *
+     * @return Diff holding the touched tiles as they were before the edit.
+     * @throws IllegalStateException if no edit is being recorded.
+     */
+    public TileDiff endDiff() {
+        if (mRecording == null) {
+            throw new IllegalStateException("No edit is being recorded");
+        }
+        TileDiff diff = mRecording;
+        mRecording = null;
+        diff.trim();
+        return diff;
+    }
+
+    /**
+     * Exchanges the tiles held by a diff with their current pixels. Swapping the diff of an edit
+     * undoes the edit; swapping it again redoes it.
+     *
+     * @param diff  Diff recorded on this raster, with no edits since that weren't also undone.
+     */
+    public void swap(TileDiff diff) {
+        for (int i = 0; i < diff.size(); i++) {
+            long key = diff.keyAt(i);
+            Tile tile = mTiles.get(key);
+            Tile restored = null;
+            if (!diff.isAbsentAt(i)) {
+                int tx = (int) (key >> 32), ty = (int) key;
+                restored = new Tile(tx, ty, mAllocator.allocate());
+                ByteBuffer block = mAllocator.getBlock(restored.mSlot);
+                diff.readAt(i, block);
+                restored.mOccupancy = countOccupancy(block);
+                if (restored.mOccupancy == 0) {
+                    // An empty tile is the same as no tile, and costs nothing.
+                    mAllocator.free(restored.mSlot);
+                    restored = null;
+                }
+            }
+
+            diff.put(key, tile == null ? null : mAllocator.getBlock(tile.mSlot));
+            if (tile != null) {
+                mAllocator.free(tile.mSlot);
+                mTiles.remove(key);
+            }
+            // The restored tile starts its version again, so cached copies can't be trusted.
+            mDisplayCache.remove(key);
+            if (restored != null) {
+                mTiles.put(key, restored);
+            }
+        }
+        diff.trim();
+    }
+
+    /**
+     * Copies a tile into the diff being recorded and into the floor, unless it is already there.
+     *
+     * @param tile  Tile about to change, or null if it is about to be created.
+     */
+    private void capture(long key, Tile tile) {
+        ByteBuffer block = tile == null ? null : mAllocator.getBlock(tile.mSlot);
+        if (mRecording != null && !mRecording.contains(key)) {
+            mRecording.put(key, block);
+        }
+        if (mFloor != null && !mFloor.contains(key)) {
+            mFloor.put(key, block);
+        }
+    }
+
+    /**
+     * Marks the current pixels as the floor later redraws reset tiles to. Costs nothing until
+     * tiles change: each is copied into the floor the first time it does.
+     *
+     * @return The new floor, to be put back with setFloor.
+     */
+    public TileDiff markFloor() {
+        mFloor = new TileDiff(true);
+        return mFloor;
+    }
+
+    /**
+     * Sets the floor redraws reset tiles to. The tiles which are not in the floor must be as they
+     * were when it was marked, for example because the edits since were swapped back out.
+     *
+     * @param floor Floor returned by markFloor, or null to clear tiles on redraw.
+     */
+    public void setFloor(TileDiff floor) {
+        mFloor = floor;
+    }
+
+    /**
+     * @return The floor redraws reset tiles to, or null if they clear them.
+     */
+    public TileDiff getFloor() {
+        return mFloor;
+    }
+
+    /**
+     * Releases every tile, leaving the raster empty.
+     */
+    public void clear() {
+        for (int i = 0; i < mTiles.size(); i++) {
+            capture(mTiles.keyAt(i), mTiles.valueAt(i));
+            mAllocator.free(mTiles.valueAt(i).mSlot);
+        }
+        mTiles.clear();
+        mDisplayCache.evictAll();
+        mAllocator.trim();
+    }
+
+    /**
+     * Releases tiles which no longer contain any ink.
+     *
+     * @return Number of tiles released.
+     */
+    public int reclaimEmptyTiles() {
+        int reclaimed = 0;
+        for (int i = mTiles.size() - 1; i >= 0; i--) {
+            Tile tile = mTiles.valueAt(i);
+            if (tile.mOccupancy == 0) {
+                mDisplayCache.remove(mTiles.keyAt(i));
+                mAllocator.free(tile.mSlot);
+                mTiles.removeAt(i);
+                reclaimed++;
+            }
+        }
+        mAllocator.trim();
+        return reclaimed;
+    }
+
+    /**
+     * @return True if no tile contains ink.
+     */
+    public boolean isEmpty() {
+        return mTiles.size() == 0;
+    }
+
+    /**
+     * @return Number of allocated tiles.
+     */
+    public int getTileCount() {
+        return mTiles.size();
+    }
+
+    /**
+     * @return Off-heap memory reserved for tile pixels, in bytes.
+     */
+    public long getReservedBytes() {
+        return mAllocator.getReservedBytes();
+    }
+
+    /**
+     * Grows a rectangle to the edges of the tiles it overlaps, which is the area a redraw of it
+     * clears.
+     *
+     * @param bounds    Rectangle in document coordinates, grown in place.
+     */
+    public static void roundOutToTiles(RectF bounds) {
+        bounds.set(toTile(bounds.left) * TILE_SIZE, toTile(bounds.top) * TILE_SIZE,
+                (toTile(bounds.right) + 1) * TILE_SIZE, (toTile(bounds.bottom) + 1) * TILE_SIZE);
+    }
+
+    private static int toTile(float coordinate) {
+        return (int) Math.floor(coordinate / TILE_SIZE);
+    }
+}
@@ -0,0 +1,416 @@
+package cse340.undo.render;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs background work, such as rasterization, tile refills, autosaves and exports, on one shared
+ * set of worker threads. Work is submitted to a lane; a free worker always takes the oldest work of
+ * the most urgent lane, so bulk work never delays the refresh the user is looking at by more than
+ * the work already running. Lanes below VISIBLE may also never occupy every worker, which keeps one
+ * free for urgent work; a scheduler therefore has at least two workers.
+ *
+ * Each lane's queue is bounded; submitting to a full lane is rejected. Work may be submitted with
+ * a key, in which case it supersedes any work with an equal key still waiting in the same lane, for
+ * example a tile re-render made stale by a newer edit. Work which has started is never stopped.
+ *
+ * Thread safe. Work must not block waiting on other work of the scheduler.
+ */
+public class WorkScheduler {
+    private static final String LOG_TAG = WorkScheduler.class.getSimpleName();
+
+    /**
+     * Kinds of work, most urgent first.
+     */
+    public enum Lane {
+        /** Work the user is waiting on right now, such as rasterizing a live stroke. */
+        INTERACTIVE(16),
+        /** Refreshing what is on screen, such as refilling visible tiles. */
+        VISIBLE(64),
+        /** Saving the document, such as autosaves. */
+        PERSISTENCE(8),
+        /** Bulk work, such as exports and thumbnails. */
+        EXPORT(32);
+
+        /** Default bound of the lane's queue. */
+        final int mCapacity;
+
+        Lane(int capacity) {
+            mCapacity = capacity;
+        }
+    }
+
+    /**
+     * Handle to submitted work.
+     */
+    public static final class Ticket {
+        /** State of submitted work. */
+        public enum State { PENDING, RUNNING, DONE, CANCELLED }
+
+        private final Lane mLane;
+        private final Object mKey;
+        private final Runnable mWork;
+        private final long mSubmitNanos;
+
+        /** Written only while holding the scheduler's lock. */
+        private volatile State mState = State.PENDING;
+
+        private Ticket(Lane lane, Object key, Runnable work) {
+            mLane = lane;
+            mKey = key;
+            mWork = work;
+            mSubmitNanos = System.nanoTime();
+        }
+
+        public Lane getLane() {
+            return mLane;
+        }
+
+        /**
+         * @return State of the work. Cancelled if it was superseded or cancelled before it started.
+         */
+        public State getState() {
+            return mState;
+        }
+    }
+
+    /**
+     * Counts of what happened to one lane's work since the scheduler was created.
+     */
+    public static final class Metrics {
+        private final Lane mLane;
+        private final int mPending, mRunning;
+        private final long mSubmitted, mCompleted, mFailed, mSuperseded, mCancelled, mRejected;
+        private final long mWaitNanos, mRunNanos;
+
+        private Metrics(Lane lane, LaneState s) {
+            mLane = lane;
+            mPending = s.mQueue.size();
+            mRunning = s.mRunning;
+            mSubmitted = s.mSubmitted;
+            mCompleted = s.mCompleted;
+            mFailed = s.mFailed;
+            mSuperseded = s.mSuperseded;
+            mCancelled = s.mCancelled;
+            mRejected = s.mRejected;
+            mWaitNanos = s.mWaitNanos;
+            mRunNanos = s.mRunNanos;
+        }
+
+        public Lane getLane() {
+            return mLane;
+        }
+
+        /** @return Work waiting in the queue. */
+        public int getPendingCount() {
+            return mPending;
+        }
+
+        /** @return Work being run. */
+        public int getRunningCount() {
+            return mRunning;
+        }
+
+        /** @return Work accepted into the queue. */
+        public long getSubmittedCount() {
+            return mSubmitted;
+        }
+
+        /** @return Work which ran to completion, including work which threw. */
+        public long getCompletedCount() {
+            return mCompleted;
+        }
+
+        /** @return Work which threw an exception. */
+        public long getFailedCount() {
+            return mFailed;
+        }
+
+        /** @return Work dropped before it started because newer work had an equal key. */
+        public long getSupersededCount() {
+            return mSuperseded;
+        }
+
+        /** @return Work cancelled before it started. */
+        public long getCancelledCount() {
+            return mCancelled;
+        }
+
+        /** @return Work refused because the lane's queue was full. */
+        public long getRejectedCount() {
+            return mRejected;
+        }
+
+        /** @return Mean time completed work waited in the queue, in nanoseconds. */
+        public long getMeanWaitNanos() {
+            return mCompleted == 0 ? 0 : mWaitNanos / mCompleted;
+        }
+
+        /** @return Mean time completed work took to run, in nanoseconds. */
+        public long getMeanRunNanos() {
+            return mCompleted == 0 ? 0 : mRunNanos / mCompleted;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return mLane + ": pending " + mPending + ", running " + mRunning
+                    + ", submitted " + mSubmitted + ", completed " + mCompleted
+                    + ", failed " + mFailed + ", superseded " + mSuperseded
+                    + ", cancelled " + mCancelled + ", rejected " + mRejected
+                    + ", mean wait " + getMeanWaitNanos() / 1000 + "us"
+                    + ", mean run " + getMeanRunNanos() / 1000 + "us";
+        }
+    }
+
+    /** Queue and counters of one lane. Guarded by the scheduler. */
+    private static final class LaneState {
+        final int mCapacity;
+        final int mMaxRunning;
+        final ArrayDeque<Ticket> mQueue = new ArrayDeque<>();
+
+        /** Pending work by key, for work submitted with one. */
+        final Map<Object, Ticket> mKeyed = new HashMap<>();
+
+        int mRunning;
+        long mSubmitted, mCompleted, mFailed, mSuperseded, mCancelled, mRejected;
+        long mWaitNanos, mRunNanos;
+
+        LaneState(int capacity, int maxRunning) {
+            mCapacity = capacity;
+            mMaxRunning = maxRunning;
+        }
+    }
+
+    private static WorkScheduler sInstance;
+
+    private final EnumMap<Lane, LaneState> mLanes;
+    private final Thread[] mWorkers;
+
+    /** True once shutdown was called. Guarded by this. */
+    private boolean mShutdown;
+
+    /**
+     * @return Scheduler shared by the app, with a worker for every core but the UI thread's, and
+     *         at least two.
+     */
+    public static synchronized WorkScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new WorkScheduler(
+                    Math.max(2, Runtime.getRuntime().availableProcessors() - 1));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Creates a scheduler with the default lane capacities, and starts its workers.
+     *
+     * @param workers   Number of worker threads, one of which is kept for urgent work.
+     * @throws IllegalArgumentException if there are fewer than two workers.
+     */
+    public WorkScheduler(int workers) {
+        if (workers < 2) {
+            throw new IllegalArgumentException("Illegal worker count: " + workers);
+        }
+
+        mLanes = new EnumMap<>(Lane.class);
+        for (Lane lane : Lane.values()) {
+            boolean urgent = lane.compareTo(Lane.VISIBLE) <= 0;
+            mLanes.put(lane, new LaneState(lane.mCapacity, urgent ? workers : workers - 1));
+        }
+
+        mWorkers = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            mWorkers[i] = new Thread(this::work, LOG_TAG + "-" + i);
+            mWorkers[i].setDaemon(true);
+            mWorkers[i].start();
+        }
+    }
+
+    /**
+     * @return Number of worker threads.
+     */
+    public int getWorkerCount() {
+        return mWorkers.length;
+    }
+
+    /**
+     * Submits work with no key, which is never superseded.
+     *
+     * @see #submit(Lane, Object, Runnable)
+     */
+    public Ticket submit(Lane lane, Runnable work) {
+        return submit(lane, null, work);
+    }
+
+    /**
+     * Submits work to run on a worker, at the back of its lane's queue. Pending work in the same
+     * lane with an equal key is superseded and dropped; the new work still joins the back of the
+     * queue, behind work submitted before it.
+     *
+     * @param lane  Lane to run the work in.
+     * @param key   Identity of the work, such as a tile key, or null if it is never superseded.
+     * @param work  Work to run.
+     * @return Ticket of the work, or null if the lane's queue is full.
+     * @throws IllegalArgumentException if lane or work is null.
+     * @throws IllegalStateException if the scheduler was shut down.
+     */
+    public synchronized Ticket submit(Lane lane, Object key, Runnable work) {
+        if (lane == null || work == null) {
+            throw new IllegalArgumentException("Null lane or work");
+        }
+        if (mShutdown) {
+            throw new IllegalStateException("Submitting to a shut down scheduler");
+        }
+
+        LaneState state = mLanes.get(lane);
+        Ticket stale = key == null ? null : state.mKeyed.get(key);
+        if (stale == null && state.mQueue.size() >= state.mCapacity) {
+            state.mRejected++;
+            return null;
+        }
+
+        Ticket ticket = new Ticket(lane, key, work);
+        if (stale != null) {
+            // Dropped here rather than skipped later, so superseded work doesn't use up capacity.
+            state.mQueue.remove(stale);
+            stale.mState = Ticket.State.CANCELLED;
+            state.mSuperseded++;
+        }
+        if (key != null) {
+            state.mKeyed.put(key, ticket);
+        }
+        state.mQueue.addLast(ticket);
+        state.mSubmitted++;
+        notify();
+        return ticket;
+    }
+
+    /**
+     * Cancels work which hasn't started yet.
+     *
+     * @param ticket    Ticket of the work.
+     * @return True if the work was cancelled, false if it had already started or was cancelled.
+     */
+    public synchronized boolean cancel(Ticket ticket) {
+        if (ticket.mState != Ticket.State.PENDING) {
+            return false;
+        }
+        LaneState state = mLanes.get(ticket.mLane);
+        if (!state.mQueue.remove(ticket)) {
+            return false;
+        }
+        if (ticket.mKey != null) {
+            state.mKeyed.remove(ticket.mKey);
+        }
+        ticket.mState = Ticket.State.CANCELLED;
+        state.mCancelled++;
+        return true;
+    }
+
+    /**
+     * @param lane  Lane to report.
+     * @return Current counts of the lane.
+     */
+    public synchronized Metrics getMetrics(Lane lane) {
+        return new Metrics(lane, mLanes.get(lane));
+    }
+
+    /**
+     * Stops the workers once their current work is done. Pending work is cancelled.
+     */
+    public synchronized void shutdown() {
+        mShutdown = true;
+        for (LaneState state : mLanes.values()) {
+            for (Ticket ticket : state.mQueue) {
+                ticket.mState = Ticket.State.CANCELLED;
+                state.mCancelled++;
+            }
+            state.mQueue.clear();
+            state.mKeyed.clear();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Takes the oldest pending work of the most urgent lane which may run more work, waiting until
+     * there is some.
+     *
+     * @return Work to run, or null once the scheduler is shut down.
+     */
+    private synchronized Ticket take() throws InterruptedException {
+        while (!mShutdown) {
+            for (Map.Entry<Lane, LaneState> entry : mLanes.entrySet()) {
+                LaneState state = entry.getValue();
+                if (state.mQueue.isEmpty() || state.mRunning >= state.mMaxRunning) {
+                    continue;
+                }
+                Ticket ticket = state.mQueue.removeFirst();
+                if (ticket.mKey != null) {
+                    state.mKeyed.remove(ticket.mKey);
+                }
+                ticket.mState = Ticket.State.RUNNING;
+                state.mRunning++;
+                state.mWaitNanos += System.nanoTime() - ticket.mSubmitNanos;
+                return ticket;
+            }
+            wait();
+        }
+        return null;
+    }
+
+    /**
+     * Records that work finished, and wakes a worker for work its lane held back.
+     */
+    private synchronized void finish(Ticket ticket, long runNanos, boolean failed) {
+        LaneState state = mLanes.get(ticket.mLane);
+        ticket.mState = Ticket.State.DONE;
+        state.mRunning--;
+        state.mCompleted++;
+        state.mRunNanos += runNanos;
+        if (failed) {
+            state.mFailed++;
+        }
+        notify();
+    }
+
+    /**
+     * Runs work until the scheduler is shut down.
+     */
+    private void work() {
+        try {
+            Ticket ticket;
+            while ((ticket = take()) != null) {
+                long start = System.nanoTime();
+                boolean failed = true;
+                try {
+                    ticket.mWork.run();
+                    failed = false;
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Work in lane " + ticket.mLane + " failed", e);
+                } finally {
+                    // Errors still end the worker, but never keep the lane's slot.
+                    finish(ticket, System.nanoTime() - start, failed);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder(LOG_TAG).append(" with ")
+                .append(mWorkers.length).append(" workers");
+        for (Lane lane : Lane.values()) {
+            builder.append("\n  ").append(getMetrics(lane));
+        }
+        return builder.toString();
+    }
+}
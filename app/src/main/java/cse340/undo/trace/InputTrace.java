@@ -0,0 +1,282 @@
+package cse340.undo.trace;
+
+import android.support.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A recorded drawing session: touch events delivered to the DrawingView, interleaved with menu
+ * actions and text typed into dialogs, each with a timestamp. Records are kept in parallel primitive arrays so that recording
+ * a long session does not allocate per event, and are serialized to a compact binary format.
+ *
+ * @see InputTraceRecorder
+ * @see InputTraceReplayer
+ */
+public final class InputTrace {
+    /** Record types. */
+    public static final byte TYPE_TOUCH = 0;
+    public static final byte TYPE_MENU = 1;
+    /** Text entered into a dialog, such as the text of a label, so replays don't show it. */
+    public static final byte TYPE_TEXT = 2;
+
+    /** Menu actions which can be recorded. */
+    public static final int MENU_COLOR = 0;
+    public static final int MENU_THICKNESS = 1;
+    public static final int MENU_CLEAR = 2;
+    public static final int MENU_UNDO = 3;
+    public static final int MENU_REDO = 4;
+    public static final int MENU_TOOL = 5;
+    public static final int MENU_BRUSH = 6;
+    public static final int MENU_SYMMETRY = 7;
+    public static final int MENU_SNAP = 8;
+    /** Moves the history to the position in the argument, by scrubbing or jumping. */
+    public static final int MENU_SEEK = 9;
+
+    /** Identifies trace files, and the version of their format. */
+    private static final int MAGIC = 0x44545243;
+    private static final int VERSION = 2;
+
+    /** Oldest version which can still be read. Version 1 has no text records. */
+    private static final int MIN_VERSION = 1;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** Number of records. */
+    private int mSize;
+
+    /** Type of each record. */
+    private byte[] mTypes;
+
+    /** Time of each record, in milliseconds since the start of the trace. */
+    private long[] mTimes;
+
+    /** Touch action (for touches) or menu action (for menus) of each record. */
+    private int[] mActions;
+
+    /** Touch coordinates and pressure. Unused for menu records. */
+    private float[] mX, mY, mPressure;
+
+    /** Argument of menu records, such as the color or thickness. Unused for touch records. */
+    private int[] mArgs;
+
+    /** Text of text records, and null for the others. */
+    private String[] mTexts;
+
+    /**
+     * Creates an empty trace.
+     */
+    public InputTrace() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private InputTrace(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mTypes = new byte[capacity];
+        mTimes = new long[capacity];
+        mActions = new int[capacity];
+        mX = new float[capacity];
+        mY = new float[capacity];
+        mPressure = new float[capacity];
+        mArgs = new int[capacity];
+        mTexts = new String[capacity];
+    }
+
+    /**
+     * Appends a touch record.
+     *
+     * @param time      Milliseconds since the start of the trace.
+     * @param action    Masked MotionEvent action.
+     * @param x         Horizontal coordinate of the touch.
+     * @param y         Vertical coordinate of the touch.
+     * @param pressure  Pressure of the touch.
+     */
+    public void addTouch(long time, int action, float x, float y, float pressure) {
+        int i = append(TYPE_TOUCH, time, action);
+        mX[i] = x;
+        mY[i] = y;
+        mPressure[i] = pressure;
+    }
+
+    /**
+     * Appends a menu record.
+     *
+     * @param time      Milliseconds since the start of the trace.
+     * @param menu      One of the MENU_ constants.
+     * @param arg       Argument of the action, or 0 if it has none.
+     */
+    public void addMenu(long time, int menu, int arg) {
+        int i = append(TYPE_MENU, time, menu);
+        mArgs[i] = arg;
+    }
+
+    /**
+     * Appends a text record.
+     *
+     * @param time  Milliseconds since the start of the trace.
+     * @param text  Text entered.
+     * @throws IllegalArgumentException if text is null.
+     */
+    public void addText(long time, String text) {
+        if (text == null) {
+            throw new IllegalArgumentException("Null text");
+        }
+        int i = append(TYPE_TEXT, time, 0);
+        mTexts[i] = text;
+    }
+
+    private int append(byte type, long time, int action) {
+        if (mSize > 0 && time < mTimes[mSize - 1]) {
+            throw new IllegalArgumentException("Records must be added in time order");
+        }
+        if (mSize == mTypes.length) {
+            int capacity = mSize * 2;
+            mTypes = Arrays.copyOf(mTypes, capacity);
+            mTimes = Arrays.copyOf(mTimes, capacity);
+            mActions = Arrays.copyOf(mActions, capacity);
+            mX = Arrays.copyOf(mX, capacity);
+            mY = Arrays.copyOf(mY, capacity);
+            mPressure = Arrays.copyOf(mPressure, capacity);
+            mArgs = Arrays.copyOf(mArgs, capacity);
+            mTexts = Arrays.copyOf(mTexts, capacity);
+        }
+
+        int i = mSize++;
+        mTypes[i] = type;
+        mTimes[i] = time;
+        mActions[i] = action;
+        return i;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public byte getType(int i) {
+        return mTypes[i];
+    }
+
+    public long getTime(int i) {
+        return mTimes[i];
+    }
+
+    /**
+     * @return The MotionEvent action of a touch record, or the MENU_ constant of a menu record.
+     */
+    public int getAction(int i) {
+        return mActions[i];
+    }
+
+    public float getX(int i) {
+        return mX[i];
+    }
+
+    public float getY(int i) {
+        return mY[i];
+    }
+
+    public float getPressure(int i) {
+        return mPressure[i];
+    }
+
+    public int getArg(int i) {
+        return mArgs[i];
+    }
+
+    /**
+     * @return The text of a text record, or null for other records.
+     */
+    public String getText(int i) {
+        return mTexts[i];
+    }
+
+    /**
+     * @return Length of the trace in milliseconds.
+     */
+    public long getDuration() {
+        return mSize == 0 ? 0 : mTimes[mSize - 1];
+    }
+
+    /**
+     * Writes the trace in its binary format. Times are stored as deltas from the previous record.
+     *
+     * @param out   Stream to write to. It is not closed.
+     * @throws IOException if the stream cannot be written.
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(mSize);
+
+        long last = 0;
+        for (int i = 0; i < mSize; i++) {
+            data.writeByte(mTypes[i]);
+            data.writeInt((int) (mTimes[i] - last));
+            data.writeByte(mActions[i]);
+            last = mTimes[i];
+
+            if (mTypes[i] == TYPE_TOUCH) {
+                data.writeFloat(mX[i]);
+                data.writeFloat(mY[i]);
+                data.writeFloat(mPressure[i]);
+            } else if (mTypes[i] == TYPE_TEXT) {
+                data.writeUTF(mTexts[i]);
+            } else {
+                data.writeInt(mArgs[i]);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a trace written by write.
+     *
+     * @param in    Stream to read from. It is not closed.
+     * @return The trace.
+     * @throws IOException if the stream cannot be read or is not a trace.
+     */
+    public static InputTrace read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not an input trace");
+        }
+        int version = data.readInt();
+        if (version < MIN_VERSION || version > VERSION) {
+            throw new IOException("Unsupported trace version " + version);
+        }
+
+        int size = data.readInt();
+        if (size < 0) {
+            throw new IOException("Illegal trace size " + size);
+        }
+        InputTrace trace = new InputTrace(size);
+        long time = 0;
+        for (int i = 0; i < size; i++) {
+            byte type = data.readByte();
+            time += data.readInt();
+            int action = data.readUnsignedByte();
+
+            if (type == TYPE_TOUCH) {
+                trace.addTouch(time, action, data.readFloat(), data.readFloat(), data.readFloat());
+            } else if (type == TYPE_MENU) {
+                trace.addMenu(time, action, data.readInt());
+            } else if (type == TYPE_TEXT && version >= 2) {
+                trace.addText(time, data.readUTF());
+            } else {
+                throw new IOException("Illegal record type " + type);
+            }
+        }
+        return trace;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Input trace of " + mSize + " records over " + getDuration() + " ms";
+    }
+}
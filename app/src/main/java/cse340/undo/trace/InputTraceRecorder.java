@@ -0,0 +1,73 @@
+package cse340.undo.trace;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+/**
+ * Records touch events, menu actions and entered text into an InputTrace. Timestamps are taken from the
+ * MotionEvents themselves and from SystemClock.uptimeMillis() for menu actions, which share the
+ * same time base.
+ *
+ * @see InputTrace
+ */
+public class InputTraceRecorder {
+    /** Trace being recorded. */
+    private final InputTrace mTrace;
+
+    /** Uptime at which recording started. */
+    private final long mStartTime;
+
+    /**
+     * Starts recording a new trace.
+     */
+    public InputTraceRecorder() {
+        mTrace = new InputTrace();
+        mStartTime = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Records a touch event.
+     *
+     * @param event Event delivered to the DrawingView.
+     */
+    public void recordTouch(MotionEvent event) {
+        mTrace.addTouch(timeOf(event.getEventTime()), event.getActionMasked(),
+                event.getX(), event.getY(), event.getPressure());
+    }
+
+    /**
+     * Records a menu action.
+     *
+     * @param menu  One of the InputTrace.MENU_ constants.
+     * @param arg   Argument of the action, or 0 if it has none.
+     */
+    public void recordMenu(int menu, int arg) {
+        mTrace.addMenu(timeOf(SystemClock.uptimeMillis()), menu, arg);
+    }
+
+    /**
+     * Records text entered into a dialog, so a replay can use it instead of showing the dialog.
+     *
+     * @param text  Text entered.
+     */
+    public void recordText(String text) {
+        mTrace.addText(timeOf(SystemClock.uptimeMillis()), text);
+    }
+
+    /**
+     * Converts an uptime into trace time, keeping records in order even if an event was stamped
+     * slightly before the last one.
+     */
+    private long timeOf(long uptime) {
+        long time = Math.max(0, uptime - mStartTime);
+        int size = mTrace.size();
+        return size == 0 ? time : Math.max(time, mTrace.getTime(size - 1));
+    }
+
+    /**
+     * @return The trace recorded so far.
+     */
+    public InputTrace getTrace() {
+        return mTrace;
+    }
+}
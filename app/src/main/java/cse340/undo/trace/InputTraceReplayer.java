@@ -0,0 +1,153 @@
+package cse340.undo.trace;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+/**
+ * Feeds a recorded InputTrace back into the app, either as fast as possible on the calling thread
+ * or at the original timing on the main looper. The time taken by the replay is reported, so the
+ * same trace can be used to benchmark different builds.
+ *
+ * @see InputTrace
+ */
+public class InputTraceReplayer {
+    /**
+     * Receives the replayed input. Usually implemented by the activity, which dispatches touches to
+     * its DrawingView and performs menu actions as if the user had clicked them.
+     */
+    public interface Target {
+        void onReplayTouch(MotionEvent event);
+
+        void onReplayMenu(int menu, int arg);
+
+        /**
+         * Receives text the user entered into a dialog, which the replay must not show.
+         */
+        void onReplayText(String text);
+    }
+
+    /**
+     * Class which defines a listener to be called when a replay finishes.
+     */
+    public interface ReplayListener {
+        /**
+         * @param trace         Trace that was replayed.
+         * @param elapsedNanos  Wall time spent replaying, including any waits for original timing.
+         */
+        void onReplayFinished(InputTrace trace, long elapsedNanos);
+    }
+
+    private final InputTrace mTrace;
+    private final Target mTarget;
+
+    /** Down time of the gesture being replayed, in the current uptime base. */
+    private long mDownTime;
+
+    /** Used for timed replay, or null otherwise. */
+    private Handler mHandler;
+    private Runnable mNextStep;
+
+    /**
+     * Creates a replayer.
+     *
+     * @param trace     Trace to replay.
+     * @param target    Receiver of the replayed input.
+     */
+    public InputTraceReplayer(InputTrace trace, Target target) {
+        if (trace == null || target == null) {
+            throw new IllegalArgumentException("Null trace or target");
+        }
+        mTrace = trace;
+        mTarget = target;
+    }
+
+    /**
+     * Replays every record immediately on the calling thread.
+     *
+     * @return Wall time spent replaying, in nanoseconds.
+     */
+    public long replayImmediately() {
+        long start = System.nanoTime();
+        long base = SystemClock.uptimeMillis();
+        for (int i = 0; i < mTrace.size(); i++) {
+            dispatch(i, base);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Replays the trace on the main looper, waiting between records as long as the user did.
+     *
+     * @param listener  Called on the main looper when the replay has finished, or null.
+     * @throws IllegalStateException if a timed replay is already in progress.
+     */
+    public void replayTimed(ReplayListener listener) {
+        if (mHandler != null) {
+            throw new IllegalStateException("Replay already in progress");
+        }
+
+        mHandler = new Handler(Looper.getMainLooper());
+        long start = System.nanoTime();
+        long base = SystemClock.uptimeMillis();
+        mNextStep = new Runnable() {
+            private int mIndex;
+
+            @Override
+            public void run() {
+                // Dispatch every record which is due, then sleep until the next one.
+                while (mIndex < mTrace.size() && base + mTrace.getTime(mIndex) <= SystemClock.uptimeMillis()) {
+                    dispatch(mIndex++, base);
+                }
+
+                if (mIndex < mTrace.size()) {
+                    mHandler.postDelayed(this, base + mTrace.getTime(mIndex) - SystemClock.uptimeMillis());
+                } else {
+                    mHandler = null;
+                    mNextStep = null;
+                    if (listener != null) {
+                        listener.onReplayFinished(mTrace, System.nanoTime() - start);
+                    }
+                }
+            }
+        };
+        mHandler.post(mNextStep);
+    }
+
+    /**
+     * Stops a timed replay in progress. Does nothing if none is running.
+     */
+    public void cancel() {
+        if (mHandler != null) {
+            mHandler.removeCallbacks(mNextStep);
+            mHandler = null;
+            mNextStep = null;
+        }
+    }
+
+    private void dispatch(int i, long base) {
+        if (mTrace.getType(i) == InputTrace.TYPE_MENU) {
+            mTarget.onReplayMenu(mTrace.getAction(i), mTrace.getArg(i));
+            return;
+        }
+        if (mTrace.getType(i) == InputTrace.TYPE_TEXT) {
+            mTarget.onReplayText(mTrace.getText(i));
+            return;
+        }
+
+        long time = base + mTrace.getTime(i);
+        int action = mTrace.getAction(i);
+        if (action == MotionEvent.ACTION_DOWN) {
+            mDownTime = time;
+        }
+
+        MotionEvent event = MotionEvent.obtain(mDownTime, time, action, mTrace.getX(i),
+                mTrace.getY(i), mTrace.getPressure(i), 1f, 0, 1f, 1f, 0, 0);
+        try {
+            mTarget.onReplayTouch(event);
+        } finally {
+            event.recycle();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package cse340.undo.geometry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Recognizes jittered strokes, and strokes on either side of the recognizer's thresholds:
+ * LINE_TOLERANCE (0.06 of the chord), CLOSED_GAP (0.15 of the length), SHAPE_TOLERANCE (0.08 of
+ * the size), MIN_ASPECT (0.1) and MAX_TRACED (1.5 times the outline).
+ */
+public class ShapeRecognizerTest {
+    /** Largest jitter added to each sample, in document units. */
+    private static final float NOISE = 2f;
+
+    private ShapeRecognizer mRecognizer;
+    private Random mRandom;
+
+    @Before
+    public void setUp() {
+        mRecognizer = new ShapeRecognizer();
+        // Generous, so a slow test machine doesn't make recognition give up.
+        mRecognizer.setBudget(1_000_000_000L);
+        mRandom = new Random(340);
+    }
+
+    @Test
+    public void noisyLine() {
+        StrokeGeometry stroke = new StrokeGeometry(0f, 0f);
+        addLine(stroke, 0f, 0f, 200f, 50f, 40, NOISE);
+
+        Shape shape = mRecognizer.recognize(stroke);
+        assertType(Shape.Type.LINE, shape);
+        assertEquals(200f, shape.getParam(2), 2 * NOISE);
+        assertEquals(50f, shape.getParam(3), 2 * NOISE);
+    }
+
+    @Test
+    public void lineToleranceBounds() {
+        // Arcs bulging 0.04 and 0.10 of their chord; the line tolerance is 0.06.
+        assertType(Shape.Type.LINE, mRecognizer.recognize(arc(200f, 0.04f)));
+        assertNull(mRecognizer.recognize(arc(200f, 0.10f)));
+    }
+
+    @Test
+    public void noisyCircle() {
+        StrokeGeometry stroke = ellipse(100f, 100f, 100f, 100f, 0f, 120, 1f, NOISE);
+
+        Shape shape = mRecognizer.recognize(stroke);
+        assertType(Shape.Type.ELLIPSE, shape);
+        assertEquals(100f, shape.getParam(0), 2 * NOISE);
+        assertEquals(100f, shape.getParam(1), 2 * NOISE);
+        assertEquals(100f, shape.getParam(2), 2 * NOISE);
+        assertEquals(100f, shape.getParam(3), 2 * NOISE);
+    }
+
+    @Test
+    public void closedGapBounds() {
+        // Gaps of about 0.04 and 0.30 of the length; closed strokes leave at most 0.15.
+        assertType(Shape.Type.ELLIPSE,
+                mRecognizer.recognize(ellipse(0f, 0f, 100f, 60f, 0f, 120, 0.95f, 0f)));
+        assertNull(mRecognizer.recognize(ellipse(0f, 0f, 100f, 60f, 0f, 120, 0.75f, 0f)));
+    }
+
+    @Test
+    public void noisyRectangle() {
+        StrokeGeometry stroke = rectangle(50f, 40f, 100f, 50f, 0f, NOISE);
+
+        Shape shape = mRecognizer.recognize(stroke);
+        assertType(Shape.Type.RECTANGLE, shape);
+        assertEquals(50f, shape.getParam(0), 2 * NOISE);
+        assertEquals(40f, shape.getParam(1), 2 * NOISE);
+        assertHalfSizes(100f, 50f, shape);
+    }
+
+    @Test
+    public void noisyRotatedRectangle() {
+        StrokeGeometry stroke = rectangle(0f, 0f, 100f, 50f, 20f, NOISE);
+
+        Shape shape = mRecognizer.recognize(stroke);
+        assertType(Shape.Type.RECTANGLE, shape);
+        assertHalfSizes(100f, 50f, shape);
+        // The same rectangle may be described turned a quarter turn, with its sides swapped.
+        float degrees = ((shape.getParam(4) % 90f) + 90f) % 90f;
+        assertEquals(20f, degrees, 3f);
+    }
+
+    @Test
+    public void overtracedCircle() {
+        // Drawn a tenth of a turn past its start, as circles often are.
+        StrokeGeometry stroke = ellipse(0f, 0f, 100f, 100f, 0f, 130, 1.1f, NOISE);
+        assertType(Shape.Type.ELLIPSE, mRecognizer.recognize(stroke));
+    }
+
+    @Test
+    public void noisyArrow() {
+        StrokeGeometry stroke = new StrokeGeometry(0f, 0f);
+        addLine(stroke, 0f, 0f, 200f, 0f, 40, NOISE);
+        addLine(stroke, 200f, 0f, 180f, -20f, 5, NOISE);
+        addLine(stroke, 180f, -20f, 200f, 0f, 5, NOISE);
+        addLine(stroke, 200f, 0f, 180f, 20f, 5, NOISE);
+
+        Shape shape = mRecognizer.recognize(stroke);
+        assertType(Shape.Type.ARROW, shape);
+        assertEquals(200f, shape.getParam(2), 2 * NOISE);
+        assertEquals(0f, shape.getParam(3), 2 * NOISE);
+        assertEquals(28f, shape.getParam(4), 2 * NOISE);
+    }
+
+    @Test
+    public void rejectsScribble() {
+        // Open ends close together relative to its length, with every sample on the top or bottom
+        // of its bounding box, but over three times as long as that box's outline.
+        StrokeGeometry stroke = new StrokeGeometry(0f, 0f);
+        for (int i = 1; i <= 40; i++) {
+            stroke.add(i * 5f, (i % 2 == 0 ? 0f : 40f) + jitter(NOISE));
+        }
+        assertNull(mRecognizer.recognize(stroke));
+    }
+
+    @Test
+    public void rejectsFigureEight() {
+        // Closed, but far from both outlines of its bounding box.
+        StrokeGeometry stroke = new StrokeGeometry(0f, 0f);
+        for (int i = 1; i <= 120; i++) {
+            double t = 2 * Math.PI * i / 120;
+            stroke.add((float) Math.sin(t) * 100f, (float) Math.sin(2 * t) * 60f);
+        }
+        assertNull(mRecognizer.recognize(stroke));
+    }
+
+    @Test
+    public void rejectsSliver() {
+        // A closed loop 20 times longer than it is wide; closed shapes must be at least 0.1.
+        assertNull(mRecognizer.recognize(ellipse(0f, 0f, 200f, 10f, 0f, 120, 1f, 0f)));
+    }
+
+    @Test
+    public void rejectsDegenerateStrokes() {
+        assertNull(mRecognizer.recognize(new StrokeGeometry(10f, 10f)));
+
+        StrokeGeometry still = new StrokeGeometry(10f, 10f);
+        still.add(10f, 10f);
+        still.add(10f, 10f);
+        assertNull(mRecognizer.recognize(still));
+    }
+
+    @Test
+    public void rejectsErasedStrokes() {
+        StrokeGeometry stroke = new StrokeGeometry(0f, 0f);
+        addLine(stroke, 0f, 0f, 200f, 0f, 20, 0f);
+        stroke.seal();
+        stroke.erase(new int[] {5, 6});
+        assertNull(mRecognizer.recognize(stroke));
+    }
+
+    @Test
+    public void thinsLongStrokes() {
+        StrokeGeometry stroke = ellipse(0f, 0f, 100f, 100f, 0f,
+                ShapeRecognizer.MAX_POINTS * 40, 1f, NOISE);
+        assertType(Shape.Type.ELLIPSE, mRecognizer.recognize(stroke));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveBudget() {
+        mRecognizer.setBudget(0);
+    }
+
+    private float jitter(float noise) {
+        return (mRandom.nextFloat() * 2 - 1) * noise;
+    }
+
+    /**
+     * Adds samples evenly spaced from (x0, y0), exclusive, to (x1, y1), jittered by up to noise.
+     */
+    private void addLine(StrokeGeometry stroke, float x0, float y0, float x1, float y1,
+                         int samples, float noise) {
+        for (int i = 1; i <= samples; i++) {
+            float t = (float) i / samples;
+            stroke.add(x0 + (x1 - x0) * t + jitter(noise), y0 + (y1 - y0) * t + jitter(noise));
+        }
+    }
+
+    /**
+     * @return Horizontal circular arc of the given chord, bulging by bulge times the chord.
+     */
+    private StrokeGeometry arc(float chord, float bulge) {
+        StrokeGeometry stroke = new StrokeGeometry(0f, 0f);
+        for (int i = 1; i <= 100; i++) {
+            float t = i / 100f;
+            stroke.add(chord * t, 4 * bulge * chord * t * (1 - t));
+        }
+        return stroke;
+    }
+
+    /**
+     * @param turns Fraction of the outline drawn, starting on its right.
+     * @return Ellipse centered on (cx, cy), rotated clockwise by degrees.
+     */
+    private StrokeGeometry ellipse(float cx, float cy, float a, float b, float degrees,
+                                   int samples, float turns, float noise) {
+        double rotation = Math.toRadians(degrees);
+        float cos = (float) Math.cos(rotation), sin = (float) Math.sin(rotation);
+        StrokeGeometry stroke = new StrokeGeometry(cx + a * cos, cy + a * sin);
+        for (int i = 1; i <= samples; i++) {
+            double t = 2 * Math.PI * turns * i / samples;
+            float u = (float) Math.cos(t) * a + jitter(noise);
+            float v = (float) Math.sin(t) * b + jitter(noise);
+            stroke.add(cx + u * cos - v * sin, cy + u * sin + v * cos);
+        }
+        return stroke;
+    }
+
+    /**
+     * @return Rectangle centered on (cx, cy), rotated clockwise by degrees, drawn from a corner.
+     */
+    private StrokeGeometry rectangle(float cx, float cy, float a, float b, float degrees,
+                                     float noise) {
+        double rotation = Math.toRadians(degrees);
+        float cos = (float) Math.cos(rotation), sin = (float) Math.sin(rotation);
+        float[] us = {-a, a, a, -a, -a};
+        float[] vs = {-b, -b, b, b, -b};
+        StrokeGeometry stroke = new StrokeGeometry(cx - a * cos + b * sin, cy - a * sin - b * cos);
+        for (int side = 0; side < 4; side++) {
+            for (int i = 1; i <= 30; i++) {
+                float t = i / 30f;
+                float u = us[side] + (us[side + 1] - us[side]) * t + jitter(noise);
+                float v = vs[side] + (vs[side + 1] - vs[side]) * t + jitter(noise);
+                stroke.add(cx + u * cos - v * sin, cy + u * sin + v * cos);
+            }
+        }
+        return stroke;
+    }
+
+    private static void assertType(Shape.Type type, Shape shape) {
+        assertNotNull("Expected " + type, shape);
+        assertEquals(type, shape.getType());
+    }
+
+    /**
+     * Checks the half sizes of a shape, in either order.
+     */
+    private static void assertHalfSizes(float a, float b, Shape shape) {
+        float halfWidth = shape.getParam(2), halfHeight = shape.getParam(3);
+        float tolerance = 2 * NOISE;
+        if (halfWidth < halfHeight) {
+            float swap = halfWidth;
+            halfWidth = halfHeight;
+            halfHeight = swap;
+        }
+        assertEquals(a, halfWidth, tolerance);
+        assertEquals(b, halfHeight, tolerance);
+    }
+}
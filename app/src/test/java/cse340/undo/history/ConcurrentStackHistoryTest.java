@@ -0,0 +1,210 @@
+package cse340.undo.history;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cse340.undo.actions.AbstractReversibleAction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentStackHistoryTest {
+    private static final int PRODUCERS = 8;
+    private static final int PER_PRODUCER = 5000;
+
+    /** Action tagged with the producer which submitted it and its place in that producer's order. */
+    private static class TestAction extends AbstractReversibleAction {
+        final int mProducer;
+        final int mSequence;
+
+        TestAction(int producer, int sequence) {
+            mProducer = producer;
+            mSequence = sequence;
+        }
+
+        @Override
+        public String toString() {
+            return "TestAction " + mProducer + ":" + mSequence;
+        }
+    }
+
+    /** Drain tasks handed to the wake-up executor, run by the test thread like a frame callback. */
+    private ConcurrentLinkedQueue<Runnable> mWakeUps;
+    private ConcurrentStackHistory mHistory;
+
+    @Before
+    public void setUp() {
+        mWakeUps = new ConcurrentLinkedQueue<>();
+        mHistory = new ConcurrentStackHistory(PRODUCERS * PER_PRODUCER, mWakeUps::add);
+    }
+
+    /** Runs the wake-ups handed out so far, and any they schedule, on the owning thread. */
+    private void runWakeUps() {
+        Runnable task;
+        while ((task = mWakeUps.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    public void concurrentSubmitsAreAppliedOnceInProducerOrder() throws InterruptedException {
+        final List<TestAction> applied = new ArrayList<>();
+        mHistory.setApplier(action -> {
+            applied.add((TestAction) action);
+            mHistory.addAction(action);
+        });
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            producers[p] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < PER_PRODUCER; i++) {
+                        mHistory.submit(new TestAction(producer, i));
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }, "producer-" + p);
+            producers[p].start();
+        }
+
+        // Drain while the producers are still submitting, as frames would.
+        start.countDown();
+        for (Thread producer : producers) {
+            while (producer.isAlive()) {
+                runWakeUps();
+                producer.join(1);
+            }
+        }
+        runWakeUps();
+
+        if (failure.get() != null) {
+            throw new AssertionError("Producer failed", failure.get());
+        }
+        assertEquals(0, mHistory.getPendingCount());
+        assertEquals(PRODUCERS * PER_PRODUCER, applied.size());
+        assertEquals(PRODUCERS * PER_PRODUCER, mHistory.size());
+
+        int[] last = new int[PRODUCERS];
+        Arrays.fill(last, -1);
+        for (TestAction action : applied) {
+            assertEquals("Out of order or duplicated: " + action,
+                    last[action.mProducer] + 1, action.mSequence);
+            last[action.mProducer] = action.mSequence;
+        }
+        for (int p = 0; p < PRODUCERS; p++) {
+            assertEquals("Lost actions of producer " + p, PER_PRODUCER - 1, last[p]);
+        }
+    }
+
+    @Test
+    public void drainAppliesAtMostItsLimitAndReschedules() {
+        int count = ConcurrentStackHistory.MAX_APPLIED_PER_DRAIN + 1;
+        for (int i = 0; i < count; i++) {
+            mHistory.submit(new TestAction(0, i));
+        }
+        assertEquals(1, mWakeUps.size());
+
+        mWakeUps.poll().run();
+        assertEquals(ConcurrentStackHistory.MAX_APPLIED_PER_DRAIN, mHistory.size());
+        assertEquals(1, mHistory.getPendingCount());
+        assertEquals(1, mWakeUps.size());
+
+        runWakeUps();
+        assertEquals(count, mHistory.size());
+        assertEquals(count - 1, ((TestAction) mHistory.peekTop()).mSequence);
+    }
+
+    @Test
+    public void offThreadCallsAreRejected() throws InterruptedException {
+        mHistory.addAction(new TestAction(0, 0));
+        mHistory.addAction(new TestAction(0, 1));
+        mHistory.undo();
+
+        final List<String> accepted = new ArrayList<>();
+        Thread other = new Thread(() -> {
+            expectRejected("addAction", accepted, () -> mHistory.addAction(new TestAction(1, 0)));
+            expectRejected("undo", accepted, mHistory::undo);
+            expectRejected("redo", accepted, mHistory::redo);
+            expectRejected("clear", accepted, mHistory::clear);
+            expectRejected("size", accepted, mHistory::size);
+            expectRejected("peekTop", accepted, mHistory::peekTop);
+            expectRejected("canRedo", accepted, mHistory::canRedo);
+            expectRejected("getVersion", accepted, mHistory::getVersion);
+            expectRejected("drain", accepted, mHistory::drain);
+            mHistory.submit(new TestAction(1, 0));
+        });
+        other.start();
+        other.join();
+
+        assertTrue("Accepted off-thread: " + accepted, accepted.isEmpty());
+
+        // Nothing changed, and the submit from the other thread still arrives.
+        assertEquals(1, mHistory.size());
+        assertTrue(mHistory.canRedo());
+        runWakeUps();
+        assertEquals(2, mHistory.size());
+        assertFalse(mHistory.canRedo());
+        assertNotNull(mHistory.peekTop());
+        assertEquals(1, ((TestAction) mHistory.peekTop()).mProducer);
+    }
+
+    @Test
+    public void toStringWorksOffThread() throws InterruptedException {
+        mHistory.addAction(new TestAction(0, 0));
+        mHistory.submit(new TestAction(0, 1));
+
+        final AtomicReference<Object> result = new AtomicReference<>();
+        Thread other = new Thread(() -> {
+            try {
+                result.set(mHistory.toString());
+            } catch (RuntimeException e) {
+                result.set(e);
+            }
+        });
+        other.start();
+        other.join();
+
+        assertEquals("Undo size: 1, redo size: 0, pending: 1", result.get());
+    }
+
+    @Test
+    public void clearKeepsPendingSubmissions() {
+        TestAction pending = new TestAction(0, 0);
+        mHistory.addAction(new TestAction(1, 0));
+        mHistory.submit(pending);
+        mHistory.clear();
+        assertEquals(0, mHistory.size());
+
+        runWakeUps();
+        assertSame(pending, mHistory.peekTop());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void submitRejectsNull() {
+        mHistory.submit(null);
+    }
+
+    private static void expectRejected(String name, List<String> accepted, Runnable call) {
+        try {
+            call.run();
+            accepted.add(name);
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package cse340.undo.history;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import cse340.undo.actions.AbstractReversibleAction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StackHistoryTest {
+    private static final int CAPACITY = 5;
+
+    private static class TestAction extends AbstractReversibleAction {
+        final int mId;
+
+        TestAction(int id) {
+            mId = id;
+        }
+
+        @Override
+        public String toString() {
+            return "TestAction " + mId;
+        }
+    }
+
+    private StackHistory mHistory;
+    private List<AbstractReversibleAction> mEvicted;
+    private int mNextId;
+
+    @Before
+    public void setUp() {
+        mHistory = new StackHistory(CAPACITY);
+        mEvicted = new ArrayList<>();
+        mHistory.setOnActionEvictedListener(mEvicted::add);
+    }
+
+    private TestAction add() {
+        TestAction action = new TestAction(mNextId++);
+        mHistory.addAction(action);
+        return action;
+    }
+
+    @Test
+    public void snapshotSurvivesAddAction() {
+        TestAction a = add();
+        HistorySnapshot snapshot = mHistory.snapshot();
+        add();
+
+        assertContents(snapshot, a);
+        assertEquals(2, mHistory.size());
+    }
+
+    @Test
+    public void snapshotSurvivesUndo() {
+        TestAction a = add(), b = add();
+        HistorySnapshot snapshot = mHistory.snapshot();
+
+        assertSame(b, mHistory.undo());
+        assertSame(a, mHistory.undo());
+        assertContents(snapshot, a, b);
+        assertContents(mHistory.snapshot());
+    }
+
+    @Test
+    public void snapshotSurvivesUndoThenAdd() {
+        // Adding after an undo would write over the slot the snapshot still sees.
+        TestAction a = add(), b = add();
+        HistorySnapshot snapshot = mHistory.snapshot();
+        mHistory.undo();
+        TestAction c = add();
+
+        assertContents(snapshot, a, b);
+        assertContents(mHistory.snapshot(), a, c);
+        assertFalse(mHistory.canRedo());
+    }
+
+    @Test
+    public void snapshotSurvivesRedo() {
+        TestAction a = add(), b = add();
+        mHistory.undo();
+        HistorySnapshot undone = mHistory.snapshot();
+        mHistory.undo();
+        HistorySnapshot empty = mHistory.snapshot();
+
+        assertSame(a, mHistory.redo());
+        assertSame(b, mHistory.redo());
+        assertContents(undone, a);
+        assertContents(empty);
+        assertContents(mHistory.snapshot(), a, b);
+    }
+
+    @Test
+    public void snapshotSurvivesEviction() {
+        TestAction[] actions = new TestAction[CAPACITY];
+        for (int i = 0; i < CAPACITY; i++) {
+            actions[i] = add();
+        }
+        HistorySnapshot full = mHistory.snapshot();
+
+        TestAction next = add();
+        assertEquals(1, mEvicted.size());
+        assertSame(actions[0], mEvicted.get(0));
+        assertContents(full, actions);
+        assertSame(actions[1], mHistory.peekBottom());
+        assertSame(next, mHistory.peekTop());
+        assertEquals(CAPACITY, mHistory.size());
+
+        // Evict past the end of the array, so the stack gets compacted into a new one.
+        for (int i = 0; i < 40; i++) {
+            add();
+        }
+        assertEquals(41, mEvicted.size());
+        assertContents(full, actions);
+        assertEquals(CAPACITY, mHistory.snapshot().size());
+    }
+
+    @Test
+    public void snapshotSurvivesClear() {
+        TestAction a = add(), b = add();
+        HistorySnapshot snapshot = mHistory.snapshot();
+        mHistory.clear();
+        TestAction c = add();
+
+        assertContents(snapshot, a, b);
+        assertContents(mHistory.snapshot(), c);
+    }
+
+    @Test
+    public void snapshotIsSharedUntilTheHistoryChanges() {
+        add();
+        HistorySnapshot snapshot = mHistory.snapshot();
+        assertSame(snapshot, mHistory.snapshot());
+        assertEquals(mHistory.getVersion(), snapshot.getVersion());
+
+        add();
+        HistorySnapshot next = mHistory.snapshot();
+        assertNotSame(snapshot, next);
+        assertTrue(next.getVersion() > snapshot.getVersion());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void snapshotRejectsOutOfRangeIndex() {
+        add();
+        mHistory.snapshot().get(1);
+    }
+
+    @Test
+    public void undoAndRedoOnEmptyHistory() {
+        assertNull(mHistory.undo());
+        assertNull(mHistory.redo());
+        assertNull(mHistory.peekTop());
+        assertTrue(mHistory.snapshot().isEmpty());
+        assertNull(mHistory.snapshot().peekTop());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveCapacity() {
+        new StackHistory(0);
+    }
+
+    /**
+     * Runs random operations against a simple model of the stacks, checking after each one that
+     * the history matches the model and every snapshot taken so far still holds what it did.
+     */
+    @Test
+    public void randomOperationsKeepSnapshotsIsolated() {
+        Random random = new Random(340);
+        List<AbstractReversibleAction> undo = new ArrayList<>();
+        Deque<AbstractReversibleAction> redo = new ArrayDeque<>();
+        List<HistorySnapshot> snapshots = new ArrayList<>();
+        List<AbstractReversibleAction[]> expected = new ArrayList<>();
+
+        for (int step = 0; step < 5000; step++) {
+            int op = random.nextInt(10);
+            if (op < 4) {
+                TestAction action = add();
+                if (undo.size() == CAPACITY) {
+                    assertSame(undo.remove(0), mEvicted.get(mEvicted.size() - 1));
+                }
+                undo.add(action);
+                redo.clear();
+            } else if (op < 6) {
+                AbstractReversibleAction action = mHistory.undo();
+                if (undo.isEmpty()) {
+                    assertNull(action);
+                } else {
+                    assertSame(undo.remove(undo.size() - 1), action);
+                    redo.addFirst(action);
+                }
+            } else if (op < 8) {
+                AbstractReversibleAction action = mHistory.redo();
+                if (redo.isEmpty()) {
+                    assertNull(action);
+                } else {
+                    assertSame(redo.removeFirst(), action);
+                    undo.add(action);
+                }
+            } else if (op < 9) {
+                snapshots.add(mHistory.snapshot());
+                expected.add(undo.toArray(new AbstractReversibleAction[0]));
+                // Hold a bounded number, dropping old ones, so later steps aren't quadratic.
+                if (snapshots.size() > 50) {
+                    snapshots.remove(0);
+                    expected.remove(0);
+                }
+            } else if (random.nextInt(10) == 0) {
+                mHistory.clear();
+                undo.clear();
+                redo.clear();
+            }
+
+            assertEquals(undo.size(), mHistory.size());
+            assertEquals(redo.size(), mHistory.redoSize());
+            for (int i = 0; i < snapshots.size(); i++) {
+                assertContents(snapshots.get(i), expected.get(i));
+            }
+        }
+    }
+
+    private static void assertContents(HistorySnapshot snapshot,
+                                       AbstractReversibleAction... actions) {
+        assertEquals(actions.length, snapshot.size());
+        assertEquals(actions.length == 0, snapshot.isEmpty());
+        Iterator<AbstractReversibleAction> iterator = snapshot.iterator();
+        for (int i = 0; i < actions.length; i++) {
+            assertSame(actions[i], snapshot.get(i));
+            assertSame(actions[i], iterator.next());
+        }
+        assertFalse(iterator.hasNext());
+        assertSame(actions.length == 0 ? null : actions[actions.length - 1], snapshot.peekTop());
+    }
+}